@@ -0,0 +1,227 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.ThrowableProxyUtil;
+import ch.qos.logback.core.encoder.EncoderBase;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Encodes events as compact binary records instead of text. Nothing is formatted when an event is logged: The
+ * timestamp is written as a number, the level as a byte, and the logger name, thread name and message pattern as ids
+ * of dictionaries. The arguments of the message are written as strings. {@link GSBinaryLogDecoder} renders a file
+ * back to text by a pattern.
+ * <p>
+ * The format is a sequence of records, each starting with its type:
+ * <ul>
+ * <li>{@link #HEADER}: "GSLB" and the version. Written when the file is opened, followed by the definitions of the
+ * dictionaries so far. The dictionaries of a file start over at a header
+ * <li>{@link #LOGGER}, {@link #THREAD} and {@link #MESSAGE}: Id and string. Written with the first event using the string
+ * <li>{@link #EVENT}: Timestamp in epoch milliseconds (long), level (byte), logger id, thread id, message id, the
+ * arguments and the stack trace of the throwable, if any
+ * </ul>
+ * Numbers other than the timestamp are variable length (7 bits a byte). A string is its UTF-8 length and bytes. Id 0
+ * means that the string follows inline, which is used when a dictionary is full. An event without a stack trace ends
+ * with a zero byte, so a file of a {@link GSMappedFileAppender} is appended to at the written length of its trailer.
+ * <p>
+ * Events are encoded before the appender writes them, so a definition may be written after the first event using it.
+ * The dictionaries belong to one file, so the encoder cannot be shared by the sinks of a {@link GSFanOutFileAppender}
+ * <pre>
+ * &lt;encoder class='torsete.gslogback.GSBinaryEncoder'/&gt;
+ * </pre>
+ */
+public class GSBinaryEncoder extends EncoderBase<ILoggingEvent> {
+    public final static byte HEADER = 0;
+    public final static byte LOGGER = 1;
+    public final static byte THREAD = 2;
+    public final static byte MESSAGE = 3;
+    public final static byte EVENT = 4;
+    final static byte[] MAGIC = "GSLB".getBytes(StandardCharsets.US_ASCII);
+    final static byte VERSION = 1;
+    final static Level[] LEVELS = {Level.TRACE, Level.DEBUG, Level.INFO, Level.WARN, Level.ERROR};
+
+    private int maxDictionarySize = 4096;
+    private final Dictionary loggers = new Dictionary(LOGGER);
+    private final Dictionary threads = new Dictionary(THREAD);
+    private final Dictionary messages = new Dictionary(MESSAGE);
+
+    public int getMaxDictionarySize() {
+        return maxDictionarySize;
+    }
+
+    /**
+     * The maximum number of strings in each dictionary. Later strings are written inline. 4096 if not set
+     */
+    public void setMaxDictionarySize(int maxDictionarySize) {
+        this.maxDictionarySize = maxDictionarySize;
+    }
+
+    /**
+     * The dictionaries are not cleared, since other threads may be encoding events meanwhile, eg. when a rolling file
+     * appender opens the next file. Their events are written after the header, so the definitions are written again
+     */
+    @Override
+    public byte[] headerBytes() {
+        Record record = new Record(8);
+        record.writeByte(HEADER);
+        record.writeBytes(MAGIC);
+        record.writeByte(VERSION);
+        loggers.writeDefinitions(record);
+        threads.writeDefinitions(record);
+        messages.writeDefinitions(record);
+        return record.toByteArray();
+    }
+
+    @Override
+    public byte[] encode(ILoggingEvent event) {
+        Record record = new Record(128);
+        int loggerId = loggers.getId(event.getLoggerName(), record);
+        int threadId = threads.getId(event.getThreadName(), record);
+        int messageId = messages.getId(event.getMessage(), record);
+        record.writeByte(EVENT);
+        record.writeLong(event.getTimeStamp());
+        record.writeByte(getLevelByte(event.getLevel()));
+        writeReference(record, loggerId, event.getLoggerName());
+        writeReference(record, threadId, event.getThreadName());
+        writeReference(record, messageId, event.getMessage());
+        Object[] arguments = event.getArgumentArray();
+        record.writeVarint(arguments == null ? 0 : arguments.length);
+        if (arguments != null) {
+            for (Object argument : arguments) {
+                record.writeString(argument instanceof Object[] ? Arrays.deepToString((Object[]) argument) : String.valueOf(argument));
+            }
+        }
+        IThrowableProxy throwableProxy = event.getThrowableProxy();
+        record.writeString(throwableProxy == null ? "" : ThrowableProxyUtil.asString(throwableProxy));
+        return record.toByteArray();
+    }
+
+    @Override
+    public byte[] footerBytes() {
+        return null;
+    }
+
+    private void writeReference(Record record, int id, String value) {
+        record.writeVarint(id);
+        if (id == 0) {
+            record.writeString(value);
+        }
+    }
+
+    static byte getLevelByte(Level level) {
+        for (byte i = 0; i < LEVELS.length; i++) {
+            if (LEVELS[i] == level) {
+                return i;
+            }
+        }
+        return 2; // INFO
+    }
+
+    /**
+     * Ids of strings. Ids start at 1
+     */
+    private class Dictionary {
+        private final byte type;
+        private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+        private final AtomicInteger lastId = new AtomicInteger();
+
+        Dictionary(byte type) {
+            this.type = type;
+        }
+
+        void writeDefinitions(Record record) {
+            ids.forEach((value, id) -> {
+                record.writeByte(type);
+                record.writeVarint(id);
+                record.writeString(value);
+            });
+        }
+
+        /**
+         * Writes the definition to the record if the string is new
+         *
+         * @return 0 if the dictionary is full
+         */
+        int getId(String value, Record record) {
+            if (value == null) {
+                return 0;
+            }
+            Integer id = ids.get(value);
+            if (id != null) {
+                return id;
+            }
+            if (ids.size() >= maxDictionarySize) {
+                return 0;
+            }
+            int newId = lastId.incrementAndGet();
+            id = ids.putIfAbsent(value, newId);
+            if (id != null) {
+                return id; // Defined by another thread meanwhile
+            }
+            record.writeByte(type);
+            record.writeVarint(newId);
+            record.writeString(value);
+            return newId;
+        }
+    }
+
+    /**
+     * The bytes of one encoding
+     */
+    private static class Record {
+        private byte[] bytes;
+        private int length;
+
+        Record(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        void writeByte(int b) {
+            ensureCapacity(1);
+            bytes[length++] = (byte) b;
+        }
+
+        void writeBytes(byte[] b) {
+            ensureCapacity(b.length);
+            System.arraycopy(b, 0, bytes, length, b.length);
+            length += b.length;
+        }
+
+        void writeLong(long value) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes[length++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeVarint(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7F) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        void writeString(String value) {
+            byte[] utf8 = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(utf8.length);
+            writeBytes(utf8);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, length);
+        }
+
+        private void ensureCapacity(int extraLength) {
+            if (length + extraLength > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extraLength));
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renders a file written by {@link GSBinaryEncoder} as text by a pattern of PatternLayout, by default the gslog pattern.
+ * <p>
+ * The file is read twice: First the dictionaries are collected, then the events are rendered. A definition may be
+ * written after the first event using it (see {@link GSBinaryEncoder}). A record cut off at the end of the file, eg.
+ * by a crash, is left out. A file of a {@link GSMappedFileAppender} that was not stopped is read to its written length.
+ * <p>
+ * Usage:
+ * <pre>
+ * java torsete.gslogback.GSBinaryLogDecoder &lt;binary log file&gt; [pattern]
+ * </pre>
+ */
+public class GSBinaryLogDecoder {
+    private final List<Dictionaries> segments = new ArrayList<>();
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: " + GSBinaryLogDecoder.class.getName() + " <binary log file> [pattern]");
+            System.exit(1);
+        }
+        Writer writer = new BufferedWriter(new OutputStreamWriter(System.out));
+        new GSBinaryLogDecoder().decode(new File(args[0]), args.length > 1 ? args[1] : getDefaultPattern(), writer);
+        writer.flush();
+    }
+
+    /**
+     * @return The value of {@link GSLogbackProperties#GSLOG_PATTERN} or its default
+     */
+    static String getDefaultPattern() {
+        String pattern = GSLogbackProperties.GSLOG_PATTERN.getValue();
+        return pattern != null && !pattern.isEmpty() ? pattern : new GSLogbackDefaultProperties().apply(GSLogbackProperties.GSLOG_PATTERN);
+    }
+
+    /**
+     * @return The number of events
+     */
+    public int decode(File file, String pattern, Writer writer) throws IOException {
+        segments.clear();
+        read(file, null);
+        LoggerContext loggerContext = new LoggerContext();
+        PatternLayout layout = new PatternLayout();
+        layout.setContext(loggerContext);
+        layout.setPattern(pattern);
+        layout.start();
+        return read(file, (event, stackTrace) -> {
+            writer.write(layout.doLayout(event));
+            if (!stackTrace.isEmpty()) {
+                writer.write(stackTrace);
+            }
+        });
+    }
+
+    /**
+     * @param eventConsumer Null when the dictionaries are collected
+     * @return The number of events
+     */
+    private int read(File file, EventConsumer eventConsumer) throws IOException {
+        int eventCount = 0;
+        int segment = 0;
+        if (eventConsumer == null) {
+            segments.add(new Dictionaries());
+        }
+        long length = GSMappedFileAppender.getWrittenLength(file);
+        try (DataInputStream in = new DataInputStream(new LimitedInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024), length))) {
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    break;
+                }
+                if (type == GSBinaryEncoder.HEADER) {
+                    byte[] magic = new byte[GSBinaryEncoder.MAGIC.length];
+                    in.readFully(magic);
+                    if (!Arrays.equals(magic, GSBinaryEncoder.MAGIC)) {
+                        break; // Zero bytes after the last record
+                    }
+                    int version = in.read();
+                    if (version != GSBinaryEncoder.VERSION) {
+                        throw new IOException("Version " + version + " of " + file + " is not supported");
+                    }
+                    segment++;
+                    if (eventConsumer == null) {
+                        segments.add(new Dictionaries());
+                    }
+                } else if (type == GSBinaryEncoder.LOGGER || type == GSBinaryEncoder.THREAD || type == GSBinaryEncoder.MESSAGE) {
+                    int id = readVarint(in);
+                    String value = readString(in);
+                    if (eventConsumer == null) {
+                        segments.get(segment).get(type).put(id, value);
+                    }
+                } else if (type == GSBinaryEncoder.EVENT) {
+                    long timeStamp = in.readLong();
+                    int level = in.read();
+                    String loggerName = readReference(in, segment, GSBinaryEncoder.LOGGER);
+                    String threadName = readReference(in, segment, GSBinaryEncoder.THREAD);
+                    String message = readReference(in, segment, GSBinaryEncoder.MESSAGE);
+                    Object[] arguments = new Object[readVarint(in)];
+                    for (int i = 0; i < arguments.length; i++) {
+                        arguments[i] = readString(in);
+                    }
+                    String stackTrace = readString(in);
+                    eventCount++;
+                    if (eventConsumer != null) {
+                        LoggingEvent event = new LoggingEvent();
+                        event.setTimeStamp(timeStamp);
+                        event.setLevel(GSBinaryEncoder.LEVELS[Math.max(0, Math.min(level, GSBinaryEncoder.LEVELS.length - 1))]);
+                        event.setLoggerName(loggerName);
+                        event.setThreadName(threadName);
+                        event.setMessage(message);
+                        event.setArgumentArray(arguments.length == 0 ? null : arguments);
+                        eventConsumer.accept(event, stackTrace);
+                    }
+                } else {
+                    throw new IOException("Record type " + type + " of " + file + " is not known");
+                }
+            }
+        } catch (EOFException e) {
+            // The last record is cut off
+        }
+        return eventCount;
+    }
+
+    /**
+     * @return "?" if the id is not defined, eg. in the first reading
+     */
+    private String readReference(DataInputStream in, int segment, byte type) throws IOException {
+        int id = readVarint(in);
+        if (id == 0) {
+            return readString(in);
+        }
+        String value = segments.size() > segment ? segments.get(segment).get(type).get(id) : null;
+        return value != null ? value : "?";
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed number");
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] utf8 = new byte[readVarint(in)];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Ends after a number of bytes, ie. before the trailer of a {@link GSMappedFileAppender}
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long length) {
+            super(in);
+            remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int count = in.read(buffer, offset, (int) Math.min(length, remaining));
+            if (count > 0) {
+                remaining -= count;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long count = in.skip(Math.min(n, remaining));
+            remaining -= count;
+            return count;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+    }
+
+    private interface EventConsumer {
+        void accept(LoggingEvent event, String stackTrace) throws IOException;
+    }
+
+    /**
+     * The dictionaries of a segment, ie. from one header to the next
+     */
+    private static class Dictionaries {
+        private final Map<Integer, String> loggers = new HashMap<>();
+        private final Map<Integer, String> threads = new HashMap<>();
+        private final Map<Integer, String> messages = new HashMap<>();
+
+        Map<Integer, String> get(int type) {
+            return type == GSBinaryEncoder.LOGGER ? loggers : type == GSBinaryEncoder.THREAD ? threads : messages;
+        }
+    }
+}
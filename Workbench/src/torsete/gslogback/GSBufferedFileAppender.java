@@ -0,0 +1,108 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.FileAppender;
+import ch.qos.logback.core.util.Duration;
+import ch.qos.logback.core.util.FileSize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A FileAppender writing through a large buffer, so many events are written to the file by one write.
+ * <p>
+ * The buffer is flushed when it is full, periodically by the flush interval and after an event of the flush level or
+ * above (see {@link GSLogbackFlusher}):
+ * <pre>
+ * &lt;appender name='gslog.fileAppender' class='torsete.gslogback.GSBufferedFileAppender'&gt;
+ *     &lt;file&gt;app.out.log&lt;/file&gt;
+ *     &lt;bufferSize&gt;256KB&lt;/bufferSize&gt;
+ *     &lt;flushInterval&gt;1000&lt;/flushInterval&gt;
+ *     &lt;flushLevel&gt;warn&lt;/flushLevel&gt;
+ *     &lt;encoder&gt;&lt;pattern&gt;${gslog.pattern}&lt;/pattern&gt;&lt;/encoder&gt;
+ * &lt;/appender&gt;
+ * </pre>
+ */
+public class GSBufferedFileAppender extends FileAppender<ILoggingEvent> {
+    private final static FileSize DEFAULT_BUFFER_SIZE = FileSize.valueOf("256KB");
+    private final GSLogbackFlusher flusher = new GSLogbackFlusher();
+    private FileSize bufferSize;
+
+    public GSBufferedFileAppender() {
+        setImmediateFlush(false);
+    }
+
+    public FileSize getBufferSize() {
+        return bufferSize != null ? bufferSize : DEFAULT_BUFFER_SIZE;
+    }
+
+    /**
+     * 256KB if not set
+     */
+    @Override
+    public void setBufferSize(FileSize bufferSize) {
+        super.setBufferSize(bufferSize);
+        this.bufferSize = bufferSize;
+    }
+
+    public Duration getFlushInterval() {
+        return flusher.getFlushInterval();
+    }
+
+    /**
+     * The maximum time an event is buffered. No periodic flush if zero
+     */
+    public void setFlushInterval(Duration flushInterval) {
+        flusher.setFlushInterval(flushInterval);
+    }
+
+    public String getFlushLevel() {
+        return flusher.getFlushLevel();
+    }
+
+    /**
+     * Events of this level or above are flushed at once. OFF if none
+     */
+    public void setFlushLevel(String flushLevel) {
+        flusher.setFlushLevel(flushLevel);
+    }
+
+    @Override
+    public void start() {
+        if (bufferSize == null) {
+            setBufferSize(DEFAULT_BUFFER_SIZE); // Not in the constructor, since it is logged to the context
+        }
+        super.start();
+        if (isStarted() && !isImmediateFlush()) {
+            flusher.start(getContext(), this::flush);
+        }
+    }
+
+    @Override
+    public void stop() {
+        flusher.stop();
+        super.stop();
+    }
+
+    @Override
+    protected void subAppend(ILoggingEvent event) {
+        super.subAppend(event);
+        if (!isImmediateFlush() && flusher.isFlushing(event)) {
+            flush();
+        }
+    }
+
+    void flush() {
+        lock.lock();
+        try {
+            OutputStream outputStream = getOutputStream();
+            if (outputStream != null && isStarted()) {
+                outputStream.flush();
+            }
+        } catch (IOException e) {
+            addError("Failed to flush the appender named \"" + name + "\".", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
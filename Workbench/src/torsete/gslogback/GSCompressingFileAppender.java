@@ -0,0 +1,79 @@
+package torsete.gslogback;
+
+import ch.qos.logback.core.util.FileUtil;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A {@link GSBufferedFileAppender} compressing the file with gzip while it is written.
+ * <p>
+ * Each flush is a sync flush of the deflater, so everything flushed can be read by standard tools (eg. zcat or
+ * zless) while the file is written. They report an unexpected end until the appender is stopped. A flush ends a deflate
+ * block, so the flush interval and flush level should not flush too often for a good compression.
+ * <p>
+ * ".gz" is added to the file name if it does not end with it. A file appended to gets a new gzip member, which
+ * gzip tools read as one file. A compressing file cannot be prudent
+ * <pre>
+ * &lt;appender name='gslog.fileAppender' class='torsete.gslogback.GSCompressingFileAppender'&gt;
+ *     &lt;file&gt;app.out.log&lt;/file&gt;
+ *     &lt;flushInterval&gt;1000&lt;/flushInterval&gt;
+ *     &lt;encoder&gt;&lt;pattern&gt;${gslog.pattern}&lt;/pattern&gt;&lt;/encoder&gt;
+ * &lt;/appender&gt;
+ * </pre>
+ */
+public class GSCompressingFileAppender extends GSBufferedFileAppender {
+    final static String EXTENSION = ".gz";
+
+    @Override
+    public void setFile(String file) {
+        super.setFile(getCompressedFileName(file));
+    }
+
+    @Override
+    public void start() {
+        if (isPrudent()) {
+            addError("The appender named \"" + name + "\" cannot be prudent, since it compresses.");
+            return;
+        }
+        super.start();
+    }
+
+    @Override
+    public void openFile(String fileName) throws IOException {
+        lock.lock();
+        try {
+            File file = new File(fileName);
+            if (!FileUtil.createMissingParentDirectories(file)) {
+                addError("Failed to create parent directories for [" + file.getAbsolutePath() + "]");
+            }
+            setOutputStream(newOutputStream(file, isAppend(), (int) getBufferSize().getSize()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return A gzip stream whose flush is a sync flush
+     */
+    static OutputStream newOutputStream(File file, boolean isAppend, int bufferSize) throws IOException {
+        FileOutputStream fileOutputStream = new FileOutputStream(file, isAppend);
+        try {
+            return new GZIPOutputStream(fileOutputStream, bufferSize, true);
+        } catch (IOException e) {
+            fileOutputStream.close();
+            throw e;
+        }
+    }
+
+    static String getCompressedFileName(String fileName) {
+        if (fileName == null) {
+            return null;
+        }
+        String trimmedFileName = fileName.trim();
+        return trimmedFileName.endsWith(EXTENSION) ? trimmedFileName : trimmedFileName + EXTENSION;
+    }
+}
@@ -0,0 +1,286 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.FileAppender;
+import ch.qos.logback.core.OutputStreamAppender;
+import ch.qos.logback.core.encoder.Encoder;
+import ch.qos.logback.core.recovery.ResilientFileOutputStream;
+import ch.qos.logback.core.util.Duration;
+import ch.qos.logback.core.util.FileSize;
+import ch.qos.logback.core.util.FileUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Writes each event to several files, eg. the .out, .err and incident files of gslog-configuration.xml, and encodes it
+ * only once.
+ * <p>
+ * Each file is a {@link Sink} with a level threshold and optionally a logger name. An event is encoded when the first
+ * sink accepts it, and the same bytes are written to all the sinks accepting it. This replaces a FileAppender per file
+ * with a ThresholdFilter, where an error is formatted once per file:
+ * <pre>
+ * &lt;appender name='gslog.fileAppender' class='torsete.gslogback.GSFanOutFileAppender'&gt;
+ *     &lt;sink&gt;&lt;file&gt;app.out.log&lt;/file&gt;&lt;/sink&gt;
+ *     &lt;sink&gt;&lt;file&gt;app.err.log&lt;/file&gt;&lt;level&gt;warn&lt;/level&gt;&lt;/sink&gt;
+ *     &lt;encoder&gt;&lt;pattern&gt;${gslog.pattern}&lt;/pattern&gt;&lt;/encoder&gt;
+ * &lt;/appender&gt;
+ * </pre>
+ * The files are appended to. The encoder may be replaced while the appender is running (see {@link GSLogbackLiveUpdater}).
+ * <p>
+ * If buffered, the files are written through buffers of the buffer size and flushed as by {@link GSBufferedFileAppender}.
+ * If compressed, the files are gzip files written as by {@link GSCompressingFileAppender}. A compressed file is always
+ * buffered, since each flush ends a deflate block
+ */
+public class GSFanOutFileAppender extends OutputStreamAppender<ILoggingEvent> {
+    private final List<Sink> sinks = new CopyOnWriteArrayList<>();
+    private final GSLogbackFlusher flusher = new GSLogbackFlusher();
+    private FileSize bufferSize = new FileSize(FileAppender.DEFAULT_BUFFER_SIZE);
+    private boolean isCompressed;
+
+    public void addSink(Sink sink) {
+        sinks.add(sink);
+    }
+
+    public List<Sink> getSinks() {
+        return sinks;
+    }
+
+    public boolean isBuffered() {
+        return !isImmediateFlush() || isCompressed;
+    }
+
+    /**
+     * The same as immediate flush false
+     */
+    public void setBuffered(boolean isBuffered) {
+        setImmediateFlush(!isBuffered);
+    }
+
+    public boolean isCompress() {
+        return isCompressed;
+    }
+
+    /**
+     * Compresses the files with gzip. ".gz" is added to the file names not ending with it
+     */
+    public void setCompress(boolean isCompressed) {
+        this.isCompressed = isCompressed;
+    }
+
+    public FileSize getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(FileSize bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public Duration getFlushInterval() {
+        return flusher.getFlushInterval();
+    }
+
+    /**
+     * The maximum time an event is buffered, if buffered. No periodic flush if zero
+     */
+    public void setFlushInterval(Duration flushInterval) {
+        flusher.setFlushInterval(flushInterval);
+    }
+
+    public String getFlushLevel() {
+        return flusher.getFlushLevel();
+    }
+
+    /**
+     * Events of this level or above are flushed at once, if buffered. OFF if none
+     */
+    public void setFlushLevel(String flushLevel) {
+        flusher.setFlushLevel(flushLevel);
+    }
+
+    @Override
+    public void start() {
+        int errors = 0;
+        if (encoder == null) {
+            addError("No encoder set for the appender named \"" + name + "\".");
+            errors++;
+        }
+        if (sinks.isEmpty()) {
+            addError("No sink set for the appender named \"" + name + "\".");
+            errors++;
+        }
+        for (Sink sink : sinks) {
+            try {
+                sink.open(encoder, bufferSize.getSize(), isCompressed);
+            } catch (IOException | RuntimeException e) {
+                addError("Failed to open " + sink + " of the appender named \"" + name + "\".", e);
+                errors++;
+            }
+        }
+        if (errors == 0) {
+            started = true; // Not super.start(), since there is no output stream of OutputStreamAppender
+            if (isBuffered()) {
+                flusher.start(getContext(), this::flush);
+            }
+        } else {
+            sinks.forEach(sink -> sink.close(null));
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+        started = false;
+        flusher.stop();
+        Encoder<ILoggingEvent> encoder = this.encoder;
+        sinks.forEach(sink -> sink.close(encoder));
+    }
+
+    @Override
+    protected void subAppend(ILoggingEvent event) {
+        if (!isStarted()) {
+            return;
+        }
+        Encoder<ILoggingEvent> encoder = this.encoder; // The same encoder for all sinks, even if it is replaced meanwhile
+        byte[] bytes = null;
+        boolean isFlushing = !isBuffered() || flusher.isFlushing(event);
+        for (Sink sink : sinks) {
+            if (!sink.isAccepting(event)) {
+                continue;
+            }
+            if (bytes == null) {
+                bytes = encoder.encode(event);
+            }
+            try {
+                sink.write(bytes, isFlushing);
+            } catch (IOException e) {
+                addError("Failed to write to " + sink + " of the appender named \"" + name + "\".", e);
+            }
+        }
+    }
+
+    void flush() {
+        for (Sink sink : sinks) {
+            try {
+                sink.flush();
+            } catch (IOException e) {
+                addError("Failed to flush " + sink + " of the appender named \"" + name + "\".", e);
+            }
+        }
+    }
+
+    /**
+     * A file of a {@link GSFanOutFileAppender}
+     */
+    public static class Sink {
+        private String file;
+        private Level level = Level.ALL;
+        private String loggerName;
+        private OutputStream outputStream;
+
+        public String getFile() {
+            return file;
+        }
+
+        public void setFile(String file) {
+            this.file = file == null ? null : file.trim();
+        }
+
+        public String getLevel() {
+            return level.toString();
+        }
+
+        /**
+         * Events of a lower level are not written to the file. All events are written if not set
+         */
+        public void setLevel(String level) {
+            this.level = Level.toLevel(level, Level.ALL);
+        }
+
+        public String getLogger() {
+            return loggerName;
+        }
+
+        /**
+         * Only events of this logger and its descendants are written to the file. All loggers if not set
+         */
+        public void setLogger(String loggerName) {
+            this.loggerName = loggerName == null || loggerName.trim().isEmpty() ? null : loggerName.trim();
+        }
+
+        boolean isAccepting(ILoggingEvent event) {
+            if (!event.getLevel().isGreaterOrEqual(level)) {
+                return false;
+            }
+            if (loggerName == null) {
+                return true;
+            }
+            String eventLoggerName = event.getLoggerName();
+            return eventLoggerName.startsWith(loggerName)
+                    && (eventLoggerName.length() == loggerName.length() || eventLoggerName.charAt(loggerName.length()) == '.');
+        }
+
+        synchronized void open(Encoder<ILoggingEvent> encoder, long bufferSize, boolean isCompressed) throws IOException {
+            if (file == null || file.isEmpty()) {
+                throw new IllegalArgumentException("No file");
+            }
+            File f = new File(isCompressed ? GSCompressingFileAppender.getCompressedFileName(file) : file);
+            FileUtil.createMissingParentDirectories(f);
+            outputStream = isCompressed
+                    ? GSCompressingFileAppender.newOutputStream(f, true, (int) bufferSize)
+                    : new ResilientFileOutputStream(f, true, bufferSize);
+            byte[] header = encoder == null ? null : encoder.headerBytes();
+            if (header != null && header.length > 0) {
+                outputStream.write(header);
+                outputStream.flush();
+            }
+        }
+
+        synchronized void write(byte[] bytes, boolean isImmediateFlush) throws IOException {
+            if (outputStream == null) {
+                return;
+            }
+            outputStream.write(bytes);
+            if (isImmediateFlush) {
+                outputStream.flush();
+            }
+        }
+
+        synchronized void flush() throws IOException {
+            if (outputStream != null) {
+                outputStream.flush();
+            }
+        }
+
+        /**
+         * @param encoder Writes its footer before the file is closed. Null if none
+         */
+        synchronized void close(Encoder<ILoggingEvent> encoder) {
+            if (outputStream == null) {
+                return;
+            }
+            try {
+                byte[] footer = encoder == null ? null : encoder.footerBytes();
+                if (footer != null && footer.length > 0) {
+                    outputStream.write(footer);
+                }
+                outputStream.close();
+            } catch (IOException e) {
+                // The file is left as it is
+            } finally {
+                outputStream = null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "sink " + file + (level == Level.ALL ? "" : " level=" + level) + (loggerName == null ? "" : " logger=" + loggerName);
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.classic.util.LogbackMDCAdapter;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.MDC;
+import org.slf4j.Marker;
+import org.slf4j.spi.MDCAdapter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records the last log calls of each thread, or of each value of an MDC key, in memory, also the calls below the level
+ * of the logger. They are written to an appender when an incident or an error is logged, so the incident file gets the
+ * debug context of the incident at close to the cost of the level of the loggers.
+ * <p>
+ * A call of the recording level or above is recorded as it is: Time, level, logger, message pattern, arguments,
+ * throwable and MDC. Nothing is formatted, no event is created, and the call is left to the level of the logger. The
+ * last calls of the size are kept in a ring of preallocated records.
+ * <p>
+ * A call of the trigger level or above, or of the trigger logger or its descendants, writes the ring to the appender as
+ * events, oldest first, and empties it. A call of the trigger level is written after its context, if there is any. A call
+ * of the trigger logger is left to the appenders of that logger, and follows its context.
+ * <p>
+ * The arguments are kept by reference, so an argument changed after the call is written as changed. Calls guarded by
+ * isDebugEnabled() and the like are not recorded, since the guard is false. The filter should be the first turbo filter,
+ * since a call denied by a turbo filter before it is not recorded
+ * <pre>
+ * &lt;turboFilter class='torsete.gslogback.GSFlightRecorderTurboFilter'&gt;
+ *     &lt;size&gt;256&lt;/size&gt;
+ *     &lt;level&gt;debug&lt;/level&gt;
+ *     &lt;triggerLogger&gt;dk.gensam.gaia.util.incident.GSIncident&lt;/triggerLogger&gt;
+ *     &lt;appenderName&gt;gslog.incidentFileAppender&lt;/appenderName&gt;
+ * &lt;/turboFilter&gt;
+ * </pre>
+ */
+public class GSFlightRecorderTurboFilter extends TurboFilter {
+    private final static String FQCN = Logger.class.getName();
+    private final static int MAX_MDC_RINGS = 1024;
+
+    private int size = 256;
+    private Level level = Level.DEBUG;
+    private String mdcKey;
+    private Level triggerLevel = Level.ERROR;
+    private String triggerLogger;
+    private String appenderName;
+    private final ThreadLocal<Ring> threadRings = ThreadLocal.withInitial(() -> new Ring(size));
+    private final ConcurrentHashMap<String, Ring> mdcRings = new ConcurrentHashMap<>();
+    private volatile Appender<ILoggingEvent> appender;
+    private boolean isAppenderMissing;
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * The number of calls kept of each thread or MDC value. 256 if not set
+     */
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    public String getLevel() {
+        return level == null ? null : level.toString();
+    }
+
+    /**
+     * Calls of this level or above are recorded. DEBUG if not set
+     */
+    public void setLevel(String level) {
+        this.level = Level.toLevel(level, null);
+    }
+
+    public String getMdcKey() {
+        return mdcKey;
+    }
+
+    /**
+     * Calls are kept by the value of this MDC key, eg. a request id, instead of by thread. Calls without the key are
+     * kept by thread
+     */
+    public void setMdcKey(String mdcKey) {
+        this.mdcKey = mdcKey == null || mdcKey.trim().isEmpty() ? null : mdcKey.trim();
+    }
+
+    public String getTriggerLevel() {
+        return triggerLevel == null ? null : triggerLevel.toString();
+    }
+
+    /**
+     * Calls of this level or above write the recorded calls. ERROR if not set
+     */
+    public void setTriggerLevel(String triggerLevel) {
+        this.triggerLevel = Level.toLevel(triggerLevel, null);
+    }
+
+    public String getTriggerLogger() {
+        return triggerLogger;
+    }
+
+    /**
+     * Calls of this logger and its descendants write the recorded calls, eg. the incident logger
+     */
+    public void setTriggerLogger(String triggerLogger) {
+        this.triggerLogger = triggerLogger == null || triggerLogger.trim().isEmpty() ? null : triggerLogger.trim();
+    }
+
+    public String getAppenderName() {
+        return appenderName;
+    }
+
+    /**
+     * The appender of a logger to write the recorded calls to
+     */
+    public void setAppenderName(String appenderName) {
+        this.appenderName = appenderName == null ? null : appenderName.trim();
+    }
+
+    @Override
+    public void start() {
+        int errors = 0;
+        if (size <= 0) {
+            addError("Size " + size + " of the turbo filter named \"" + getName() + "\" is not positive.");
+            errors++;
+        }
+        if (level == null || triggerLevel == null) {
+            addError("No level or trigger level of the turbo filter named \"" + getName() + "\".");
+            errors++;
+        }
+        if (appenderName == null || appenderName.isEmpty()) {
+            addError("No appender name of the turbo filter named \"" + getName() + "\".");
+            errors++;
+        }
+        if (errors == 0) {
+            super.start();
+        }
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        mdcRings.clear();
+        appender = null;
+    }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        if (!isStarted() || level == null || format == null && params == null) {
+            return FilterReply.NEUTRAL; // Eg. isDebugEnabled()
+        }
+        String mdcValue = mdcKey == null ? null : MDC.get(mdcKey);
+        if (triggerLogger != null && isDescendant(logger.getName(), triggerLogger)) {
+            write(getRing(mdcValue), null);
+        } else if (level.isGreaterOrEqual(triggerLevel)) {
+            write(getRing(mdcValue), new LoggingEvent(FQCN, logger, level, format, t, params)); // Created again by the logger, but errors are few
+        } else if (level.isGreaterOrEqual(this.level)) {
+            if (mdcValue == null) {
+                threadRings.get().add(logger, level, format, params, t, null, getMDCPropertyMap()); // Only used by this thread
+            } else {
+                Ring ring = getRing(mdcValue);
+                synchronized (ring) {
+                    ring.add(logger, level, format, params, t, Thread.currentThread().getName(), getMDCPropertyMap());
+                }
+            }
+        }
+        return FilterReply.NEUTRAL;
+    }
+
+    /**
+     * @param triggerEvent Written after the recorded calls, if any. Null if none
+     */
+    private void write(Ring ring, ILoggingEvent triggerEvent) {
+        List<ILoggingEvent> events;
+        synchronized (ring) {
+            events = ring.drain();
+        }
+        if (events.isEmpty()) {
+            return;
+        }
+        if (triggerEvent != null) {
+            events.add(triggerEvent);
+        }
+        Appender<ILoggingEvent> appender = getAppender();
+        if (appender != null) {
+            events.forEach(appender::doAppend);
+        }
+    }
+
+    /**
+     * @param mdcValue Null if none
+     * @return The ring of the MDC value, if any, else of the thread
+     */
+    private Ring getRing(String mdcValue) {
+        if (mdcValue == null) {
+            return threadRings.get();
+        }
+        Ring ring = mdcRings.get(mdcValue);
+        if (ring != null) {
+            return ring;
+        }
+        if (mdcRings.size() >= MAX_MDC_RINGS) {
+            mdcRings.clear(); // Values that are not used any more, eg. of ended requests
+        }
+        return mdcRings.computeIfAbsent(mdcValue, value -> new Ring(size));
+    }
+
+    /**
+     * The appender is found among the appenders of the loggers when it is used the first time
+     */
+    private Appender<ILoggingEvent> getAppender() {
+        Appender<ILoggingEvent> appender = this.appender;
+        if (appender == null) {
+            for (Logger logger : ((LoggerContext) getContext()).getLoggerList()) {
+                appender = logger.getAppender(appenderName);
+                if (appender != null) {
+                    this.appender = appender;
+                    return appender;
+                }
+            }
+            if (!isAppenderMissing) {
+                isAppenderMissing = true;
+                addError("Could not find an appender named [" + appenderName + "] of the turbo filter named \"" + getName() + "\".");
+            }
+        }
+        return appender;
+    }
+
+    /**
+     * @return The MDC as a LoggingEvent gets it, ie. without a copy if the MDC adapter is Logback's
+     */
+    private static Map<String, String> getMDCPropertyMap() {
+        MDCAdapter mdcAdapter = MDC.getMDCAdapter();
+        Map<String, String> map = mdcAdapter instanceof LogbackMDCAdapter
+                ? ((LogbackMDCAdapter) mdcAdapter).getPropertyMap()
+                : MDC.getCopyOfContextMap();
+        return map != null ? map : Collections.emptyMap();
+    }
+
+    private static boolean isDescendant(String loggerName, String ancestorName) {
+        return loggerName.equals(ancestorName)
+                || loggerName.startsWith(ancestorName) && loggerName.charAt(ancestorName.length()) == '.';
+    }
+
+    /**
+     * The last calls of a thread or an MDC value. A ring of an MDC value is guarded by itself
+     */
+    private static class Ring {
+        private final Record[] records;
+        private int next;
+        private int count;
+
+        Ring(int size) {
+            records = new Record[size];
+            for (int i = 0; i < size; i++) {
+                records[i] = new Record();
+            }
+        }
+
+        void add(Logger logger, Level level, String format, Object[] params, Throwable t, String threadName,
+                 Map<String, String> mdcPropertyMap) {
+            Record record = records[next];
+            record.timeStamp = System.currentTimeMillis();
+            record.logger = logger;
+            record.level = level;
+            record.format = format;
+            record.params = params;
+            record.throwable = t;
+            record.threadName = threadName;
+            record.mdcPropertyMap = mdcPropertyMap;
+            next = (next + 1) % records.length;
+            count = Math.min(count + 1, records.length);
+        }
+
+        /**
+         * @return The calls as events, oldest first. The ring is emptied
+         */
+        List<ILoggingEvent> drain() {
+            List<ILoggingEvent> events = new ArrayList<>(count + 1);
+            String currentThreadName = Thread.currentThread().getName(); // The recording thread of a ring of a thread
+            for (int i = count; i > 0; i--) {
+                Record record = records[(next - i + records.length) % records.length];
+                LoggingEvent event = new LoggingEvent(FQCN, record.logger, record.level, record.format, record.throwable, record.params);
+                event.setTimeStamp(record.timeStamp);
+                event.setMDCPropertyMap(record.mdcPropertyMap);
+                event.setThreadName(record.threadName != null ? record.threadName : currentThreadName);
+                events.add(event);
+                record.clear();
+            }
+            count = 0;
+            return events;
+        }
+    }
+
+    private static class Record {
+        private long timeStamp;
+        private Logger logger;
+        private Level level;
+        private String format;
+        private Object[] params;
+        private Throwable throwable;
+        private String threadName;
+        private Map<String, String> mdcPropertyMap;
+
+        void clear() {
+            logger = null;
+            format = null;
+            params = null;
+            throwable = null;
+            threadName = null;
+            mdcPropertyMap = null;
+        }
+    }
+}
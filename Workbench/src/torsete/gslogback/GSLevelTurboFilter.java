@@ -0,0 +1,161 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.MDC;
+import org.slf4j.Marker;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Rejects events below the level of a rule before an event is created, ie. before the message arguments are captured
+ * and before any appender or filter of an appender is called.
+ * <p>
+ * A rule has a logger name, which matches the logger and its descendants (all loggers if not set), and a level.
+ * Of the rules matching a logger, the one with the longest logger name decides. An event below the level of the rule
+ * is rejected, other events are left to the level of the logger.
+ * <p>
+ * A rule with an MDC key only matches when the MDC has the key (with the value if set), and is then preferred to the
+ * rules without an MDC key. It accepts the events of its level or above, also below the level of the logger, so eg. one
+ * request can be logged in detail.
+ * <p>
+ * The rules of a logger name are found once, so deciding is a lookup of the logger name
+ * <pre>
+ * &lt;turboFilter class='torsete.gslogback.GSLevelTurboFilter'&gt;
+ *     &lt;rule&gt;&lt;logger&gt;org.apache&lt;/logger&gt;&lt;level&gt;warn&lt;/level&gt;&lt;/rule&gt;
+ *     &lt;rule&gt;&lt;logger&gt;dk.gensam&lt;/logger&gt;&lt;level&gt;debug&lt;/level&gt;&lt;mdcKey&gt;gslog.trace&lt;/mdcKey&gt;&lt;/rule&gt;
+ * &lt;/turboFilter&gt;
+ * </pre>
+ */
+public class GSLevelTurboFilter extends TurboFilter {
+    private final static Rule[] NO_RULES = new Rule[0];
+    private final List<Rule> rules = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<String, Rule[]> loggerRules = new ConcurrentHashMap<>();
+
+    public void addRule(Rule rule) {
+        rules.add(rule);
+        loggerRules.clear();
+    }
+
+    public List<Rule> getRules() {
+        return rules;
+    }
+
+    @Override
+    public void start() {
+        int errors = 0;
+        for (Rule rule : rules) {
+            if (rule.level == null) {
+                addError("No level of a rule of the turbo filter named \"" + getName() + "\" (logger " + rule.logger + ").");
+                errors++;
+            }
+        }
+        if (errors == 0) {
+            super.start();
+        }
+    }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        if (!isStarted() || level == null) {
+            return FilterReply.NEUTRAL;
+        }
+        Rule[] matchingRules = loggerRules.computeIfAbsent(logger.getName(), this::getMatchingRules);
+        for (Rule rule : matchingRules) {
+            if (rule.mdcKey == null) {
+                return level.isGreaterOrEqual(rule.level) ? FilterReply.NEUTRAL : FilterReply.DENY;
+            }
+            String mdcValue = MDC.get(rule.mdcKey);
+            if (mdcValue != null && (rule.mdcValue == null || rule.mdcValue.equals(mdcValue))) {
+                return level.isGreaterOrEqual(rule.level) ? FilterReply.ACCEPT : FilterReply.DENY;
+            }
+        }
+        return FilterReply.NEUTRAL;
+    }
+
+    /**
+     * @return The rules matching the logger, the deciding first. Rules after the first rule without an MDC key are left out
+     */
+    private Rule[] getMatchingRules(String loggerName) {
+        List<Rule> matchingRules = new ArrayList<>();
+        rules.stream()
+                .filter(rule -> rule.isMatching(loggerName))
+                .sorted(Comparator.comparing((Rule rule) -> rule.mdcKey == null).thenComparingInt(rule -> -rule.getLoggerLength()))
+                .forEach(matchingRules::add);
+        for (int i = 0; i < matchingRules.size(); i++) {
+            if (matchingRules.get(i).mdcKey == null) {
+                return matchingRules.subList(0, i + 1).toArray(NO_RULES);
+            }
+        }
+        return matchingRules.toArray(NO_RULES);
+    }
+
+    /**
+     * A rule of {@link GSLevelTurboFilter}
+     */
+    public static class Rule {
+        private String logger;
+        private Level level;
+        private String mdcKey;
+        private String mdcValue;
+
+        public String getLogger() {
+            return logger;
+        }
+
+        /**
+         * The logger and its descendants. All loggers if not set
+         */
+        public void setLogger(String logger) {
+            this.logger = logger == null || logger.trim().isEmpty() ? null : logger.trim();
+        }
+
+        public String getLevel() {
+            return level == null ? null : level.toString();
+        }
+
+        /**
+         * Events below this level are rejected. OFF rejects all
+         */
+        public void setLevel(String level) {
+            this.level = Level.toLevel(level, null);
+        }
+
+        public String getMdcKey() {
+            return mdcKey;
+        }
+
+        /**
+         * The rule only matches when the MDC has this key
+         */
+        public void setMdcKey(String mdcKey) {
+            this.mdcKey = mdcKey == null || mdcKey.trim().isEmpty() ? null : mdcKey.trim();
+        }
+
+        public String getMdcValue() {
+            return mdcValue;
+        }
+
+        /**
+         * The rule only matches when the MDC key has this value. Any value if not set
+         */
+        public void setMdcValue(String mdcValue) {
+            this.mdcValue = mdcValue == null || mdcValue.isEmpty() ? null : mdcValue;
+        }
+
+        boolean isMatching(String loggerName) {
+            return logger == null || loggerName.equals(logger)
+                    || loggerName.startsWith(logger) && loggerName.charAt(logger.length()) == '.';
+        }
+
+        private int getLoggerLength() {
+            return logger == null ? 0 : logger.length();
+        }
+    }
+}
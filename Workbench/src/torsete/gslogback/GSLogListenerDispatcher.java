@@ -0,0 +1,138 @@
+package torsete.gslogback;
+
+import ch.qos.logback.core.Context;
+import ch.qos.logback.core.status.WarnStatus;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Delivers messages to log listeners on a background thread.
+ * <p>
+ * A message is given as a {@link Supplier} and is only rendered (once) if there are listeners to receive it.
+ * The queue is bounded. Messages are dropped when it is full, and the number of dropped messages is reported
+ * to the listeners of the next message.
+ * <p>
+ * A message that cannot be rendered, and a listener that fails, are reported as a warning to the status manager of the
+ * context of the message, with the dispatcher as the origin.
+ */
+class GSLogListenerDispatcher {
+    private final static int CAPACITY = 1024;
+    private final static GSLogListenerDispatcher instance = new GSLogListenerDispatcher(CAPACITY);
+
+    private final BlockingQueue<Message> queue;
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile Thread thread;
+
+    GSLogListenerDispatcher(int capacity) {
+        queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    static GSLogListenerDispatcher getInstance() {
+        return instance;
+    }
+
+    /**
+     * Queues a message for a set of listeners. Nothing is done if there are no listeners
+     *
+     * @param context Receives the failures of rendering the message and of the listeners
+     */
+    void dispatch(Collection<Consumer<String>> listeners, Supplier<String> message, Context context) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        start();
+        if (!queue.offer(new Message(new ArrayList<>(listeners), message, context))) {
+            droppedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Waits until the messages queued so far have been delivered
+     *
+     * @return False if the timeout elapsed first
+     */
+    boolean flush(long timeoutMillis) {
+        if (thread == null) {
+            return true;
+        }
+        CountDownLatch latch = new CountDownLatch(1);
+        try {
+            return queue.offer(new Message(new ArrayList<>(), () -> {
+                latch.countDown();
+                return "";
+            }, null), timeoutMillis, TimeUnit.MILLISECONDS) && latch.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = new Thread(this::run, getClass().getSimpleName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        while (true) {
+            Message message;
+            try {
+                message = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            long dropped = droppedCount.getAndSet(0);
+            if (dropped > 0) {
+                deliver(message, () -> dropped + " log listener messages were dropped");
+            }
+            deliver(message, message.text);
+        }
+    }
+
+    private void deliver(Message message, Supplier<String> supplier) {
+        String s;
+        try {
+            s = supplier.get();
+        } catch (RuntimeException e) {
+            s = "Log listener message could not be rendered: " + e;
+            addWarn(message, s, e);
+        }
+        for (Consumer<String> listener : message.listeners) {
+            try {
+                listener.accept(s);
+            } catch (RuntimeException e) { // A failing listener must not stop the delivery to the others
+                addWarn(message, "Log listener " + listener + " failed: " + e, e);
+            }
+        }
+    }
+
+    private void addWarn(Message message, String text, Throwable t) {
+        if (message.context != null) {
+            message.context.getStatusManager().add(new WarnStatus(text, this, t));
+        }
+    }
+
+    private static class Message {
+        private final List<Consumer<String>> listeners;
+        private final Supplier<String> text;
+        private final Context context;
+
+        Message(List<Consumer<String>> listeners, Supplier<String> text, Context context) {
+            this.listeners = listeners;
+            this.text = text;
+            this.context = context;
+        }
+    }
+}
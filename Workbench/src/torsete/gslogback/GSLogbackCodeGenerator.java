@@ -0,0 +1,553 @@
+package torsete.gslogback;
+
+import ch.qos.logback.core.ContextBase;
+import ch.qos.logback.core.util.OptionHelper;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import torsete.util.GSXMLContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Build-time tool that generates a Java configurator class from a gslog configuration file.
+ * <p>
+ * The generated class extends {@link GSLogbackGeneratedConfigurator} and configures the LoggerContext by straight-line
+ * calls, ie. without xml parsing, Joran and reflection at startup. Placeholders are generated as lookups.
+ * Placeholders of {@link GSLogbackProperties} (${gslog.*}) are generated as lookups of the enum.
+ * <p>
+ * The vocabulary is: property, timestamp, if/then/else, include (by file, expanded at build time), appender (FileAppender
+ * RollingFileAppender with SizeAndTimeBasedRollingPolicy, or ConsoleAppender with file, encoder/pattern and filter ThresholdFilter
+ * or LevelFilter, or {@link GSFanOutFileAppender} with sink, encoder/pattern, buffered, bufferSize, flushInterval, flushLevel and compress,
+ * or AsyncAppender with appender-ref, queueSize, discardingThreshold, neverBlock and maxFlushTime),
+ * logger, root and turboFilter ({@link GSLevelTurboFilter} with rule/logger, level, mdcKey and mdcValue,
+ * {@link GSFlightRecorderTurboFilter} with size, level, mdcKey, triggerLevel, triggerLogger and appenderName, or
+ * {@link GSRateLimitTurboFilter} with rule/logger, maxPerSecond and sampling, rateLimits and sampling).
+ * Other elements fail the generation, so a configuration is never generated partially.
+ * <p>
+ * Usage:
+ * <pre>
+ * java torsete.gslogback.GSLogbackCodeGenerator &lt;configuration file&gt; &lt;source directory&gt; &lt;class name&gt;
+ * </pre>
+ * File names of includes are substituted with the system properties when the tool runs.
+ */
+public class GSLogbackCodeGenerator {
+    private final StringBuilder code = new StringBuilder();
+    private final Deque<File> files = new ArrayDeque<>();
+    private int indent;
+    private int variableCount;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: " + GSLogbackCodeGenerator.class.getName() + " <configuration file> <source directory> <class name>");
+            System.exit(1);
+        }
+        File sourceFile = new GSLogbackCodeGenerator().generate(new File(args[0]), new File(args[1]), args[2]);
+        System.out.println("Generated " + sourceFile);
+    }
+
+    /**
+     * Generates the class into a source directory
+     *
+     * @param className Fully qualified name
+     * @return The generated source file
+     */
+    public File generate(File configurationFile, File sourceDirectory, String className) throws IOException {
+        File sourceFile = new File(sourceDirectory, className.replace('.', File.separatorChar) + ".java");
+        sourceFile.getParentFile().mkdirs();
+        Files.write(sourceFile.toPath(), generate(configurationFile, className).getBytes(StandardCharsets.UTF_8));
+        return sourceFile;
+    }
+
+    /**
+     * @param className Fully qualified name
+     * @return The source of the class
+     */
+    public String generate(File configurationFile, String className) {
+        code.setLength(0);
+        variableCount = 0;
+        int lastDot = className.lastIndexOf('.');
+        if (lastDot > 0) {
+            code.append("package ").append(className, 0, lastDot).append(";\n\n");
+        }
+        code.append("import ch.qos.logback.classic.AsyncAppender;\n")
+                .append("import ch.qos.logback.classic.Logger;\n")
+                .append("import ch.qos.logback.classic.spi.ILoggingEvent;\n")
+                .append("import ch.qos.logback.core.ConsoleAppender;\n")
+                .append("import ch.qos.logback.core.FileAppender;\n")
+                .append("import ch.qos.logback.core.rolling.RollingFileAppender;\n")
+                .append("import torsete.gslogback.GSFanOutFileAppender;\n")
+                .append("import torsete.gslogback.GSLevelTurboFilter;\n")
+                .append("import torsete.gslogback.GSLogbackGeneratedConfigurator;\n")
+                .append("import torsete.gslogback.GSLogbackProperties;\n")
+                .append("import torsete.gslogback.GSRateLimitTurboFilter;\n\n")
+                .append("/**\n * Generated by ").append(getClass().getSimpleName()).append(" from ")
+                .append(configurationFile.getPath().replace('\\', '/')).append(". Do not edit\n */\n")
+                .append("public class ").append(className.substring(lastDot + 1)).append(" extends GSLogbackGeneratedConfigurator {\n")
+                .append("    @Override\n")
+                .append("    protected void configure() {\n");
+        indent = 2;
+        generateFile(configurationFile);
+        code.append("    }\n}\n");
+        return code.toString();
+    }
+
+    private void generateFile(File file) {
+        File canonicalFile = toCanonicalFile(file);
+        if (files.contains(canonicalFile)) {
+            throw new IllegalArgumentException("Include cycle at " + canonicalFile);
+        }
+        files.push(canonicalFile);
+        Element root = new GSXMLContext().parseFile(canonicalFile).getDocumentElement();
+        line("// " + canonicalFile.getName());
+        generateChildren(root, null);
+        files.pop();
+    }
+
+    /**
+     * @param loggerVariable The logger of an enclosing logger or root element. Otherwise null
+     */
+    private void generateChildren(Element parent, String loggerVariable) {
+        for (Element element : getChildElements(parent)) {
+            String name = element.getNodeName();
+            if (loggerVariable != null && !"appender-ref".equals(name) && !"if".equals(name)) {
+                throw unsupported(element);
+            }
+            switch (name) {
+                case "property":
+                case "variable":
+                    if (!element.hasAttribute("name") || !element.hasAttribute("value")) {
+                        throw unsupported(element);
+                    }
+                    line("setProperty(" + literal(getScope(element)) + ", " + literal(element.getAttribute("name")) + ", "
+                            + expression(element.getAttribute("value")) + ");");
+                    break;
+                case "timestamp":
+                    line("timestamp(" + literal(getScope(element)) + ", " + literal(element.getAttribute("key")) + ", "
+                            + literal(element.getAttribute("datePattern")) + ", "
+                            + "contextBirth".equalsIgnoreCase(element.getAttribute("timeReference")) + ");");
+                    break;
+                case "if":
+                    generateIf(element, loggerVariable);
+                    break;
+                case "include":
+                    if (!element.hasAttribute("file")) {
+                        throw unsupported(element);
+                    }
+                    String fileName = OptionHelper.substVars(element.getAttribute("file"), new ContextBase()); // No properties, so system properties and environment
+                    File file = new File(fileName);
+                    if (file.isFile()) {
+                        generateFile(file);
+                    } else if (!"true".equalsIgnoreCase(element.getAttribute("optional"))) {
+                        throw new IllegalArgumentException("Included file " + fileName + " is not found");
+                    }
+                    break;
+                case "appender":
+                    generateAppender(element);
+                    break;
+                case "turboFilter":
+                    generateTurboFilter(element);
+                    break;
+                case "logger":
+                    String variable = newVariable("logger");
+                    line("Logger " + variable + " = logger(" + literal(element.getAttribute("name")) + ", "
+                            + optionalExpression(element, "level") + ", " + optionalExpression(element, "additivity") + ");");
+                    generateChildren(element, variable);
+                    break;
+                case "root":
+                    String rootVariable = newVariable("root");
+                    line("Logger " + rootVariable + " = root(" + optionalExpression(element, "level") + ");");
+                    generateChildren(element, rootVariable);
+                    break;
+                case "appender-ref":
+                    if (loggerVariable == null) {
+                        throw unsupported(element);
+                    }
+                    line("appenderRef(" + loggerVariable + ", " + expression(element.getAttribute("ref")) + ");");
+                    break;
+                default:
+                    throw unsupported(element);
+            }
+        }
+    }
+
+    /**
+     * The condition is generated as it is. It is Java code using the methods of {@link GSLogbackGeneratedConfigurator}
+     */
+    private void generateIf(Element ifElement, String loggerVariable) {
+        line("if (" + ifElement.getAttribute("condition") + ") {");
+        List<Element> branches = getChildElements(ifElement);
+        for (Element branch : branches) {
+            if ("else".equals(branch.getNodeName())) {
+                line("} else {");
+            } else if (!"then".equals(branch.getNodeName())) {
+                throw unsupported(branch);
+            }
+            indent++;
+            generateChildren(branch, loggerVariable);
+            indent--;
+        }
+        line("}");
+    }
+
+    private void generateAppender(Element appenderElement) {
+        String className = appenderElement.getAttribute("class");
+        if ("ch.qos.logback.classic.AsyncAppender".equals(className)) {
+            generateAsyncAppender(appenderElement);
+            return;
+        }
+        String variable = newVariable("appender");
+        String appenderName = literal(appenderElement.getAttribute("name"));
+        if ("ch.qos.logback.core.FileAppender".equals(className)) {
+            line("FileAppender<ILoggingEvent> " + variable + " = fileAppender(" + appenderName + ");");
+        } else if ("ch.qos.logback.core.rolling.RollingFileAppender".equals(className)) {
+            line("RollingFileAppender<ILoggingEvent> " + variable + " = rollingFileAppender(" + appenderName + ");");
+        } else if (GSFanOutFileAppender.class.getName().equals(className)) {
+            line("GSFanOutFileAppender " + variable + " = fanOutFileAppender(" + appenderName + ");");
+        } else if ("ch.qos.logback.core.ConsoleAppender".equals(className)) {
+            line("ConsoleAppender<ILoggingEvent> " + variable + " = consoleAppender(" + appenderName + ");");
+        } else {
+            throw unsupported(appenderElement);
+        }
+        Map<String, String> buffering = new LinkedHashMap<>();
+        Arrays.asList("buffered", "bufferSize", "flushInterval", "flushLevel", "compress").forEach(name -> buffering.put(name, "null"));
+        for (Element element : getChildElements(appenderElement)) {
+            switch (element.getNodeName()) {
+                case "file":
+                    if ("ch.qos.logback.core.ConsoleAppender".equals(className) || GSFanOutFileAppender.class.getName().equals(className)) {
+                        throw unsupported(element);
+                    }
+                    line(variable + ".setFile(" + textExpression(element) + ");");
+                    break;
+                case "encoder":
+                    List<Element> patterns = getChildElements(element);
+                    if (patterns.size() != 1 || !"pattern".equals(patterns.get(0).getNodeName())
+                            || element.hasAttribute("class") && !"ch.qos.logback.classic.encoder.PatternLayoutEncoder".equals(element.getAttribute("class"))) {
+                        throw unsupported(element);
+                    }
+                    line("encoder(" + variable + ", " + textExpression(patterns.get(0)) + ");");
+                    break;
+                case "filter":
+                    generateFilter(element, variable);
+                    break;
+                case "rollingPolicy":
+                    if (!"ch.qos.logback.core.rolling.RollingFileAppender".equals(className)) {
+                        throw unsupported(element);
+                    }
+                    generateRollingPolicy(element, variable);
+                    break;
+                case "sink":
+                    if (!GSFanOutFileAppender.class.getName().equals(className)) {
+                        throw unsupported(element);
+                    }
+                    generateSink(element, variable);
+                    break;
+                case "buffered":
+                case "bufferSize":
+                case "flushInterval":
+                case "flushLevel":
+                case "compress":
+                    if (!GSFanOutFileAppender.class.getName().equals(className)) {
+                        throw unsupported(element);
+                    }
+                    buffering.put(element.getNodeName(), textExpression(element));
+                    break;
+                default:
+                    throw unsupported(element);
+            }
+        }
+        if (buffering.values().stream().anyMatch(value -> !"null".equals(value))) {
+            line("bufferedWriting(" + variable + ", " + String.join(", ", buffering.values()) + ");");
+        }
+        line("start(" + variable + ");");
+    }
+
+    private void generateAsyncAppender(Element appenderElement) {
+        String variable = newVariable("appender");
+        line("AsyncAppender " + variable + " = asyncAppender(" + literal(appenderElement.getAttribute("name")) + ");");
+        Map<String, String> settings = new LinkedHashMap<>();
+        Arrays.asList("queueSize", "discardingThreshold", "neverBlock", "maxFlushTime").forEach(name -> settings.put(name, "null"));
+        for (Element element : getChildElements(appenderElement)) {
+            if ("appender-ref".equals(element.getNodeName())) {
+                line("appenderRef(" + variable + ", " + expression(element.getAttribute("ref")) + ");");
+            } else if (settings.containsKey(element.getNodeName())) {
+                settings.put(element.getNodeName(), textExpression(element));
+            } else {
+                throw unsupported(element);
+            }
+        }
+        if (settings.values().stream().anyMatch(value -> !"null".equals(value))) {
+            line("asyncSettings(" + variable + ", " + String.join(", ", settings.values()) + ");");
+        }
+        line("start(" + variable + ");");
+    }
+
+    private void generateTurboFilter(Element turboFilterElement) {
+        if (GSFlightRecorderTurboFilter.class.getName().equals(turboFilterElement.getAttribute("class"))) {
+            Map<String, String> settings = new LinkedHashMap<>();
+            Arrays.asList("size", "level", "mdcKey", "triggerLevel", "triggerLogger", "appenderName").forEach(name -> settings.put(name, "null"));
+            for (Element element : getChildElements(turboFilterElement)) {
+                if (!settings.containsKey(element.getNodeName())) {
+                    throw unsupported(element);
+                }
+                settings.put(element.getNodeName(), textExpression(element));
+            }
+            line("flightRecorder(" + String.join(", ", settings.values()) + ");");
+            return;
+        }
+        if (GSRateLimitTurboFilter.class.getName().equals(turboFilterElement.getAttribute("class"))) {
+            generateRateLimitTurboFilter(turboFilterElement);
+            return;
+        }
+        if (!GSLevelTurboFilter.class.getName().equals(turboFilterElement.getAttribute("class"))) {
+            throw unsupported(turboFilterElement);
+        }
+        String variable = newVariable("turboFilter");
+        line("GSLevelTurboFilter " + variable + " = levelTurboFilter();");
+        for (Element ruleElement : getChildElements(turboFilterElement)) {
+            if (!"rule".equals(ruleElement.getNodeName())) {
+                throw unsupported(ruleElement);
+            }
+            Map<String, String> settings = new LinkedHashMap<>();
+            Arrays.asList("logger", "level", "mdcKey", "mdcValue").forEach(name -> settings.put(name, "null"));
+            for (Element element : getChildElements(ruleElement)) {
+                if (!settings.containsKey(element.getNodeName())) {
+                    throw unsupported(element);
+                }
+                settings.put(element.getNodeName(), textExpression(element));
+            }
+            line("levelRule(" + variable + ", " + String.join(", ", settings.values()) + ");");
+        }
+        line("start(" + variable + ");");
+    }
+
+    private void generateRateLimitTurboFilter(Element turboFilterElement) {
+        String variable = newVariable("turboFilter");
+        line("GSRateLimitTurboFilter " + variable + " = rateLimitTurboFilter();");
+        Map<String, String> lists = new LinkedHashMap<>();
+        Arrays.asList("rateLimits", "sampling").forEach(name -> lists.put(name, "null"));
+        for (Element ruleElement : getChildElements(turboFilterElement)) {
+            if (lists.containsKey(ruleElement.getNodeName())) {
+                lists.put(ruleElement.getNodeName(), textExpression(ruleElement));
+                continue;
+            }
+            if (!"rule".equals(ruleElement.getNodeName())) {
+                throw unsupported(ruleElement);
+            }
+            Map<String, String> settings = new LinkedHashMap<>();
+            Arrays.asList("logger", "maxPerSecond", "sampling").forEach(name -> settings.put(name, "null"));
+            for (Element element : getChildElements(ruleElement)) {
+                if (!settings.containsKey(element.getNodeName())) {
+                    throw unsupported(element);
+                }
+                settings.put(element.getNodeName(), textExpression(element));
+            }
+            line("rateLimitRule(" + variable + ", " + String.join(", ", settings.values()) + ");");
+        }
+        if (lists.values().stream().anyMatch(value -> !"null".equals(value))) {
+            line("rateLimits(" + variable + ", " + String.join(", ", lists.values()) + ");");
+        }
+        line("start(" + variable + ");");
+    }
+
+    private void generateRollingPolicy(Element rollingPolicyElement, String appenderVariable) {
+        if (!"ch.qos.logback.core.rolling.SizeAndTimeBasedRollingPolicy".equals(rollingPolicyElement.getAttribute("class"))) {
+            throw unsupported(rollingPolicyElement);
+        }
+        Map<String, String> settings = new LinkedHashMap<>();
+        Arrays.asList("fileNamePattern", "maxFileSize", "maxHistory", "totalSizeCap").forEach(name -> settings.put(name, "null"));
+        for (Element element : getChildElements(rollingPolicyElement)) {
+            if (!settings.containsKey(element.getNodeName())) {
+                throw unsupported(element);
+            }
+            settings.put(element.getNodeName(), textExpression(element));
+        }
+        line("sizeAndTimeBasedRollingPolicy(" + appenderVariable + ", " + String.join(", ", settings.values()) + ");");
+    }
+
+    private void generateSink(Element sinkElement, String appenderVariable) {
+        Map<String, String> settings = new LinkedHashMap<>();
+        Arrays.asList("file", "level", "logger").forEach(name -> settings.put(name, "null"));
+        for (Element element : getChildElements(sinkElement)) {
+            if (!settings.containsKey(element.getNodeName())) {
+                throw unsupported(element);
+            }
+            settings.put(element.getNodeName(), textExpression(element));
+        }
+        line("sink(" + appenderVariable + ", " + String.join(", ", settings.values()) + ");");
+    }
+
+    private void generateFilter(Element filterElement, String appenderVariable) {
+        String level = "null";
+        String onMatch = "null";
+        String onMismatch = "null";
+        for (Element element : getChildElements(filterElement)) {
+            switch (element.getNodeName()) {
+                case "level":
+                    level = textExpression(element);
+                    break;
+                case "onMatch":
+                    onMatch = textExpression(element);
+                    break;
+                case "onMismatch":
+                    onMismatch = textExpression(element);
+                    break;
+                default:
+                    throw unsupported(element);
+            }
+        }
+        switch (filterElement.getAttribute("class")) {
+            case "ch.qos.logback.classic.filter.ThresholdFilter":
+                line("thresholdFilter(" + appenderVariable + ", " + level + ");");
+                break;
+            case "ch.qos.logback.classic.filter.LevelFilter":
+                line("levelFilter(" + appenderVariable + ", " + level + ", " + onMatch + ", " + onMismatch + ");");
+                break;
+            default:
+                throw unsupported(filterElement);
+        }
+    }
+
+    private String getScope(Element element) {
+        return element.hasAttribute("scope") ? element.getAttribute("scope") : "local";
+    }
+
+    private String optionalExpression(Element element, String attributeName) {
+        return element.hasAttribute(attributeName) ? expression(element.getAttribute(attributeName)) : "null";
+    }
+
+    private String textExpression(Element element) {
+        return expression(element.getTextContent().trim());
+    }
+
+    /**
+     * Generates an expression for a value with placeholders. ${key:-default} becomes a lookup of the key with
+     * the default as an expression itself
+     */
+    String expression(String value) {
+        List<String> parts = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < value.length()) {
+            if (value.startsWith("${", i)) {
+                int end = findEnd(value, i + 2);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unbalanced placeholder in " + value);
+                }
+                if (literal.length() > 0) {
+                    parts.add(literal(literal.toString()));
+                    literal.setLength(0);
+                }
+                parts.add(lookup(value.substring(i + 2, end)));
+                i = end + 1;
+            } else {
+                literal.append(value.charAt(i++));
+            }
+        }
+        if (literal.length() > 0 || parts.isEmpty()) {
+            parts.add(literal(literal.toString()));
+        }
+        return String.join(" + ", parts);
+    }
+
+    private String lookup(String placeholder) {
+        int separator = placeholder.indexOf(":-");
+        String key = separator < 0 ? placeholder : placeholder.substring(0, separator);
+        String defaultValue = separator < 0 ? "null" : expression(placeholder.substring(separator + 2));
+        if (key.contains("${")) {
+            throw new IllegalArgumentException("Nested placeholder in the key " + key);
+        }
+        GSLogbackProperties property = GSLogbackProperties.get(key);
+        return property != null
+                ? "value(GSLogbackProperties." + property.name() + ", " + defaultValue + ")"
+                : "value(" + literal(key) + ", " + defaultValue + ")";
+    }
+
+    /**
+     * @return The index of the } ending a placeholder. Braces inside the placeholder (eg. %d{...} in a default) are balanced
+     */
+    private int findEnd(String value, int from) {
+        int depth = 1;
+        for (int i = from; i < value.length(); i++) {
+            if (value.charAt(i) == '{') {
+                depth++;
+            } else if (value.charAt(i) == '}' && --depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private String literal(String value) {
+        StringBuilder literal = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"':
+                    literal.append("\\\"");
+                    break;
+                case '\\':
+                    literal.append("\\\\");
+                    break;
+                case '\n':
+                    literal.append("\\n");
+                    break;
+                case '\r':
+                    literal.append("\\r");
+                    break;
+                case '\t':
+                    literal.append("\\t");
+                    break;
+                default:
+                    if (c < ' ' || c > '~') {
+                        literal.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        literal.append(c);
+                    }
+                    break;
+            }
+        }
+        return literal.append('"').toString();
+    }
+
+    private String newVariable(String prefix) {
+        return prefix + ++variableCount;
+    }
+
+    private void line(String line) {
+        for (int i = 0; i < indent; i++) {
+            code.append("    ");
+        }
+        code.append(line).append('\n');
+    }
+
+    private IllegalArgumentException unsupported(Element element) {
+        return new IllegalArgumentException("Element <" + element.getNodeName() + "> in " + files.peek() + " is not supported here");
+    }
+
+    private File toCanonicalFile(File file) {
+        try {
+            return file.getCanonicalFile();
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static List<Element> getChildElements(Element element) {
+        List<Element> elements = new ArrayList<>();
+        for (Node node = element.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                elements.add((Element) node);
+            }
+        }
+        return elements;
+    }
+}
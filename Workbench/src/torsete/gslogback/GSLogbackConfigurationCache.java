@@ -0,0 +1,124 @@
+package torsete.gslogback;
+
+import ch.qos.logback.core.Context;
+import ch.qos.logback.core.joran.event.EndEvent;
+import ch.qos.logback.core.joran.event.SaxEvent;
+import ch.qos.logback.core.joran.event.StartEvent;
+import org.w3c.dom.Document;
+import torsete.util.GSXMLContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of parsed configuration files. The same parsing is used by Joran (as SaxEvents) and for printing (as a Document).
+ * <p>
+ * An entry is identified by the canonical path of the file. It is valid as long as the modification time and the size
+ * of the file are unchanged. If they change, the content is read and hashed, and it is only parsed again if the hash differs.
+ */
+class GSLogbackConfigurationCache {
+    private final static GSLogbackConfigurationCache instance = new GSLogbackConfigurationCache();
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    static GSLogbackConfigurationCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Gets the parsed content of a file. The file is only read if it is changed since it was cached
+     *
+     * @param file    The configuration file
+     * @param context Receives errors found while the events are recorded
+     * @return Never null
+     * @throws IOException If the file cannot be read
+     */
+    Entry get(File file, Context context) throws IOException {
+        File canonicalFile = file.getCanonicalFile();
+        String key = canonicalFile.getPath();
+        long lastModified = canonicalFile.lastModified();
+        long length = canonicalFile.length();
+
+        Entry entry = entries.get(key);
+        if (entry != null && entry.lastModified == lastModified && entry.length == length) {
+            return entry;
+        }
+
+        byte[] content = Files.readAllBytes(canonicalFile.toPath());
+        byte[] hash = hash(content);
+        if (entry != null && Arrays.equals(entry.hash, hash)) {
+            entry = new Entry(lastModified, length, hash, entry.document, entry.saxEvents);
+        } else {
+            Document document = new GSXMLContext().parseBytes(content).getDocument();
+            List<SaxEvent> saxEvents = new GSLogbackSaxEventRecorder(context).recordEvents(document);
+            entry = new Entry(lastModified, length, hash, document, Collections.unmodifiableList(saxEvents));
+        }
+        entries.put(key, entry);
+        return entry;
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    static byte[] hash(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static class Entry {
+        private final long lastModified;
+        private final long length;
+        private final byte[] hash;
+        private final Document document;
+        private final List<SaxEvent> saxEvents;
+
+        Entry(long lastModified, long length, byte[] hash, Document document, List<SaxEvent> saxEvents) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.hash = hash;
+            this.document = document;
+            this.saxEvents = saxEvents;
+        }
+
+        /**
+         * @return The parsed document. It is shared and must not be changed
+         */
+        Document getDocument() {
+            return document;
+        }
+
+        /**
+         * @return The events of the file. Never changed by Joran since Joran plays a copy
+         */
+        List<SaxEvent> getSaxEvents() {
+            return saxEvents;
+        }
+
+        /**
+         * @return The events without the enclosing &lt;included&gt; element (as Joran does when it includes a file)
+         */
+        List<SaxEvent> getIncludedEvents() {
+            int from = 0;
+            int to = saxEvents.size();
+            if (to > 0 && saxEvents.get(0) instanceof StartEvent && "included".equalsIgnoreCase(saxEvents.get(0).qName)) {
+                from++;
+            }
+            if (to > from && saxEvents.get(to - 1) instanceof EndEvent && "included".equalsIgnoreCase(saxEvents.get(to - 1).qName)) {
+                to--;
+            }
+            return saxEvents.subList(from, to);
+        }
+    }
+}
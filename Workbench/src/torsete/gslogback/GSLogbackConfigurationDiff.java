@@ -0,0 +1,378 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.CoreConstants;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import torsete.util.GSDocument;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * The difference between the currently applied configuration document and a new one
+ * <p>
+ * Only documents made of plain appender, logger and root elements can be compared (see {@link #isApplicable()}).
+ * Appenders that are equal in both documents are left untouched, so their open files are kept. An appender that is
+ * not attached to a logger in the applied document is only known by the document, so it is created again when a logger
+ * of the new document refers to it.
+ */
+class GSLogbackConfigurationDiff {
+    private final static List<String> SUPPORTED_ELEMENTS = Arrays.asList("appender", "logger", "root");
+
+    private final Document appliedDocument;
+    private final Document document;
+    private final boolean isApplicable;
+
+    private final Map<String, Element> appliedAppenders = new LinkedHashMap<>();
+    private final Map<String, Element> appenders = new LinkedHashMap<>();
+    private final Map<String, Element> appliedLoggers = new LinkedHashMap<>();
+    private final Map<String, Element> loggers = new LinkedHashMap<>();
+
+    private final Set<String> changedAppenderNames = new LinkedHashSet<>();
+    private final Set<String> obsoleteAppenderNames = new LinkedHashSet<>();
+    private final Map<String, String> renamedAppenderNames = new LinkedHashMap<>(); // new name, applied name
+
+    /**
+     * @param appliedDocument The currently applied document. May be null (then the diff is not applicable)
+     * @param document        The new document
+     */
+    GSLogbackConfigurationDiff(Document appliedDocument, Document document) {
+        this.appliedDocument = appliedDocument;
+        this.document = document;
+        isApplicable = appliedDocument != null
+                && collect(appliedDocument, appliedAppenders, appliedLoggers)
+                && collect(document, appenders, loggers)
+                && appliedDocument.getDocumentElement().getNodeName().equals(document.getDocumentElement().getNodeName())
+                && equalAttributes(appliedDocument.getDocumentElement(), document.getDocumentElement());
+        if (isApplicable) {
+            compareAppenders();
+        }
+    }
+
+    /**
+     * @return True if the documents can be applied by {@link #apply(LoggerContext, Map)}.
+     * If false a full reconfiguration is needed
+     */
+    boolean isApplicable() {
+        return isApplicable;
+    }
+
+    /**
+     * @return True if nothing has to be changed
+     */
+    boolean isEmpty() {
+        return document.getDocumentElement().isEqualNode(appliedDocument.getDocumentElement());
+    }
+
+    Set<String> getChangedAppenderNames() {
+        return changedAppenderNames;
+    }
+
+    /**
+     * Gets a document with the appenders that must be (re)created by Joran
+     *
+     * @return Null if no appenders must be created
+     */
+    Document getAppenderDocument() {
+        if (changedAppenderNames.isEmpty()) {
+            return null;
+        }
+        GSDocument appenderDocument = new GSDocument(document.getDocumentElement().getNodeName());
+        appenders.values().stream()
+                .filter(e -> changedAppenderNames.contains(e.getAttribute("name")))
+                .forEach(e -> appenderDocument.importNode(appenderDocument.getDocumentElement(), e));
+        return appenderDocument.getDocument();
+    }
+
+    /**
+     * Applies the loggers of the new document to a context
+     *
+     * @param context          The context to update
+     * @param createdAppenders The appenders created from {@link #getAppenderDocument()}
+     */
+    void apply(LoggerContext context, Map<String, Appender<ILoggingEvent>> createdAppenders) {
+        Map<String, Appender<ILoggingEvent>> existingAppenders = getAttachedAppenders(context);
+        renamedAppenderNames.forEach((name, appliedName) -> {
+            Appender<ILoggingEvent> appender = existingAppenders.get(appliedName);
+            if (appender != null) {
+                appender.setName(name);
+                existingAppenders.put(name, appender);
+                renameFileName(context, appliedName, name);
+            }
+        });
+
+        loggers.forEach((loggerName, loggerElement) -> {
+            Logger logger = context.getLogger(loggerName);
+            if (Logger.ROOT_LOGGER_NAME.equals(loggerName)) {
+                // As Joran after a reset: The root is DEBUG unless it has a level, and it cannot inherit
+                logger.setLevel(loggerElement.hasAttribute("level") ? Level.toLevel(loggerElement.getAttribute("level")) : Level.DEBUG);
+            } else {
+                logger.setLevel(loggerElement.hasAttribute("level") ? toLevel(loggerElement.getAttribute("level")) : null);
+            }
+            if (!Logger.ROOT_LOGGER_NAME.equals(loggerName)) {
+                String additivity = loggerElement.getAttribute("additivity");
+                logger.setAdditive(additivity.length() == 0 || Boolean.parseBoolean(additivity));
+            }
+
+            List<String> appenderNames = getAppenderRefs(loggerElement);
+            // Attach before detach. An event may be written twice during the switch but never lost
+            appenderNames.forEach(appenderName -> {
+                Appender<ILoggingEvent> appender = createdAppenders.get(appenderName);
+                if (appender == null) {
+                    appender = existingAppenders.get(appenderName);
+                }
+                if (appender != null && !logger.isAttached(appender)) {
+                    logger.addAppender(appender);
+                }
+            });
+            detachAppenders(logger, appender -> !appenderNames.contains(appender.getName())
+                    || obsoleteAppenderNames.contains(appender.getName()) && createdAppenders.get(appender.getName()) != appender);
+        });
+
+        appliedLoggers.keySet().stream()
+                .filter(loggerName -> !loggers.containsKey(loggerName))
+                .forEach(loggerName -> {
+                    Logger logger = context.getLogger(loggerName);
+                    logger.setLevel(Logger.ROOT_LOGGER_NAME.equals(loggerName) ? Level.DEBUG : null);
+                    logger.setAdditive(true);
+                    detachAppenders(logger, appender -> true);
+                });
+
+        obsoleteAppenderNames.stream()
+                .map(existingAppenders::get)
+                .filter(appender -> appender != null)
+                .forEach(Appender::stop);
+    }
+
+    /**
+     * Forgets the file names of appenders that are about to be replaced.
+     * Otherwise Logback would reject a new appender that writes to the same file as the one it replaces
+     */
+    @SuppressWarnings("unchecked")
+    void releaseFileNames(LoggerContext context) {
+        Arrays.asList(CoreConstants.FA_FILENAME_COLLISION_MAP, CoreConstants.RFA_FILENAME_PATTERN_COLLISION_MAP).forEach(key -> {
+            Map<String, String> collisionMap = (Map<String, String>) context.getObject(key);
+            if (collisionMap != null) {
+                obsoleteAppenderNames.forEach(collisionMap::remove);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private void renameFileName(LoggerContext context, String appliedName, String name) {
+        Arrays.asList(CoreConstants.FA_FILENAME_COLLISION_MAP, CoreConstants.RFA_FILENAME_PATTERN_COLLISION_MAP).forEach(key -> {
+            Map<String, String> collisionMap = (Map<String, String>) context.getObject(key);
+            if (collisionMap != null && collisionMap.containsKey(appliedName)) {
+                collisionMap.put(name, collisionMap.remove(appliedName));
+            }
+        });
+    }
+
+    private void compareAppenders() {
+        Set<String> appliedAttachedNames = getLoggerAppenderRefs(appliedLoggers);
+        Set<String> attachedNames = getLoggerAppenderRefs(loggers);
+        appenders.forEach((name, element) -> {
+            Element appliedElement = appliedAppenders.get(name);
+            if (appliedElement == null) {
+                String appliedName = findRenamedAppender(element, appliedAttachedNames);
+                if (appliedName != null) {
+                    renamedAppenderNames.put(name, appliedName);
+                    return;
+                }
+            }
+            if (appliedElement == null || !appliedElement.isEqualNode(element)) {
+                changedAppenderNames.add(name);
+            } else if (attachedNames.contains(name) && !appliedAttachedNames.contains(name)) {
+                changedAppenderNames.add(name); // Not attached to a logger, so it is not found in the context
+            }
+        });
+        // Appenders referring a changed appender (eg. an AsyncAppender) must be rebuilt too, and
+        // a rebuilt appender must get fresh instances of the appenders it refers
+        boolean isChanged = true;
+        while (isChanged) {
+            isChanged = false;
+            for (Map.Entry<String, Element> entry : appenders.entrySet()) {
+                List<String> appenderRefs = getAppenderRefs(entry.getValue());
+                boolean isReferringChanged = appenderRefs.stream().anyMatch(changedAppenderNames::contains);
+                if (isReferringChanged && changedAppenderNames.add(entry.getKey())) {
+                    isChanged = true;
+                }
+                if (changedAppenderNames.contains(entry.getKey())) {
+                    for (String appenderRef : appenderRefs) {
+                        if (appenders.containsKey(appenderRef) && changedAppenderNames.add(appenderRef)) {
+                            isChanged = true;
+                        }
+                    }
+                }
+            }
+        }
+        appliedAppenders.keySet().stream()
+                .filter(name -> !appenders.containsKey(name) || changedAppenderNames.contains(name))
+                .filter(name -> !renamedAppenderNames.containsValue(name))
+                .forEach(obsoleteAppenderNames::add);
+    }
+
+    /**
+     * Finds an applied appender that only differs by name, ie. one that can be kept under a new name.
+     * {@link GSLogbackConfigurationDocument} gives its appenders unique names on each build
+     *
+     * @param appliedAttachedNames The applied appenders attached to loggers. Only they are found in the context
+     * @return Name of the applied appender. Null if there is none
+     */
+    private String findRenamedAppender(Element element, Set<String> appliedAttachedNames) {
+        if (!getAppenderRefs(element).isEmpty()) {
+            return null;
+        }
+        Element unnamedElement = (Element) element.cloneNode(true);
+        unnamedElement.removeAttribute("name");
+        for (Map.Entry<String, Element> entry : appliedAppenders.entrySet()) {
+            if (appenders.containsKey(entry.getKey()) || renamedAppenderNames.containsValue(entry.getKey())
+                    || !appliedAttachedNames.contains(entry.getKey())) {
+                continue;
+            }
+            Element unnamedAppliedElement = (Element) entry.getValue().cloneNode(true);
+            unnamedAppliedElement.removeAttribute("name");
+            if (unnamedAppliedElement.isEqualNode(unnamedElement)) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    private boolean collect(Document document, Map<String, Element> appenders, Map<String, Element> loggers) {
+        for (Node node = document.getDocumentElement().getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeType() == Node.TEXT_NODE && node.getTextContent().trim().length() == 0
+                    || node.getNodeType() == Node.COMMENT_NODE) {
+                continue;
+            }
+            if (node.getNodeType() != Node.ELEMENT_NODE || !SUPPORTED_ELEMENTS.contains(node.getNodeName())) {
+                return false;
+            }
+            Element element = (Element) node;
+            if (element.getTextContent().contains("${") || hasSubstitution(element)) {
+                return false;
+            }
+            switch (element.getNodeName()) {
+                case "appender":
+                    if (appenders.put(element.getAttribute("name"), element) != null) {
+                        return false;
+                    }
+                    break;
+                case "root":
+                    if (loggers.put(Logger.ROOT_LOGGER_NAME, element) != null || !hasOnlyAppenderRefs(element)) {
+                        return false;
+                    }
+                    break;
+                default:
+                    if (loggers.put(element.getAttribute("name"), element) != null || !hasOnlyAppenderRefs(element)) {
+                        return false;
+                    }
+                    break;
+            }
+        }
+        return true;
+    }
+
+    private boolean hasSubstitution(Element element) {
+        NamedNodeMap attributes = element.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            if (attributes.item(i).getNodeValue().contains("${")) {
+                return true;
+            }
+        }
+        NodeList childNodes = element.getChildNodes();
+        for (int i = 0; i < childNodes.getLength(); i++) {
+            if (childNodes.item(i) instanceof Element && hasSubstitution((Element) childNodes.item(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasOnlyAppenderRefs(Element element) {
+        NodeList childNodes = element.getChildNodes();
+        for (int i = 0; i < childNodes.getLength(); i++) {
+            if (childNodes.item(i) instanceof Element && !childNodes.item(i).getNodeName().equals("appender-ref")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean equalAttributes(Element element1, Element element2) {
+        NamedNodeMap attributes1 = element1.getAttributes();
+        NamedNodeMap attributes2 = element2.getAttributes();
+        if (attributes1.getLength() != attributes2.getLength()) {
+            return false;
+        }
+        for (int i = 0; i < attributes1.getLength(); i++) {
+            Node attribute = attributes1.item(i);
+            if (!attribute.getNodeValue().equals(element2.getAttribute(attribute.getNodeName()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<String> getAppenderRefs(Element element) {
+        List<String> appenderRefs = new ArrayList<>();
+        NodeList childNodes = element.getChildNodes();
+        for (int i = 0; i < childNodes.getLength(); i++) {
+            if (childNodes.item(i) instanceof Element && childNodes.item(i).getNodeName().equals("appender-ref")) {
+                appenderRefs.add(((Element) childNodes.item(i)).getAttribute("ref"));
+            }
+        }
+        return appenderRefs;
+    }
+
+    private Set<String> getLoggerAppenderRefs(Map<String, Element> loggers) {
+        Set<String> appenderRefs = new LinkedHashSet<>();
+        loggers.values().forEach(loggerElement -> appenderRefs.addAll(getAppenderRefs(loggerElement)));
+        return appenderRefs;
+    }
+
+    private Map<String, Appender<ILoggingEvent>> getAttachedAppenders(LoggerContext context) {
+        Map<String, Appender<ILoggingEvent>> attachedAppenders = new HashMap<>();
+        context.getLoggerList().forEach(logger -> {
+            for (Iterator<Appender<ILoggingEvent>> i = logger.iteratorForAppenders(); i.hasNext(); ) {
+                Appender<ILoggingEvent> appender = i.next();
+                attachedAppenders.putIfAbsent(appender.getName(), appender);
+            }
+        });
+        return attachedAppenders;
+    }
+
+    private void detachAppenders(Logger logger, Predicate<Appender<ILoggingEvent>> predicate) {
+        List<Appender<ILoggingEvent>> detachables = new ArrayList<>();
+        for (Iterator<Appender<ILoggingEvent>> i = logger.iteratorForAppenders(); i.hasNext(); ) {
+            Appender<ILoggingEvent> appender = i.next();
+            if (predicate.test(appender)) {
+                detachables.add(appender);
+            }
+        }
+        detachables.forEach(logger::detachAppender);
+    }
+
+    private Level toLevel(String level) {
+        if ("INHERITED".equalsIgnoreCase(level) || "NULL".equalsIgnoreCase(level)) {
+            return null;
+        }
+        return Level.toLevel(level);
+    }
+}
@@ -1,6 +1,7 @@
 package torsete.gslogback;
 
 import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
 import torsete.util.GSDocument;
 
 import java.util.Arrays;
@@ -13,6 +14,9 @@ import java.util.HashMap;
 public class GSLogbackConfigurationDocument extends GSDocument {
 
     private HashMap<String, Element> appenderElements; // filname,appenderelement Intent: Avoid that two or more appenders uses the same file name
+    private final HashMap<String, Element> asyncAppenderElements = new HashMap<>(); // Wrapped appender name, AsyncAppender element
+    private Element levelTurboFilterElement;
+    private Element rateLimitTurboFilterElement;
 
     protected GSLogbackConfigurationDocument(String rootTagName) {
         this(rootTagName, new HashMap<>());
@@ -23,6 +27,11 @@ public class GSLogbackConfigurationDocument extends GSDocument {
         this.appenderElements = appenderElements;
     }
 
+    /**
+     * Adds a FileAppender, a {@link GSBufferedFileAppender} if buffered (see {@link #setBuffered(boolean)}) or a
+     * {@link GSCompressingFileAppender} if compressed (see {@link #setCompress(boolean)}). A compressed file is always
+     * buffered. The settings of buffering not set on this document are taken from {@link GSLogbackProperties}
+     */
     public Element addFileAppender(String appenderName, String fileName) {
         Element appenderElement = appenderElements.get(fileName);
         if (appenderElement != null) {
@@ -31,14 +40,90 @@ public class GSLogbackConfigurationDocument extends GSDocument {
 
         appenderElement = appendElement(getDocumentElement(), "appender",
                 "name", appenderName,
-                "class", "ch.qos.logback.core.FileAppender");
+                "class", isCompress() ? GSCompressingFileAppender.class.getName()
+                        : isBuffered() ? GSBufferedFileAppender.class.getName() : "ch.qos.logback.core.FileAppender");
+        appendTextElement(appenderElement, "file", fileName);
+        if (isBuffered() || isCompress()) {
+            appendTextElement(appenderElement, "bufferSize", getSetting(bufferSize, GSLogbackProperties.GSLOG_BUFFER_SIZE));
+            appendTextElement(appenderElement, "flushInterval", getSetting(flushInterval, GSLogbackProperties.GSLOG_FLUSH_INTERVAL));
+            appendTextElement(appenderElement, "flushLevel", getSetting(flushLevel, GSLogbackProperties.GSLOG_FLUSH_LEVEL));
+        }
+        Element encoderElement = appendElement(appenderElement, "encoder");
+        appendTextElement(encoderElement, "pattern", GSLogbackProperties.GSLOG_PATTERN.getValue());
+        appenderElements.put(fileName, appenderElement);
+        return appenderElement;
+    }
+
+    /**
+     * Adds a RollingFileAppender. A file is rolled when the date changes (by the date pattern) or when it reaches the maximum size.
+     * Rolled files are named as the file with the date, an index and ".gz", and they are compressed by Logback on a
+     * background thread. The settings not set on this document are taken from {@link GSLogbackProperties} (gslog.rolling*)
+     */
+    public Element addRollingFileAppender(String appenderName, String fileName) {
+        Element appenderElement = appenderElements.get(fileName);
+        if (appenderElement != null) {
+            return appenderElement;
+        }
+
+        appenderElement = appendElement(getDocumentElement(), "appender",
+                "name", appenderName,
+                "class", "ch.qos.logback.core.rolling.RollingFileAppender");
         appendTextElement(appenderElement, "file", fileName);
+        Element rollingPolicyElement = appendElement(appenderElement, "rollingPolicy", "class", "ch.qos.logback.core.rolling.SizeAndTimeBasedRollingPolicy");
+        String datePattern = getSetting(rollingDatePattern, GSLogbackProperties.GSLOG_ROLLING_DATE_PATTERN);
+        appendTextElement(rollingPolicyElement, "fileNamePattern", fileName + ".%d{" + datePattern + "}.%i.gz");
+        appendTextElement(rollingPolicyElement, "maxFileSize", getSetting(rollingMaxFileSize, GSLogbackProperties.GSLOG_ROLLING_MAX_FILE_SIZE));
+        appendTextElement(rollingPolicyElement, "maxHistory", getSetting(rollingMaxHistory, GSLogbackProperties.GSLOG_ROLLING_MAX_HISTORY));
+        appendTextElement(rollingPolicyElement, "totalSizeCap", getSetting(rollingTotalSizeCap, GSLogbackProperties.GSLOG_ROLLING_TOTAL_SIZE_CAP));
         Element encoderElement = appendElement(appenderElement, "encoder");
         appendTextElement(encoderElement, "pattern", GSLogbackProperties.GSLOG_PATTERN.getValue());
         appenderElements.put(fileName, appenderElement);
         return appenderElement;
     }
 
+    /**
+     * Adds a {@link GSMappedFileAppender}, ie. the events are copied into a memory-mapped region of the file.
+     * The region size is taken from {@link GSLogbackProperties#GSLOG_MAPPED_REGION_SIZE} if not set on this document
+     */
+    public Element addMappedFileAppender(String appenderName, String fileName) {
+        Element appenderElement = appenderElements.get(fileName);
+        if (appenderElement != null) {
+            return appenderElement;
+        }
+
+        appenderElement = appendElement(getDocumentElement(), "appender",
+                "name", appenderName,
+                "class", GSMappedFileAppender.class.getName());
+        appendTextElement(appenderElement, "file", fileName);
+        appendTextElement(appenderElement, "regionSize", getSetting(mappedRegionSize, GSLogbackProperties.GSLOG_MAPPED_REGION_SIZE));
+        Element encoderElement = appendElement(appenderElement, "encoder");
+        appendTextElement(encoderElement, "pattern", GSLogbackProperties.GSLOG_PATTERN.getValue());
+        appenderElements.put(fileName, appenderElement);
+        return appenderElement;
+    }
+
+    /**
+     * Replaces the encoder of an appender with a {@link GSBinaryEncoder}. The file is read by {@link GSBinaryLogDecoder}
+     *
+     * @return The appender element
+     */
+    public Element setBinaryEncoder(Element appenderElement) {
+        NodeList encoderElements = appenderElement.getElementsByTagName("encoder");
+        for (int i = encoderElements.getLength() - 1; i >= 0; i--) {
+            appenderElement.removeChild(encoderElements.item(i));
+        }
+        appendElement(appenderElement, "encoder", "class", GSBinaryEncoder.class.getName());
+        return appenderElement;
+    }
+
+    private String getSetting(Object value, GSLogbackProperties property) {
+        if (value != null) {
+            return value.toString();
+        }
+        String text = property.getValue();
+        return text != null && text.trim().length() > 0 ? text.trim() : new GSLogbackDefaultProperties().apply(property);
+    }
+
     public Element setConsoleAppender(String appenderName) {
         Element appenderElement = appenderElements.get("");
         if (appenderElement != null) {
@@ -51,6 +136,38 @@ public class GSLogbackConfigurationDocument extends GSDocument {
         return appenderElement;
     }
 
+    /**
+     * Wraps an appender in an AsyncAppender, so the application thread only queues the events. The AsyncAppender is
+     * named as the wrapped appender with the suffix ".async". The queue settings not set on this document are taken from
+     * {@link GSLogbackProperties} (gslog.async*), or else left to Logback
+     *
+     * @return The AsyncAppender element
+     */
+    public Element addAsyncAppender(Element appenderElement) {
+        String appenderName = appenderElement.getAttribute("name");
+        Element asyncAppenderElement = asyncAppenderElements.get(appenderName);
+        if (asyncAppenderElement != null) {
+            return asyncAppenderElement;
+        }
+        asyncAppenderElement = appendElement(getDocumentElement(), "appender",
+                "name", appenderName + ".async",
+                "class", "ch.qos.logback.classic.AsyncAppender");
+        appendAsyncSetting(asyncAppenderElement, "queueSize", asyncQueueSize, GSLogbackProperties.GSLOG_ASYNC_QUEUE_SIZE);
+        appendAsyncSetting(asyncAppenderElement, "discardingThreshold", asyncDiscardingThreshold, GSLogbackProperties.GSLOG_ASYNC_DISCARDING_THRESHOLD);
+        appendAsyncSetting(asyncAppenderElement, "neverBlock", asyncNeverBlock, GSLogbackProperties.GSLOG_ASYNC_NEVER_BLOCK);
+        appendAsyncSetting(asyncAppenderElement, "maxFlushTime", asyncMaxFlushTime, GSLogbackProperties.GSLOG_ASYNC_MAX_FLUSH_TIME);
+        appendElement(asyncAppenderElement, "appender-ref", "ref", appenderName);
+        asyncAppenderElements.put(appenderName, asyncAppenderElement);
+        return asyncAppenderElement;
+    }
+
+    private void appendAsyncSetting(Element asyncAppenderElement, String elementName, Object value, GSLogbackProperties property) {
+        String text = value != null ? value.toString() : property.getValue();
+        if (text != null && text.trim().length() > 0) {
+            appendTextElement(asyncAppenderElement, elementName, text.trim());
+        }
+    }
+
     public Element addFilter(Element parentElement, String level, String onMatch, String onMismatch) {
         Element filterElement = appendElement(parentElement, "filter", "class", "ch.qos.logback.classic.filter.LevelFilter");
         appendTextElement(filterElement, "level", level);
@@ -59,6 +176,72 @@ public class GSLogbackConfigurationDocument extends GSDocument {
         return filterElement;
     }
 
+    /**
+     * Adds a rule to the {@link GSLevelTurboFilter} of the document, which is added by the first rule. Events of the
+     * logger and its descendants below the level are rejected before an event is created, unlike {@link #addFilter}
+     *
+     * @param loggerName Null for all loggers
+     */
+    public GSLogbackConfigurationDocument addLevelRule(String loggerName, String level) {
+        return addLevelRule(loggerName, level, null, null);
+    }
+
+    /**
+     * As {@link #addLevelRule(String, String)}, but the rule only applies when the MDC has the key (with the value if
+     * not null). It accepts the events of the level or above, also below the level of the logger
+     */
+    public GSLogbackConfigurationDocument addLevelRule(String loggerName, String level, String mdcKey, String mdcValue) {
+        if (levelTurboFilterElement == null) {
+            levelTurboFilterElement = appendElement(getDocumentElement(), "turboFilter", "class", GSLevelTurboFilter.class.getName());
+        }
+        Element ruleElement = appendElement(levelTurboFilterElement, "rule");
+        if (loggerName != null) {
+            appendTextElement(ruleElement, "logger", loggerName);
+        }
+        appendTextElement(ruleElement, "level", level);
+        if (mdcKey != null) {
+            appendTextElement(ruleElement, "mdcKey", mdcKey);
+        }
+        if (mdcValue != null) {
+            appendTextElement(ruleElement, "mdcValue", mdcValue);
+        }
+        return this;
+    }
+
+    /**
+     * Adds a rule to the {@link GSRateLimitTurboFilter} of the document, which is added by the first rule. Each logger
+     * of the logger name and its descendants may write the maximum number of events per second. The number of events
+     * rejected is written as a WARN event of the logger
+     *
+     * @param loggerName Null for all loggers
+     */
+    public GSLogbackConfigurationDocument addRateLimit(String loggerName, int maxPerSecond) {
+        appendTextElement(appendRateLimitRuleElement(loggerName), "maxPerSecond", maxPerSecond + "");
+        return this;
+    }
+
+    /**
+     * Adds a rule to the {@link GSRateLimitTurboFilter} of the document, which is added by the first rule. Of the DEBUG
+     * and TRACE events of the logger and its descendants, the share of the sampling is kept at random
+     *
+     * @param loggerName Null for all loggers
+     * @param sampling   Eg. 0.1 for every tenth event
+     */
+    public GSLogbackConfigurationDocument addSampling(String loggerName, double sampling) {
+        appendTextElement(appendRateLimitRuleElement(loggerName), "sampling", sampling + "");
+        return this;
+    }
+
+    private Element appendRateLimitRuleElement(String loggerName) {
+        if (rateLimitTurboFilterElement == null) {
+            rateLimitTurboFilterElement = appendElement(getDocumentElement(), "turboFilter", "class", GSRateLimitTurboFilter.class.getName());
+        }
+        Element ruleElement = appendElement(rateLimitTurboFilterElement, "rule");
+        if (loggerName != null) {
+            appendTextElement(ruleElement, "logger", loggerName);
+        }
+        return ruleElement;
+    }
 
     public Element addLogger(String appenderName, String level, String loggerName, boolean additivity) {
         Element loggerElement = appendElement(getDocumentElement(), "logger",
@@ -92,6 +275,24 @@ public class GSLogbackConfigurationDocument extends GSDocument {
 
     private String rootLevel;
     private String filenameWithExtension;
+    private Boolean isAsync;
+    private Integer asyncQueueSize;
+    private Integer asyncDiscardingThreshold;
+    private Boolean asyncNeverBlock;
+    private Integer asyncMaxFlushTime;
+    private Boolean isRolling;
+    private String rollingMaxFileSize;
+    private String rollingDatePattern;
+    private Integer rollingMaxHistory;
+    private String rollingTotalSizeCap;
+    private Boolean isBuffered;
+    private String bufferSize;
+    private Integer flushInterval;
+    private String flushLevel;
+    private Boolean isMapped;
+    private String mappedRegionSize;
+    private Boolean isBinary;
+    private Boolean isCompress;
 
     public GSLogbackConfigurationDocument setRootLevel(String rootLevel) {
         this.rootLevel = rootLevel;
@@ -102,6 +303,183 @@ public class GSLogbackConfigurationDocument extends GSDocument {
         this.filenameWithExtension = filenameWithExtension;
         return this;    }
 
+    /**
+     * Wraps the appenders added by {@link #addRootLogger()} and {@link #addLoggers(String...)} in AsyncAppenders
+     * (see {@link #addAsyncAppender(Element)}). If not set {@link GSLogbackProperties#GSLOG_ASYNC} decides
+     */
+    public GSLogbackConfigurationDocument setAsync(boolean isAsync) {
+        this.isAsync = isAsync;
+        return this;
+    }
+
+    /**
+     * The capacity of the queue of an AsyncAppender
+     */
+    public GSLogbackConfigurationDocument setAsyncQueueSize(int queueSize) {
+        this.asyncQueueSize = queueSize;
+        return this;
+    }
+
+    /**
+     * Events of level INFO and below are discarded when the queue has less remaining capacity than this. 0 discards nothing
+     */
+    public GSLogbackConfigurationDocument setAsyncDiscardingThreshold(int discardingThreshold) {
+        this.asyncDiscardingThreshold = discardingThreshold;
+        return this;
+    }
+
+    /**
+     * Drops events instead of blocking the application thread when the queue is full
+     */
+    public GSLogbackConfigurationDocument setAsyncNeverBlock(boolean neverBlock) {
+        this.asyncNeverBlock = neverBlock;
+        return this;
+    }
+
+    /**
+     * The time an AsyncAppender waits for its queue to be flushed when it is stopped
+     */
+    public GSLogbackConfigurationDocument setAsyncMaxFlushTime(int maxFlushTimeMillis) {
+        this.asyncMaxFlushTime = maxFlushTimeMillis;
+        return this;
+    }
+
+    /**
+     * Makes the file appenders added by {@link #addRootLogger()} and {@link #addLoggers(String...)} RollingFileAppenders
+     * (see {@link #addRollingFileAppender(String, String)}). If not set {@link GSLogbackProperties#GSLOG_ROLLING} decides
+     */
+    public GSLogbackConfigurationDocument setRolling(boolean isRolling) {
+        this.isRolling = isRolling;
+        return this;
+    }
+
+    /**
+     * @param maxFileSize As Logback, eg. "100MB"
+     */
+    public GSLogbackConfigurationDocument setRollingMaxFileSize(String maxFileSize) {
+        this.rollingMaxFileSize = maxFileSize;
+        return this;
+    }
+
+    /**
+     * @param datePattern A pattern of SimpleDateFormat. A file is rolled when the formatted date changes
+     */
+    public GSLogbackConfigurationDocument setRollingDatePattern(String datePattern) {
+        this.rollingDatePattern = datePattern;
+        return this;
+    }
+
+    /**
+     * @param maxHistory The number of periods (of the date pattern) to keep rolled files. 0 keeps them all
+     */
+    public GSLogbackConfigurationDocument setRollingMaxHistory(int maxHistory) {
+        this.rollingMaxHistory = maxHistory;
+        return this;
+    }
+
+    /**
+     * @param totalSizeCap As Logback, eg. "10GB". The oldest rolled files are deleted above the cap. "0" is no cap
+     */
+    public GSLogbackConfigurationDocument setRollingTotalSizeCap(String totalSizeCap) {
+        this.rollingTotalSizeCap = totalSizeCap;
+        return this;
+    }
+
+    /**
+     * Makes the file appenders added by {@link #addRootLogger()} and {@link #addLoggers(String...)} write through a buffer
+     * (see {@link #addFileAppender(String, String)}). RollingFileAppenders are not buffered. If not set
+     * {@link GSLogbackProperties#GSLOG_BUFFERED} decides
+     */
+    public GSLogbackConfigurationDocument setBuffered(boolean isBuffered) {
+        this.isBuffered = isBuffered;
+        return this;
+    }
+
+    /**
+     * @param bufferSize As Logback, eg. "256KB"
+     */
+    public GSLogbackConfigurationDocument setBufferSize(String bufferSize) {
+        this.bufferSize = bufferSize;
+        return this;
+    }
+
+    /**
+     * @param flushIntervalMillis The maximum time an event is buffered. 0 is no periodic flush
+     */
+    public GSLogbackConfigurationDocument setFlushInterval(int flushIntervalMillis) {
+        this.flushInterval = flushIntervalMillis;
+        return this;
+    }
+
+    /**
+     * @param flushLevel Events of this level or above are flushed at once. "off" if none
+     */
+    public GSLogbackConfigurationDocument setFlushLevel(String flushLevel) {
+        this.flushLevel = flushLevel;
+        return this;
+    }
+
+    /**
+     * Makes the file appenders added by {@link #addRootLogger()} and {@link #addLoggers(String...)} memory-mapped
+     * (see {@link #addMappedFileAppender(String, String)}). Rolling takes precedence. If not set
+     * {@link GSLogbackProperties#GSLOG_MAPPED} decides
+     */
+    public GSLogbackConfigurationDocument setMapped(boolean isMapped) {
+        this.isMapped = isMapped;
+        return this;
+    }
+
+    /**
+     * @param regionSize As Logback, eg. "32MB". The file grows by this size at a time
+     */
+    public GSLogbackConfigurationDocument setMappedRegionSize(String regionSize) {
+        this.mappedRegionSize = regionSize;
+        return this;
+    }
+
+    /**
+     * Makes the file appenders added by {@link #addRootLogger()} and {@link #addLoggers(String...)} write binary records
+     * (see {@link #setBinaryEncoder(Element)}). If not set {@link GSLogbackProperties#GSLOG_BINARY} decides
+     */
+    public GSLogbackConfigurationDocument setBinary(boolean isBinary) {
+        this.isBinary = isBinary;
+        return this;
+    }
+
+    /**
+     * Makes the file appenders added by {@link #addRootLogger()} and {@link #addLoggers(String...)} compress the files
+     * with gzip while they are written (see {@link #addFileAppender(String, String)}). Rolling and memory-mapped files
+     * are not compressed. If not set {@link GSLogbackProperties#GSLOG_COMPRESS} decides
+     */
+    public GSLogbackConfigurationDocument setCompress(boolean isCompress) {
+        this.isCompress = isCompress;
+        return this;
+    }
+
+    private boolean isCompress() {
+        return isCompress != null ? isCompress : "true".equals(GSLogbackProperties.GSLOG_COMPRESS.getValue());
+    }
+
+    private boolean isBinary() {
+        return isBinary != null ? isBinary : "true".equals(GSLogbackProperties.GSLOG_BINARY.getValue());
+    }
+
+    private boolean isMapped() {
+        return isMapped != null ? isMapped : "true".equals(GSLogbackProperties.GSLOG_MAPPED.getValue());
+    }
+
+    private boolean isBuffered() {
+        return isBuffered != null ? isBuffered : "true".equals(GSLogbackProperties.GSLOG_BUFFERED.getValue());
+    }
+
+    private boolean isRolling() {
+        return isRolling != null ? isRolling : "true".equals(GSLogbackProperties.GSLOG_ROLLING.getValue());
+    }
+
+    private boolean isAsync() {
+        return isAsync != null ? isAsync : "true".equals(GSLogbackProperties.GSLOG_ASYNC.getValue());
+    }
+
     /**
      * Tilfjer root logger med de aktuelle settings
      */
@@ -126,7 +504,11 @@ public class GSLogbackConfigurationDocument extends GSDocument {
     }
 
     Element addFileAppender(String filename) {
-        return addFileAppender("gslog.fileAppender" + new Date().getTime(), filename);
+        String appenderName = "gslog.fileAppender" + new Date().getTime();
+        if (isRolling()) {
+            return addRollingFileAppender(appenderName, filename);
+        }
+        return isMapped() ? addMappedFileAppender(appenderName, filename) : addFileAppender(appenderName, filename);
     }
 
     Element addLoggers(boolean additivity, String... loggerNames) {
@@ -137,7 +519,11 @@ public class GSLogbackConfigurationDocument extends GSDocument {
     }
 
     Element addAppender() {
-        return filenameWithExtension == null ? addConsoleAppender() : addFileAppender(filenameWithExtension);
+        Element appenderElement = filenameWithExtension == null ? addConsoleAppender() : addFileAppender(filenameWithExtension);
+        if (filenameWithExtension != null && isBinary()) {
+            setBinaryEncoder(appenderElement);
+        }
+        return isAsync() ? addAsyncAppender(appenderElement) : appenderElement;
     }
 
 }
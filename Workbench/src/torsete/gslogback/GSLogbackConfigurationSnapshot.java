@@ -0,0 +1,552 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.filter.LevelFilter;
+import ch.qos.logback.classic.filter.ThresholdFilter;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.ConsoleAppender;
+import ch.qos.logback.core.CoreConstants;
+import ch.qos.logback.core.FileAppender;
+import ch.qos.logback.core.OutputStreamAppender;
+import ch.qos.logback.core.filter.Filter;
+import ch.qos.logback.core.joran.spi.ConfigurationWatchList;
+import ch.qos.logback.core.joran.util.ConfigurationWatchListUtil;
+import ch.qos.logback.core.spi.FilterReply;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import torsete.util.GSDocument;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * A configuration as Joran has built it, in a compact binary file. Loading it is much faster than running Joran,
+ * since the xml files are not parsed and the substitutions and conditions are already evaluated.
+ * <p>
+ * The snapshot holds:
+ * <ul>
+ * <li>The key: The hashes of the configuration files (the main file and its includes), the assignable
+ * {@link GSLogbackProperties} values, the host name, the context name and a hash of the environment before the configuration.
+ * The snapshot is only valid if the key is unchanged
+ * <li>The system properties set by the configuration (scope='system')
+ * <li>The turbo filters, loggers and appenders, in the vocabulary of {@link GSLogbackConfigurationDocument}. They are configured
+ * by {@link GSLogbackDirectConfigurator}
+ * </ul>
+ * The values of &lt;timestamp&gt; elements are templates in the snapshot, and get new values when the snapshot is loaded.
+ * <p>
+ * A configuration can only be captured if it is within the vocabulary of {@link GSLogbackDirectConfigurator}
+ * (eg. no scan, other turbo filters or other appender classes). Of the context listeners only the ones of gslog, eg.
+ * {@link GSLogbackLiveUpdater}, are allowed, since they are not part of the configuration
+ */
+class GSLogbackConfigurationSnapshot {
+    private final static int MAGIC = 0x47534c53; // GSLS
+    private final static int VERSION = 1;
+    private final static char TEMPLATE_MARK = '\u0000';
+    private final static List<Level> LEVELS = Arrays.asList(Level.TRACE, Level.DEBUG, Level.INFO, Level.WARN, Level.ERROR);
+
+    private final String configurationPath;
+    private final Map<String, byte[]> fileHashes;
+    private final Map<String, String> inputProperties;
+    private final Map<String, String> systemProperties;
+    private final Map<String, String> timestampPatterns;
+    private final Document document;
+
+    private GSLogbackConfigurationSnapshot(String configurationPath, Map<String, byte[]> fileHashes, Map<String, String> inputProperties,
+                                           Map<String, String> systemProperties, Map<String, String> timestampPatterns, Document document) {
+        this.configurationPath = configurationPath;
+        this.fileHashes = fileHashes;
+        this.inputProperties = inputProperties;
+        this.systemProperties = systemProperties;
+        this.timestampPatterns = timestampPatterns;
+        this.document = document;
+    }
+
+    /**
+     * @return The properties the configuration depends on. To be taken before the configuration
+     */
+    static Map<String, String> getInputProperties(LoggerContext context) {
+        Map<String, String> properties = new TreeMap<>();
+        Arrays.stream(GSLogbackProperties.values())
+                .filter(GSLogbackProperties::isAssignable)
+                .forEach(p -> properties.put(p.getKey(), p.getValue()));
+        properties.put("user.name", System.getProperty("user.name")); // The default of gslog.user
+        properties.put(CoreConstants.HOSTNAME_KEY, context.getProperty(CoreConstants.HOSTNAME_KEY));
+        properties.put(CoreConstants.CONTEXT_NAME_KEY, context.getName());
+        properties.put("env", getEnvironmentHash()); // Only a hash, since the environment may hold secrets
+        return properties;
+    }
+
+    private static String getEnvironmentHash() {
+        StringBuilder environment = new StringBuilder();
+        new TreeMap<>(System.getenv()).forEach((key, value) -> environment.append(key).append('=').append(value).append('\u0000'));
+        return Base64.getEncoder().encodeToString(GSLogbackConfigurationCache.hash(environment.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * @return A copy of the system properties. To be taken before the configuration
+     */
+    static Map<String, String> getSystemProperties() {
+        Map<String, String> properties = new TreeMap<>();
+        System.getProperties().stringPropertyNames().forEach(key -> properties.put(key, System.getProperty(key)));
+        return properties;
+    }
+
+    /**
+     * Captures the current configuration of a context
+     *
+     * @param inputProperties  {@link #getInputProperties(LoggerContext)} before the configuration
+     * @param systemProperties {@link #getSystemProperties()} before the configuration
+     * @throws IllegalStateException If the configuration cannot be captured. The message tells why
+     */
+    static GSLogbackConfigurationSnapshot capture(LoggerContext context, File configurationFile, Map<String, String> inputProperties,
+                                                  Map<String, String> systemProperties) throws IOException {
+        if (!CoreConstants.DEFAULT_CONTEXT_NAME.equals(context.getName())) {
+            throw new IllegalStateException("The context name is set");
+        }
+        if (context.getCopyOfListenerList().stream().anyMatch(listener -> !(listener instanceof GSLogbackLiveUpdater))) {
+            throw new IllegalStateException("The configuration has context listeners");
+        }
+        if (context.getScheduledFutures().stream().anyMatch(f -> !f.isDone())) {
+            throw new IllegalStateException("The configuration uses scan");
+        }
+
+        Map<String, byte[]> fileHashes = new LinkedHashMap<>();
+        Map<String, String> timestampPatterns = new TreeMap<>();
+        ConfigurationWatchList watchList = ConfigurationWatchListUtil.getConfigurationWatchList(context);
+        List<File> files = watchList == null ? Arrays.asList(configurationFile) : watchList.getCopyOfFileWatchList();
+        for (File file : files) {
+            fileHashes.put(file.getAbsolutePath(), hash(file));
+            if (file.isFile()) {
+                NodeList timestamps = GSLogbackConfigurationCache.getInstance().get(file, context).getDocument().getElementsByTagName("timestamp");
+                for (int i = 0; i < timestamps.getLength(); i++) {
+                    Element timestamp = (Element) timestamps.item(i);
+                    timestampPatterns.put(timestamp.getAttribute("key"), timestamp.getAttribute("datePattern"));
+                }
+            }
+        }
+
+        Map<String, String> timestampValues = new TreeMap<>();
+        for (String key : new ArrayList<>(timestampPatterns.keySet())) {
+            String value = System.getProperty(key) != null ? System.getProperty(key) : context.getProperty(key);
+            if (value == null) {
+                throw new IllegalStateException("The value of timestamp '" + key + "' is not known in system or context scope");
+            }
+            if (value.equals(systemProperties.get(key))) {
+                timestampPatterns.remove(key); // Given before the configuration, so it is part of the key
+            } else {
+                timestampValues.put(key, value);
+            }
+        }
+
+        Map<String, String> changedSystemProperties = new TreeMap<>();
+        getSystemProperties().forEach((key, value) -> {
+            if (!value.equals(systemProperties.get(key))) {
+                changedSystemProperties.put(key, toTemplate(value, timestampValues));
+            }
+        });
+
+        Document document = captureDocument(context);
+        replace(document.getDocumentElement(), value -> toTemplate(value, timestampValues));
+        return new GSLogbackConfigurationSnapshot(configurationFile.getCanonicalPath(), fileHashes, inputProperties,
+                changedSystemProperties, timestampPatterns, document);
+    }
+
+    /**
+     * @return Null if the file does not exist or is not a valid snapshot
+     */
+    static GSLogbackConfigurationSnapshot read(File snapshotFile) {
+        if (!snapshotFile.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            String configurationPath = in.readUTF();
+            Map<String, byte[]> fileHashes = new LinkedHashMap<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                String path = in.readUTF();
+                byte[] hash = new byte[in.readInt()];
+                in.readFully(hash);
+                fileHashes.put(path, hash);
+            }
+            Map<String, String> inputProperties = readMap(in);
+            Map<String, String> systemProperties = readMap(in);
+            Map<String, String> timestampPatterns = readMap(in);
+            Document document = new GSDocument().getDocument();
+            document.appendChild(readElement(in, document));
+            return new GSLogbackConfigurationSnapshot(configurationPath, fileHashes, inputProperties, systemProperties, timestampPatterns, document);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the snapshot. The file is replaced atomically, since other JVMs may read it meanwhile
+     */
+    void write(File snapshotFile) throws IOException {
+        File directory = snapshotFile.getAbsoluteFile().getParentFile();
+        File temporaryFile = File.createTempFile(snapshotFile.getName(), ".tmp", directory);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile.toPath())))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(configurationPath);
+                out.writeInt(fileHashes.size());
+                for (Map.Entry<String, byte[]> entry : fileHashes.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue().length);
+                    out.write(entry.getValue());
+                }
+                writeMap(out, inputProperties);
+                writeMap(out, systemProperties);
+                writeMap(out, timestampPatterns);
+                writeElement(out, document.getDocumentElement());
+            }
+            Files.move(temporaryFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile.toPath());
+        }
+    }
+
+    /**
+     * @return True if the snapshot is made from the configuration file, the files are unchanged and so are the input properties
+     */
+    boolean isValid(File configurationFile, LoggerContext context) throws IOException {
+        if (!configurationPath.equals(configurationFile.getCanonicalPath()) || !inputProperties.equals(getInputProperties(context))) {
+            return false;
+        }
+        for (Map.Entry<String, byte[]> entry : fileHashes.entrySet()) {
+            if (!Arrays.equals(entry.getValue(), hash(new File(entry.getKey())))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The configuration files. The first one is the main file
+     */
+    List<File> getFiles() {
+        List<File> files = new ArrayList<>();
+        fileHashes.keySet().forEach(path -> files.add(new File(path)));
+        return files;
+    }
+
+    /**
+     * @return New values of the timestamps, made like Joran makes them
+     */
+    Map<String, String> newTimestampValues() {
+        Date now = new Date();
+        Map<String, String> values = new TreeMap<>();
+        timestampPatterns.forEach((key, pattern) -> values.put(key, new SimpleDateFormat(pattern).format(now)));
+        return values;
+    }
+
+    Map<String, String> getSystemProperties(Map<String, String> timestampValues) {
+        Map<String, String> properties = new TreeMap<>();
+        systemProperties.forEach((key, value) -> properties.put(key, fromTemplate(value, timestampValues)));
+        return properties;
+    }
+
+    /**
+     * @return A new document in the vocabulary of {@link GSLogbackConfigurationDocument}
+     */
+    Document getDocument(Map<String, String> timestampValues) {
+        Document copy = (Document) document.cloneNode(true);
+        replace(copy.getDocumentElement(), value -> fromTemplate(value, timestampValues));
+        return copy;
+    }
+
+    private static Document captureDocument(LoggerContext context) {
+        GSDocument gsDocument = new GSDocument("configuration");
+        Element root = gsDocument.getDocumentElement();
+        List<Element> loggerElements = new ArrayList<>();
+        Map<String, Appender<ILoggingEvent>> appenders = new LinkedHashMap<>();
+        context.getTurboFilterList().forEach(turboFilter -> captureTurboFilter(gsDocument, turboFilter));
+        for (Logger logger : context.getLoggerList()) {
+            List<String> appenderNames = new ArrayList<>();
+            for (Iterator<Appender<ILoggingEvent>> iterator = logger.iteratorForAppenders(); iterator.hasNext(); ) {
+                Appender<ILoggingEvent> appender = iterator.next();
+                Appender<ILoggingEvent> other = appenders.putIfAbsent(appender.getName(), appender);
+                if (other != null && other != appender) {
+                    throw new IllegalStateException("Two appenders are named " + appender.getName());
+                }
+                appenderNames.add(appender.getName());
+            }
+            boolean isRoot = Logger.ROOT_LOGGER_NAME.equals(logger.getName());
+            if (!isRoot && logger.getLevel() == null && logger.isAdditive() && appenderNames.isEmpty()) {
+                continue;
+            }
+            Element loggerElement = isRoot ? gsDocument.getDocument().createElement("root") : gsDocument.getDocument().createElement("logger");
+            if (!isRoot) {
+                loggerElement.setAttribute("name", logger.getName());
+                loggerElement.setAttribute("additivity", logger.isAdditive() + "");
+            }
+            if (logger.getLevel() != null) {
+                loggerElement.setAttribute("level", logger.getLevel().toString());
+            }
+            appenderNames.forEach(name -> gsDocument.appendElement(loggerElement, "appender-ref", "ref", name));
+            loggerElements.add(loggerElement);
+        }
+        appenders.values().forEach(appender -> captureAppender(gsDocument, appender));
+        loggerElements.forEach(root::appendChild);
+        return gsDocument.getDocument();
+    }
+
+    private static void captureTurboFilter(GSDocument gsDocument, TurboFilter turboFilter) {
+        if (!turboFilter.isStarted()) {
+            return; // A turbo filter that is not started is neutral
+        }
+        if (turboFilter.getClass() == GSLevelTurboFilter.class) {
+            Element turboFilterElement = gsDocument.appendElement(gsDocument.getDocumentElement(), "turboFilter", "class", GSLevelTurboFilter.class.getName());
+            for (GSLevelTurboFilter.Rule rule : ((GSLevelTurboFilter) turboFilter).getRules()) {
+                Element ruleElement = gsDocument.appendElement(turboFilterElement, "rule");
+                appendTextElements(gsDocument, ruleElement, "logger", rule.getLogger(), "level", rule.getLevel(),
+                        "mdcKey", rule.getMdcKey(), "mdcValue", rule.getMdcValue());
+            }
+        } else if (turboFilter.getClass() == GSRateLimitTurboFilter.class) {
+            Element turboFilterElement = gsDocument.appendElement(gsDocument.getDocumentElement(), "turboFilter", "class", GSRateLimitTurboFilter.class.getName());
+            for (GSRateLimitTurboFilter.Rule rule : ((GSRateLimitTurboFilter) turboFilter).getRules()) { // Also the rules of the lists
+                Element ruleElement = gsDocument.appendElement(turboFilterElement, "rule");
+                appendTextElements(gsDocument, ruleElement, "logger", rule.getLogger(), "maxPerSecond", rule.getMaxPerSecond() + "",
+                        "sampling", rule.getSampling() + "");
+            }
+        } else if (turboFilter.getClass() == GSFlightRecorderTurboFilter.class) {
+            GSFlightRecorderTurboFilter flightRecorder = (GSFlightRecorderTurboFilter) turboFilter;
+            Element turboFilterElement = gsDocument.appendElement(gsDocument.getDocumentElement(), "turboFilter", "class", GSFlightRecorderTurboFilter.class.getName());
+            appendTextElements(gsDocument, turboFilterElement, "size", flightRecorder.getSize() + "", "level", flightRecorder.getLevel(),
+                    "mdcKey", flightRecorder.getMdcKey(), "triggerLevel", flightRecorder.getTriggerLevel(),
+                    "triggerLogger", flightRecorder.getTriggerLogger(), "appenderName", flightRecorder.getAppenderName());
+        } else {
+            throw new IllegalStateException("Turbo filter " + turboFilter.getName() + " is a " + turboFilter.getClass().getName());
+        }
+    }
+
+    /**
+     * @param namesAndValues Names and values of text elements. Values that are null are left out
+     */
+    private static void appendTextElements(GSDocument gsDocument, Element element, String... namesAndValues) {
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            if (namesAndValues[i + 1] != null) {
+                gsDocument.appendTextElement(element, namesAndValues[i], namesAndValues[i + 1]);
+            }
+        }
+    }
+
+    private static void captureAppender(GSDocument gsDocument, Appender<ILoggingEvent> appender) {
+        if (appender.getClass() != FileAppender.class && appender.getClass() != ConsoleAppender.class
+                && appender.getClass() != GSFanOutFileAppender.class) {
+            throw new IllegalStateException("Appender " + appender.getName() + " is a " + appender.getClass().getName());
+        }
+        OutputStreamAppender<ILoggingEvent> outputStreamAppender = (OutputStreamAppender<ILoggingEvent>) appender;
+        boolean isImmediateFlush = outputStreamAppender.isImmediateFlush() || appender instanceof GSFanOutFileAppender; // Its buffering is captured
+        if (!isImmediateFlush || !(outputStreamAppender.getEncoder() instanceof PatternLayoutEncoder)) {
+            throw new IllegalStateException("Appender " + appender.getName() + " has other settings than file, pattern and filters");
+        }
+        PatternLayoutEncoder encoder = (PatternLayoutEncoder) outputStreamAppender.getEncoder();
+        if (encoder.getClass() != PatternLayoutEncoder.class || encoder.getCharset() != null || encoder.isOutputPatternAsHeader()) {
+            throw new IllegalStateException("Appender " + appender.getName() + " has other encoder settings than pattern");
+        }
+
+        Element appenderElement = gsDocument.appendElement(gsDocument.getDocumentElement(), "appender",
+                "name", appender.getName(),
+                "class", appender.getClass().getName());
+        if (appender instanceof FileAppender) {
+            FileAppender<ILoggingEvent> fileAppender = (FileAppender<ILoggingEvent>) appender;
+            if (!fileAppender.isAppend() || fileAppender.isPrudent()) {
+                throw new IllegalStateException("Appender " + appender.getName() + " is not appending or is prudent");
+            }
+            gsDocument.appendTextElement(appenderElement, "file", fileAppender.getFile());
+        } else if (appender instanceof GSFanOutFileAppender) {
+            captureSinks(gsDocument, appenderElement, (GSFanOutFileAppender) appender);
+        } else if (!"System.out".equals(((ConsoleAppender<ILoggingEvent>) appender).getTarget())
+                || ((ConsoleAppender<ILoggingEvent>) appender).isWithJansi()) {
+            throw new IllegalStateException("Appender " + appender.getName() + " is not on System.out");
+        }
+        for (Filter<ILoggingEvent> filter : appender.getCopyOfAttachedFiltersList()) {
+            captureFilter(gsDocument, appenderElement, appender, filter);
+        }
+        Element encoderElement = gsDocument.appendElement(appenderElement, "encoder");
+        gsDocument.appendTextElement(encoderElement, "pattern", encoder.getPattern());
+    }
+
+    private static void captureSinks(GSDocument gsDocument, Element appenderElement, GSFanOutFileAppender appender) {
+        for (GSFanOutFileAppender.Sink sink : appender.getSinks()) {
+            Element sinkElement = gsDocument.appendElement(appenderElement, "sink");
+            gsDocument.appendTextElement(sinkElement, "file", sink.getFile());
+            if (!Level.ALL.toString().equals(sink.getLevel())) {
+                gsDocument.appendTextElement(sinkElement, "level", sink.getLevel());
+            }
+            if (sink.getLogger() != null) {
+                gsDocument.appendTextElement(sinkElement, "logger", sink.getLogger());
+            }
+        }
+        gsDocument.appendTextElement(appenderElement, "buffered", !appender.isImmediateFlush() + "");
+        gsDocument.appendTextElement(appenderElement, "bufferSize", appender.getBufferSize().getSize() + "");
+        gsDocument.appendTextElement(appenderElement, "flushInterval", appender.getFlushInterval().getMilliseconds() + "");
+        gsDocument.appendTextElement(appenderElement, "flushLevel", appender.getFlushLevel());
+        gsDocument.appendTextElement(appenderElement, "compress", appender.isCompress() + "");
+    }
+
+    /**
+     * The level of a filter cannot be read, so it is found by letting the filter decide on events of each level
+     */
+    private static void captureFilter(GSDocument gsDocument, Element appenderElement, Appender<ILoggingEvent> appender, Filter<ILoggingEvent> filter) {
+        if (!filter.isStarted()) {
+            return; // A filter that is not started is neutral
+        }
+        if (filter.getClass() == ThresholdFilter.class) {
+            String threshold = LEVELS.stream()
+                    .filter(level -> filter.decide(newEvent(level)) == FilterReply.NEUTRAL)
+                    .map(Level::toString)
+                    .findFirst().orElse(Level.OFF.toString());
+            Element filterElement = gsDocument.appendElement(appenderElement, "filter", "class", ThresholdFilter.class.getName());
+            gsDocument.appendTextElement(filterElement, "level", threshold);
+        } else if (filter.getClass() == LevelFilter.class) {
+            LevelFilter levelFilter = (LevelFilter) filter;
+            String level = LEVELS.stream()
+                    .filter(l -> levelFilter.getOnMatch() != levelFilter.getOnMismatch() && filter.decide(newEvent(l)) == levelFilter.getOnMatch())
+                    .map(Level::toString)
+                    .findFirst().orElse(Level.INFO.toString());
+            Element filterElement = gsDocument.appendElement(appenderElement, "filter", "class", LevelFilter.class.getName());
+            gsDocument.appendTextElement(filterElement, "level", level);
+            gsDocument.appendTextElement(filterElement, "onMatch", levelFilter.getOnMatch().toString());
+            gsDocument.appendTextElement(filterElement, "onMismatch", levelFilter.getOnMismatch().toString());
+        } else {
+            throw new IllegalStateException("Appender " + appender.getName() + " has a " + filter.getClass().getName());
+        }
+    }
+
+    private static ILoggingEvent newEvent(Level level) {
+        LoggingEvent event = new LoggingEvent();
+        event.setLevel(level);
+        return event;
+    }
+
+    private static byte[] hash(File file) throws IOException {
+        return file.isFile() ? GSLogbackConfigurationCache.hash(Files.readAllBytes(file.toPath())) : new byte[0];
+    }
+
+    private static String toTemplate(String value, Map<String, String> timestampValues) {
+        for (Map.Entry<String, String> entry : timestampValues.entrySet()) {
+            value = value.replace(entry.getValue(), TEMPLATE_MARK + entry.getKey() + TEMPLATE_MARK);
+        }
+        return value;
+    }
+
+    private static String fromTemplate(String value, Map<String, String> timestampValues) {
+        for (Map.Entry<String, String> entry : timestampValues.entrySet()) {
+            value = value.replace(TEMPLATE_MARK + entry.getKey() + TEMPLATE_MARK, entry.getValue());
+        }
+        return value;
+    }
+
+    /**
+     * Replaces all attribute values and texts of an element and its descendants
+     */
+    private static void replace(Node node, UnaryOperator<String> replacer) {
+        if (node.getNodeType() == Node.TEXT_NODE || node.getNodeType() == Node.ATTRIBUTE_NODE) {
+            node.setNodeValue(replacer.apply(node.getNodeValue()));
+            return;
+        }
+        NamedNodeMap attributes = node.getAttributes();
+        for (int i = 0; attributes != null && i < attributes.getLength(); i++) {
+            replace(attributes.item(i), replacer);
+        }
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            replace(child, replacer);
+        }
+    }
+
+    private static void writeMap(DataOutputStream out, Map<String, String> map) throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeBoolean(entry.getValue() != null);
+            if (entry.getValue() != null) {
+                out.writeUTF(entry.getValue());
+            }
+        }
+    }
+
+    private static Map<String, String> readMap(DataInputStream in) throws IOException {
+        Map<String, String> map = new TreeMap<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            String key = in.readUTF();
+            map.put(key, in.readBoolean() ? in.readUTF() : null);
+        }
+        return map;
+    }
+
+    /**
+     * An element is written as its name, its attributes and either its child elements or its text
+     */
+    private static void writeElement(DataOutputStream out, Element element) throws IOException {
+        out.writeUTF(element.getNodeName());
+        NamedNodeMap attributes = element.getAttributes();
+        out.writeShort(attributes.getLength());
+        for (int i = 0; i < attributes.getLength(); i++) {
+            out.writeUTF(attributes.item(i).getNodeName());
+            out.writeUTF(attributes.item(i).getNodeValue());
+        }
+        List<Element> children = new ArrayList<>();
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                children.add((Element) child);
+            }
+        }
+        out.writeShort(children.size());
+        if (children.isEmpty()) {
+            out.writeUTF(element.getTextContent());
+        }
+        for (Element child : children) {
+            writeElement(out, child);
+        }
+    }
+
+    private static Element readElement(DataInputStream in, Document document) throws IOException {
+        Element element = document.createElement(in.readUTF());
+        for (int i = in.readShort(); i > 0; i--) {
+            element.setAttribute(in.readUTF(), in.readUTF());
+        }
+        int childCount = in.readShort();
+        if (childCount == 0) {
+            String text = in.readUTF();
+            if (!text.isEmpty()) {
+                element.appendChild(document.createTextNode(text));
+            }
+        }
+        for (int i = 0; i < childCount; i++) {
+            element.appendChild(readElement(in, document));
+        }
+        return element;
+    }
+}
@@ -0,0 +1,143 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggerContextListener;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.CoreConstants;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves a configuration built in a separate (staging) LoggerContext into the live LoggerContext.
+ * <p>
+ * Logback loggers belong to the LoggerContext that created them, so the new appenders are moved logger by logger:
+ * First all new appenders are attached, then the levels are set, and then the old appenders are detached.
+ * A logger is therefore never without appenders during the swap. The old appenders are stopped in the background
+ * when events in progress have had time to drain.
+ */
+class GSLogbackConfigurationSwap {
+    private final LoggerContext context;
+    private final long drainMillis;
+
+    GSLogbackConfigurationSwap(LoggerContext context, long drainMillis) {
+        this.context = context;
+        this.drainMillis = drainMillis;
+    }
+
+    /**
+     * Creates an empty staging context for a new configuration
+     */
+    LoggerContext newStagingContext() {
+        LoggerContext stagingContext = new LoggerContext();
+        stagingContext.setName(context.getName());
+        stagingContext.setPackagingDataEnabled(context.isPackagingDataEnabled());
+        return stagingContext;
+    }
+
+    /**
+     * Cancels background tasks started by the staging configuration (ie. scan='true').
+     * Such tasks would reconfigure the staging context instead of the live one
+     *
+     * @return True if tasks were cancelled
+     */
+    boolean cancelScheduledTasks(LoggerContext stagingContext) {
+        List<ScheduledFuture<?>> scheduledFutures = stagingContext.getScheduledFutures();
+        if (scheduledFutures.isEmpty()) {
+            return false;
+        }
+        scheduledFutures.forEach(f -> f.cancel(false));
+        scheduledFutures.clear();
+        return true;
+    }
+
+    /**
+     * Swaps the configuration of a staging context into the live context
+     *
+     * @param oldStagingContext The staging context of the previous swap, which owns the appenders in use. It is stopped
+     *                          with the old appenders. Null if none
+     */
+    void swap(LoggerContext stagingContext, LoggerContext oldStagingContext) {
+        Set<Appender<ILoggingEvent>> oldAppenders = getAppenders(context);
+        Set<Appender<ILoggingEvent>> newAppenders = getAppenders(stagingContext);
+
+        stagingContext.getCopyOfPropertyMap().forEach(context::putProperty);
+        context.putObject(CoreConstants.CONFIGURATION_WATCH_LIST, stagingContext.getObject(CoreConstants.CONFIGURATION_WATCH_LIST));
+
+        stagingContext.getLoggerList().forEach(stagingLogger -> {
+            Logger logger = context.getLogger(stagingLogger.getName());
+            for (Iterator<Appender<ILoggingEvent>> i = stagingLogger.iteratorForAppenders(); i.hasNext(); ) {
+                Appender<ILoggingEvent> appender = i.next();
+                if (!logger.isAttached(appender)) {
+                    logger.addAppender(appender);
+                }
+            }
+        });
+
+        context.getLoggerList().forEach(logger -> {
+            Logger stagingLogger = stagingContext.exists(logger.getName());
+            if (stagingLogger == null) {
+                logger.setLevel(Logger.ROOT_LOGGER_NAME.equals(logger.getName()) ? Level.DEBUG : null);
+                logger.setAdditive(true);
+            } else {
+                logger.setLevel(stagingLogger.getLevel());
+                logger.setAdditive(stagingLogger.isAdditive());
+            }
+        });
+
+        context.resetTurboFilterList();
+        stagingContext.getTurboFilterList().forEach(context::addTurboFilter);
+
+        context.getCopyOfListenerList().stream()
+                .filter(l -> !l.isResetResistant())
+                .forEach(context::removeListener);
+        for (LoggerContextListener listener : stagingContext.getCopyOfListenerList()) {
+            context.addListener(listener);
+        }
+
+        context.getLoggerList().forEach(logger -> {
+            List<Appender<ILoggingEvent>> detachables = new ArrayList<>();
+            for (Iterator<Appender<ILoggingEvent>> i = logger.iteratorForAppenders(); i.hasNext(); ) {
+                Appender<ILoggingEvent> appender = i.next();
+                if (!newAppenders.contains(appender)) {
+                    detachables.add(appender);
+                }
+            }
+            detachables.forEach(logger::detachAppender);
+        });
+
+        oldAppenders.removeAll(newAppenders);
+        drain(oldAppenders, oldStagingContext);
+    }
+
+    private void drain(Set<Appender<ILoggingEvent>> oldAppenders, LoggerContext oldStagingContext) {
+        Runnable stop = () -> {
+            oldAppenders.forEach(Appender::stop);
+            if (oldStagingContext != null) {
+                oldStagingContext.stop();
+            }
+        };
+        if (oldAppenders.isEmpty() && oldStagingContext == null) {
+            return;
+        }
+        context.getScheduledExecutorService().schedule(stop, drainMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private Set<Appender<ILoggingEvent>> getAppenders(LoggerContext loggerContext) {
+        Set<Appender<ILoggingEvent>> appenders = new LinkedHashSet<>();
+        loggerContext.getLoggerList().forEach(logger -> {
+            for (Iterator<Appender<ILoggingEvent>> i = logger.iteratorForAppenders(); i.hasNext(); ) {
+                appenders.add(i.next());
+            }
+        });
+        return appenders;
+    }
+}
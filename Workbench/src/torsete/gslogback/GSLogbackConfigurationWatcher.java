@@ -0,0 +1,196 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.joran.spi.ConfigurationWatchList;
+import ch.qos.logback.core.joran.util.ConfigurationWatchListUtil;
+import ch.qos.logback.core.status.ErrorStatus;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Reloads the configuration when one of the files on the watch list of the context is changed.
+ * The watch list holds the main file and all the files included by it.
+ * <p>
+ * Replaces the polling of scan='true': The directories of the files are registered with a {@link WatchService},
+ * so nothing is done until the file system reports a change. Changes are debounced, so an editor saving
+ * a file in several writes (or several files at once) gives one reload. The files are registered again after each reload,
+ * since the includes may have changed.
+ * <p>
+ * On Linux the WatchService uses inotify, which only sees the changes made through the local kernel. A change made by
+ * another client of a network file system (eg. NFS) is not reported. Such files can be polled as well: With a poll
+ * interval the size and time of modification of the files are compared whenever nothing has been reported for the
+ * interval. The interval should be long (eg. 10 seconds), since each poll reads the attributes over the network.
+ * Without polling, scan='true' is the alternative for a configuration on a network file system.
+ */
+class GSLogbackConfigurationWatcher {
+    private final LoggerContext context;
+    private final long debounceMillis;
+    private final long pollMillis;
+    private final Runnable reload;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private final Thread thread;
+    private Set<Path> files = new HashSet<>();
+    private Map<Path, String> fileStates = new HashMap<>();
+
+    /**
+     * @param context        The context which watch list is watched
+     * @param debounceMillis Time without changes before the configuration is reloaded
+     * @param pollMillis     Interval of polling the files, eg. on a network file system. 0 if they are not polled
+     * @param reload         Reloads the configuration. Called on the thread of the watcher
+     */
+    GSLogbackConfigurationWatcher(LoggerContext context, long debounceMillis, long pollMillis, Runnable reload) throws IOException {
+        this.context = context;
+        this.debounceMillis = debounceMillis;
+        this.pollMillis = pollMillis;
+        this.reload = reload;
+        watchService = FileSystems.getDefault().newWatchService();
+        register();
+        thread = new Thread(this::run, getClass().getSimpleName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void stop() {
+        thread.interrupt();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            // Nothing more to stop
+        }
+    }
+
+    /**
+     * Waits for the thread of the watcher to end after {@link #stop()}
+     *
+     * @return False if the thread is still running
+     */
+    boolean join(long timeoutMillis) throws InterruptedException {
+        thread.join(timeoutMillis);
+        return !thread.isAlive();
+    }
+
+    /**
+     * Cancels the tasks started by scan='true'. They are superfluous when the files are watched
+     *
+     * @return False if there were no such tasks
+     */
+    static boolean cancelScan(LoggerContext context) {
+        List<ScheduledFuture<?>> scheduledFutures = context.getScheduledFutures().stream() // A copy
+                .filter(f -> !f.isDone())
+                .collect(Collectors.toList());
+        scheduledFutures.forEach(f -> f.cancel(false));
+        return !scheduledFutures.isEmpty();
+    }
+
+    private void register() throws IOException {
+        Set<Path> newFiles = new HashSet<>();
+        ConfigurationWatchList watchList = ConfigurationWatchListUtil.getConfigurationWatchList(context);
+        if (watchList != null) {
+            for (File file : watchList.getCopyOfFileWatchList()) {
+                newFiles.add(file.toPath().toAbsolutePath().normalize());
+            }
+        }
+        Set<Path> newDirectories = newFiles.stream().map(Path::getParent).filter(Objects::nonNull).collect(Collectors.toSet());
+
+        for (Iterator<Map.Entry<WatchKey, Path>> iterator = directories.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<WatchKey, Path> entry = iterator.next();
+            if (!newDirectories.remove(entry.getValue())) {
+                entry.getKey().cancel();
+                iterator.remove();
+            }
+        }
+        for (Path directory : newDirectories) {
+            if (Files.isDirectory(directory)) { // The directory of a missing optional include cannot be watched
+                directories.put(directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), directory);
+            }
+        }
+        files = newFiles;
+        fileStates = getFileStates();
+    }
+
+    /**
+     * @return The size and time of modification of each file. Both are 0 if the file does not exist
+     */
+    private Map<Path, String> getFileStates() {
+        Map<Path, String> states = new HashMap<>();
+        for (Path file : files) {
+            states.put(file, file.toFile().lastModified() + "/" + file.toFile().length());
+        }
+        return states;
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey reportedKey = pollMillis > 0 ? watchService.poll(pollMillis, TimeUnit.MILLISECONDS) : watchService.take();
+                if (reportedKey == null ? !isPolledChanged() : !isChanged(reportedKey)) {
+                    continue;
+                }
+                WatchKey key;
+                while ((key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS)) != null) {
+                    isChanged(key); // Wait until the changes have settled
+                }
+                try {
+                    reload.run();
+                    register();
+                } catch (ClosedWatchServiceException e) {
+                    throw e; // Stopped by the reload
+                } catch (IOException | RuntimeException e) {
+                    context.getStatusManager().add(new ErrorStatus("Failed to reload the configuration", this, e));
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stopped
+        }
+    }
+
+    /**
+     * @return True if the size or time of modification of a file has changed since the last poll
+     */
+    private boolean isPolledChanged() {
+        Map<Path, String> states = getFileStates();
+        if (states.equals(fileStates)) {
+            return false;
+        }
+        fileStates = states; // Not polled as changed again, if the reload fails
+        return true;
+    }
+
+    private boolean isChanged(WatchKey key) {
+        Path directory = directories.get(key);
+        boolean isChanged = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                isChanged = true; // Events are lost. The file may be among them
+            } else if (directory != null && files.contains(directory.resolve((Path) event.context()))) {
+                isChanged = true;
+            }
+        }
+        key.reset();
+        return isChanged;
+    }
+}
@@ -1,10 +1,15 @@
 package torsete.gslogback;
 
 import ch.qos.logback.classic.LoggerContext;
-import ch.qos.logback.classic.joran.JoranConfigurator;
+import ch.qos.logback.classic.spi.Configurator;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.joran.GenericConfigurator;
 import ch.qos.logback.core.joran.spi.JoranException;
 import ch.qos.logback.core.joran.util.ConfigurationWatchListUtil;
+import ch.qos.logback.core.status.Status;
 import ch.qos.logback.core.status.StatusListener;
+import ch.qos.logback.core.status.StatusUtil;
 import ch.qos.logback.core.util.StatusPrinter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,34 +19,66 @@ import torsete.util.GSXMLContext;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.InputStream;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
- * Facade to Logback configuration (essentially by this method: {@link #configure(boolean, InputStream)})
+ * Facade to Logback configuration (essentially by this method: {@link #configure(boolean, ConfiguratorConsumer)})
  * <p>
  * The intent is to isolate all programtically configuration and the like of Logback to one class
  * <p>
- * The class is intentionally stateless (except for {@link #logListeners})
+ * The class is intentionally stateless (except for {@link #logListeners} and its settings).
+ * State of a configuration is kept in the LoggerContext, or by context in {@link ContextState} if it must survive a
+ * reset of the context (which clears the objects of the context).
+ * The log listeners are called on a background thread, and messages are only rendered if there are listeners
  * /
  */
 public class GSLogbackConfigurator {
     private final static Logger log = LoggerFactory.getLogger(GSLogbackConfigurator.class);
 
+    /**
+     * Key in the LoggerContext of the document applied by the latest reset. Used by {@link #update(GSDocument)}
+     */
+    final static String APPLIED_DOCUMENT = GSLogbackConfigurator.class.getName() + ".appliedDocument";
+
+    private final static Map<LoggerContext, ContextState> contextStates = new WeakHashMap<>();
+
+    private final LoggerContext context;
     private List<Consumer<String>> logListeners;
     private Consumer<String> systemOutListener = s -> System.out.println(s);
+    private boolean isSwapOnReset;
+    private long swapDrainMillis = 1000;
+    private long watchDebounceMillis = 200;
+    private long watchPollMillis;
+    private boolean isResolveIncludes;
+    private boolean isDirectConfiguration;
+    private GSLogbackPropertyResolver propertyResolver;
 
     public GSLogbackConfigurator() {
+        this(null);
+    }
+
+    /**
+     * @param context The context to configure. If null, the context of {@link LoggerFactory} (see {@link GSLogbackContextSelector})
+     */
+    public GSLogbackConfigurator(LoggerContext context) {
+        this.context = context;
         init();
     }
 
     void init() {
-        logListeners = new ArrayList<>();
+        logListeners = new CopyOnWriteArrayList<>();
         StatusPrinter.setPrintStream(new StatusPrinterPrintStream());
         setReportToSystemOut(true);
     }
@@ -55,6 +92,39 @@ public class GSLogbackConfigurator {
         return configure(true, gsDocument.getDocument());
     }
 
+    /**
+     * Changes the current configuration into the one given by a document. Only the loggers, levels and appenders that differ
+     * from the document applied by the latest {@link #reset(GSDocument)} or {@link #update(GSDocument)} are changed.
+     * Unchanged appenders keep running with their files open. Levels are set as a reset by Joran sets them, eg. the root
+     * level is DEBUG if the root of the document has no level.
+     * <p>
+     * If the difference cannot be determined (eg. the current configuration is given by a file or the document
+     * contains other elements than appender, logger and root) the call is the same as {@link #reset(GSDocument)}
+     */
+    public GSLogbackConfigurator update(GSDocument gsDocument) {
+        synchronized (getContext().getConfigurationLock()) { // The diff must be applied to the configuration it was made from
+            Document document = gsDocument.getDocument();
+            GSLogbackConfigurationDiff diff = new GSLogbackConfigurationDiff((Document) getContext().getObject(APPLIED_DOCUMENT), document);
+            if (!diff.isApplicable()) {
+                return configure(true, document);
+            }
+            if (diff.isEmpty()) {
+                return this;
+            }
+            configure(false, c -> {
+                diff.releaseFileNames(getContext());
+                Document appenderDocument = diff.getAppenderDocument();
+                Map<String, Appender<ILoggingEvent>> appenders = appenderDocument == null
+                        ? new HashMap<>()
+                        : doConfigure(c, appenderDocument);
+                diff.apply(getContext(), appenders);
+            });
+            getContext().putObject(APPLIED_DOCUMENT, document.cloneNode(true));
+            notifyLogListeners(() -> "Log configuration is updated. Changed appenders=" + diff.getChangedAppenderNames());
+        }
+        return this;
+    }
+
     public GSLogbackConfigurator add(URL url) {
         return configure(false, url);
     }
@@ -71,6 +141,157 @@ public class GSLogbackConfigurator {
         return configure(true, file);
     }
 
+    /**
+     * Configures by a configurator, eg. one generated by {@link GSLogbackCodeGenerator}
+     */
+    public GSLogbackConfigurator add(Configurator configurator) {
+        return configure(false, configurator);
+    }
+
+    /**
+     * Resets the configuration by a configurator, eg. one generated by {@link GSLogbackCodeGenerator}
+     */
+    public GSLogbackConfigurator reset(Configurator configurator) {
+        return configure(true, configurator);
+    }
+
+    /**
+     * Resets the configuration from a file by a snapshot (see {@link GSLogbackConfigurationSnapshot}) if the snapshot is valid.
+     * Otherwise the file is configured by Joran, and a new snapshot is written if the configuration can be captured
+     *
+     * @param snapshotFile Where the snapshot is kept. Its directory must exist
+     */
+    public GSLogbackConfigurator reset(File file, File snapshotFile) {
+        LoggerContext context = getContext();
+        synchronized (context.getConfigurationLock()) {
+            GSLogbackConfigurationSnapshot snapshot = GSLogbackConfigurationSnapshot.read(snapshotFile);
+            try {
+                if (snapshot != null && snapshot.isValid(file, context)) {
+                    return reset(file, snapshot);
+                }
+            } catch (IOException e) {
+                notifyLogListeners(() -> "Log configuration snapshot " + snapshotFile + " cannot be validated: " + e);
+            }
+
+            Map<String, String> inputProperties = GSLogbackConfigurationSnapshot.getInputProperties(context);
+            Map<String, String> systemProperties = GSLogbackConfigurationSnapshot.getSystemProperties();
+            long threshold = System.currentTimeMillis();
+            reset(file);
+            if (new StatusUtil(context).getHighestLevel(threshold) >= Status.WARN) {
+                notifyLogListeners(() -> "Log configuration snapshot is not written since the configuration has errors or warnings");
+                return this;
+            }
+            try {
+                GSLogbackConfigurationSnapshot.capture(context, file, inputProperties, systemProperties).write(snapshotFile);
+                notifyLogListeners("Log configuration snapshot is written to ", toURL(snapshotFile));
+            } catch (IOException | IllegalStateException e) {
+                notifyLogListeners(() -> "Log configuration snapshot is not written: " + e.getMessage());
+            }
+        }
+        return this;
+    }
+
+    private GSLogbackConfigurator reset(File file, GSLogbackConfigurationSnapshot snapshot) {
+        Map<String, String> timestampValues = snapshot.newTimestampValues();
+        snapshot.getSystemProperties(timestampValues).forEach(System::setProperty);
+        Document document = snapshot.getDocument(timestampValues);
+        configure(true, c -> {
+            GenericConfigurator.informContextOfURLUsedForConfiguration(c.getContext(), toURL(file));
+            for (File includedFile : snapshot.getFiles().subList(1, snapshot.getFiles().size())) {
+                ConfigurationWatchListUtil.addToWatchList(c.getContext(), toURL(includedFile));
+            }
+            new GSLogbackDirectConfigurator((LoggerContext) c.getContext()).configure(document);
+        });
+        notifyLogListeners("Log configuration is changed by snapshot. Current configuration url=", getCurrentConfigurationUrl());
+        notifyLogListeners(() -> new GSXMLContext(document).prettyprint());
+        return this;
+    }
+
+    /**
+     * Resets the configuration from a file and reloads it (by {@link #reset(File)}) when the file or one of the files
+     * it includes is changed. The files are watched by the file system instead of being polled,
+     * so scanning (scan='true') is disabled. Changes made by other clients of a network file system are not seen by the
+     * watching on Linux, so such files should also be polled (see {@link #setWatchPollMillis(long)})
+     * <p>
+     * The watching stops by {@link #stopWatching()}, or when the configuration is reset from another file
+     */
+    public GSLogbackConfigurator watch(File file) {
+        URL url = toURL(file);
+        LoggerContext context = getContext();
+        synchronized (context.getConfigurationLock()) {
+            stopWatching();
+            reset(file);
+            cancelScan(context);
+            try {
+                GSLogbackConfigurationWatcher[] watcher = new GSLogbackConfigurationWatcher[1]; // Set before a reload since the lock is held
+                watcher[0] = new GSLogbackConfigurationWatcher(context, watchDebounceMillis, watchPollMillis, () -> {
+                    synchronized (context.getConfigurationLock()) {
+                        if (getContextState().getWatcher() != watcher[0]) {
+                            watcher[0].stop(); // The watching is stopped or replaced
+                            return;
+                        }
+                        if (!url.equals(getCurrentConfigurationUrl())) {
+                            stopWatching();
+                            return;
+                        }
+                        notifyLogListeners("Log configuration file is changed. Reloading ", url);
+                        reset(file);
+                        cancelScan(context);
+                    }
+                });
+                getContextState().setWatcher(watcher[0]);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot watch " + file, e);
+            }
+        }
+        notifyLogListeners("Log configuration is watched. Current configuration url=", url);
+        return this;
+    }
+
+    public GSLogbackConfigurator stopWatching() {
+        GSLogbackConfigurationWatcher watcher = getContextState().setWatcher(null);
+        if (watcher != null) {
+            watcher.stop();
+        }
+        return this;
+    }
+
+    /**
+     * Applies changes of the root level, the pattern and the console and file toggles of {@link GSLogbackProperties}
+     * to the running configuration as they are set, without configuring again (see {@link GSLogbackLiveUpdater}).
+     * The updates continue through reconfigurations until {@link #stopLiveUpdates()}
+     */
+    public GSLogbackConfigurator startLiveUpdates() {
+        LoggerContext context = getContext();
+        synchronized (context.getConfigurationLock()) {
+            if (getLiveUpdater(context) == null) {
+                new GSLogbackLiveUpdater(context, this).start();
+            }
+        }
+        return this;
+    }
+
+    public GSLogbackConfigurator stopLiveUpdates() {
+        GSLogbackLiveUpdater liveUpdater = getLiveUpdater(getContext());
+        if (liveUpdater != null) {
+            liveUpdater.stop();
+        }
+        return this;
+    }
+
+    private GSLogbackLiveUpdater getLiveUpdater(LoggerContext context) {
+        return (GSLogbackLiveUpdater) context.getCopyOfListenerList().stream()
+                .filter(l -> l instanceof GSLogbackLiveUpdater)
+                .findFirst()
+                .orElse(null);
+    }
+
+    private void cancelScan(LoggerContext context) {
+        if (GSLogbackConfigurationWatcher.cancelScan(context)) {
+            notifyLogListeners(() -> "Log configuration uses scan. Scanning is disabled since the files are watched");
+        }
+    }
+
     public GSLogbackConfigurator reset() {
         return configure(true);
     }
@@ -85,9 +306,9 @@ public class GSLogbackConfigurator {
     }
 
 
-    interface ConfiguratorConsumer extends Consumer<JoranConfigurator> {
+    interface ConfiguratorConsumer extends Consumer<GSLogbackJoranConfigurator> {
         @Override
-        default void accept(JoranConfigurator joranConfigurator) {
+        default void accept(GSLogbackJoranConfigurator joranConfigurator) {
             try {
                 acceptThrowsJoranException(joranConfigurator);
             } catch (JoranException e) {
@@ -95,60 +316,146 @@ public class GSLogbackConfigurator {
             }
         }
 
-        void acceptThrowsJoranException(JoranConfigurator joranConfigurator) throws JoranException;
+        void acceptThrowsJoranException(GSLogbackJoranConfigurator joranConfigurator) throws JoranException;
     }
 
     private GSLogbackConfigurator configure(boolean reset, Document document) {
-        GSXMLContext gsxmlContext = new GSXMLContext(document);
-        configure(reset, gsxmlContext.getInputStream());
-        logListeners.forEach(l -> l.accept(gsxmlContext.prettyprint()));
+        Document snapshot = null;
+        synchronized (getContext().getConfigurationLock()) {
+            configure(reset, c -> doConfigure(c, document));
+            if (reset || !logListeners.isEmpty()) {
+                snapshot = (Document) document.cloneNode(true); // The caller may change the document after the call
+                if (reset) {
+                    getContext().putObject(APPLIED_DOCUMENT, snapshot);
+                }
+            }
+        }
+        notifyLogListeners("Log configuration is changed by document. Current configuration url=", getCurrentConfigurationUrl());
+        if (snapshot != null) {
+            Document printed = snapshot;
+            notifyLogListeners(() -> new GSXMLContext(printed).prettyprint());
+        }
         return this;
     }
 
     private GSLogbackConfigurator configure(boolean reset, URL url) {
-        configure(reset, c -> c.doConfigure(url));
-        logListeners.forEach(l -> l.accept("Log configuration is changed by url. Current configuration url=" + getCurrentConfigurationUrl()));
-        GSXMLContext gsxmlContext = new GSXMLContext();
-        gsxmlContext.parseFile(new File(url.getFile()));
-        logListeners.forEach(l -> l.accept(gsxmlContext.prettyprint()));
+        configure(reset, c -> doConfigure(c, url));
+        Document document = getDocument(new File(url.getFile())); // Fails as a parse of the file, though it is printed lazily
+        notifyLogListeners("Log configuration is changed by url. Current configuration url=", getCurrentConfigurationUrl());
+        notifyLogListeners(() -> new GSXMLContext(document).prettyprint());
         return this;
     }
 
-    private GSLogbackConfigurator configure(boolean reset, File file) {
-        configure(reset, c -> c.doConfigure(file));
-        logListeners.forEach(l -> l.accept("Log configuration is changed by file. Current configuration url=" + getCurrentConfigurationUrl()));
-        GSXMLContext gsxmlContext = new GSXMLContext();
-        gsxmlContext.parseFile(file);
-        logListeners.forEach(l -> l.accept(gsxmlContext.prettyprint()));
+    private GSLogbackConfigurator configure(boolean reset, Configurator configurator) {
+        configure(reset, c -> {
+            configurator.setContext(c.getContext());
+            configurator.configure((LoggerContext) c.getContext());
+        });
+        notifyLogListeners("Log configuration is changed by " + configurator.getClass().getName() + ". Current configuration url=", getCurrentConfigurationUrl());
         return this;
     }
 
-    private GSLogbackConfigurator configure(boolean reset, InputStream inputStream) {
-        configure(reset, c -> c.doConfigure(inputStream));
-        logListeners.forEach(l -> l.accept("Log configuration is changed by input stream. Current configuration url=" + getCurrentConfigurationUrl()));
+    private GSLogbackConfigurator configure(boolean reset, File file) {
+        configure(reset, c -> doConfigure(c, toURL(file)));
+        Document document = getDocument(file); // Fails as a parse of the file, though it is printed lazily
+        notifyLogListeners("Log configuration is changed by file. Current configuration url=", getCurrentConfigurationUrl());
+        notifyLogListeners(() -> new GSXMLContext(document).prettyprint());
         return this;
     }
 
+    /**
+     * Configures from a document by {@link GSLogbackDirectConfigurator} if enabled and possible, else by Joran
+     *
+     * @return The appenders created. Appender name to appender
+     */
+    private Map<String, Appender<ILoggingEvent>> doConfigure(GSLogbackJoranConfigurator configurator, Document document) throws JoranException {
+        if (isDirectConfiguration && GSLogbackDirectConfigurator.isApplicable(document)) {
+            return new GSLogbackDirectConfigurator((LoggerContext) configurator.getContext()).configure(document);
+        }
+        if (isResolveIncludes) {
+            configurator.doConfigureResolved(document);
+        } else {
+            configurator.doConfigure(document);
+        }
+        return configurator.getAppenderBag();
+    }
+
+    private void doConfigure(GSLogbackJoranConfigurator configurator, URL url) throws JoranException {
+        if (isResolveIncludes) {
+            configurator.doConfigureResolved(url);
+        } else {
+            configurator.doConfigureCached(url);
+        }
+    }
+
+    /**
+     * @return The parsed file. Usually cached by the configuration
+     * @throws UncheckedIOException If the file cannot be read
+     * @throws torsete.util.GSXMLContextException If the file cannot be parsed
+     */
+    private Document getDocument(File file) {
+        try {
+            return GSLogbackConfigurationCache.getInstance().get(file, getContext()).getDocument();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private URL toURL(File file) {
+        try {
+            return file.toURI().toURL();
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
     private GSLogbackConfigurator configure(boolean reset, ConfiguratorConsumer configuratorConsumer) {
-        StatusListener statusListener = null;
+        if (propertyResolver != null) {
+            Map<String, String> properties = propertyResolver.resolve();
+            ConfiguratorConsumer resolvedConfiguratorConsumer = configuratorConsumer;
+            configuratorConsumer = c -> {
+                properties.forEach(c.getContext()::putProperty);
+                c.getContext().putProperty(GSLogbackPropertyResolver.RESOLVED, "true");
+                publishResolvedProperties(properties);
+                resolvedConfiguratorConsumer.acceptThrowsJoranException(c);
+            };
+        }
         printRemainingErrorsOrWarnings();
         flushRemainingInfosErrorsOrWarnings();
 
-        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
-        statusListener = status ->
-                logListeners.forEach(l -> l.accept(getClass().getSimpleName() +
-                        ": " + status.getLevel() + "/" + status.getEffectiveLevel() +
-                        " " + status.getMessage() +
-                        " (" + status.getOrigin() + ")"
-                ));
+        LoggerContext context = getContext();
+        StatusListener statusListener = status -> {
+            if (status.getOrigin() instanceof GSLogListenerDispatcher) {
+                return; // A failing listener would fail again
+            }
+            notifyLogListeners(() -> getClass().getSimpleName() +
+                    ": " + status.getLevel() + "/" + status.getEffectiveLevel() +
+                    " " + status.getMessage() +
+                    " (" + status.getOrigin() + ")"
+            );
+        };
         context.getStatusManager().add(statusListener);
 
-        JoranConfigurator configurator = new JoranConfigurator();
-        configurator.setContext(context);
-        if (reset) {
-            context.reset();
+        synchronized (context.getConfigurationLock()) { // Concurrent reconfigurations are applied one at a time
+            if (reset && isSwapOnReset) {
+                swap(statusListener, configuratorConsumer);
+            } else {
+                GSLogbackJoranConfigurator configurator = new GSLogbackJoranConfigurator();
+                configurator.setContext(context);
+                if (reset) {
+                    LoggerContext oldStagingContext = getContextState().setStagingContext(null);
+                    reportRejectedEvents(context);
+                    context.reset();
+                    if (oldStagingContext != null) {
+                        oldStagingContext.stop(); // Its appenders are stopped by the reset
+                    }
+                } else {
+                    context.removeObject(APPLIED_DOCUMENT); // The result of adding is not known as a document
+                }
+                configuratorConsumer.accept(configurator);
+            }
         }
-        configuratorConsumer.accept(configurator);
+        GSLogbackProperties.refresh(); // The configuration may set properties of scope system
 
         printRemainingErrorsOrWarnings();
         flushRemainingInfosErrorsOrWarnings();
@@ -158,12 +465,43 @@ public class GSLogbackConfigurator {
         return this;
     }
 
+    /**
+     * The reset of the context detaches the appenders before it stops the turbo filters, so the events rejected by
+     * {@link GSRateLimitTurboFilter} are reported before it
+     */
+    private void reportRejectedEvents(LoggerContext context) {
+        context.getTurboFilterList().stream()
+                .filter(turboFilter -> turboFilter instanceof GSRateLimitTurboFilter)
+                .forEach(turboFilter -> ((GSRateLimitTurboFilter) turboFilter).reportRejected());
+    }
+
+    /**
+     * Builds the configuration in a staging context and swaps it into the current context
+     */
+    private void swap(StatusListener statusListener, ConfiguratorConsumer configuratorConsumer) {
+        LoggerContext context = getContext();
+        GSLogbackConfigurationSwap swap = new GSLogbackConfigurationSwap(context, swapDrainMillis);
+        LoggerContext stagingContext = swap.newStagingContext();
+        stagingContext.getStatusManager().add(statusListener);
+
+        GSLogbackJoranConfigurator configurator = new GSLogbackJoranConfigurator();
+        configurator.setContext(stagingContext);
+        configuratorConsumer.accept(configurator);
+        StatusPrinter.printInCaseOfErrorsOrWarnings(stagingContext);
+        stagingContext.getStatusManager().remove(statusListener);
+
+        if (swap.cancelScheduledTasks(stagingContext)) {
+            notifyLogListeners(() -> "Log configuration uses scan. Scanning is disabled when the configuration is swapped");
+        }
+        swap.swap(stagingContext, getContextState().setStagingContext(stagingContext));
+        context.removeObject(APPLIED_DOCUMENT);
+    }
+
     /**
      * Flush (and ignore) non reported loggings (infos, errors and warnings)
      */
     public GSLogbackConfigurator flushRemainingInfosErrorsOrWarnings() {
-        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
-        context.getStatusManager().clear();
+        getContext().getStatusManager().clear();
         return this;
     }
 
@@ -171,8 +509,7 @@ public class GSLogbackConfigurator {
      * Print non reported errors and warnings
      */
     public GSLogbackConfigurator printRemainingErrorsOrWarnings() {
-        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
-        StatusPrinter.printInCaseOfErrorsOrWarnings(context);
+        StatusPrinter.printInCaseOfErrorsOrWarnings(getContext());
         return this;
     }
 
@@ -182,7 +519,52 @@ public class GSLogbackConfigurator {
      * @return Null if such a file is not present (ie. in case of a purely programmatically cobfiguration)
      */
     public URL getCurrentConfigurationUrl() {
-        return ConfigurationWatchListUtil.getMainWatchURL((LoggerContext) LoggerFactory.getILoggerFactory());
+        return ConfigurationWatchListUtil.getMainWatchURL(getContext());
+    }
+
+    private LoggerContext getContext() {
+        return context != null ? context : (LoggerContext) LoggerFactory.getILoggerFactory();
+    }
+
+    ContextState getContextState() {
+        synchronized (contextStates) {
+            return contextStates.computeIfAbsent(getContext(), c -> new ContextState());
+        }
+    }
+
+    /**
+     * State of the configurations of a context, shared by the configurators of the context
+     */
+    static class ContextState {
+        private LoggerContext stagingContext;
+        private GSLogbackConfigurationWatcher watcher;
+
+        /**
+         * @param stagingContext The staging context owning the appenders in use (see {@link #setSwapOnReset(boolean)}).
+         *                       Null if none
+         * @return The previous staging context. Null if none
+         */
+        synchronized LoggerContext setStagingContext(LoggerContext stagingContext) {
+            LoggerContext previousStagingContext = this.stagingContext;
+            this.stagingContext = stagingContext;
+            return previousStagingContext;
+        }
+
+        /**
+         * @return The watcher started by {@link #watch(File)}. Null if none
+         */
+        synchronized GSLogbackConfigurationWatcher getWatcher() {
+            return watcher;
+        }
+
+        /**
+         * @return The previous watcher. Null if none
+         */
+        synchronized GSLogbackConfigurationWatcher setWatcher(GSLogbackConfigurationWatcher watcher) {
+            GSLogbackConfigurationWatcher previousWatcher = this.watcher;
+            this.watcher = watcher;
+            return previousWatcher;
+        }
     }
 
     class StatusPrinterPrintStream extends PrintStream {
@@ -192,10 +574,30 @@ public class GSLogbackConfigurator {
 
         @Override
         public void print(String s) {
-            Arrays.stream(s.split("\n")).forEach(line -> logListeners.forEach(l -> l.accept("StatusPrinter: " + line)));
+            Arrays.stream(s.split("\n")).forEach(line -> notifyLogListeners(() -> "StatusPrinter: " + line));
         }
     }
 
+    /**
+     * Waits until the messages to the log listeners so far have been delivered. The listeners are called on a background thread
+     *
+     * @return False if the messages were not delivered within the timeout
+     */
+    public boolean flushLogListeners(long timeoutMillis) {
+        return GSLogListenerDispatcher.getInstance().flush(timeoutMillis);
+    }
+
+    private void notifyLogListeners(String text, URL url) {
+        notifyLogListeners(() -> text + url);
+    }
+
+    /**
+     * Queues a message for the log listeners. The message is only rendered if there are listeners
+     */
+    void notifyLogListeners(Supplier<String> message) {
+        GSLogListenerDispatcher.getInstance().dispatch(logListeners, message, getContext());
+    }
+
     public GSLogbackConfigurator setReportToSystemOut(boolean enabled) {
         removeLogListner(systemOutListener);
         if (enabled) {
@@ -205,6 +607,93 @@ public class GSLogbackConfigurator {
         return this;
     }
 
+    /**
+     * Enables build-then-swap on reset: The new configuration is built and started in a separate LoggerContext
+     * and then swapped into the current one. Logging is not paused while the configuration is built,
+     * and the old appenders are stopped in the background after a drain period.
+     * <p>
+     * Scanning (scan='true') is disabled for swapped configurations
+     */
+    public GSLogbackConfigurator setSwapOnReset(boolean enabled) {
+        isSwapOnReset = enabled;
+        return this;
+    }
+
+    /**
+     * Sets the time the old appenders are kept running after a swap (see {@link #setSwapOnReset(boolean)})
+     */
+    public GSLogbackConfigurator setSwapDrainMillis(long drainMillis) {
+        swapDrainMillis = drainMillis;
+        return this;
+    }
+
+    /**
+     * Sets the time without changes before a watched configuration is reloaded (see {@link #watch(File)})
+     */
+    public GSLogbackConfigurator setWatchDebounceMillis(long debounceMillis) {
+        watchDebounceMillis = debounceMillis;
+        return this;
+    }
+
+    /**
+     * Sets the interval of polling the size and time of modification of watched files (see {@link #watch(File)}), in
+     * addition to the notifications of the file system. On Linux changes made by other clients of a network file system,
+     * eg. NFS, are not notified, so such files should be polled, eg. every 10 seconds. 0 (the default) if not polled
+     */
+    public GSLogbackConfigurator setWatchPollMillis(long pollMillis) {
+        watchPollMillis = pollMillis;
+        return this;
+    }
+
+    /**
+     * Enables resolving of includes before Joran runs (see {@link GSLogbackIncludeResolver}): The include graph is flattened
+     * into one document where each file is expanded only once, and include cycles are reported as errors.
+     * The flattened result of a file is cached.
+     * <p>
+     * Notice that a file included more than once is only evaluated the first time. Properties set between the includes
+     * do not give the second include another meaning
+     */
+    public GSLogbackConfigurator setResolveIncludes(boolean enabled) {
+        isResolveIncludes = enabled;
+        return this;
+    }
+
+    /**
+     * Enables configuration of documents through the Java API of Logback instead of Joran (see {@link GSLogbackDirectConfigurator}).
+     * It only applies to documents in the vocabulary of {@link GSLogbackConfigurationDocument}. Other documents are left to Joran
+     */
+    public GSLogbackConfigurator setDirectConfiguration(boolean enabled) {
+        isDirectConfiguration = enabled;
+        return this;
+    }
+
+    /**
+     * Sets a resolver of the properties. The resolved properties are put into the context before each configuration,
+     * so the configuration finds them without evaluating its own fallbacks. The assignable ones are also set as system properties,
+     * since gslog-properties.xml skips its fallbacks then (see {@link GSLogbackPropertyResolver#RESOLVED}). Null for none
+     */
+    public GSLogbackConfigurator setPropertyResolver(GSLogbackPropertyResolver propertyResolver) {
+        this.propertyResolver = propertyResolver;
+        return this;
+    }
+
+    /**
+     * Sets the resolved properties as system properties, as the fallbacks of gslog-properties.xml would have done
+     */
+    private void publishResolvedProperties(Map<String, String> properties) {
+        boolean isChanged = false;
+        for (GSLogbackProperties property : GSLogbackProperties.values()) {
+            String value = properties.get(property.getKey());
+            if (property.isAssignable() && value != null && !value.equals(System.getProperty(property.getKey()))) {
+                System.setProperty(property.getKey(), value);
+                isChanged = true;
+            }
+        }
+        if (isChanged) {
+            GSLogbackProperties.refresh();
+        }
+    }
+
     public GSLogbackConfigurator addLogListner(Consumer<String> logListener) {
         logListeners.add(logListener);
         return this;
@@ -0,0 +1,246 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.selector.ContextSelector;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * Logback {@link ContextSelector} with one LoggerContext per tenant, ie. per ({@link GSLogbackProperties#GSLOG_DATABASE},
+ * {@link GSLogbackProperties#GSLOG_SYSTEM}). It is installed by this VM argument:
+ * <pre>
+ * -Dlogback.ContextSelector=torsete.gslogback.GSLogbackContextSelector
+ * </pre>
+ * The tenant is bound to the current thread by {@link #setTenant(String, String)}. Loggers got while a tenant is bound
+ * belong to the context of the tenant. Without a tenant the default context is used.
+ * <p>
+ * The context of a tenant is created and configured when it is first selected. It is configured from the document made by
+ * the document factory (see {@link #setDocumentFactory(BiFunction)}). Each tenant has its own appenders, and hence its own files and locks.
+ * <p>
+ * A context that has not been used (no loggers got and nothing logged) for the idle time is evicted: Its appenders are stopped,
+ * so its files are closed. Loggers of an evicted context keep working, since the context is configured again when it is used again
+ */
+public class GSLogbackContextSelector implements ContextSelector {
+    private final static ThreadLocal<Tenant> currentTenant = new ThreadLocal<>();
+    private static volatile BiFunction<String, String, GSLogbackConfigurationDocument> documentFactory = GSLogbackContextSelector::newDocument;
+    private static volatile long idleMillis = 10 * 60 * 1000;
+
+    private final LoggerContext defaultContext;
+    private final Map<String, TenantContext> tenantContexts = new ConcurrentHashMap<>();
+    private ScheduledExecutorService evictionExecutor;
+
+    /**
+     * Called by Logback with the default context
+     */
+    public GSLogbackContextSelector(LoggerContext defaultContext) {
+        this.defaultContext = defaultContext;
+    }
+
+    /**
+     * Binds a tenant to the current thread
+     */
+    public static void setTenant(String database, String system) {
+        currentTenant.set(new Tenant(database, system));
+    }
+
+    public static void clearTenant() {
+        currentTenant.remove();
+    }
+
+    /**
+     * Runs with a tenant bound to the current thread, and restores the tenant bound before
+     */
+    public static void runAs(String database, String system, Runnable runnable) {
+        Tenant previousTenant = currentTenant.get();
+        setTenant(database, system);
+        try {
+            runnable.run();
+        } finally {
+            currentTenant.set(previousTenant);
+        }
+    }
+
+    /**
+     * Sets the factory of the configuration of a tenant (database, system) -&gt; document.
+     * The default configures a file appender per tenant (see {@link #newDocument(String, String)})
+     */
+    public static void setDocumentFactory(BiFunction<String, String, GSLogbackConfigurationDocument> factory) {
+        documentFactory = factory;
+    }
+
+    /**
+     * Sets the time a context may be unused before it is evicted. To be set before the first tenant is selected
+     */
+    public static void setIdleMillis(long millis) {
+        idleMillis = millis;
+    }
+
+    /**
+     * Makes the default configuration of a tenant: A file appender on the log file of {@link GSLogbackProperties}
+     * with the database and the system added to the file name
+     */
+    static GSLogbackConfigurationDocument newDocument(String database, String system) {
+        String folderName = Optional.ofNullable(GSLogbackProperties.GSLOG_FOLDER_NAME.getValue()).orElse(".");
+        String fileName = Optional.ofNullable(GSLogbackProperties.GSLOG_FILE_NAME.getValue()).orElse("gslog");
+        String extension = Optional.ofNullable(GSLogbackProperties.GSLOG_FILE_NAME_EXTENSION.getValue()).orElse(".out.log");
+        return new GSLogbackConfigurationDocument("configuration")
+                .setFilenameWithExtension(folderName + File.separator + fileName + "-" + database + "-" + system + extension)
+                .setRootLevel(Optional.ofNullable(GSLogbackProperties.GSLOG_ROOT_LEVEL.getValue()).orElse("info"))
+                .addRootLogger();
+    }
+
+    @Override
+    public LoggerContext getLoggerContext() {
+        Tenant tenant = currentTenant.get();
+        if (tenant == null) {
+            return defaultContext;
+        }
+        TenantContext tenantContext = tenantContexts.get(tenant.name);
+        if (tenantContext == null) {
+            tenantContext = tenantContexts.computeIfAbsent(tenant.name, name -> new TenantContext(tenant));
+            startEviction();
+        }
+        return tenantContext.use();
+    }
+
+    @Override
+    public LoggerContext getLoggerContext(String name) {
+        if (defaultContext.getName().equals(name)) {
+            return defaultContext;
+        }
+        TenantContext tenantContext = tenantContexts.get(name);
+        return tenantContext == null ? null : tenantContext.context;
+    }
+
+    @Override
+    public LoggerContext getDefaultLoggerContext() {
+        return defaultContext;
+    }
+
+    @Override
+    public LoggerContext detachLoggerContext(String loggerContextName) {
+        TenantContext tenantContext = tenantContexts.remove(loggerContextName);
+        if (tenantContext == null) {
+            return null;
+        }
+        tenantContext.context.stop();
+        return tenantContext.context;
+    }
+
+    @Override
+    public List<String> getContextNames() {
+        List<String> names = new ArrayList<>();
+        names.add(defaultContext.getName());
+        names.addAll(tenantContexts.keySet());
+        return names;
+    }
+
+    private synchronized void startEviction() {
+        if (evictionExecutor != null) {
+            return;
+        }
+        evictionExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, getClass().getSimpleName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        long millis = idleMillis;
+        evictionExecutor.scheduleWithFixedDelay(() -> tenantContexts.values().forEach(TenantContext::evictIfIdle),
+                millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    private static class Tenant {
+        private final String database;
+        private final String system;
+        private final String name;
+
+        Tenant(String database, String system) {
+            this.database = database;
+            this.system = system;
+            name = database + "/" + system;
+        }
+    }
+
+    private static class TenantContext {
+        private final Tenant tenant;
+        private final LoggerContext context = new LoggerContext();
+        private volatile boolean isUsed;
+        private volatile boolean isConfigured;
+        private boolean isConfiguring;
+
+        TenantContext(Tenant tenant) {
+            this.tenant = tenant;
+            context.setName(tenant.name);
+        }
+
+        LoggerContext use() {
+            if (!isUsed) {
+                isUsed = true;
+            }
+            if (!isConfigured) {
+                configure();
+            }
+            return context;
+        }
+
+        private synchronized void configure() {
+            if (isConfigured || isConfiguring) {
+                return; // The configuration itself may get loggers
+            }
+            isConfiguring = true;
+            try {
+                new GSLogbackConfigurator(context).reset(documentFactory.apply(tenant.database, tenant.system));
+                UsageFilter usageFilter = new UsageFilter(this);
+                usageFilter.setContext(context);
+                usageFilter.start();
+                context.addTurboFilter(usageFilter);
+            } finally {
+                isConfiguring = false;
+                isConfigured = true;
+            }
+        }
+
+        synchronized void evictIfIdle() {
+            if (isUsed) {
+                isUsed = false;
+                return;
+            }
+            if (!isConfigured) {
+                return;
+            }
+            isConfigured = false;
+            context.getLoggerList().forEach(Logger::detachAndStopAllAppenders);
+        }
+    }
+
+    /**
+     * Marks the context as used when something is logged, and configures an evicted context again
+     */
+    private static class UsageFilter extends TurboFilter {
+        private final TenantContext tenantContext;
+
+        UsageFilter(TenantContext tenantContext) {
+            this.tenantContext = tenantContext;
+        }
+
+        @Override
+        public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+            tenantContext.use();
+            return FilterReply.NEUTRAL;
+        }
+    }
+}
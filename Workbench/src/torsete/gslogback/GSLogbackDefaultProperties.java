@@ -1,19 +1,149 @@
 package torsete.gslogback;
 
+import ch.qos.logback.core.util.CachingDateFormatter;
+
 import java.util.function.Function;
 
+/**
+ * The defaults of {@link GSLogbackProperties}. They are the same as the fallbacks of gslog-configuration.xml.
+ * The derived properties are given as templates with references to other properties (see {@link GSLogbackPropertyResolver}).
+ * Every property has an explicit default. A property without one is an error
+ */
 public class GSLogbackDefaultProperties implements Function<GSLogbackProperties, String> {
+    private final static String FILE_NAME_TIMESTAMP = new CachingDateFormatter("yyyy-MM-dd_HH-mm-ss-SSS").format(System.currentTimeMillis());
 
     @Override
     public String apply(GSLogbackProperties property) {
-        Function<GSLogbackProperties, String> defaultValue = p -> "";
+        Function<GSLogbackProperties, String> defaultValue;
         switch (property) {
+            case LOGBACK_CONFIGURATION_FILE:
+                defaultValue = p -> null;
+                break;
+            case GSLOG_ROOT_LEVEL:
+                defaultValue = p -> "info";
+                break;
+            case GSLOG_CONSOLE:
+                defaultValue = p -> "false";
+                break;
+            case GSLOG_FILE:
+                defaultValue = p -> "true";
+                break;
             case GSLOG_DATABASE:
                 defaultValue = p -> "Generel";
                 break;
-            default:
+            case GSLOG_ENVIRONMENT:
+            case GSLOG_VERSION:
+            case GSLOG_SYSTEM:
+            case GSLOG_APPLICATION:
+            case GSLOG_ADDITIONAL_FILE_NAME:
+                defaultValue = p -> "_"; // A placeholder in the folder and file names
+                break;
+            case GSLOG_SERVER:
+                defaultValue = p -> "logs";
+                break;
+            case GSLOG_HOME:
+                defaultValue = p -> "home";
+                break;
+            case GSLOG_INCIDENT_HOME:
+                defaultValue = p -> "incidents";
+                break;
+            case GSLOG_USER:
+                defaultValue = p -> "${user.name}";
+                break;
+            case GSLOG_FILE_NAME_TIMSTAMP:
+                defaultValue = p -> FILE_NAME_TIMESTAMP; // One per VM, as the timestamp of gslog-configuration.xml
+                break;
+            case GSLOG_FILE_NAME_EXTENSION:
+                defaultValue = p -> ".out.log";
+                break;
+            case GSLOG_ERROR_FILE_NAME_EXTENSION:
+                defaultValue = p -> ".err.log";
+                break;
+            case GSLOG_INCIDENT_FILE_NAME_EXTENSION:
+                defaultValue = p -> ".incident.log";
+                break;
+            case GSLOG_PATTERN:
+                defaultValue = p -> "%d{yyyy-MM-dd HH:mm:ss.SSS} [%thread] %-5level %logger{36} - %msg%n";
+                break;
+            case GSLOG_ASYNC:
+            case GSLOG_ASYNC_NEVER_BLOCK:
+                defaultValue = p -> "false";
+                break;
+            case GSLOG_ASYNC_QUEUE_SIZE:
+                defaultValue = p -> "256";
+                break;
+            case GSLOG_ASYNC_DISCARDING_THRESHOLD:
+                defaultValue = p -> "-1"; // Logback's default, ie. a fifth of the queue size
+                break;
+            case GSLOG_ASYNC_MAX_FLUSH_TIME:
+                defaultValue = p -> "1000";
+                break;
+            case GSLOG_ROLLING:
                 defaultValue = p -> "false";
                 break;
+            case GSLOG_ROLLING_MAX_FILE_SIZE:
+                defaultValue = p -> "100MB";
+                break;
+            case GSLOG_ROLLING_DATE_PATTERN:
+                defaultValue = p -> "yyyy-MM-dd";
+                break;
+            case GSLOG_ROLLING_MAX_HISTORY:
+                defaultValue = p -> "30";
+                break;
+            case GSLOG_ROLLING_TOTAL_SIZE_CAP:
+                defaultValue = p -> "0"; // No cap
+                break;
+            case GSLOG_BUFFERED:
+                defaultValue = p -> "false";
+                break;
+            case GSLOG_BUFFER_SIZE:
+                defaultValue = p -> "256KB";
+                break;
+            case GSLOG_FLUSH_INTERVAL:
+                defaultValue = p -> "1000";
+                break;
+            case GSLOG_FLUSH_LEVEL:
+                defaultValue = p -> "warn";
+                break;
+            case GSLOG_MAPPED:
+            case GSLOG_BINARY:
+            case GSLOG_COMPRESS:
+            case GSLOG_FLIGHT_RECORDER:
+                defaultValue = p -> "false";
+                break;
+            case GSLOG_MAPPED_REGION_SIZE:
+                defaultValue = p -> "32MB";
+                break;
+            case GSLOG_FLIGHT_RECORDER_SIZE:
+                defaultValue = p -> "256";
+                break;
+            case GSLOG_FLIGHT_RECORDER_LEVEL:
+                defaultValue = p -> "debug";
+                break;
+            case GSLOG_FLIGHT_RECORDER_MDC_KEY:
+                defaultValue = p -> ""; // By thread
+                break;
+            case GSLOG_RATE_LIMITS:
+            case GSLOG_SAMPLING:
+                defaultValue = p -> ""; // No rules
+                break;
+            case GSLOG_HOST_NAME:
+                defaultValue = p -> "${HOSTNAME}";
+                break;
+            case GSLOG_CONTEXT_NAME:
+                defaultValue = p -> "${CONTEXT_NAME}";
+                break;
+            case GSLOG_FOLDER_NAME:
+                defaultValue = p -> "${gslog.server}/${gslog.home}/${gslog.version}/${gslog.environment}/${gslog.database}/${gslog.system}";
+                break;
+            case GSLOG_INCIDENT_FOLDER_NAME:
+                defaultValue = p -> "${gslog.server}/${gslog.incidentHome}/${gslog.version}/${gslog.environment}/${gslog.database}/${gslog.system}";
+                break;
+            case GSLOG_FILE_NAME:
+                defaultValue = p -> "${gslog.user}-${gslog.application}-${gslog.database}-${gslog.system}-${gslog.additionalFileName}-${gslog.fileNameTimestamp}";
+                break;
+            default:
+                throw new IllegalArgumentException(property.name() + " ('" + property.getKey() + "') has no default");
         }
         return defaultValue.apply(property);
     }
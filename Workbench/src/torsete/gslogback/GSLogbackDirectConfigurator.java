@@ -0,0 +1,443 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.filter.LevelFilter;
+import ch.qos.logback.classic.filter.ThresholdFilter;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.ConsoleAppender;
+import ch.qos.logback.core.FileAppender;
+import ch.qos.logback.core.OutputStreamAppender;
+import ch.qos.logback.core.filter.Filter;
+import ch.qos.logback.core.spi.ContextAwareBase;
+import ch.qos.logback.core.spi.FilterReply;
+import ch.qos.logback.core.util.Duration;
+import ch.qos.logback.core.util.FileSize;
+import ch.qos.logback.core.util.OptionHelper;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Configures Logback from the vocabulary of {@link GSLogbackConfigurationDocument} through the Java API of Logback,
+ * ie. without Joran's rules, actions and reflection.
+ * <p>
+ * The vocabulary is:
+ * <ul>
+ * <li>appender (FileAppender or ConsoleAppender) with file, encoder/pattern and filter (LevelFilter or ThresholdFilter)
+ * <li>appender ({@link GSFanOutFileAppender}) with sink/file, level and logger, buffered, bufferSize, flushInterval, flushLevel,
+ * compress, encoder/pattern and filter
+ * <li>logger with level, additivity and appender-ref
+ * <li>root with level and appender-ref
+ * <li>turboFilter ({@link GSLevelTurboFilter}) with rule/logger, level, mdcKey and mdcValue
+ * <li>turboFilter ({@link GSRateLimitTurboFilter}) with rule/logger, maxPerSecond and sampling
+ * <li>turboFilter ({@link GSFlightRecorderTurboFilter}) with size, level, mdcKey, triggerLevel, triggerLogger and appenderName
+ * </ul>
+ * Other documents are not applicable (see {@link #isApplicable(Node)}) and must be left to Joran
+ */
+class GSLogbackDirectConfigurator extends ContextAwareBase {
+    private final static List<String> APPENDER_CLASSES = Arrays.asList(FileAppender.class.getName(), ConsoleAppender.class.getName(),
+            GSFanOutFileAppender.class.getName());
+    private final static List<String> FAN_OUT_SETTINGS = Arrays.asList("buffered", "bufferSize", "flushInterval", "flushLevel", "compress");
+    private final static List<String> FILTER_CLASSES = Arrays.asList(LevelFilter.class.getName(), ThresholdFilter.class.getName());
+    private final static String[] FLIGHT_RECORDER_SETTINGS = {"size", "level", "mdcKey", "triggerLevel", "triggerLogger", "appenderName"};
+
+    private final LoggerContext loggerContext;
+
+    GSLogbackDirectConfigurator(LoggerContext loggerContext) {
+        this.loggerContext = loggerContext;
+        setContext(loggerContext);
+    }
+
+    /**
+     * @param node A document or its document element
+     * @return True if the document only uses the vocabulary of {@link GSLogbackConfigurationDocument}
+     */
+    static boolean isApplicable(Node node) {
+        Element root = getRoot(node);
+        if (!Arrays.asList("configuration", "included").contains(root.getNodeName()) || root.getAttributes().getLength() > 0) {
+            return false;
+        }
+        for (Element element : getChildElements(root)) {
+            switch (element.getNodeName()) {
+                case "appender":
+                    if (!isApplicableAppender(element)) {
+                        return false;
+                    }
+                    break;
+                case "logger":
+                case "root":
+                    if (!hasOnlyChildren(element, "appender-ref")) {
+                        return false;
+                    }
+                    break;
+                case "turboFilter":
+                    if (!isApplicableTurboFilter(element)) {
+                        return false;
+                    }
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Configures in document order, as Joran would do. Problems are reported as errors to the context, as Joran would do
+     *
+     * @param node A document or its document element. Must be applicable
+     * @return The appenders created. Appender name to appender
+     */
+    Map<String, Appender<ILoggingEvent>> configure(Node node) {
+        Map<String, Appender<ILoggingEvent>> appenders = new HashMap<>();
+        for (Element element : getChildElements(getRoot(node))) {
+            switch (element.getNodeName()) {
+                case "appender":
+                    Appender<ILoggingEvent> appender = createAppender(element);
+                    appenders.put(appender.getName(), appender);
+                    break;
+                case "logger":
+                    Logger logger = loggerContext.getLogger(subst(element.getAttribute("name")));
+                    configureLogger(logger, element, appenders);
+                    if (element.hasAttribute("additivity")) {
+                        logger.setAdditive(OptionHelper.toBoolean(subst(element.getAttribute("additivity")), true));
+                    }
+                    break;
+                case "root":
+                    configureLogger(loggerContext.getLogger(Logger.ROOT_LOGGER_NAME), element, appenders);
+                    break;
+                case "turboFilter":
+                    if (GSRateLimitTurboFilter.class.getName().equals(element.getAttribute("class"))) {
+                        loggerContext.addTurboFilter(createRateLimitTurboFilter(element));
+                    } else if (GSFlightRecorderTurboFilter.class.getName().equals(element.getAttribute("class"))) {
+                        loggerContext.addTurboFilter(createFlightRecorderTurboFilter(element));
+                    } else {
+                        loggerContext.addTurboFilter(createLevelTurboFilter(element));
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return appenders;
+    }
+
+    private static boolean isApplicableTurboFilter(Element turboFilterElement) {
+        String[] ruleChildren;
+        if (GSLevelTurboFilter.class.getName().equals(turboFilterElement.getAttribute("class"))) {
+            ruleChildren = new String[]{"logger", "level", "mdcKey", "mdcValue"};
+        } else if (GSRateLimitTurboFilter.class.getName().equals(turboFilterElement.getAttribute("class"))) {
+            ruleChildren = new String[]{"logger", "maxPerSecond", "sampling"};
+        } else if (GSFlightRecorderTurboFilter.class.getName().equals(turboFilterElement.getAttribute("class"))) {
+            return hasOnlyChildren(turboFilterElement, FLIGHT_RECORDER_SETTINGS);
+        } else {
+            return false;
+        }
+        return hasOnlyChildren(turboFilterElement, "rule")
+                && getChildElements(turboFilterElement).stream().allMatch(rule -> hasOnlyChildren(rule, ruleChildren));
+    }
+
+    private static boolean isApplicableAppender(Element appenderElement) {
+        String className = appenderElement.getAttribute("class");
+        if (!APPENDER_CLASSES.contains(className) || !appenderElement.hasAttribute("name")) {
+            return false;
+        }
+        boolean isFanOut = GSFanOutFileAppender.class.getName().equals(className);
+        for (Element element : getChildElements(appenderElement)) {
+            switch (element.getNodeName()) {
+                case "file":
+                    if (!FileAppender.class.getName().equals(className)) {
+                        return false;
+                    }
+                    break;
+                case "sink":
+                    if (!isFanOut || !hasOnlyChildren(element, "file", "level", "logger")) {
+                        return false;
+                    }
+                    break;
+                case "buffered":
+                case "bufferSize":
+                case "flushInterval":
+                case "flushLevel":
+                case "compress":
+                    if (!isFanOut) {
+                        return false;
+                    }
+                    break;
+                case "encoder":
+                    if (!hasOnlyChildren(element, "pattern")
+                            || element.hasAttribute("class") && !PatternLayoutEncoder.class.getName().equals(element.getAttribute("class"))) {
+                        return false;
+                    }
+                    break;
+                case "filter":
+                    if (!FILTER_CLASSES.contains(element.getAttribute("class")) || !hasOnlyChildren(element, "level", "onMatch", "onMismatch")) {
+                        return false;
+                    }
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private Appender<ILoggingEvent> createAppender(Element appenderElement) {
+        String className = appenderElement.getAttribute("class");
+        OutputStreamAppender<ILoggingEvent> appender = FileAppender.class.getName().equals(className) ? new FileAppender<>()
+                : GSFanOutFileAppender.class.getName().equals(className) ? new GSFanOutFileAppender()
+                : new ConsoleAppender<>();
+        appender.setContext(loggerContext);
+        appender.setName(subst(appenderElement.getAttribute("name")));
+        for (Element element : getChildElements(appenderElement)) {
+            switch (element.getNodeName()) {
+                case "file":
+                    ((FileAppender<ILoggingEvent>) appender).setFile(getText(element));
+                    break;
+                case "encoder":
+                    PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+                    encoder.setContext(loggerContext);
+                    for (Element patternElement : getChildElements(element)) {
+                        encoder.setPattern(getText(patternElement));
+                    }
+                    encoder.start();
+                    appender.setEncoder(encoder);
+                    break;
+                case "filter":
+                    appender.addFilter(createFilter(element));
+                    break;
+                case "sink":
+                    ((GSFanOutFileAppender) appender).addSink(createSink(element));
+                    break;
+                default:
+                    if (FAN_OUT_SETTINGS.contains(element.getNodeName())) {
+                        setFanOutSetting((GSFanOutFileAppender) appender, element.getNodeName(), getText(element));
+                    }
+                    break;
+            }
+        }
+        appender.start();
+        return appender;
+    }
+
+    private GSFanOutFileAppender.Sink createSink(Element sinkElement) {
+        GSFanOutFileAppender.Sink sink = new GSFanOutFileAppender.Sink();
+        for (Element element : getChildElements(sinkElement)) {
+            switch (element.getNodeName()) {
+                case "file":
+                    sink.setFile(getText(element));
+                    break;
+                case "level":
+                    sink.setLevel(getText(element));
+                    break;
+                case "logger":
+                    sink.setLogger(getText(element));
+                    break;
+                default:
+                    break;
+            }
+        }
+        return sink;
+    }
+
+    /**
+     * Converts the values as Joran would do. A value that cannot be converted is reported as an error and ignored
+     */
+    private void setFanOutSetting(GSFanOutFileAppender appender, String name, String value) {
+        try {
+            switch (name) {
+                case "buffered":
+                    appender.setBuffered(Boolean.parseBoolean(value));
+                    break;
+                case "bufferSize":
+                    appender.setBufferSize(FileSize.valueOf(value));
+                    break;
+                case "flushInterval":
+                    appender.setFlushInterval(Duration.valueOf(value));
+                    break;
+                case "flushLevel":
+                    appender.setFlushLevel(value);
+                    break;
+                case "compress":
+                    appender.setCompress(Boolean.parseBoolean(value));
+                    break;
+                default:
+                    break;
+            }
+        } catch (IllegalArgumentException e) {
+            addError("The " + name + " of the appender named [" + appender.getName() + "] is not valid: " + value, e);
+        }
+    }
+
+    private Filter<ILoggingEvent> createFilter(Element filterElement) {
+        Map<String, String> values = new HashMap<>();
+        getChildElements(filterElement).forEach(element -> values.put(element.getNodeName(), getText(element)));
+        Filter<ILoggingEvent> filter;
+        if (LevelFilter.class.getName().equals(filterElement.getAttribute("class"))) {
+            LevelFilter levelFilter = new LevelFilter();
+            levelFilter.setLevel(Level.toLevel(values.get("level")));
+            if (values.containsKey("onMatch")) {
+                levelFilter.setOnMatch(FilterReply.valueOf(values.get("onMatch").toUpperCase()));
+            }
+            if (values.containsKey("onMismatch")) {
+                levelFilter.setOnMismatch(FilterReply.valueOf(values.get("onMismatch").toUpperCase()));
+            }
+            filter = levelFilter;
+        } else {
+            ThresholdFilter thresholdFilter = new ThresholdFilter();
+            thresholdFilter.setLevel(values.get("level"));
+            filter = thresholdFilter;
+        }
+        filter.setContext(loggerContext);
+        filter.start();
+        return filter;
+    }
+
+    private GSLevelTurboFilter createLevelTurboFilter(Element turboFilterElement) {
+        GSLevelTurboFilter turboFilter = new GSLevelTurboFilter();
+        turboFilter.setContext(loggerContext);
+        for (Element ruleElement : getChildElements(turboFilterElement)) {
+            GSLevelTurboFilter.Rule rule = new GSLevelTurboFilter.Rule();
+            for (Element element : getChildElements(ruleElement)) {
+                switch (element.getNodeName()) {
+                    case "logger":
+                        rule.setLogger(getText(element));
+                        break;
+                    case "level":
+                        rule.setLevel(getText(element));
+                        break;
+                    case "mdcKey":
+                        rule.setMdcKey(getText(element));
+                        break;
+                    case "mdcValue":
+                        rule.setMdcValue(getText(element));
+                        break;
+                    default:
+                        break;
+                }
+            }
+            turboFilter.addRule(rule);
+        }
+        turboFilter.start();
+        return turboFilter;
+    }
+
+    private GSRateLimitTurboFilter createRateLimitTurboFilter(Element turboFilterElement) {
+        GSRateLimitTurboFilter turboFilter = new GSRateLimitTurboFilter();
+        turboFilter.setContext(loggerContext);
+        for (Element ruleElement : getChildElements(turboFilterElement)) {
+            GSRateLimitTurboFilter.Rule rule = new GSRateLimitTurboFilter.Rule();
+            try {
+                for (Element element : getChildElements(ruleElement)) {
+                    switch (element.getNodeName()) {
+                        case "logger":
+                            rule.setLogger(getText(element));
+                            break;
+                        case "maxPerSecond":
+                            rule.setMaxPerSecond(Integer.parseInt(getText(element)));
+                            break;
+                        case "sampling":
+                            rule.setSampling(Double.parseDouble(getText(element)));
+                            break;
+                        default:
+                            break;
+                    }
+                }
+            } catch (NumberFormatException e) {
+                addError("A rule of the turbo filter (logger " + rule.getLogger() + ") is not a number.", e);
+                continue;
+            }
+            turboFilter.addRule(rule);
+        }
+        turboFilter.start();
+        return turboFilter;
+    }
+
+    private GSFlightRecorderTurboFilter createFlightRecorderTurboFilter(Element turboFilterElement) {
+        GSFlightRecorderTurboFilter turboFilter = new GSFlightRecorderTurboFilter();
+        turboFilter.setContext(loggerContext);
+        for (Element element : getChildElements(turboFilterElement)) {
+            switch (element.getNodeName()) {
+                case "size":
+                    try {
+                        turboFilter.setSize(Integer.parseInt(getText(element)));
+                    } catch (NumberFormatException e) {
+                        addError("The size of the turbo filter is not a number.", e);
+                    }
+                    break;
+                case "level":
+                    turboFilter.setLevel(getText(element));
+                    break;
+                case "mdcKey":
+                    turboFilter.setMdcKey(getText(element));
+                    break;
+                case "triggerLevel":
+                    turboFilter.setTriggerLevel(getText(element));
+                    break;
+                case "triggerLogger":
+                    turboFilter.setTriggerLogger(getText(element));
+                    break;
+                case "appenderName":
+                    turboFilter.setAppenderName(getText(element));
+                    break;
+                default:
+                    break;
+            }
+        }
+        turboFilter.start();
+        return turboFilter;
+    }
+
+    private void configureLogger(Logger logger, Element loggerElement, Map<String, Appender<ILoggingEvent>> appenders) {
+        if (loggerElement.hasAttribute("level")) {
+            String level = subst(loggerElement.getAttribute("level"));
+            boolean isInherited = "INHERITED".equalsIgnoreCase(level) || "NULL".equalsIgnoreCase(level);
+            logger.setLevel(isInherited && !Logger.ROOT_LOGGER_NAME.equals(logger.getName()) ? null : Level.toLevel(level, Level.DEBUG));
+        }
+        for (Element element : getChildElements(loggerElement)) {
+            String appenderName = subst(element.getAttribute("ref"));
+            Appender<ILoggingEvent> appender = appenders.get(appenderName);
+            if (appender == null) {
+                addError("Could not find an appender named [" + appenderName + "]. Did you define it below instead of above in the configuration file?");
+            } else {
+                logger.addAppender(appender);
+            }
+        }
+    }
+
+    private String getText(Element element) {
+        return subst(element.getTextContent().trim());
+    }
+
+    private String subst(String value) {
+        return OptionHelper.substVars(value, loggerContext);
+    }
+
+    private static Element getRoot(Node node) {
+        return node instanceof Document ? ((Document) node).getDocumentElement() : (Element) node;
+    }
+
+    private static boolean hasOnlyChildren(Element element, String... names) {
+        return getChildElements(element).stream().allMatch(child -> Arrays.asList(names).contains(child.getNodeName()));
+    }
+
+    private static List<Element> getChildElements(Element element) {
+        List<Element> elements = new ArrayList<>();
+        for (Node node = element.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                elements.add((Element) node);
+            }
+        }
+        return elements;
+    }
+}
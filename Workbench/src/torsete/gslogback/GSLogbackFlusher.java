@@ -0,0 +1,63 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Context;
+import ch.qos.logback.core.util.Duration;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flushes a buffered appender (see {@link GSBufferedFileAppender} and {@link GSFanOutFileAppender}):
+ * <ul>
+ * <li>Periodically by a task of the scheduled executor of the context, so at most the events of one flush interval are
+ * lost if the VM dies
+ * <li>At once after an event of the flush level or above, so eg. an error is in the file before the application goes on
+ * </ul>
+ */
+class GSLogbackFlusher {
+    private Duration flushInterval = Duration.buildByMilliseconds(1000);
+    private Level flushLevel = Level.WARN;
+    private ScheduledFuture<?> flushTask;
+
+    Duration getFlushInterval() {
+        return flushInterval;
+    }
+
+    /**
+     * @param flushInterval No periodic flush if zero
+     */
+    void setFlushInterval(Duration flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    String getFlushLevel() {
+        return flushLevel.toString();
+    }
+
+    /**
+     * @param flushLevel OFF if no event is to be flushed at once
+     */
+    void setFlushLevel(String flushLevel) {
+        this.flushLevel = Level.toLevel(flushLevel, Level.WARN);
+    }
+
+    boolean isFlushing(ILoggingEvent event) {
+        return event.getLevel().isGreaterOrEqual(flushLevel);
+    }
+
+    synchronized void start(Context context, Runnable flush) {
+        long milliseconds = flushInterval.getMilliseconds();
+        if (flushTask == null && milliseconds > 0) {
+            flushTask = context.getScheduledExecutorService().scheduleAtFixedRate(flush, milliseconds, milliseconds, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    synchronized void stop() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+    }
+}
@@ -0,0 +1,418 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.filter.LevelFilter;
+import ch.qos.logback.classic.filter.ThresholdFilter;
+import ch.qos.logback.classic.spi.Configurator;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.ConsoleAppender;
+import ch.qos.logback.core.FileAppender;
+import ch.qos.logback.core.OutputStreamAppender;
+import ch.qos.logback.core.rolling.RollingFileAppender;
+import ch.qos.logback.core.rolling.SizeAndTimeBasedRollingPolicy;
+import ch.qos.logback.core.spi.ContextAwareBase;
+import ch.qos.logback.core.spi.FilterReply;
+import ch.qos.logback.core.util.CachingDateFormatter;
+import ch.qos.logback.core.util.Duration;
+import ch.qos.logback.core.util.FileSize;
+import ch.qos.logback.core.util.OptionHelper;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Base class of the configurators generated by {@link GSLogbackCodeGenerator}.
+ * <p>
+ * A generated configurator is straight-line code calling the methods here. The methods have the semantics of the
+ * Joran elements they are generated from. Conditions of &lt;if&gt; elements are generated as they are, so the methods
+ * available to Joran's conditions ({@link #property(String)}, {@link #p(String)}, {@link #isDefined(String)} and
+ * {@link #isNull(String)}) are available here too.
+ * <p>
+ * A generated configurator is applied by {@link GSLogbackConfigurator#reset(Configurator)},
+ * or by Logback itself if it is registered as a {@link Configurator} service
+ */
+public abstract class GSLogbackGeneratedConfigurator extends ContextAwareBase implements Configurator {
+    private final static String IS_UNDEFINED = "_IS_UNDEFINED"; // As Joran
+    private final Map<String, String> localProperties = new HashMap<>();
+    private final Map<String, Appender<ILoggingEvent>> appenders = new HashMap<>();
+    private LoggerContext loggerContext;
+
+    @Override
+    public void configure(LoggerContext loggerContext) {
+        this.loggerContext = loggerContext;
+        setContext(loggerContext);
+        localProperties.clear();
+        appenders.clear();
+        configure();
+    }
+
+    /**
+     * The generated configuration
+     */
+    protected abstract void configure();
+
+    /**
+     * Looks up a property for a substitution like Joran does: Local, context, system and environment
+     *
+     * @param defaultValue The value after :- in the placeholder. Null if none
+     */
+    protected String value(String key, String defaultValue) {
+        String value = lookup(key);
+        if (value != null) {
+            return value;
+        }
+        return defaultValue != null ? defaultValue : key + IS_UNDEFINED;
+    }
+
+    /**
+     * Looks up one of {@link GSLogbackProperties} for a substitution. The system property is read, since
+     * the snapshot of {@link GSLogbackProperties} is not published before the configuration is done
+     */
+    protected String value(GSLogbackProperties property, String defaultValue) {
+        String value = localProperties.get(property.getKey());
+        if (value == null) {
+            value = loggerContext.getProperty(property.getKey());
+        }
+        if (value == null) {
+            value = System.getProperty(property.getKey());
+        }
+        if (value == null) {
+            value = System.getenv(property.getKey());
+        }
+        return value != null ? value : defaultValue != null ? defaultValue : property.getKey() + IS_UNDEFINED;
+    }
+
+    protected String property(String key) {
+        String value = lookup(key);
+        return value != null ? value : "";
+    }
+
+    protected String p(String key) {
+        return property(key);
+    }
+
+    protected boolean isDefined(String key) {
+        return lookup(key) != null;
+    }
+
+    protected boolean isNull(String key) {
+        return lookup(key) == null;
+    }
+
+    /**
+     * @param scope As the scope attribute of &lt;property&gt;
+     */
+    protected void setProperty(String scope, String key, String value) {
+        switch (scope.toLowerCase()) {
+            case "system":
+                OptionHelper.setSystemProperty(this, key, value);
+                break;
+            case "context":
+                loggerContext.putProperty(key, value);
+                break;
+            default:
+                localProperties.put(key, value);
+                break;
+        }
+    }
+
+    protected void timestamp(String scope, String key, String datePattern, boolean isContextBirth) {
+        long time = isContextBirth ? loggerContext.getBirthTime() : System.currentTimeMillis();
+        setProperty(scope, key, new CachingDateFormatter(datePattern).format(time));
+    }
+
+    protected FileAppender<ILoggingEvent> fileAppender(String name) {
+        return register(new FileAppender<>(), name);
+    }
+
+    protected RollingFileAppender<ILoggingEvent> rollingFileAppender(String name) {
+        return register(new RollingFileAppender<>(), name);
+    }
+
+    /**
+     * Sets a SizeAndTimeBasedRollingPolicy as the rolling policy. The file of the appender must be set before
+     *
+     * @param maxHistory   Null if not given
+     * @param totalSizeCap Null if not given
+     */
+    protected void sizeAndTimeBasedRollingPolicy(RollingFileAppender<ILoggingEvent> appender, String fileNamePattern,
+                                                 String maxFileSize, String maxHistory, String totalSizeCap) {
+        SizeAndTimeBasedRollingPolicy<ILoggingEvent> rollingPolicy = new SizeAndTimeBasedRollingPolicy<>();
+        rollingPolicy.setContext(loggerContext);
+        rollingPolicy.setParent(appender);
+        rollingPolicy.setFileNamePattern(fileNamePattern);
+        if (maxFileSize != null) {
+            rollingPolicy.setMaxFileSize(FileSize.valueOf(maxFileSize));
+        }
+        if (maxHistory != null) {
+            rollingPolicy.setMaxHistory(Integer.parseInt(maxHistory));
+        }
+        if (totalSizeCap != null) {
+            rollingPolicy.setTotalSizeCap(FileSize.valueOf(totalSizeCap));
+        }
+        rollingPolicy.start();
+        appender.setRollingPolicy(rollingPolicy);
+    }
+
+    protected GSFanOutFileAppender fanOutFileAppender(String name) {
+        return register(new GSFanOutFileAppender(), name);
+    }
+
+    /**
+     * @param level      Null if not given
+     * @param loggerName Null if not given
+     */
+    protected void sink(GSFanOutFileAppender appender, String file, String level, String loggerName) {
+        GSFanOutFileAppender.Sink sink = new GSFanOutFileAppender.Sink();
+        sink.setFile(file);
+        if (level != null) {
+            sink.setLevel(level);
+        }
+        sink.setLogger(loggerName);
+        appender.addSink(sink);
+    }
+
+    /**
+     * @param buffered      Null if not given
+     * @param bufferSize    Null if not given
+     * @param flushInterval Null if not given
+     * @param flushLevel    Null if not given
+     * @param compress      Null if not given
+     */
+    protected void bufferedWriting(GSFanOutFileAppender appender, String buffered, String bufferSize, String flushInterval, String flushLevel,
+                                   String compress) {
+        if (buffered != null) {
+            appender.setBuffered(OptionHelper.toBoolean(buffered, false));
+        }
+        if (bufferSize != null) {
+            appender.setBufferSize(FileSize.valueOf(bufferSize));
+        }
+        if (flushInterval != null) {
+            appender.setFlushInterval(Duration.valueOf(flushInterval));
+        }
+        if (flushLevel != null) {
+            appender.setFlushLevel(flushLevel);
+        }
+        if (compress != null) {
+            appender.setCompress(OptionHelper.toBoolean(compress, false));
+        }
+    }
+
+    protected ConsoleAppender<ILoggingEvent> consoleAppender(String name) {
+        return register(new ConsoleAppender<>(), name);
+    }
+
+    protected void encoder(OutputStreamAppender<ILoggingEvent> appender, String pattern) {
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(loggerContext);
+        encoder.setPattern(pattern);
+        encoder.start();
+        appender.setEncoder(encoder);
+    }
+
+    protected void thresholdFilter(OutputStreamAppender<ILoggingEvent> appender, String level) {
+        ThresholdFilter filter = new ThresholdFilter();
+        filter.setContext(loggerContext);
+        filter.setLevel(level);
+        filter.start();
+        appender.addFilter(filter);
+    }
+
+    protected void levelFilter(OutputStreamAppender<ILoggingEvent> appender, String level, String onMatch, String onMismatch) {
+        LevelFilter filter = new LevelFilter();
+        filter.setContext(loggerContext);
+        filter.setLevel(Level.toLevel(level));
+        if (onMatch != null) {
+            filter.setOnMatch(FilterReply.valueOf(onMatch.toUpperCase()));
+        }
+        if (onMismatch != null) {
+            filter.setOnMismatch(FilterReply.valueOf(onMismatch.toUpperCase()));
+        }
+        filter.start();
+        appender.addFilter(filter);
+    }
+
+    protected void start(Appender<ILoggingEvent> appender) {
+        appender.start();
+    }
+
+    protected AsyncAppender asyncAppender(String name) {
+        return register(new AsyncAppender(), name);
+    }
+
+    /**
+     * Adds the appender to the async appender. An async appender has one appender, so a second one is ignored with a warning as by Joran
+     */
+    protected void appenderRef(AsyncAppender asyncAppender, String appenderName) {
+        Appender<ILoggingEvent> appender = appenders.get(appenderName);
+        if (appender == null) {
+            addError("Could not find an appender named [" + appenderName + "]");
+        } else {
+            asyncAppender.addAppender(appender);
+        }
+    }
+
+    /**
+     * @param queueSize           Null if not given
+     * @param discardingThreshold Null if not given
+     * @param neverBlock          Null if not given
+     * @param maxFlushTime        Null if not given
+     */
+    protected void asyncSettings(AsyncAppender appender, String queueSize, String discardingThreshold, String neverBlock, String maxFlushTime) {
+        if (queueSize != null) {
+            appender.setQueueSize(Integer.parseInt(queueSize));
+        }
+        if (discardingThreshold != null) {
+            appender.setDiscardingThreshold(Integer.parseInt(discardingThreshold));
+        }
+        if (neverBlock != null) {
+            appender.setNeverBlock(OptionHelper.toBoolean(neverBlock, false));
+        }
+        if (maxFlushTime != null) {
+            appender.setMaxFlushTime(Integer.parseInt(maxFlushTime));
+        }
+    }
+
+    protected GSLevelTurboFilter levelTurboFilter() {
+        GSLevelTurboFilter turboFilter = new GSLevelTurboFilter();
+        turboFilter.setContext(loggerContext);
+        return turboFilter;
+    }
+
+    /**
+     * @param loggerName Null if not given
+     * @param mdcKey     Null if not given
+     * @param mdcValue   Null if not given
+     */
+    protected void levelRule(GSLevelTurboFilter turboFilter, String loggerName, String level, String mdcKey, String mdcValue) {
+        GSLevelTurboFilter.Rule rule = new GSLevelTurboFilter.Rule();
+        rule.setLogger(loggerName);
+        rule.setLevel(level);
+        rule.setMdcKey(mdcKey);
+        rule.setMdcValue(mdcValue);
+        turboFilter.addRule(rule);
+    }
+
+    protected void start(GSLevelTurboFilter turboFilter) {
+        turboFilter.start();
+        loggerContext.addTurboFilter(turboFilter);
+    }
+
+    protected GSRateLimitTurboFilter rateLimitTurboFilter() {
+        GSRateLimitTurboFilter turboFilter = new GSRateLimitTurboFilter();
+        turboFilter.setContext(loggerContext);
+        return turboFilter;
+    }
+
+    /**
+     * @param rateLimits Null if not given
+     * @param sampling   Null if not given
+     */
+    protected void rateLimits(GSRateLimitTurboFilter turboFilter, String rateLimits, String sampling) {
+        turboFilter.setRateLimits(rateLimits);
+        turboFilter.setSampling(sampling);
+    }
+
+    /**
+     * @param loggerName   Null if not given
+     * @param maxPerSecond Null if not given
+     * @param sampling     Null if not given
+     */
+    protected void rateLimitRule(GSRateLimitTurboFilter turboFilter, String loggerName, String maxPerSecond, String sampling) {
+        GSRateLimitTurboFilter.Rule rule = new GSRateLimitTurboFilter.Rule();
+        rule.setLogger(loggerName);
+        if (maxPerSecond != null) {
+            rule.setMaxPerSecond(Integer.parseInt(maxPerSecond));
+        }
+        if (sampling != null) {
+            rule.setSampling(Double.parseDouble(sampling));
+        }
+        turboFilter.addRule(rule);
+    }
+
+    protected void start(GSRateLimitTurboFilter turboFilter) {
+        turboFilter.start();
+        loggerContext.addTurboFilter(turboFilter);
+    }
+
+    /**
+     * Adds a {@link GSFlightRecorderTurboFilter}
+     *
+     * @param size          Null if not given
+     * @param level         Null if not given
+     * @param mdcKey        Null if not given
+     * @param triggerLevel  Null if not given
+     * @param triggerLogger Null if not given
+     */
+    protected void flightRecorder(String size, String level, String mdcKey, String triggerLevel, String triggerLogger, String appenderName) {
+        GSFlightRecorderTurboFilter turboFilter = new GSFlightRecorderTurboFilter();
+        turboFilter.setContext(loggerContext);
+        if (size != null) {
+            turboFilter.setSize(Integer.parseInt(size));
+        }
+        if (level != null) {
+            turboFilter.setLevel(level);
+        }
+        turboFilter.setMdcKey(mdcKey);
+        if (triggerLevel != null) {
+            turboFilter.setTriggerLevel(triggerLevel);
+        }
+        turboFilter.setTriggerLogger(triggerLogger);
+        turboFilter.setAppenderName(appenderName);
+        turboFilter.start();
+        loggerContext.addTurboFilter(turboFilter);
+    }
+
+    /**
+     * @param level      Null if not given
+     * @param additivity Null if not given
+     */
+    protected Logger logger(String name, String level, String additivity) {
+        Logger logger = loggerContext.getLogger(name);
+        if (level != null) {
+            boolean isInherited = "INHERITED".equalsIgnoreCase(level) || "NULL".equalsIgnoreCase(level);
+            logger.setLevel(isInherited ? null : Level.toLevel(level, Level.DEBUG));
+        }
+        if (additivity != null) {
+            logger.setAdditive(OptionHelper.toBoolean(additivity, true));
+        }
+        return logger;
+    }
+
+    /**
+     * @param level Null if not given
+     */
+    protected Logger root(String level) {
+        Logger root = loggerContext.getLogger(Logger.ROOT_LOGGER_NAME);
+        if (level != null) {
+            root.setLevel(Level.toLevel(level, Level.DEBUG));
+        }
+        return root;
+    }
+
+    protected void appenderRef(Logger logger, String appenderName) {
+        Appender<ILoggingEvent> appender = appenders.get(appenderName);
+        if (appender == null) {
+            addError("Could not find an appender named [" + appenderName + "]");
+        } else {
+            logger.addAppender(appender);
+        }
+    }
+
+    private String lookup(String key) {
+        String value = localProperties.get(key);
+        return value != null ? value : OptionHelper.propertyLookup(key, loggerContext, null);
+    }
+
+    private <T extends Appender<ILoggingEvent>> T register(T appender, String name) {
+        appender.setContext(loggerContext);
+        appender.setName(name);
+        appenders.put(name, appender);
+        return appender;
+    }
+}
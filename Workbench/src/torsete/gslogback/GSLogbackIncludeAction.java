@@ -0,0 +1,65 @@
+package torsete.gslogback;
+
+import ch.qos.logback.core.joran.action.Action;
+import ch.qos.logback.core.joran.action.IncludeAction;
+import ch.qos.logback.core.joran.spi.ActionException;
+import ch.qos.logback.core.joran.spi.InterpretationContext;
+import ch.qos.logback.core.joran.util.ConfigurationWatchListUtil;
+import ch.qos.logback.core.util.OptionHelper;
+import org.xml.sax.Attributes;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Replaces Joran's {@link IncludeAction} for &lt;include file='...'/&gt;. The included file is taken from
+ * {@link GSLogbackConfigurationCache}, so an unchanged file is not parsed again.
+ * <p>
+ * Includes by url or resource are left to Joran's own {@link IncludeAction}
+ */
+class GSLogbackIncludeAction extends Action {
+    private final static int EVENT_OFFSET = 2; // Past this element and its end element
+
+    private IncludeAction includeAction;
+
+    @Override
+    public void begin(InterpretationContext ec, String name, Attributes attributes) throws ActionException {
+        String fileAttribute = attributes.getValue(FILE_ATTRIBUTE);
+        if (OptionHelper.isEmpty(fileAttribute) || !OptionHelper.isEmpty(attributes.getValue("url"))
+                || !OptionHelper.isEmpty(attributes.getValue("resource"))) {
+            getIncludeAction().begin(ec, name, attributes);
+            return;
+        }
+
+        File file = new File(ec.subst(fileAttribute));
+        boolean optional = OptionHelper.toBoolean(attributes.getValue("optional"), false);
+        try {
+            ConfigurationWatchListUtil.addToWatchList(context, file.toURI().toURL());
+            if (!file.isFile()) {
+                if (!optional) {
+                    addWarn("Could not find resource corresponding to [" + file.getPath() + "]");
+                }
+                return;
+            }
+            GSLogbackConfigurationCache.Entry entry = GSLogbackConfigurationCache.getInstance().get(file, context);
+            ec.getJoranInterpreter().getEventPlayer().addEventsDynamically(entry.getIncludedEvents(), EVENT_OFFSET);
+        } catch (IOException | RuntimeException e) {
+            if (!optional) {
+                addError("Failed to include [" + file.getPath() + "]", e);
+            }
+        }
+    }
+
+    @Override
+    public void end(InterpretationContext ec, String name) throws ActionException {
+        // Nothing to do
+    }
+
+    private IncludeAction getIncludeAction() {
+        if (includeAction == null) {
+            includeAction = new IncludeAction();
+            includeAction.setContext(context);
+        }
+        return includeAction;
+    }
+}
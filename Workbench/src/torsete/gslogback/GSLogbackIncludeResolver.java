@@ -0,0 +1,356 @@
+package torsete.gslogback;
+
+import ch.qos.logback.core.Context;
+import ch.qos.logback.core.joran.event.SaxEvent;
+import ch.qos.logback.core.spi.PropertyContainer;
+import ch.qos.logback.core.util.OptionHelper;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import torsete.util.GSDocument;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Resolves the &lt;include file='...'/&gt; elements of a configuration into one document, where each file is expanded only once.
+ * <p>
+ * The include graph is followed depth first in document order, as Joran does. A file included a second time is left out,
+ * and an include that leads back to a file being expanded (a cycle) is reported as an error and left out.
+ * Includes that cannot be resolved before Joran runs are kept and left to Joran. They are includes by url or resource,
+ * includes inside &lt;if&gt;, includes of missing files and includes which file name depends on properties that are
+ * only known when Joran runs.
+ * <p>
+ * The file names are substituted with the properties defined by the configuration so far, the context properties,
+ * the system properties and the environment. The resolution of a file is cached. It is valid as long as the files involved
+ * are unchanged, and the properties from outside the configuration that the file names depend on are unchanged.
+ */
+class GSLogbackIncludeResolver {
+    private final static GSLogbackIncludeResolver instance = new GSLogbackIncludeResolver();
+
+    private final Map<String, Resolution> resolutions = new ConcurrentHashMap<>();
+
+    static GSLogbackIncludeResolver getInstance() {
+        return instance;
+    }
+
+    /**
+     * Resolves the includes of a configuration file
+     *
+     * @return Never null
+     * @throws IOException If the file cannot be read
+     */
+    Resolution resolve(File file, Context context) throws IOException {
+        File canonicalFile = file.getCanonicalFile();
+        String key = canonicalFile.getPath();
+        Resolution resolution = resolutions.get(key);
+        if (resolution != null && resolution.isValid(context)) {
+            return resolution;
+        }
+        Resolver resolver = new Resolver(context);
+        resolution = resolver.resolve(resolver.getDocument(canonicalFile).getDocumentElement(), canonicalFile);
+        resolutions.put(key, resolution);
+        return resolution;
+    }
+
+    /**
+     * Resolves the includes of an in-memory configuration. The result is not cached
+     *
+     * @param node A document or its document element
+     * @return Never null
+     */
+    Resolution resolve(Node node, Context context) throws IOException {
+        return new Resolver(context).resolve(node instanceof Document ? ((Document) node).getDocumentElement() : node, null);
+    }
+
+    void clear() {
+        resolutions.clear();
+    }
+
+    private static String getExternalProperty(Context context, String key) {
+        String value = context.getProperty(key);
+        if (value == null) {
+            value = System.getProperty(key);
+        }
+        if (value == null) {
+            value = System.getenv(key);
+        }
+        return value;
+    }
+
+    private static long[] getFileState(File file) {
+        return new long[]{file.lastModified(), file.length()}; // Both are 0 if the file is missing
+    }
+
+    static class Resolution {
+        private final Document document;
+        private final List<SaxEvent> saxEvents;
+        private final Map<File, long[]> fileStates;
+        private final Map<String, String> externalProperties;
+        private final List<String> errors;
+        private final int duplicateCount;
+
+        Resolution(Document document, List<SaxEvent> saxEvents, Map<File, long[]> fileStates, Map<String, String> externalProperties,
+                   List<String> errors, int duplicateCount) {
+            this.document = document;
+            this.saxEvents = saxEvents;
+            this.fileStates = fileStates;
+            this.externalProperties = externalProperties;
+            this.errors = errors;
+            this.duplicateCount = duplicateCount;
+        }
+
+        /**
+         * @return The flattened document. It is shared and must not be changed
+         */
+        Document getDocument() {
+            return document;
+        }
+
+        /**
+         * @return The events of the flattened document. Never changed by Joran since Joran plays a copy
+         */
+        List<SaxEvent> getSaxEvents() {
+            return saxEvents;
+        }
+
+        /**
+         * @return The files the resolution depends on (incl. missing files). To be watched like Joran watches included files
+         */
+        List<File> getFiles() {
+            return new ArrayList<>(fileStates.keySet());
+        }
+
+        /**
+         * @return The cycles found. Never null
+         */
+        List<String> getErrors() {
+            return errors;
+        }
+
+        int getDuplicateCount() {
+            return duplicateCount;
+        }
+
+        private boolean isValid(Context context) {
+            for (Map.Entry<File, long[]> entry : fileStates.entrySet()) {
+                long[] state = getFileState(entry.getKey());
+                if (state[0] != entry.getValue()[0] || state[1] != entry.getValue()[1]) {
+                    return false;
+                }
+            }
+            for (Map.Entry<String, String> entry : externalProperties.entrySet()) {
+                if (!Objects.equals(getExternalProperty(context, entry.getKey()), entry.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The state of one resolution
+     */
+    private static class Resolver {
+        private final Context context;
+        private final Map<String, Property> properties = new HashMap<>();
+        private final Set<String> uncertainPropertyNames = new HashSet<>();
+        private final Map<File, long[]> fileStates = new LinkedHashMap<>();
+        private final Map<String, String> externalProperties = new HashMap<>();
+        private final Set<File> expandedFiles = new HashSet<>();
+        private final Deque<File> expandingFiles = new ArrayDeque<>();
+        private final List<String> errors = new ArrayList<>();
+        private boolean isPropertyFileSeen;
+        private int duplicateCount;
+        private Document result;
+
+        Resolver(Context context) {
+            this.context = context;
+        }
+
+        Resolution resolve(Node root, File file) throws IOException {
+            result = new GSDocument().getDocument();
+            Node resultRoot = result.appendChild(result.importNode(root, false));
+            if (file != null) {
+                expandedFiles.add(file);
+                expandingFiles.push(file);
+            }
+            expand(root, resultRoot);
+            List<SaxEvent> saxEvents = new GSLogbackSaxEventRecorder(context).recordEvents(result);
+            return new Resolution(result, Collections.unmodifiableList(saxEvents), fileStates, externalProperties,
+                    Collections.unmodifiableList(errors), duplicateCount);
+        }
+
+        private Document getDocument(File canonicalFile) throws IOException {
+            fileStates.put(canonicalFile, getFileState(canonicalFile));
+            return GSLogbackConfigurationCache.getInstance().get(canonicalFile, context).getDocument();
+        }
+
+        private void expand(Node source, Node target) throws IOException {
+            for (Node node = source.getFirstChild(); node != null; node = node.getNextSibling()) {
+                if (node.getNodeType() != Node.ELEMENT_NODE) {
+                    target.appendChild(result.importNode(node, true));
+                    continue;
+                }
+                Element element = (Element) node;
+                switch (element.getNodeName()) {
+                    case "include":
+                        if (!expandInclude(element, target)) {
+                            target.appendChild(result.importNode(element, true));
+                        }
+                        break;
+                    case "if":
+                        addUncertainPropertyNames(element); // It is not known which branch Joran takes
+                        target.appendChild(result.importNode(element, true));
+                        break;
+                    case "property":
+                    case "variable":
+                        defineProperty(element);
+                        target.appendChild(result.importNode(element, true));
+                        break;
+                    case "define":
+                    case "timestamp":
+                        uncertainPropertyNames.add(element.hasAttribute("name") ? element.getAttribute("name") : element.getAttribute("key"));
+                        target.appendChild(result.importNode(element, true));
+                        break;
+                    default:
+                        expand(element, target.appendChild(result.importNode(element, false)));
+                        break;
+                }
+            }
+        }
+
+        /**
+         * @return False if the include is left to Joran
+         */
+        private boolean expandInclude(Element element, Node target) throws IOException {
+            if (!element.hasAttribute("file") || element.hasAttribute("url") || element.hasAttribute("resource")) {
+                return false;
+            }
+            Lookup lookup = new Lookup();
+            String fileName = OptionHelper.substVars(element.getAttribute("file"), lookup);
+            if (lookup.isUncertain) {
+                return false;
+            }
+            File file = new File(fileName);
+            if (!file.isFile()) {
+                fileStates.put(file.getAbsoluteFile(), getFileState(file)); // The resolution is invalid if the file shows up
+                externalProperties.putAll(lookup.externalProperties);
+                return false; // Joran reports it, unless it is optional
+            }
+            File canonicalFile = file.getCanonicalFile();
+            externalProperties.putAll(lookup.externalProperties);
+            if (expandingFiles.contains(canonicalFile)) {
+                List<String> cycle = expandingFiles.stream().map(File::getPath).collect(Collectors.toList());
+                Collections.reverse(cycle);
+                cycle.add(canonicalFile.getPath());
+                errors.add("Include cycle: " + String.join(" -> ", cycle));
+                return true;
+            }
+            if (!expandedFiles.add(canonicalFile)) {
+                duplicateCount++;
+                return true;
+            }
+            Document document = getDocument(canonicalFile);
+            if (!"included".equals(document.getDocumentElement().getNodeName())) {
+                expandedFiles.remove(canonicalFile);
+                return false;
+            }
+            expandingFiles.push(canonicalFile);
+            expand(document.getDocumentElement(), target);
+            expandingFiles.pop();
+            return true;
+        }
+
+        private void defineProperty(Element element) {
+            if (!element.hasAttribute("name") || !element.hasAttribute("value")) {
+                isPropertyFileSeen = true; // Properties from a file or resource are not known until Joran runs
+                return;
+            }
+            Lookup lookup = new Lookup();
+            String value = OptionHelper.substVars(element.getAttribute("value"), lookup);
+            properties.put(element.getAttribute("name"), new Property(value, lookup));
+        }
+
+        private void addUncertainPropertyNames(Element ifElement) {
+            for (String tagName : new String[]{"property", "variable", "define"}) {
+                for (Element element : getElements(ifElement, tagName)) {
+                    uncertainPropertyNames.add(element.getAttribute("name"));
+                }
+            }
+            for (Element element : getElements(ifElement, "timestamp")) {
+                uncertainPropertyNames.add(element.getAttribute("key"));
+            }
+            if (!getElements(ifElement, "include").isEmpty()) {
+                isPropertyFileSeen = true; // The included file may define anything
+            }
+        }
+
+        private List<Element> getElements(Element element, String tagName) {
+            List<Element> elements = new ArrayList<>();
+            for (int i = 0; i < element.getElementsByTagName(tagName).getLength(); i++) {
+                elements.add((Element) element.getElementsByTagName(tagName).item(i));
+            }
+            return elements;
+        }
+
+        private class Property {
+            private final String value;
+            private final Map<String, String> externalProperties;
+            private final boolean isUncertain;
+
+            Property(String value, Lookup lookup) {
+                this.value = value;
+                this.externalProperties = lookup.externalProperties;
+                this.isUncertain = lookup.isUncertain;
+            }
+        }
+
+        /**
+         * Looks up the properties of a substitution and records what it depends on
+         */
+        private class Lookup implements PropertyContainer {
+            private final Map<String, String> externalProperties = new HashMap<>();
+            private boolean isUncertain;
+
+            @Override
+            public String getProperty(String key) {
+                if (uncertainPropertyNames.contains(key)) {
+                    isUncertain = true;
+                }
+                Property property = properties.get(key);
+                if (property != null) {
+                    externalProperties.putAll(property.externalProperties);
+                    isUncertain |= property.isUncertain;
+                    return property.value;
+                }
+                if (isPropertyFileSeen) {
+                    isUncertain = true;
+                }
+                String value = getExternalProperty(context, key);
+                externalProperties.put(key, value);
+                return value;
+            }
+
+            @Override
+            public Map<String, String> getCopyOfPropertyMap() {
+                return properties.entrySet().stream()
+                        .filter(e -> e.getValue().value != null)
+                        .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().value));
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.joran.JoranConfigurator;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.joran.action.Action;
+import ch.qos.logback.core.joran.action.ActionConst;
+import ch.qos.logback.core.joran.action.IncludeAction;
+import ch.qos.logback.core.joran.event.SaxEvent;
+import ch.qos.logback.core.joran.spi.ConfigurationWatchList;
+import ch.qos.logback.core.joran.spi.ElementPath;
+import ch.qos.logback.core.joran.spi.ElementSelector;
+import ch.qos.logback.core.joran.spi.JoranException;
+import ch.qos.logback.core.joran.spi.RuleStore;
+import ch.qos.logback.core.joran.util.ConfigurationWatchListUtil;
+import ch.qos.logback.core.status.StatusUtil;
+import org.w3c.dom.Node;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link JoranConfigurator} that can configure from in-memory documents and gives access to what Joran has built
+ */
+class GSLogbackJoranConfigurator extends JoranConfigurator {
+
+    /**
+     * Replaces Joran's include action with {@link GSLogbackIncludeAction}
+     */
+    @Override
+    public void addInstanceRules(RuleStore ruleStore) {
+        super.addInstanceRules(new RuleStore() {
+            @Override
+            public void addRule(ElementSelector elementSelector, String actionClassStr) throws ClassNotFoundException {
+                ruleStore.addRule(elementSelector, actionClassStr);
+            }
+
+            @Override
+            public void addRule(ElementSelector elementSelector, Action action) {
+                ruleStore.addRule(elementSelector, action instanceof IncludeAction ? new GSLogbackIncludeAction() : action);
+            }
+
+            @Override
+            public List<Action> matchActions(ElementPath elementPath) {
+                return ruleStore.matchActions(elementPath);
+            }
+        });
+    }
+
+    /**
+     * Configures from a url like {@link #doConfigure(URL)}. A file url is taken from {@link GSLogbackConfigurationCache},
+     * so an unchanged file is not parsed again
+     */
+    void doConfigureCached(URL url) throws JoranException {
+        File file = toFile(url);
+        GSLogbackConfigurationCache.Entry entry = null;
+        try {
+            entry = file == null ? null : GSLogbackConfigurationCache.getInstance().get(file, context);
+        } catch (IOException | RuntimeException e) {
+            // Let Joran read the url and report the problem
+        }
+        if (entry == null) {
+            doConfigure(url);
+            return;
+        }
+        informContextOfURLUsedForConfiguration(context, url);
+        doConfigureCopy(entry.getSaxEvents());
+    }
+
+    /**
+     * Configures from a url like {@link #doConfigureCached(URL)}, but the includes of a file are resolved
+     * by {@link GSLogbackIncludeResolver}, so each included file is only expanded once
+     */
+    void doConfigureResolved(URL url) throws JoranException {
+        File file = toFile(url);
+        GSLogbackIncludeResolver.Resolution resolution = null;
+        try {
+            resolution = file == null ? null : GSLogbackIncludeResolver.getInstance().resolve(file, context);
+        } catch (IOException | RuntimeException e) {
+            // Let Joran read the url and report the problem
+        }
+        if (resolution == null) {
+            doConfigure(url);
+            return;
+        }
+        informContextOfURLUsedForConfiguration(context, url);
+        doConfigure(resolution);
+    }
+
+    /**
+     * Configures from an in-memory xml document like {@link #doConfigure(Node)}, but the includes are resolved
+     * by {@link GSLogbackIncludeResolver}
+     */
+    void doConfigureResolved(Node node) throws JoranException {
+        GSLogbackIncludeResolver.Resolution resolution;
+        try {
+            resolution = GSLogbackIncludeResolver.getInstance().resolve(node, context);
+        } catch (IOException e) {
+            throw new JoranException("Failed to resolve includes", e);
+        }
+        doConfigure(resolution);
+    }
+
+    private void doConfigure(GSLogbackIncludeResolver.Resolution resolution) throws JoranException {
+        ConfigurationWatchList watchList = ConfigurationWatchListUtil.getConfigurationWatchList(context);
+        List<File> watchedFiles = watchList == null ? new ArrayList<>() : watchList.getCopyOfFileWatchList();
+        for (File file : resolution.getFiles()) {
+            if (watchedFiles.contains(file)) {
+                continue; // The main file
+            }
+            try {
+                ConfigurationWatchListUtil.addToWatchList(context, file.toURI().toURL());
+            } catch (MalformedURLException e) {
+                addWarn("Cannot watch " + file, e);
+            }
+        }
+        resolution.getErrors().forEach(this::addError);
+        addInfo("Includes are resolved. " + resolution.getFiles().size() + " files, "
+                + resolution.getDuplicateCount() + " repeated includes left out");
+        doConfigureCopy(resolution.getSaxEvents());
+    }
+
+    private void doConfigureCopy(List<SaxEvent> saxEvents) throws JoranException {
+        long threshold = System.currentTimeMillis();
+        List<SaxEvent> copy = new ArrayList<>(saxEvents); // Joran adds included events to the list
+        doConfigure(copy);
+        if (new StatusUtil(context).noXMLParsingErrorsOccurred(threshold)) {
+            registerSafeConfiguration(copy);
+        }
+    }
+
+    private File toFile(URL url) {
+        if (!"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Configures from an in-memory xml document without serializing it
+     *
+     * @param node A document or its document element
+     */
+    void doConfigure(Node node) throws JoranException {
+        long threshold = System.currentTimeMillis();
+        List<SaxEvent> saxEvents = new GSLogbackSaxEventRecorder(context).recordEvents(node);
+        doConfigure(saxEvents);
+        if (new StatusUtil(context).noXMLParsingErrorsOccurred(threshold)) {
+            registerSafeConfiguration(saxEvents);
+        }
+    }
+
+    /**
+     * Gets the appenders created by the latest configuration run
+     *
+     * @return Appender name to appender. Never null
+     */
+    @SuppressWarnings("unchecked")
+    Map<String, Appender<ILoggingEvent>> getAppenderBag() {
+        if (interpreter == null) {
+            return new HashMap<>();
+        }
+        Object appenderBag = interpreter.getInterpretationContext().getObjectMap().get(ActionConst.APPENDER_BAG);
+        return appenderBag == null ? new HashMap<>() : (Map<String, Appender<ILoggingEvent>>) appenderBag;
+    }
+}
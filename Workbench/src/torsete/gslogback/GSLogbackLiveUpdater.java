@@ -0,0 +1,248 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggerContextListener;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.AsyncAppenderBase;
+import ch.qos.logback.core.OutputStreamAppender;
+import ch.qos.logback.core.spi.ContextAwareBase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Applies changes of {@link GSLogbackProperties} to a running LoggerContext without configuring it again:
+ * <ul>
+ * <li>{@link GSLogbackProperties#GSLOG_ROOT_LEVEL} sets the level of the root logger
+ * <li>{@link GSLogbackProperties#GSLOG_PATTERN} replaces the encoders of the gslog pattern appenders, also those wrapped in
+ * AsyncAppenders. They are the appenders named gslog.* and the appenders with the previous value of the pattern.
+ * Other appenders keep their own patterns
+ * <li>{@link GSLogbackProperties#GSLOG_CONSOLE} and {@link GSLogbackProperties#GSLOG_FILE} detach or attach the console
+ * appender and the file appenders of the root logger
+ * </ul>
+ * A detached appender is stopped, and started again when it is attached again. An AsyncAppender is only detached. An appender that is not configured
+ * (eg. the file appenders of a configuration made with gslog.file=false) cannot be attached this way, so the current
+ * configuration is reset instead.
+ * <p>
+ * The updates are made by the subscribers of the properties, ie. in the thread publishing the changed values (see
+ * {@link GSLogbackProperties#subscribe(Consumer)}). That may be at the end of a configuration by {@link GSLogbackConfigurator},
+ * so the reset is not made by the subscriber, but by the executor of the context after the configuration.
+ * <p>
+ * The updater is a reset resistant listener of the context, so it survives reconfigurations. It is stopped with the context
+ */
+class GSLogbackLiveUpdater extends ContextAwareBase implements LoggerContextListener {
+    private final static String CONSOLE_APPENDER_NAME = "gslog.consoleAppender";
+    private final static String FILE_APPENDER_NAME = "gslog.fileAppender";
+    private final static String ERROR_FILE_APPENDER_NAME = "gslog.errorFileAppender";
+    private final static String GSLOG_APPENDER_PREFIX = "gslog.";
+
+    private final LoggerContext loggerContext;
+    private final GSLogbackConfigurator configurator;
+    private final Map<String, Appender<ILoggingEvent>> detachedAppenders = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final Consumer<String> rootLevelSubscriber = this::setRootLevel;
+    private final Consumer<String> patternSubscriber = this::setPattern;
+    private final Consumer<String> consoleSubscriber = value -> setAppenders(value, CONSOLE_APPENDER_NAME);
+    private final Consumer<String> fileSubscriber = value -> setAppenders(value, FILE_APPENDER_NAME, ERROR_FILE_APPENDER_NAME);
+    private volatile String pattern;
+
+    GSLogbackLiveUpdater(LoggerContext loggerContext, GSLogbackConfigurator configurator) {
+        this.loggerContext = loggerContext;
+        this.configurator = configurator;
+        setContext(loggerContext);
+    }
+
+    void start() {
+        pattern = GSLogbackProperties.GSLOG_PATTERN.getValue();
+        GSLogbackProperties.GSLOG_ROOT_LEVEL.subscribe(rootLevelSubscriber);
+        GSLogbackProperties.GSLOG_PATTERN.subscribe(patternSubscriber);
+        GSLogbackProperties.GSLOG_CONSOLE.subscribe(consoleSubscriber);
+        GSLogbackProperties.GSLOG_FILE.subscribe(fileSubscriber);
+        loggerContext.addListener(this);
+    }
+
+    void stop() {
+        unsubscribe();
+        loggerContext.removeListener(this);
+    }
+
+    private void unsubscribe() {
+        GSLogbackProperties.GSLOG_ROOT_LEVEL.unsubscribe(rootLevelSubscriber);
+        GSLogbackProperties.GSLOG_PATTERN.unsubscribe(patternSubscriber);
+        GSLogbackProperties.GSLOG_CONSOLE.unsubscribe(consoleSubscriber);
+        GSLogbackProperties.GSLOG_FILE.unsubscribe(fileSubscriber);
+        detachedAppenders.clear();
+    }
+
+    private void setRootLevel(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return;
+        }
+        Logger root = loggerContext.getLogger(Logger.ROOT_LOGGER_NAME);
+        Level level = Level.toLevel(value.trim(), root.getLevel());
+        root.setLevel(level);
+        configurator.notifyLogListeners(() -> "Log configuration is updated. Root level=" + level);
+    }
+
+    private synchronized void setPattern(String pattern) {
+        if (pattern == null || pattern.isEmpty()) {
+            return;
+        }
+        String previousPattern = this.pattern;
+        this.pattern = pattern;
+        int count = 0;
+        for (OutputStreamAppender<ILoggingEvent> appender : getPatternAppenders(previousPattern)) {
+            PatternLayoutEncoder oldEncoder = (PatternLayoutEncoder) appender.getEncoder();
+            if (pattern.equals(oldEncoder.getPattern())) {
+                continue;
+            }
+            PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+            encoder.setContext(loggerContext);
+            encoder.setPattern(pattern);
+            encoder.setCharset(oldEncoder.getCharset());
+            encoder.start();
+            appender.setEncoder(encoder); // The old encoder is left started, since it may be encoding an event right now
+            count++;
+        }
+        int changedCount = count;
+        configurator.notifyLogListeners(() -> "Log configuration is updated. Pattern=" + pattern + " Changed encoders=" + changedCount);
+    }
+
+    /**
+     * @param appenderNames Names of appenders of the root logger. A name matches an appender name that it is a prefix of,
+     *                      since appenders made by {@link GSLogbackConfigurationDocument} are suffixed
+     */
+    private void setAppenders(String value, String... appenderNames) {
+        boolean isOn = value != null && value.contains("true"); // As the conditions of gslog-configuration.xml
+        Logger root = loggerContext.getLogger(Logger.ROOT_LOGGER_NAME);
+        synchronized (loggerContext.getConfigurationLock()) {
+            if (isOn) {
+                attachAppenders(root, appenderNames);
+            } else {
+                detachAppenders(root, appenderNames);
+            }
+        }
+    }
+
+    private void attachAppenders(Logger root, String... appenderNames) {
+        boolean isAttached = false;
+        for (String appenderName : appenderNames) {
+            if (!getAppenders(root, appenderName).isEmpty()) {
+                isAttached = true;
+                continue;
+            }
+            List<Appender<ILoggingEvent>> appenders = new ArrayList<>();
+            synchronized (detachedAppenders) {
+                for (Iterator<Map.Entry<String, Appender<ILoggingEvent>>> i = detachedAppenders.entrySet().iterator(); i.hasNext(); ) {
+                    Map.Entry<String, Appender<ILoggingEvent>> entry = i.next();
+                    if (entry.getKey().startsWith(appenderName)) {
+                        appenders.add(entry.getValue());
+                        i.remove();
+                    }
+                }
+            }
+            for (Appender<ILoggingEvent> appender : appenders) {
+                if (!appender.isStarted()) {
+                    appender.start();
+                }
+                root.addAppender(appender);
+                isAttached = true;
+                configurator.notifyLogListeners(() -> "Log configuration is updated. Attached appender=" + appender.getName());
+            }
+        }
+        if (!isAttached) {
+            if (configurator.getCurrentConfigurationUrl() == null) {
+                addWarn("Appenders " + String.join(",", appenderNames) + " are not configured, and there is no configuration to reset");
+                return;
+            }
+            configurator.notifyLogListeners(() -> "Log configuration has no appenders " + String.join(",", appenderNames) + ". It is reset");
+            loggerContext.getScheduledExecutorService().execute(configurator::reset); // Not inside a configuration publishing the value
+        }
+    }
+
+    private void detachAppenders(Logger root, String... appenderNames) {
+        for (String appenderName : appenderNames) {
+            for (Appender<ILoggingEvent> appender : getAppenders(root, appenderName)) {
+                root.detachAppender(appender);
+                if (!(appender instanceof AsyncAppenderBase)) {
+                    appender.stop(); // A stopped AsyncAppender would stop and detach the appenders it wraps
+                }
+                detachedAppenders.put(appender.getName(), appender);
+                configurator.notifyLogListeners(() -> "Log configuration is updated. Detached appender=" + appender.getName());
+            }
+        }
+    }
+
+    private List<Appender<ILoggingEvent>> getAppenders(Logger logger, String appenderName) {
+        List<Appender<ILoggingEvent>> appenders = new ArrayList<>();
+        for (Iterator<Appender<ILoggingEvent>> i = logger.iteratorForAppenders(); i.hasNext(); ) {
+            Appender<ILoggingEvent> appender = i.next();
+            if (appender.getName() != null && appender.getName().startsWith(appenderName)) {
+                appenders.add(appender);
+            }
+        }
+        return appenders;
+    }
+
+    /**
+     * @param previousPattern The value of gslog.pattern before the change. Null if none
+     * @return The appenders named gslog.* and the appenders with the previous pattern
+     */
+    private Set<OutputStreamAppender<ILoggingEvent>> getPatternAppenders(String previousPattern) {
+        Set<OutputStreamAppender<ILoggingEvent>> appenders = new LinkedHashSet<>();
+        for (Logger logger : loggerContext.getLoggerList()) {
+            addPatternAppenders(logger.iteratorForAppenders(), previousPattern, appenders);
+        }
+        return appenders;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addPatternAppenders(Iterator<Appender<ILoggingEvent>> iterator, String previousPattern, Set<OutputStreamAppender<ILoggingEvent>> appenders) {
+        while (iterator.hasNext()) {
+            Appender<ILoggingEvent> appender = iterator.next();
+            if (appender instanceof AsyncAppenderBase) {
+                addPatternAppenders(((AsyncAppenderBase<ILoggingEvent>) appender).iteratorForAppenders(), previousPattern, appenders);
+            } else if (appender instanceof OutputStreamAppender
+                    && ((OutputStreamAppender<ILoggingEvent>) appender).getEncoder() instanceof PatternLayoutEncoder) {
+                String appenderPattern = ((PatternLayoutEncoder) ((OutputStreamAppender<ILoggingEvent>) appender).getEncoder()).getPattern();
+                if (appender.getName() != null && appender.getName().startsWith(GSLOG_APPENDER_PREFIX)
+                        || appenderPattern != null && appenderPattern.equals(previousPattern)) {
+                    appenders.add((OutputStreamAppender<ILoggingEvent>) appender);
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean isResetResistant() {
+        return true;
+    }
+
+    @Override
+    public void onStart(LoggerContext context) {
+    }
+
+    @Override
+    public void onReset(LoggerContext context) {
+        detachedAppenders.clear(); // They belong to the previous configuration
+    }
+
+    @Override
+    public void onStop(LoggerContext context) {
+        unsubscribe(); // Not removed as a listener, since the context is iterating its listeners
+    }
+
+    @Override
+    public void onLevelChange(Logger logger, Level level) {
+    }
+}
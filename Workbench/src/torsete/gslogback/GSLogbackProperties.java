@@ -2,8 +2,15 @@ package torsete.gslogback;
 
 import java.io.File;
 import java.util.Arrays;
-import java.util.Optional;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -29,14 +36,48 @@ public enum GSLogbackProperties {
     GSLOG_ERROR_FILE_NAME_EXTENSION("gslog.errorFileNameExtension"),
     GSLOG_INCIDENT_FILE_NAME_EXTENSION("gslog.incidentFileNameExtension"),
     GSLOG_PATTERN("gslog.pattern"),
+    GSLOG_ASYNC("gslog.async"),
+    GSLOG_ASYNC_QUEUE_SIZE("gslog.asyncQueueSize"),
+    GSLOG_ASYNC_DISCARDING_THRESHOLD("gslog.asyncDiscardingThreshold"),
+    GSLOG_ASYNC_NEVER_BLOCK("gslog.asyncNeverBlock"),
+    GSLOG_ASYNC_MAX_FLUSH_TIME("gslog.asyncMaxFlushTime"),
+    GSLOG_ROLLING("gslog.rolling"),
+    GSLOG_ROLLING_MAX_FILE_SIZE("gslog.rollingMaxFileSize"),
+    GSLOG_ROLLING_DATE_PATTERN("gslog.rollingDatePattern"),
+    GSLOG_ROLLING_MAX_HISTORY("gslog.rollingMaxHistory"),
+    GSLOG_ROLLING_TOTAL_SIZE_CAP("gslog.rollingTotalSizeCap"),
+    GSLOG_BUFFERED("gslog.buffered"),
+    GSLOG_BUFFER_SIZE("gslog.bufferSize"),
+    GSLOG_FLUSH_INTERVAL("gslog.flushInterval"),
+    GSLOG_FLUSH_LEVEL("gslog.flushLevel"),
+    GSLOG_MAPPED("gslog.mapped"),
+    GSLOG_MAPPED_REGION_SIZE("gslog.mappedRegionSize"),
+    GSLOG_BINARY("gslog.binary"),
+    GSLOG_COMPRESS("gslog.compress"),
+    GSLOG_FLIGHT_RECORDER("gslog.flightRecorder"),
+    GSLOG_FLIGHT_RECORDER_SIZE("gslog.flightRecorderSize"),
+    GSLOG_FLIGHT_RECORDER_LEVEL("gslog.flightRecorderLevel"),
+    GSLOG_FLIGHT_RECORDER_MDC_KEY("gslog.flightRecorderMdcKey"),
+    GSLOG_RATE_LIMITS("gslog.rateLimits"),
+    GSLOG_SAMPLING("gslog.sampling"),
     GSLOG_HOST_NAME("gslog.hostName", false),
     GSLOG_CONTEXT_NAME("gslog.contextName", false),
     GSLOG_FILE_NAME("gslog.fileName", false),
     GSLOG_FOLDER_NAME("gslog.folderName", false),
     GSLOG_INCIDENT_FOLDER_NAME("gslog.incidentFolderName", false);
 
+    private final static Map<String, GSLogbackProperties> propertiesByKey = new HashMap<>();
+    private final static long CHECK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private final static AtomicLong nextCheck = new AtomicLong();
+    private static volatile GSLogbackPropertiesSnapshot snapshot;
+
+    static {
+        Arrays.stream(values()).forEach(v -> propertiesByKey.put(v.getKey(), v));
+    }
+
     private String propertyKey;
     private boolean isAssignable;
+    private final List<Consumer<String>> subscribers = new CopyOnWriteArrayList<>();
 
     GSLogbackProperties(String propertyKey, boolean isAssignable) {
         this.propertyKey = propertyKey;
@@ -62,11 +103,30 @@ public enum GSLogbackProperties {
         } else {
             System.setProperty(propertyKey, value);
         }
+        refresh();
         return this;
     }
 
+    /**
+     * @return The value of the current snapshot (see {@link #snapshot()})
+     */
     public String getValue() {
-        return System.getProperty(propertyKey);
+        return snapshot().getValue(this);
+    }
+
+    /**
+     * Subscribes to changes of the value. The subscriber is called with the new value when a snapshot with a changed value
+     * is published (see {@link #refresh()}), in the thread publishing it. That may be any thread reading a value, if the
+     * snapshot is found stale (see {@link #snapshot()})
+     */
+    public GSLogbackProperties subscribe(Consumer<String> subscriber) {
+        subscribers.add(subscriber);
+        return this;
+    }
+
+    public GSLogbackProperties unsubscribe(Consumer<String> subscriber) {
+        subscribers.remove(subscriber);
+        return this;
     }
 
     public String getKey() {
@@ -75,6 +135,7 @@ public enum GSLogbackProperties {
 
     public GSLogbackProperties clearValue() {
         System.clearProperty(propertyKey);
+        refresh();
         return this;
     }
 
@@ -95,15 +156,59 @@ public enum GSLogbackProperties {
     }
 
     public static void setDefault() {
-        Arrays.stream(values()).forEach(v -> v.setDefaultValue());
+        Arrays.stream(values()).filter(v -> v.isAssignable()).forEach(v -> v.setDefaultValue());
     }
 
     public static File getLogFile() {
-        return new File(GSLOG_FOLDER_NAME.getValue() + File.separator + GSLOG_FILE_NAME.getValue() + GSLOG_FILE_NAME_EXTENSION.getValue());
+        return snapshot().getLogFile();
     }
 
     public static File getErrorLogFile() {
-        return new File(GSLOG_FOLDER_NAME.getValue() + File.separator + GSLOG_FILE_NAME.getValue() + GSLOG_ERROR_FILE_NAME_EXTENSION.getValue());
+        return snapshot().getErrorLogFile();
+    }
+
+    /**
+     * @return The current values. Read without locking, except that the snapshot is compared with the system properties
+     * at most once a second, and a new snapshot is published if they differ (eg. set directly or by a rescan of Joran)
+     */
+    public static GSLogbackPropertiesSnapshot snapshot() {
+        GSLogbackPropertiesSnapshot current = snapshot;
+        if (current == null) {
+            return refresh();
+        }
+        long check = nextCheck.get();
+        if (System.nanoTime() - check >= 0 && nextCheck.compareAndSet(check, System.nanoTime() + CHECK_NANOS) && current.isStale()) {
+            return refresh();
+        }
+        return current;
+    }
+
+    /**
+     * Publishes a new snapshot of the system properties at once, if a value differs from the current snapshot.
+     * Properties set directly as system properties are otherwise seen within a second (see {@link #snapshot()})
+     *
+     * @return The current snapshot, which keeps its version if no value is changed
+     */
+    public static GSLogbackPropertiesSnapshot refresh() {
+        GSLogbackPropertiesSnapshot previous;
+        GSLogbackPropertiesSnapshot current;
+        synchronized (GSLogbackProperties.class) {
+            previous = snapshot;
+            if (previous != null && !previous.isStale()) {
+                nextCheck.set(System.nanoTime() + CHECK_NANOS);
+                return previous;
+            }
+            current = new GSLogbackPropertiesSnapshot(previous == null ? 1 : previous.getVersion() + 1);
+            snapshot = current;
+            nextCheck.set(System.nanoTime() + CHECK_NANOS);
+        }
+        if (previous != null) {
+            Arrays.stream(values())
+                    .filter(v -> !v.subscribers.isEmpty())
+                    .filter(v -> !Objects.equals(previous.getValue(v), current.getValue(v)))
+                    .forEach(v -> v.subscribers.forEach(s -> s.accept(v.getValue()))); // The latest value, if refreshed concurrently
+        }
+        return current;
     }
 
     public static void clear() {
@@ -135,16 +240,17 @@ public enum GSLogbackProperties {
     public static void set(String propertyKey, String value) {
         GSLogbackProperties k = get(propertyKey);
         System.setProperty(k.getKey(), value); // If null - NPE Exception
+        refresh();
     }
 
     public static GSLogbackProperties get(String propertyKey) {
-        Optional<GSLogbackProperties> first = Arrays.stream(values()).filter(v -> v.getKey().equals(propertyKey)).findFirst();
-        return first.isPresent() ? first.get() : null;
+        return propertiesByKey.get(propertyKey);
     }
 
     public static Properties exportProperties() {
+        GSLogbackPropertiesSnapshot current = snapshot();
         Properties properties = new Properties();
-        Arrays.stream(values()).filter(v -> v.getValue() != null).forEach(v -> properties.put(v.getKey(), v.getValue()));
+        Arrays.stream(values()).filter(v -> current.getValue(v) != null).forEach(v -> properties.put(v.getKey(), current.getValue(v)));
         return properties;
     }
 
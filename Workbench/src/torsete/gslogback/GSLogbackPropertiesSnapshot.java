@@ -0,0 +1,75 @@
+package torsete.gslogback;
+
+import java.io.File;
+import java.util.Objects;
+
+/**
+ * Immutable values of all {@link GSLogbackProperties} at one point in time.
+ * <p>
+ * The current snapshot is got by {@link GSLogbackProperties#snapshot()} without locking. A new snapshot with the next
+ * version is published when a property is changed through {@link GSLogbackProperties}, and when Logback is configured by
+ * {@link GSLogbackConfigurator} and the configuration changes a property of scope system. The version is kept as long as
+ * no value changes. Properties set directly as system
+ * properties are seen within a second, since the snapshot is compared with the system properties at most once a second
+ * (see {@link GSLogbackProperties#snapshot()}), or at once after {@link GSLogbackProperties#refresh()}
+ */
+public final class GSLogbackPropertiesSnapshot {
+    private final long version;
+    private final String[] values;
+    private final File logFile;
+    private final File errorLogFile;
+
+    /**
+     * Reads the values from the system properties
+     */
+    GSLogbackPropertiesSnapshot(long version) {
+        this.version = version;
+        GSLogbackProperties[] properties = GSLogbackProperties.values();
+        values = new String[properties.length];
+        for (GSLogbackProperties property : properties) {
+            values[property.ordinal()] = System.getProperty(property.getKey());
+        }
+        logFile = newLogFile(GSLogbackProperties.GSLOG_FILE_NAME_EXTENSION);
+        errorLogFile = newLogFile(GSLogbackProperties.GSLOG_ERROR_FILE_NAME_EXTENSION);
+    }
+
+    /**
+     * @return Increases by one for each snapshot published, ie. each time a value is changed
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public String getValue(GSLogbackProperties property) {
+        return values[property.ordinal()];
+    }
+
+    /**
+     * @return True if a system property differs from the value of the snapshot. Reads the system properties
+     */
+    boolean isStale() {
+        for (GSLogbackProperties property : GSLogbackProperties.values()) {
+            if (!Objects.equals(values[property.ordinal()], System.getProperty(property.getKey()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public File getLogFile() {
+        return logFile;
+    }
+
+    public File getErrorLogFile() {
+        return errorLogFile;
+    }
+
+    private File newLogFile(GSLogbackProperties extension) {
+        return new File(getValue(GSLogbackProperties.GSLOG_FOLDER_NAME) + File.separator + getValue(GSLogbackProperties.GSLOG_FILE_NAME) + getValue(extension));
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " version=" + version;
+    }
+}
@@ -0,0 +1,246 @@
+package torsete.gslogback;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Resolves the gslog properties from layers, all references included, in one pass.
+ * <p>
+ * The layers in order of precedence:
+ * <ol>
+ * <li>Overrides given to {@link #resolve(Map)}, eg. the database and system of a tenant
+ * <li>System properties
+ * <li>Environment variables. The variable of a {@link GSLogbackProperties} is named as the enum (eg. GSLOG_SERVER), other variables as the key
+ * <li>Property files (see {@link #addFile(File)}). A file added later takes precedence
+ * <li>Defaults (see {@link #setDefaults(Function)}), by default {@link GSLogbackDefaultProperties}
+ * </ol>
+ * The properties that cannot be assigned (see {@link GSLogbackProperties#isAssignable()}) are always derived from the defaults,
+ * since a configuration sets them as system properties.
+ * <p>
+ * A value may refer to other properties as ${key} or ${key:-default}. A reference to a key that is not in any layer is
+ * left as it is, so Logback can substitute it later (eg. ${HOSTNAME}). A cycle of references is an error.
+ * <p>
+ * The result is cached per overrides. It is resolved again when {@link GSLogbackProperties} publishes a new snapshot
+ * or a property file is changed
+ */
+public class GSLogbackPropertyResolver {
+    /**
+     * Key of a property put into the context with the resolved properties. gslog-properties.xml skips its fallbacks if it is defined
+     */
+    public final static String RESOLVED = "gslog.resolved";
+
+    private final List<File> files = new CopyOnWriteArrayList<>();
+    private final Map<Map<String, String>, Resolution> resolutions = new ConcurrentHashMap<>();
+    private volatile Function<GSLogbackProperties, String> defaults = new GSLogbackDefaultProperties();
+
+    /**
+     * Adds a property file (in the format of {@link Properties})
+     */
+    public GSLogbackPropertyResolver addFile(File file) {
+        files.add(file);
+        invalidate();
+        return this;
+    }
+
+    public GSLogbackPropertyResolver setDefaults(Function<GSLogbackProperties, String> defaults) {
+        this.defaults = defaults;
+        invalidate();
+        return this;
+    }
+
+    public GSLogbackPropertyResolver invalidate() {
+        resolutions.clear();
+        return this;
+    }
+
+    public Map<String, String> resolve() {
+        return resolve(Collections.emptyMap());
+    }
+
+    /**
+     * @param overrides Values taking precedence over all layers
+     * @return Key to resolved value. Unmodifiable
+     */
+    public Map<String, String> resolve(Map<String, String> overrides) {
+        String stamp = getStamp();
+        Resolution resolution = resolutions.get(overrides);
+        if (resolution == null || !resolution.stamp.equals(stamp)) {
+            Map<String, String> key = Collections.unmodifiableMap(new HashMap<>(overrides));
+            resolution = new Resolution(stamp, new Resolver(getValues(key)).resolveAll());
+            resolutions.put(key, resolution);
+        }
+        return resolution.values;
+    }
+
+    /**
+     * @return The values of the layers before references are resolved
+     */
+    private Map<String, String> getValues(Map<String, String> overrides) {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (GSLogbackProperties property : GSLogbackProperties.values()) {
+            String value = defaults.apply(property);
+            if (value != null) {
+                values.put(property.getKey(), value);
+            }
+        }
+        for (File file : files) {
+            Properties properties = new Properties();
+            try (InputStream inputStream = new FileInputStream(file)) {
+                properties.load(inputStream);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Cannot read " + file, e);
+            }
+            properties.stringPropertyNames().forEach(key -> putIfAssignable(values, key, properties.getProperty(key)));
+        }
+        for (GSLogbackProperties property : GSLogbackProperties.values()) {
+            putIfAssignable(values, property.getKey(), System.getenv(property.name()));
+        }
+        for (String key : values.keySet().toArray(new String[0])) {
+            if (GSLogbackProperties.get(key) == null) {
+                putIfAssignable(values, key, System.getenv(key));
+            }
+        }
+        for (GSLogbackProperties property : GSLogbackProperties.values()) {
+            putIfAssignable(values, property.getKey(), System.getProperty(property.getKey()));
+        }
+        for (String key : values.keySet().toArray(new String[0])) {
+            if (GSLogbackProperties.get(key) == null) {
+                putIfAssignable(values, key, System.getProperty(key));
+            }
+        }
+        overrides.forEach((key, value) -> putIfAssignable(values, key, value));
+        return values;
+    }
+
+    private void putIfAssignable(Map<String, String> values, String key, String value) {
+        GSLogbackProperties property = GSLogbackProperties.get(key);
+        if (value != null && (property == null || property.isAssignable())) {
+            values.put(key, value);
+        }
+    }
+
+    private String getStamp() {
+        return GSLogbackProperties.snapshot().getVersion() + files.stream()
+                .map(file -> ";" + file.lastModified() + ":" + file.length())
+                .collect(Collectors.joining());
+    }
+
+    private static class Resolution {
+        private final String stamp;
+        private final Map<String, String> values;
+
+        Resolution(String stamp, Map<String, String> values) {
+            this.stamp = stamp;
+            this.values = values;
+        }
+    }
+
+    /**
+     * Resolves the references of all values. Each value is resolved once
+     */
+    private static class Resolver {
+        private final Map<String, String> values;
+        private final Map<String, String> resolvedValues = new LinkedHashMap<>();
+        private final Deque<String> resolvingKeys = new ArrayDeque<>();
+
+        Resolver(Map<String, String> values) {
+            this.values = values;
+        }
+
+        Map<String, String> resolveAll() {
+            Map<String, String> result = new LinkedHashMap<>();
+            values.keySet().forEach(key -> result.put(key, resolve(key))); // Not the keys only referenced, eg. user.name
+            return Collections.unmodifiableMap(result);
+        }
+
+        /**
+         * @return Null if the key is in no layer
+         */
+        private String resolve(String key) {
+            String resolvedValue = resolvedValues.get(key);
+            if (resolvedValue != null) {
+                return resolvedValue;
+            }
+            String value = values.get(key);
+            if (value == null) {
+                value = System.getProperty(key); // Referenced only, eg. user.name
+            }
+            if (value == null) {
+                value = System.getenv(key);
+            }
+            if (value == null) {
+                return null;
+            }
+            if (resolvingKeys.contains(key)) {
+                List<String> cycle = new ArrayList<>(resolvingKeys);
+                Collections.reverse(cycle);
+                throw new IllegalArgumentException("Property cycle: " + String.join(" -> ", cycle.subList(cycle.indexOf(key), cycle.size())) + " -> " + key);
+            }
+            resolvingKeys.push(key);
+            resolvedValue = substitute(value);
+            resolvingKeys.pop();
+            resolvedValues.put(key, resolvedValue);
+            return resolvedValue;
+        }
+
+        private String substitute(String value) {
+            int start = value.indexOf("${");
+            if (start < 0) {
+                return value;
+            }
+            StringBuilder result = new StringBuilder(value.length() + 32);
+            int i = 0;
+            while (start >= 0) {
+                int end = findEnd(value, start + 2);
+                if (end < 0) {
+                    break;
+                }
+                result.append(value, i, start);
+                String placeholder = value.substring(start + 2, end);
+                int separator = placeholder.indexOf(":-");
+                String key = substitute(separator < 0 ? placeholder : placeholder.substring(0, separator));
+                String resolvedValue = resolve(key);
+                if (resolvedValue != null) {
+                    result.append(resolvedValue);
+                } else if (separator >= 0) {
+                    result.append(substitute(placeholder.substring(separator + 2)));
+                } else {
+                    result.append("${").append(key).append('}'); // Left to Logback
+                }
+                i = end + 1;
+                start = value.indexOf("${", i);
+            }
+            return result.append(value, i, value.length()).toString();
+        }
+
+        /**
+         * @return The index of the } ending a placeholder. Braces inside the placeholder (eg. %d{...} in a default) are balanced
+         */
+        private static int findEnd(String value, int from) {
+            int depth = 1;
+            for (int i = from; i < value.length(); i++) {
+                if (value.charAt(i) == '{') {
+                    depth++;
+                } else if (value.charAt(i) == '}' && --depth == 0) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package torsete.gslogback;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import torsete.util.GSDocument;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Serializes and coalesces reconfiguration requests to a {@link GSLogbackConfigurator}.
+ * <p>
+ * Requests received within a time window are applied together on one background thread:
+ * <ul>
+ * <li>A reset makes the requests before it in the window superfluous.
+ * <li>Consecutive documents are merged into one document, so they are applied by one Joran pass.
+ * <li>Files and urls are applied as they are, in the order received.
+ * </ul>
+ * Each request returns a future that completes with the descriptions of the requests applied together with it, ie. the
+ * documents it was merged with, and for a reset also the requests it superseded.
+ * If applying a request fails, the future of that request, of the requests merged with it and of the requests not yet
+ * applied fails; the requests applied before it complete normally.
+ * <p>
+ * Requests after {@link #close()} are rejected by a {@link RejectedExecutionException}.
+ */
+public class GSLogbackReconfigurationScheduler implements AutoCloseable {
+    private final GSLogbackConfigurator configurator;
+    private final long windowMillis;
+    private final ScheduledExecutorService executor;
+    private final AtomicLong requestCount = new AtomicLong();
+
+    private final List<Request> pendingRequests = new ArrayList<>();
+    private boolean isFlushScheduled;
+
+    public GSLogbackReconfigurationScheduler(GSLogbackConfigurator configurator, long windowMillis) {
+        this.configurator = configurator;
+        this.windowMillis = windowMillis;
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, getClass().getSimpleName());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public CompletableFuture<List<String>> add(GSDocument gsDocument) {
+        return submit(false, "add(document)", gsDocument.getDocument(), null);
+    }
+
+    public CompletableFuture<List<String>> reset(GSDocument gsDocument) {
+        return submit(true, "reset(document)", gsDocument.getDocument(), null);
+    }
+
+    public CompletableFuture<List<String>> add(URL url) {
+        return submit(false, "add(" + url + ")", null, c -> c.add(url));
+    }
+
+    public CompletableFuture<List<String>> reset(URL url) {
+        return submit(true, "reset(" + url + ")", null, c -> c.reset(url));
+    }
+
+    public CompletableFuture<List<String>> add(File file) {
+        return submit(false, "add(" + file + ")", null, c -> c.add(file));
+    }
+
+    public CompletableFuture<List<String>> reset(File file) {
+        return submit(true, "reset(" + file + ")", null, c -> c.reset(file));
+    }
+
+    /**
+     * Applies the pending requests without waiting for the window to elapse, and stops the scheduler. Nothing is done if closed
+     */
+    @Override
+    public void close() {
+        synchronized (pendingRequests) {
+            if (executor.isShutdown()) {
+                return;
+            }
+            executor.execute(this::flush);
+            executor.shutdown();
+        }
+    }
+
+    private CompletableFuture<List<String>> submit(boolean reset, String description, Document document, Consumer<GSLogbackConfigurator> action) {
+        Request request = new Request("#" + requestCount.incrementAndGet() + " " + description, reset,
+                document == null ? null : (Document) document.cloneNode(true), // The caller may change the document before it is applied
+                action);
+        synchronized (pendingRequests) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("The scheduler is closed");
+            }
+            pendingRequests.add(request);
+            if (!isFlushScheduled) {
+                isFlushScheduled = true;
+                boolean isScheduled = false;
+                try {
+                    executor.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+                    isScheduled = true;
+                } finally {
+                    if (!isScheduled) { // Eg. closed
+                        isFlushScheduled = false;
+                        pendingRequests.remove(request);
+                    }
+                }
+            }
+        }
+        return request.result;
+    }
+
+    private void flush() {
+        List<Request> requests;
+        synchronized (pendingRequests) {
+            requests = new ArrayList<>(pendingRequests);
+            pendingRequests.clear();
+            isFlushScheduled = false;
+        }
+        if (requests.isEmpty()) {
+            return;
+        }
+        List<Group> groups = group(requests);
+        int appliedCount = 0;
+        try {
+            for (Group group : groups) {
+                group.apply();
+                appliedCount++;
+            }
+        } catch (RuntimeException e) {
+            groups.subList(appliedCount, groups.size()).forEach(group -> group.requests.forEach(r -> r.result.completeExceptionally(e)));
+        }
+        for (Group group : groups.subList(0, appliedCount)) {
+            List<String> descriptions = group.requests.stream().map(r -> r.description).collect(Collectors.toList());
+            group.requests.forEach(r -> r.result.complete(descriptions));
+        }
+        List<Request> appliedRequests = groups.subList(0, appliedCount).stream().flatMap(group -> group.requests.stream()).collect(Collectors.toList());
+        if (!appliedRequests.isEmpty()) {
+            configurator.notifyLogListeners(() -> appliedRequests.size() + " reconfiguration requests were applied together: "
+                    + appliedRequests.stream().map(r -> r.description).collect(Collectors.joining(", ")));
+        }
+    }
+
+    /**
+     * @return The requests as they are applied. The requests before the last reset are superseded by it and share its result
+     */
+    private List<Group> group(List<Request> requests) {
+        int first = 0;
+        for (int i = 0; i < requests.size(); i++) {
+            if (requests.get(i).reset) {
+                first = i;
+            }
+        }
+        List<Group> groups = new ArrayList<>();
+        Group group = null;
+        for (Request request : requests.subList(first, requests.size())) {
+            if (group != null && group.document != null && request.document != null && !request.reset && isMergeable(group.document, request.document)) {
+                for (Node node = request.document.getDocumentElement().getFirstChild(); node != null; node = node.getNextSibling()) {
+                    group.document.importNode(group.document.getDocumentElement(), node);
+                }
+                group.requests.add(request);
+                continue;
+            }
+            group = new Group(request);
+            groups.add(group);
+        }
+        groups.get(0).requests.addAll(0, requests.subList(0, first));
+        return groups;
+    }
+
+    private boolean isMergeable(GSDocument mergedDocument, Document document) {
+        return mergedDocument.getDocumentElement().getNodeName().equals(document.getDocumentElement().getNodeName())
+                && document.getDocumentElement().getAttributes().getLength() == 0;
+    }
+
+    /**
+     * Requests applied as one, ie. a request or consecutive documents merged into one
+     */
+    private class Group {
+        private final List<Request> requests = new ArrayList<>();
+        private final GSDocument document;
+        private final boolean reset;
+        private final Consumer<GSLogbackConfigurator> action;
+
+        Group(Request request) {
+            requests.add(request);
+            document = request.document == null ? null : new GSDocument(request.document);
+            reset = request.reset;
+            action = request.action;
+        }
+
+        void apply() {
+            if (document == null) {
+                action.accept(configurator);
+            } else if (reset) {
+                configurator.reset(document);
+            } else {
+                configurator.add(document);
+            }
+        }
+    }
+
+    private static class Request {
+        private final String description;
+        private final boolean reset;
+        private final Document document;
+        private final Consumer<GSLogbackConfigurator> action;
+        private final CompletableFuture<List<String>> result = new CompletableFuture<>();
+
+        Request(String description, boolean reset, Document document, Consumer<GSLogbackConfigurator> action) {
+            this.description = description;
+            this.reset = reset;
+            this.document = document;
+            this.action = action;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package torsete.gslogback;
+
+import ch.qos.logback.core.Context;
+import ch.qos.logback.core.joran.event.SaxEvent;
+import ch.qos.logback.core.joran.event.SaxEventRecorder;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.LocatorImpl;
+
+import java.util.List;
+
+/**
+ * Records the Joran events of an in-memory xml document.
+ * <p>
+ * It is the same as letting Joran parse a serialized document, but without serializing and parsing
+ */
+class GSLogbackSaxEventRecorder {
+    private final Context context;
+
+    GSLogbackSaxEventRecorder(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Records the events of a document or an element (incl. childs)
+     *
+     * @return Never null
+     */
+    List<SaxEvent> recordEvents(Node node) {
+        SaxEventRecorder recorder = new SaxEventRecorder(context);
+        recorder.setDocumentLocator(new LocatorImpl());
+        recorder.startDocument();
+        record(recorder, node instanceof Document ? ((Document) node).getDocumentElement() : node);
+        return recorder.getSaxEventList();
+    }
+
+    private void record(SaxEventRecorder recorder, Node node) {
+        switch (node.getNodeType()) {
+            case Node.ELEMENT_NODE:
+                Element element = (Element) node;
+                String name = element.getNodeName();
+                recorder.startElement("", name, name, getAttributes(element));
+                for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+                    record(recorder, child);
+                }
+                recorder.endElement("", name, name);
+                break;
+            case Node.TEXT_NODE:
+            case Node.CDATA_SECTION_NODE:
+                char[] text = node.getNodeValue().toCharArray();
+                recorder.characters(text, 0, text.length);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private AttributesImpl getAttributes(Element element) {
+        AttributesImpl attributes = new AttributesImpl();
+        NamedNodeMap attributeNodes = element.getAttributes();
+        for (int i = 0; i < attributeNodes.getLength(); i++) {
+            Node attribute = attributeNodes.item(i);
+            attributes.addAttribute("", attribute.getNodeName(), attribute.getNodeName(), "CDATA", attribute.getNodeValue());
+        }
+        return attributes;
+    }
+}
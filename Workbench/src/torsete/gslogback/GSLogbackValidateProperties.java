@@ -1,5 +1,6 @@
 package torsete.gslogback;
 
+import java.text.SimpleDateFormat;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
@@ -13,6 +14,47 @@ public class GSLogbackValidateProperties implements BiFunction<GSLogbackProperti
             case GSLOG_FILE:
                 validator = v -> v.equals("true") || v.equals("false");
                 break;
+            case GSLOG_ASYNC:
+            case GSLOG_ASYNC_NEVER_BLOCK:
+            case GSLOG_ROLLING:
+            case GSLOG_BUFFERED:
+            case GSLOG_MAPPED:
+            case GSLOG_BINARY:
+            case GSLOG_COMPRESS:
+            case GSLOG_FLIGHT_RECORDER:
+                validator = v -> v == null || v.isEmpty() || v.equals("true") || v.equals("false");
+                break;
+            case GSLOG_ASYNC_QUEUE_SIZE:
+            case GSLOG_FLIGHT_RECORDER_SIZE:
+                validator = v -> v == null || v.isEmpty() || v.matches("[1-9][0-9]{0,8}");
+                break;
+            case GSLOG_ASYNC_DISCARDING_THRESHOLD:
+                validator = v -> v == null || v.isEmpty() || v.equals("-1") || v.matches("[0-9]{1,9}");
+                break;
+            case GSLOG_ASYNC_MAX_FLUSH_TIME:
+            case GSLOG_ROLLING_MAX_HISTORY:
+            case GSLOG_FLUSH_INTERVAL:
+                validator = v -> v == null || v.isEmpty() || v.matches("[0-9]{1,9}");
+                break;
+            case GSLOG_ROLLING_MAX_FILE_SIZE:
+            case GSLOG_ROLLING_TOTAL_SIZE_CAP:
+            case GSLOG_BUFFER_SIZE:
+            case GSLOG_MAPPED_REGION_SIZE:
+                validator = v -> v == null || v.isEmpty() || v.matches("(?i)[0-9]+\\s*(kb|mb|gb)?s?"); // As FileSize of Logback
+                break;
+            case GSLOG_ROLLING_DATE_PATTERN:
+                validator = v -> v == null || v.isEmpty() || isDatePattern(v);
+                break;
+            case GSLOG_FLUSH_LEVEL:
+            case GSLOG_FLIGHT_RECORDER_LEVEL:
+                validator = v -> v == null || v.isEmpty() || v.matches("(?i)trace|debug|info|warn|error|off");
+                break;
+            case GSLOG_RATE_LIMITS: // Eg. org.apache=100, dk.gensam.gaia.db=200
+                validator = v -> v == null || v.trim().isEmpty() || isLoggerList(v, "[0-9]{1,9}");
+                break;
+            case GSLOG_SAMPLING: // Eg. dk.gensam.gaia=0.1
+                validator = v -> v == null || v.trim().isEmpty() || isLoggerList(v, "0(\\.[0-9]+)?|1(\\.0+)?");
+                break;
             default:
 //                validator = v -> !v.startsWith("my");
 
@@ -20,4 +62,25 @@ public class GSLogbackValidateProperties implements BiFunction<GSLogbackProperti
         }
         return validator.apply(value);
     }
+
+    /**
+     * @return True if the value is a comma separated list of logger names and values, eg. "org.apache=100"
+     */
+    private boolean isLoggerList(String value, String valuePattern) {
+        for (String entry : value.split(",", -1)) {
+            if (!entry.trim().matches("[^=\\s]+\\s*=\\s*(" + valuePattern + ")")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isDatePattern(String value) {
+        try {
+            new SimpleDateFormat(value);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
 }
@@ -0,0 +1,258 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.OutputStreamAppender;
+import ch.qos.logback.core.util.FileSize;
+import ch.qos.logback.core.util.FileUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes the events into a memory-mapped region of the file, ie. a log line is copied into memory without a system call.
+ * <p>
+ * The region is mapped from the end of the file with the region size. When it is full, the next region is mapped, so
+ * the file grows by the region size at a time. The operating system writes the pages to the file, also if the VM dies.
+ * <p>
+ * The last bytes of a region are a trailer with the written length of the file, updated by each event. When the appender
+ * is stopped the region is unmapped and the file is truncated to the written length. Until then, and after a crash, the
+ * file ends with unwritten bytes and the trailer. When a file is appended to, it is appended at the length of its trailer,
+ * so the events may end with any bytes (eg. those of {@link GSBinaryEncoder})
+ * <pre>
+ * &lt;appender name='gslog.fileAppender' class='torsete.gslogback.GSMappedFileAppender'&gt;
+ *     &lt;file&gt;app.out.log&lt;/file&gt;
+ *     &lt;regionSize&gt;32MB&lt;/regionSize&gt;
+ *     &lt;encoder&gt;&lt;pattern&gt;${gslog.pattern}&lt;/pattern&gt;&lt;/encoder&gt;
+ * &lt;/appender&gt;
+ * </pre>
+ */
+public class GSMappedFileAppender extends OutputStreamAppender<ILoggingEvent> {
+    private final static long MIN_REGION_SIZE = FileSize.KB_COEFFICIENT;
+    private final static long MAX_REGION_SIZE = 1024 * FileSize.MB_COEFFICIENT;
+    private final static long TRAILER_MAGIC = 0x47534d4654524c52L; // GSMFTRLR
+    private final static int TRAILER_SIZE = 16; // Magic and written length
+
+    private String file;
+    private FileSize regionSize = FileSize.valueOf("32MB");
+    private FileChannel channel;
+    private MappedByteBuffer region;
+    private long regionPosition;
+    private int regionLimit; // The end of the events in the region, where the trailer starts
+
+    public String getFile() {
+        return file;
+    }
+
+    public void setFile(String file) {
+        this.file = file == null ? null : file.trim();
+    }
+
+    public FileSize getRegionSize() {
+        return regionSize;
+    }
+
+    /**
+     * The size of each mapped region, ie. the size the file grows by. 32MB if not set. At least 1KB and at most 1GB
+     */
+    public void setRegionSize(FileSize regionSize) {
+        this.regionSize = regionSize;
+    }
+
+    @Override
+    public void start() {
+        int errors = 0;
+        if (encoder == null) {
+            addError("No encoder set for the appender named \"" + name + "\".");
+            errors++;
+        }
+        if (file == null || file.isEmpty()) {
+            addError("\"File\" property not set for appender named [" + name + "].");
+            errors++;
+        }
+        if (regionSize.getSize() < MIN_REGION_SIZE || regionSize.getSize() > MAX_REGION_SIZE) {
+            addError("Region size " + regionSize + " of the appender named \"" + name + "\" is not between 1KB and 1GB.");
+            errors++;
+        }
+        if (errors > 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            File f = new File(file);
+            FileUtil.createMissingParentDirectories(f);
+            channel = new RandomAccessFile(f, "rw").getChannel();
+            map(getWrittenLength(channel));
+            byte[] header = encoder.headerBytes();
+            if (header != null) {
+                write(header);
+            }
+            started = true; // Not super.start(), since there is no output stream of OutputStreamAppender
+            addInfo("Mapping " + regionSize + " regions of " + f.getAbsolutePath());
+        } catch (IOException e) {
+            addError("Failed to map " + file + " of the appender named \"" + name + "\".", e);
+            close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+        lock.lock();
+        try {
+            started = false;
+            byte[] footer = encoder.footerBytes();
+            if (footer != null) {
+                write(footer);
+            }
+            long length = getLength();
+            unmap(); // A mapped file cannot be truncated on all platforms
+            channel.truncate(length); // The unwritten bytes and the trailer
+        } catch (IOException e) {
+            addError("Failed to truncate " + file + " of the appender named \"" + name + "\".", e);
+        } finally {
+            close();
+            lock.unlock();
+        }
+    }
+
+    @Override
+    protected void subAppend(ILoggingEvent event) {
+        if (!isStarted()) {
+            return;
+        }
+        byte[] bytes = encoder.encode(event);
+        lock.lock();
+        try {
+            if (isStarted()) {
+                write(bytes);
+            }
+        } catch (IOException e) {
+            started = false;
+            addError("Failed to write to " + file + " of the appender named \"" + name + "\".", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Copies the bytes into the region and updates the trailer. The next region is mapped when the region is full
+     */
+    private void write(byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            if (region.position() == regionLimit) {
+                map(getLength());
+            }
+            int length = Math.min(regionLimit - region.position(), bytes.length - offset);
+            region.put(bytes, offset, length);
+            offset += length;
+        }
+        region.putLong(regionLimit + 8, getLength());
+    }
+
+    private long getLength() {
+        return regionPosition + region.position();
+    }
+
+    /**
+     * Maps the region from the position. The file is extended with the trailer before, so it always ends with a trailer.
+     * The trailer of the previous region is overwritten by the events of the region
+     */
+    private void map(long position) throws IOException {
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE).putLong(TRAILER_MAGIC).putLong(position);
+        trailer.flip();
+        long trailerPosition = position + regionSize.getSize() - TRAILER_SIZE;
+        while (trailer.hasRemaining()) {
+            channel.write(trailer, trailerPosition + trailer.position());
+        }
+        MappedByteBuffer previousRegion = region;
+        region = channel.map(FileChannel.MapMode.READ_WRITE, position, regionSize.getSize());
+        regionPosition = position;
+        regionLimit = region.capacity() - TRAILER_SIZE;
+        if (previousRegion != null) {
+            unmap(previousRegion);
+        }
+    }
+
+    private void unmap() {
+        MappedByteBuffer region = this.region;
+        this.region = null;
+        if (region != null) {
+            unmap(region);
+        }
+    }
+
+    /**
+     * Unmaps a region at once instead of when it is garbage collected. The region must not be used afterwards.
+     * There is no API for it, so it is done as by the cleaner of the buffer (Java 8) or by Unsafe.invokeCleaner (Java 9 and later).
+     * If neither is possible the region is left to the garbage collector
+     */
+    private void unmap(MappedByteBuffer region) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner;
+            try {
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (NoSuchMethodException e) {
+                Method cleanerMethod = region.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(region);
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+                return;
+            }
+            Field unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+            unsafeField.setAccessible(true);
+            invokeCleaner.invoke(unsafeField.get(null), region);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            addWarn("Failed to unmap a region of " + file + " of the appender named \"" + name + "\". It is unmapped when garbage collected.", e);
+        }
+    }
+
+    private void close() {
+        unmap();
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // The file is left as it is
+            }
+            channel = null;
+        }
+    }
+
+    /**
+     * @return The written length of the trailer if the file ends with one, ie. it was not stopped. Otherwise the size of the file
+     */
+    static long getWrittenLength(File file) throws IOException {
+        try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+            return getWrittenLength(channel);
+        }
+    }
+
+    private static long getWrittenLength(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < TRAILER_SIZE) {
+            return size;
+        }
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+        while (trailer.hasRemaining() && channel.read(trailer, size - TRAILER_SIZE + trailer.position()) >= 0) {
+            // Until the trailer is read
+        }
+        trailer.flip();
+        if (trailer.remaining() < TRAILER_SIZE || trailer.getLong() != TRAILER_MAGIC) {
+            return size;
+        }
+        long length = trailer.getLong();
+        return length >= 0 && length <= size - TRAILER_SIZE ? length : size;
+    }
+}
@@ -0,0 +1,340 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of events per second of each logger, and samples the DEBUG and TRACE events of loggers, so a
+ * misbehaving component cannot saturate the appenders.
+ * <p>
+ * A rule has a logger name, which matches the logger and its descendants (all loggers if not set or ROOT), a maximum
+ * number of events per second and a sampling, ie. the share of the DEBUG and TRACE events kept. Of the rules matching a
+ * logger, the one with the longest logger name decides the limit, and likewise the sampling.
+ * <p>
+ * Each logger has its own token bucket of the maximum, which is checked by a compare-and-set without locks. A burst
+ * of up to the maximum is let through at once. Events above the limit are rejected, and the number rejected is written
+ * as a WARN event of the logger once a second, and when the filter is stopped. Sampling is random and is not reported.
+ * Events below the level of the logger are left to the level and do not count.
+ * <p>
+ * A reset of the context detaches the appenders before it stops the turbo filters, so {@link GSLogbackConfigurator}
+ * reports the rejected events before it resets the context. If the context is reset or stopped otherwise, the events
+ * rejected since the last report are reported as a warning to the status manager of the context instead.
+ * <p>
+ * The rules may also be given as lists, eg. from gslog.rateLimits and gslog.sampling
+ * <pre>
+ * &lt;turboFilter class='torsete.gslogback.GSRateLimitTurboFilter'&gt;
+ *     &lt;rule&gt;&lt;logger&gt;org.apache&lt;/logger&gt;&lt;maxPerSecond&gt;100&lt;/maxPerSecond&gt;&lt;/rule&gt;
+ *     &lt;rateLimits&gt;dk.gensam.gaia.batch=500, dk.gensam.gaia.db=200&lt;/rateLimits&gt;
+ *     &lt;sampling&gt;dk.gensam.gaia=0.1&lt;/sampling&gt;
+ * &lt;/turboFilter&gt;
+ * </pre>
+ */
+public class GSRateLimitTurboFilter extends TurboFilter {
+    private final static String FQCN = Logger.class.getName();
+    private final static long BURST_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private final static Bucket NO_BUCKET = new Bucket(null, 0, 1);
+
+    private final List<Rule> rules = new CopyOnWriteArrayList<>();
+    private final List<Rule> listRules = new ArrayList<>();
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private String rateLimits;
+    private String sampling;
+    private ScheduledFuture<?> reporting;
+
+    public void addRule(Rule rule) {
+        rules.add(rule);
+        buckets.clear();
+    }
+
+    public List<Rule> getRules() {
+        return rules;
+    }
+
+    public String getRateLimits() {
+        return rateLimits;
+    }
+
+    /**
+     * @param rateLimits Rules as a list of logger names and maximums per second, eg. "org.apache=100, dk.gensam.gaia.db=200"
+     */
+    public void setRateLimits(String rateLimits) {
+        this.rateLimits = rateLimits;
+    }
+
+    public String getSampling() {
+        return sampling;
+    }
+
+    /**
+     * @param sampling Rules as a list of logger names and samplings, eg. "dk.gensam.gaia=0.1"
+     */
+    public void setSampling(String sampling) {
+        this.sampling = sampling;
+    }
+
+    @Override
+    public void start() {
+        rules.removeAll(listRules); // Of a previous start
+        listRules.clear();
+        int errors = addRules(rateLimits, (rule, value) -> rule.setMaxPerSecond(Integer.parseInt(value)))
+                + addRules(sampling, (rule, value) -> rule.setSampling(Double.parseDouble(value)));
+        for (Rule rule : rules) {
+            if (rule.maxPerSecond < 0 || rule.sampling < 0 || rule.sampling > 1) {
+                addError("A rule of the turbo filter named \"" + getName() + "\" (logger " + rule.logger + ") has a negative maximum or a sampling not between 0 and 1.");
+                errors++;
+            }
+        }
+        if (errors > 0) {
+            return;
+        }
+        buckets.clear();
+        if (reporting == null) {
+            reporting = getContext().getScheduledExecutorService().scheduleAtFixedRate(this::reportRejected, 1, 1, TimeUnit.SECONDS);
+        }
+        super.start();
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        if (reporting != null) {
+            reporting.cancel(false);
+            reporting = null;
+        }
+        reportRejected();
+    }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        if (!isStarted() || level == null || format == null && params == null) {
+            return FilterReply.NEUTRAL; // Eg. isDebugEnabled()
+        }
+        if (!level.isGreaterOrEqual(logger.getEffectiveLevel())) {
+            return FilterReply.NEUTRAL; // Rejected by the level without a token
+        }
+        Bucket bucket = buckets.get(logger.getName());
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(logger.getName(), name -> newBucket(logger));
+        }
+        if (bucket == NO_BUCKET) {
+            return FilterReply.NEUTRAL;
+        }
+        if (bucket.sampling < 1 && level.levelInt <= Level.DEBUG_INT && ThreadLocalRandom.current().nextDouble() >= bucket.sampling) {
+            return FilterReply.DENY;
+        }
+        if (bucket.interval > 0 && !bucket.tryAcquire()) {
+            bucket.rejected.incrementAndGet();
+            return FilterReply.DENY;
+        }
+        return FilterReply.NEUTRAL;
+    }
+
+    private Bucket newBucket(Logger logger) {
+        Rule rateRule = null;
+        Rule samplingRule = null;
+        for (Rule rule : rules) {
+            if (rule.isMatching(logger.getName())) {
+                if (rule.maxPerSecond > 0 && (rateRule == null || rule.getLoggerLength() > rateRule.getLoggerLength())) {
+                    rateRule = rule;
+                }
+                if (rule.sampling < 1 && (samplingRule == null || rule.getLoggerLength() > samplingRule.getLoggerLength())) {
+                    samplingRule = rule;
+                }
+            }
+        }
+        if (rateRule == null && samplingRule == null) {
+            return NO_BUCKET;
+        }
+        return new Bucket(logger, rateRule == null ? 0 : rateRule.maxPerSecond, samplingRule == null ? 1 : samplingRule.sampling);
+    }
+
+    /**
+     * Reports the events rejected since the last report. Called before the context is reset (see the class doc)
+     */
+    void reportRejected() {
+        buckets.values().forEach(this::report);
+    }
+
+    /**
+     * Writes the number of events rejected since the last report, if any. The event is given to the appenders directly,
+     * so it is not limited itself, and is written by the thread of the scheduled executor. If the logger has no appenders,
+     * eg. while the context is reset, the number is reported to the status manager
+     */
+    private void report(Bucket bucket) {
+        if (bucket.rejected.get() == 0) {
+            return;
+        }
+        long rejected = bucket.rejected.getAndSet(0);
+        if (rejected == 0) {
+            return;
+        }
+        LoggingEvent event = new LoggingEvent(FQCN, bucket.logger, Level.WARN,
+                "{} events were rejected by the limit of {} events per second", null, new Object[]{rejected, bucket.maxPerSecond});
+        if (hasAppenders(bucket.logger)) {
+            bucket.logger.callAppenders(event);
+        } else {
+            addWarn(bucket.logger.getName() + ": " + event.getFormattedMessage());
+        }
+    }
+
+    /**
+     * @return True if the events of the logger reach an appender of the logger or of an ancestor
+     */
+    private boolean hasAppenders(Logger logger) {
+        LoggerContext loggerContext = (LoggerContext) getContext();
+        for (String name = logger.getName(); name != null; name = getParentName(name)) {
+            Logger ancestor = loggerContext.exists(name);
+            if (ancestor != null) {
+                if (ancestor.iteratorForAppenders().hasNext()) {
+                    return true;
+                }
+                if (!ancestor.isAdditive()) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Null if the logger is the root logger
+     */
+    private static String getParentName(String loggerName) {
+        if (Logger.ROOT_LOGGER_NAME.equals(loggerName)) {
+            return null;
+        }
+        int dot = loggerName.lastIndexOf('.');
+        return dot < 0 ? Logger.ROOT_LOGGER_NAME : loggerName.substring(0, dot);
+    }
+
+    /**
+     * @return The number of errors
+     */
+    private int addRules(String list, RuleSetter setter) {
+        if (list == null || list.trim().isEmpty()) {
+            return 0;
+        }
+        int errors = 0;
+        for (String entry : list.split(",")) {
+            String[] nameAndValue = entry.split("=");
+            Rule rule = new Rule();
+            try {
+                if (nameAndValue.length != 2) {
+                    throw new IllegalArgumentException();
+                }
+                rule.setLogger(nameAndValue[0]);
+                setter.set(rule, nameAndValue[1].trim());
+                listRules.add(rule);
+                addRule(rule);
+            } catch (IllegalArgumentException e) {
+                addError("\"" + entry.trim() + "\" of the turbo filter named \"" + getName() + "\" is not a logger name and a number.");
+                errors++;
+            }
+        }
+        return errors;
+    }
+
+    private interface RuleSetter {
+        void set(Rule rule, String value);
+    }
+
+    /**
+     * A rule of {@link GSRateLimitTurboFilter}
+     */
+    public static class Rule {
+        private String logger;
+        private int maxPerSecond;
+        private double sampling = 1;
+
+        public String getLogger() {
+            return logger;
+        }
+
+        /**
+         * The logger and its descendants. All loggers if not set or ROOT
+         */
+        public void setLogger(String logger) {
+            this.logger = logger == null || logger.trim().isEmpty() || Logger.ROOT_LOGGER_NAME.equalsIgnoreCase(logger.trim())
+                    ? null : logger.trim();
+        }
+
+        public int getMaxPerSecond() {
+            return maxPerSecond;
+        }
+
+        /**
+         * The maximum number of events per second of each logger. No limit if 0
+         */
+        public void setMaxPerSecond(int maxPerSecond) {
+            this.maxPerSecond = maxPerSecond;
+        }
+
+        public double getSampling() {
+            return sampling;
+        }
+
+        /**
+         * The share of the DEBUG and TRACE events kept, eg. 0.1. All if 1
+         */
+        public void setSampling(double sampling) {
+            this.sampling = sampling;
+        }
+
+        boolean isMatching(String loggerName) {
+            return logger == null || loggerName.equals(logger)
+                    || loggerName.startsWith(logger) && loggerName.charAt(logger.length()) == '.';
+        }
+
+        private int getLoggerLength() {
+            return logger == null ? 0 : logger.length();
+        }
+    }
+
+    /**
+     * The state of a logger. The token bucket is kept as the time when the bucket is full again (the theoretical arrival
+     * time of the generic cell rate algorithm), so taking a token is a single compare-and-set
+     */
+    private static class Bucket {
+        private final Logger logger;
+        private final int maxPerSecond;
+        private final long interval;
+        private final double sampling;
+        private final AtomicLong fullAt = new AtomicLong(System.nanoTime());
+        private final AtomicLong rejected = new AtomicLong();
+
+        Bucket(Logger logger, int maxPerSecond, double sampling) {
+            this.logger = logger;
+            this.maxPerSecond = maxPerSecond;
+            this.interval = maxPerSecond > 0 ? Math.max(1, BURST_NANOS / maxPerSecond) : 0;
+            this.sampling = sampling;
+        }
+
+        boolean tryAcquire() {
+            long now = System.nanoTime();
+            while (true) {
+                long full = fullAt.get();
+                long nextFull = Math.max(full - now, 0) + interval;
+                if (nextFull > BURST_NANOS) {
+                    return false;
+                }
+                if (fullAt.compareAndSet(full, now + nextFull)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
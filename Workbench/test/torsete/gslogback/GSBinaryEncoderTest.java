@@ -0,0 +1,169 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.FileAppender;
+import ch.qos.logback.core.util.FileSize;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+public class GSBinaryEncoderTest {
+    private final static String PATTERN = "%-5level %logger %msg%n";
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private LoggerContext context;
+    private File file;
+
+    @Before
+    public void before() {
+        context = new LoggerContext();
+        file = new File(temporaryFolder.getRoot(), "binary.log");
+    }
+
+    @After
+    public void after() {
+        context.stop();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        GSBinaryEncoder encoder = new GSBinaryEncoder();
+        encoder.setContext(context);
+        encoder.setMaxDictionarySize(2); // loggerC and the last messages are written inline
+        encoder.start();
+        FileAppender<ILoggingEvent> appender = new FileAppender<>();
+        appender.setContext(context);
+        appender.setFile(file.getAbsolutePath());
+        appender.setEncoder(encoder);
+        appender.start();
+        Logger root = context.getLogger(Logger.ROOT_LOGGER_NAME);
+        root.addAppender(appender);
+
+        context.getLogger("loggerA").info("her er A");
+        context.getLogger("loggerB").warn("her er {} og {}", "B", 2);
+        context.getLogger("loggerC").debug("her er C");
+        context.getLogger("loggerA").info("her er A");
+        context.getLogger("loggerA").error("her er fejl A", new IllegalStateException("fejl A"));
+        appender.stop();
+
+        StringWriter writer = new StringWriter();
+        int eventCount = new GSBinaryLogDecoder().decode(file, PATTERN, writer);
+
+        Assert.assertEquals(5, eventCount);
+        String text = writer.toString();
+        Assert.assertTrue(text, text.startsWith("INFO  loggerA her er A\n" +
+                "WARN  loggerB her er B og 2\n" +
+                "DEBUG loggerC her er C\n" +
+                "INFO  loggerA her er A\n" +
+                "ERROR loggerA her er fejl A\n" +
+                "java.lang.IllegalStateException: fejl A"));
+    }
+
+    @Test
+    public void testHeaderOfNextFile() throws Exception {
+        GSBinaryEncoder encoder = new GSBinaryEncoder();
+        encoder.setContext(context);
+        encoder.start();
+        LoggingEvent event = new LoggingEvent(Logger.class.getName(), context.getLogger("loggerA"), Level.INFO, "her er A", null, null);
+        event.setThreadName("threadA");
+        File nextFile = new File(temporaryFolder.getRoot(), "binary.1.log");
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(encoder.headerBytes());
+            out.write(encoder.encode(event)); // With the definitions
+        }
+        byte[] encoded = encoder.encode(event); // Encoded before the next file is opened, and written after its header
+        try (OutputStream out = new FileOutputStream(nextFile)) {
+            out.write(encoder.headerBytes());
+            out.write(encoded);
+        }
+
+        Assert.assertEquals("INFO  loggerA her er A\n", decode(file, 1));
+        Assert.assertEquals("INFO  loggerA her er A\n", decode(nextFile, 1));
+    }
+
+    @Test
+    public void testAppendToMappedFile() throws Exception {
+        File crashedFile = new File(temporaryFolder.getRoot(), "crashed.log");
+        reset(file);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            context.getLogger("loggerA").info("her er A " + i); // The event ends with a zero byte, ie. no stack trace
+            expected.append("INFO  loggerA her er A ").append(i).append('\n');
+        }
+        Files.copy(file.toPath(), crashedFile.toPath()); // As the file is when the VM dies
+        context.stop();
+        Assert.assertEquals(expected.toString(), decode(file, 100));
+        Assert.assertEquals(expected.toString(), decode(crashedFile, 100));
+
+        context = new LoggerContext();
+        reset(crashedFile);
+        context.getLogger("loggerB").info("her er B");
+        expected.append("INFO  loggerB her er B\n");
+        context.stop();
+
+        Assert.assertEquals(expected.toString(), decode(crashedFile, 101));
+    }
+
+    @Test
+    public void testCrashWithFullRegion() throws Exception {
+        GSBinaryEncoder encoder = new GSBinaryEncoder();
+        encoder.setContext(context);
+        encoder.start();
+        GSMappedFileAppender appender = new GSMappedFileAppender();
+        appender.setContext(context);
+        appender.setFile(file.getAbsolutePath());
+        appender.setRegionSize(FileSize.valueOf("1KB"));
+        appender.setEncoder(encoder);
+        appender.start();
+        Logger logger = context.getLogger("loggerA");
+        logger.addAppender(appender);
+        int eventCount = 0;
+        long remaining;
+        while ((remaining = 1024 - 16 - GSMappedFileAppender.getWrittenLength(file)) > 18 + 127) {
+            logger.info("her er A");
+            eventCount++;
+        }
+        char[] message = new char[(int) remaining - 18]; // A new message is 3 + its length, the event is 15
+        Arrays.fill(message, 'B');
+        logger.info(new String(message));
+        eventCount++;
+        Assert.assertEquals(1024 - 16, GSMappedFileAppender.getWrittenLength(file)); // The trailer follows the last event
+        File crashedFile = new File(temporaryFolder.getRoot(), "crashed.log");
+        Files.copy(file.toPath(), crashedFile.toPath());
+
+        StringWriter writer = new StringWriter();
+        Assert.assertEquals(eventCount, new GSBinaryLogDecoder().decode(crashedFile, PATTERN, writer));
+        Assert.assertTrue(writer.toString().endsWith("INFO  loggerA " + new String(message) + "\n"));
+    }
+
+    private void reset(File file) {
+        new GSLogbackConfigurator(context).setReportToSystemOut(false).reset(new GSLogbackConfigurationDocument("configuration")
+                .setFilenameWithExtension(file.getAbsolutePath())
+                .setRootLevel("INFO")
+                .setMapped(true)
+                .setMappedRegionSize("1KB")
+                .setBinary(true)
+                .addRootLogger());
+        Assert.assertTrue(context.getLogger(Logger.ROOT_LOGGER_NAME).iteratorForAppenders().next() instanceof GSMappedFileAppender);
+    }
+
+    private String decode(File file, int expectedEventCount) throws Exception {
+        StringWriter writer = new StringWriter();
+        Assert.assertEquals(expectedEventCount, new GSBinaryLogDecoder().decode(file, PATTERN, writer));
+        return writer.toString();
+    }
+}
@@ -0,0 +1,191 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.util.Duration;
+import ch.qos.logback.core.util.FileSize;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class GSBufferedFileAppenderTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private LoggerContext context;
+    private Logger logger;
+    private File file;
+
+    @Before
+    public void before() {
+        context = new LoggerContext();
+        logger = context.getLogger("loggerA");
+        logger.setAdditive(false);
+        file = new File(temporaryFolder.getRoot(), "buffered.log");
+    }
+
+    @After
+    public void after() {
+        context.stop();
+    }
+
+    @Test
+    public void testEventsAreBuffered() throws Exception {
+        newAppender(0, "warn");
+
+        logger.info("her er A");
+        Assert.assertEquals("", read());
+
+        logger.warn("her er advarsel A");
+        Assert.assertEquals("INFO  her er A\nWARN  her er advarsel A\n", read());
+    }
+
+    @Test
+    public void testNoFlushLevel() throws Exception {
+        newAppender(0, "off");
+
+        logger.error("her er fejl A");
+
+        Assert.assertEquals("", read());
+    }
+
+    @Test
+    public void testPeriodicFlush() throws Exception {
+        newAppender(20, "off");
+
+        logger.info("her er A");
+
+        long end = System.currentTimeMillis() + 5000;
+        while (read().isEmpty() && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals("INFO  her er A\n", read());
+    }
+
+    @Test
+    public void testStopFlushes() throws Exception {
+        GSBufferedFileAppender appender = newAppender(0, "off");
+
+        logger.info("her er A");
+        appender.stop();
+
+        Assert.assertEquals("INFO  her er A\n", read());
+    }
+
+    @Test
+    public void testDefaults() {
+        GSBufferedFileAppender appender = new GSBufferedFileAppender();
+
+        Assert.assertFalse(appender.isImmediateFlush());
+        Assert.assertEquals(FileSize.valueOf("256KB").getSize(), appender.getBufferSize().getSize());
+        Assert.assertEquals(1000, appender.getFlushInterval().getMilliseconds());
+        Assert.assertEquals("WARN", appender.getFlushLevel());
+    }
+
+    @Test
+    public void testDocument() {
+        GSLogbackProperties.GSLOG_PATTERN.setValue("%-5level %msg%n");
+        try {
+            new GSLogbackConfigurator(context).setReportToSystemOut(false).reset(new GSLogbackConfigurationDocument("configuration")
+                    .setFilenameWithExtension(file.getAbsolutePath())
+                    .setRootLevel("INFO")
+                    .setBuffered(true)
+                    .setBufferSize("64KB")
+                    .setFlushInterval(200)
+                    .setFlushLevel("error")
+                    .addRootLogger());
+        } finally {
+            GSLogbackProperties.GSLOG_PATTERN.clearValue();
+        }
+
+        GSBufferedFileAppender appender = (GSBufferedFileAppender) context.getLogger(Logger.ROOT_LOGGER_NAME).iteratorForAppenders().next();
+        Assert.assertEquals(FileSize.valueOf("64KB").getSize(), appender.getBufferSize().getSize());
+        Assert.assertEquals(200, appender.getFlushInterval().getMilliseconds());
+        Assert.assertEquals("ERROR", appender.getFlushLevel());
+    }
+
+    @Test
+    public void testFlusherLevel() {
+        GSLogbackFlusher flusher = new GSLogbackFlusher();
+        flusher.setFlushLevel("error");
+
+        Assert.assertFalse(flusher.isFlushing(newEvent(Level.WARN)));
+        Assert.assertTrue(flusher.isFlushing(newEvent(Level.ERROR)));
+
+        flusher.setFlushLevel("ukendt");
+        Assert.assertEquals("WARN", flusher.getFlushLevel());
+    }
+
+    @Test
+    public void testFlusherStartAndStop() throws Exception {
+        GSLogbackFlusher flusher = new GSLogbackFlusher();
+        flusher.setFlushInterval(Duration.buildByMilliseconds(10));
+        AtomicInteger flushes = new AtomicInteger();
+        AtomicInteger secondFlushes = new AtomicInteger();
+
+        flusher.start(context, flushes::incrementAndGet);
+        flusher.start(context, secondFlushes::incrementAndGet); // Already started
+        long end = System.currentTimeMillis() + 5000;
+        while (flushes.get() < 3 && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        flusher.stop();
+        Thread.sleep(50); // A flush running at the stop
+        int stoppedFlushes = flushes.get();
+        Thread.sleep(100);
+
+        Assert.assertTrue(stoppedFlushes >= 3);
+        Assert.assertEquals(stoppedFlushes, flushes.get());
+        Assert.assertEquals(0, secondFlushes.get());
+    }
+
+    @Test
+    public void testFlusherWithoutInterval() throws Exception {
+        GSLogbackFlusher flusher = new GSLogbackFlusher();
+        flusher.setFlushInterval(Duration.buildByMilliseconds(0));
+        AtomicInteger flushes = new AtomicInteger();
+
+        flusher.start(context, flushes::incrementAndGet);
+        Thread.sleep(100);
+        flusher.stop();
+
+        Assert.assertEquals(0, flushes.get());
+    }
+
+    private GSBufferedFileAppender newAppender(long flushIntervalMillis, String flushLevel) {
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%-5level %msg%n");
+        encoder.start();
+        GSBufferedFileAppender appender = new GSBufferedFileAppender();
+        appender.setContext(context);
+        appender.setName("buffered");
+        appender.setFile(file.getAbsolutePath());
+        appender.setEncoder(encoder);
+        appender.setFlushInterval(Duration.buildByMilliseconds(flushIntervalMillis));
+        appender.setFlushLevel(flushLevel);
+        appender.start();
+        logger.addAppender(appender);
+        return appender;
+    }
+
+    private LoggingEvent newEvent(Level level) {
+        LoggingEvent event = new LoggingEvent();
+        event.setLevel(level);
+        return event;
+    }
+
+    private String read() throws Exception {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
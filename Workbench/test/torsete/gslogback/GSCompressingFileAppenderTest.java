@@ -0,0 +1,164 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.core.util.Duration;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+public class GSCompressingFileAppenderTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private LoggerContext context;
+    private Logger logger;
+    private File file;
+
+    @Before
+    public void before() {
+        context = new LoggerContext();
+        logger = context.getLogger("loggerA");
+        logger.setAdditive(false);
+        file = new File(temporaryFolder.getRoot(), "compressed.log");
+    }
+
+    @After
+    public void after() {
+        context.stop();
+    }
+
+    @Test
+    public void testReadableWhileWritten() throws Exception {
+        GSCompressingFileAppender appender = newAppender(false);
+
+        logger.info("her er A");
+        logger.warn("her er advarsel A");
+        logger.info("her er B"); // Not flushed
+
+        Assert.assertEquals(file.getAbsolutePath() + ".gz", appender.getFile());
+        Assert.assertEquals("INFO  her er A\nWARN  her er advarsel A\n", read(new File(appender.getFile())));
+    }
+
+    @Test
+    public void testStopFinishes() throws Exception {
+        GSCompressingFileAppender appender = newAppender(false);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            logger.info("her er A " + i);
+            expected.append("INFO  her er A ").append(i).append('\n');
+        }
+
+        appender.stop();
+
+        File compressedFile = new File(appender.getFile());
+        Assert.assertEquals(expected.toString(), read(compressedFile));
+        Assert.assertTrue(compressedFile.length() * 5 < expected.length());
+    }
+
+    @Test
+    public void testAppendAddsMember() throws Exception {
+        GSCompressingFileAppender appender = newAppender(false);
+        logger.info("her er A");
+        appender.stop();
+        logger.detachAndStopAllAppenders();
+
+        appender = newAppender(false);
+        logger.info("her er B");
+        appender.stop();
+
+        Assert.assertEquals("INFO  her er A\nINFO  her er B\n", read(new File(appender.getFile())));
+    }
+
+    @Test
+    public void testNotPrudent() {
+        GSCompressingFileAppender appender = newAppender(true);
+
+        Assert.assertFalse(appender.isStarted());
+    }
+
+    @Test
+    public void testCompressedFileName() {
+        Assert.assertEquals("a.log.gz", GSCompressingFileAppender.getCompressedFileName(" a.log "));
+        Assert.assertEquals("a.log.gz", GSCompressingFileAppender.getCompressedFileName("a.log.gz"));
+        Assert.assertNull(GSCompressingFileAppender.getCompressedFileName(null));
+    }
+
+    @Test
+    public void testDocument() throws Exception {
+        GSLogbackProperties.GSLOG_PATTERN.setValue("%-5level %msg%n");
+        GSLogbackProperties.GSLOG_COMPRESS.setValue("true");
+        try {
+            new GSLogbackConfigurator(context).setReportToSystemOut(false).reset(new GSLogbackConfigurationDocument("configuration")
+                    .setFilenameWithExtension(file.getAbsolutePath())
+                    .setRootLevel("INFO")
+                    .setFlushLevel("error")
+                    .addRootLogger());
+        } finally {
+            GSLogbackProperties.GSLOG_PATTERN.clearValue();
+            GSLogbackProperties.GSLOG_COMPRESS.clearValue();
+        }
+
+        GSCompressingFileAppender appender = (GSCompressingFileAppender) context.getLogger(Logger.ROOT_LOGGER_NAME).iteratorForAppenders().next();
+        Assert.assertEquals("ERROR", appender.getFlushLevel());
+        context.getLogger("loggerB").error("her er fejl B");
+        Assert.assertEquals("ERROR her er fejl B\n", read(new File(file.getAbsolutePath() + ".gz")));
+    }
+
+    @Test
+    public void testValidation() {
+        GSLogbackProperties.GSLOG_COMPRESS.validateValue("true");
+        GSLogbackProperties.GSLOG_COMPRESS.validateValue("");
+        try {
+            GSLogbackProperties.GSLOG_COMPRESS.validateValue("ja");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private GSCompressingFileAppender newAppender(boolean isPrudent) {
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%-5level %msg%n");
+        encoder.start();
+        GSCompressingFileAppender appender = new GSCompressingFileAppender();
+        appender.setContext(context);
+        appender.setName("compressed");
+        appender.setFile(file.getAbsolutePath());
+        appender.setPrudent(isPrudent);
+        appender.setEncoder(encoder);
+        appender.setFlushInterval(Duration.buildByMilliseconds(0));
+        appender.setFlushLevel("warn");
+        appender.start();
+        logger.addAppender(appender);
+        return appender;
+    }
+
+    /**
+     * @return The uncompressed content, up to the last flush if the file is still written
+     */
+    private String read(File file) throws Exception {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new FileInputStream(file))) {
+            int b;
+            while ((b = in.read()) >= 0) {
+                content.write(b);
+            }
+        } catch (EOFException e) {
+            // Unexpected end, ie. the file is still written
+        }
+        return new String(content.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
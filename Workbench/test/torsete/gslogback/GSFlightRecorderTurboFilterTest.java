@@ -0,0 +1,195 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import ch.qos.logback.core.status.Status;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.MDC;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class GSFlightRecorderTurboFilterTest {
+    private final static String INCIDENT_LOGGER = "dk.gensam.gaia.util.incident.GSIncident";
+    private LoggerContext context;
+    private GSFlightRecorderTurboFilter filter;
+    private ListAppender<ILoggingEvent> incidentAppender;
+    private Logger logger;
+
+    @Before
+    public void before() {
+        context = new LoggerContext();
+        context.getLogger(Logger.ROOT_LOGGER_NAME).setLevel(Level.INFO);
+        incidentAppender = new ListAppender<>();
+        incidentAppender.setContext(context);
+        incidentAppender.setName("gslog.incidentFileAppender");
+        incidentAppender.start();
+        Logger incidentLogger = context.getLogger(INCIDENT_LOGGER);
+        incidentLogger.setAdditive(false);
+        incidentLogger.addAppender(incidentAppender);
+        logger = context.getLogger("loggerA");
+        filter = new GSFlightRecorderTurboFilter();
+        filter.setContext(context);
+        filter.setName("flightRecorder");
+        filter.setAppenderName("gslog.incidentFileAppender");
+    }
+
+    @After
+    public void after() {
+        context.stop();
+        MDC.clear();
+    }
+
+    @Test
+    public void testErrorWritesContext() {
+        start();
+
+        logger.debug("her er {} {}", "A", 1);
+        logger.trace("her er spor A"); // Below the recording level
+        logger.info("her er B");
+        logger.error("her er fejl A", new IllegalStateException("fejl A"));
+
+        Assert.assertEquals("[DEBUG her er A 1, INFO her er B, ERROR her er fejl A]", getIncidentEvents());
+        ILoggingEvent errorEvent = incidentAppender.list.get(2);
+        Assert.assertEquals("fejl A", errorEvent.getThrowableProxy().getMessage());
+        Assert.assertEquals(Thread.currentThread().getName(), incidentAppender.list.get(0).getThreadName());
+        Assert.assertEquals("loggerA", incidentAppender.list.get(0).getLoggerName());
+    }
+
+    @Test
+    public void testRingIsEmptied() {
+        start();
+
+        logger.error("her er fejl A"); // No context
+        logger.debug("her er A");
+        logger.error("her er fejl B");
+        logger.error("her er fejl C");
+
+        Assert.assertEquals("[DEBUG her er A, ERROR her er fejl B]", getIncidentEvents());
+    }
+
+    @Test
+    public void testSize() {
+        filter.setSize(3);
+        start();
+
+        for (int i = 0; i < 5; i++) {
+            logger.debug("her er A " + i);
+        }
+        logger.error("her er fejl A");
+
+        Assert.assertEquals("[DEBUG her er A 2, DEBUG her er A 3, DEBUG her er A 4, ERROR her er fejl A]", getIncidentEvents());
+    }
+
+    @Test
+    public void testTriggerLogger() {
+        filter.setTriggerLogger(INCIDENT_LOGGER);
+        filter.setTriggerLevel("off");
+        start();
+
+        logger.debug("her er A");
+        logger.error("her er fejl A"); // Recorded, since the trigger level is OFF
+        context.getLogger(INCIDENT_LOGGER).info("her er incident A");
+
+        Assert.assertEquals("[DEBUG her er A, ERROR her er fejl A, INFO her er incident A]", getIncidentEvents());
+    }
+
+    @Test
+    public void testMdcKey() throws Exception {
+        filter.setMdcKey("gslog.request");
+        start();
+
+        MDC.put("gslog.request", "anmodning A");
+        logger.debug("her er A");
+        Thread thread = new Thread(() -> {
+            MDC.put("gslog.request", "anmodning A");
+            logger.debug("her er B");
+            MDC.put("gslog.request", "anmodning B");
+            logger.debug("her er C");
+        }, "threadB");
+        thread.start();
+        thread.join();
+        logger.error("her er fejl A");
+
+        Assert.assertEquals("[DEBUG her er A, DEBUG her er B, ERROR her er fejl A]", getIncidentEvents());
+        Assert.assertEquals("threadB", incidentAppender.list.get(1).getThreadName());
+        Assert.assertEquals("anmodning A", incidentAppender.list.get(1).getMDCPropertyMap().get("gslog.request"));
+    }
+
+    @Test
+    public void testGuardIsNotRecorded() {
+        start();
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("her er A");
+        }
+        logger.error("her er fejl A");
+
+        Assert.assertTrue(incidentAppender.list.isEmpty());
+    }
+
+    @Test
+    public void testSettings() {
+        filter.setSize(0);
+        filter.setLevel("ukendt");
+        filter.setAppenderName(null);
+
+        filter.start();
+
+        Assert.assertFalse(filter.isStarted());
+        Assert.assertEquals(3, getErrors());
+    }
+
+    @Test
+    public void testMissingAppender() {
+        filter.setAppenderName("ukendt");
+        start();
+
+        logger.debug("her er A");
+        logger.error("her er fejl A");
+        logger.debug("her er B");
+        logger.error("her er fejl B");
+
+        Assert.assertEquals(1, getErrors()); // Reported once
+    }
+
+    @Test
+    public void testValidation() {
+        GSLogbackProperties.GSLOG_FLIGHT_RECORDER.validateValue("true");
+        GSLogbackProperties.GSLOG_FLIGHT_RECORDER_SIZE.validateValue("256");
+        assertInvalid(GSLogbackProperties.GSLOG_FLIGHT_RECORDER, "ja");
+        assertInvalid(GSLogbackProperties.GSLOG_FLIGHT_RECORDER_SIZE, "0");
+    }
+
+    private void assertInvalid(GSLogbackProperties property, String value) {
+        try {
+            property.validateValue(value);
+            Assert.fail(property + " " + value);
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private void start() {
+        filter.start();
+        Assert.assertTrue(filter.isStarted());
+        context.addTurboFilter(filter);
+    }
+
+    private long getErrors() {
+        return context.getStatusManager().getCopyOfStatusList().stream().filter(status -> status.getLevel() == Status.ERROR).count();
+    }
+
+    private String getIncidentEvents() {
+        List<String> events = incidentAppender.list.stream()
+                .map(event -> event.getLevel() + " " + event.getFormattedMessage())
+                .collect(Collectors.toList());
+        return events.toString();
+    }
+}
@@ -0,0 +1,144 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.MDC;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class GSLevelTurboFilterTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private LoggerContext context;
+    private GSLevelTurboFilter filter;
+
+    @Before
+    public void before() {
+        context = new LoggerContext();
+        filter = new GSLevelTurboFilter();
+        filter.setContext(context);
+        filter.setName("levelFilter");
+    }
+
+    @After
+    public void after() {
+        context.stop();
+        MDC.clear();
+    }
+
+    @Test
+    public void testLongestLoggerNameDecides() {
+        filter.addRule(newRule(null, "info", null, null));
+        filter.addRule(newRule("org.apache", "warn", null, null));
+        filter.addRule(newRule("org.apache.http", "debug", null, null));
+        filter.start();
+
+        Assert.assertEquals(FilterReply.DENY, decide("org.apache", Level.INFO));
+        Assert.assertEquals(FilterReply.NEUTRAL, decide("org.apache", Level.WARN));
+        Assert.assertEquals(FilterReply.DENY, decide("org.apache.commons", Level.INFO));
+        Assert.assertEquals(FilterReply.NEUTRAL, decide("org.apache.http.wire", Level.DEBUG));
+        Assert.assertEquals(FilterReply.DENY, decide("org.apache.http.wire", Level.TRACE));
+        Assert.assertEquals(FilterReply.DENY, decide("org.apachex", Level.DEBUG)); // Not a descendant of org.apache
+        Assert.assertEquals(FilterReply.NEUTRAL, decide("org.apachex", Level.INFO));
+    }
+
+    @Test
+    public void testNoMatchingRule() {
+        filter.addRule(newRule("org.apache", "off", null, null));
+        filter.start();
+
+        Assert.assertEquals(FilterReply.DENY, decide("org.apache", Level.ERROR));
+        Assert.assertEquals(FilterReply.NEUTRAL, decide("dk.gensam", Level.TRACE));
+    }
+
+    @Test
+    public void testMdcRule() {
+        filter.addRule(newRule("dk.gensam", "info", null, null));
+        filter.addRule(newRule("dk.gensam", "debug", "gslog.trace", null));
+        filter.addRule(newRule(null, "trace", "gslog.user", "brugerA"));
+        filter.start();
+
+        Assert.assertEquals(FilterReply.DENY, decide("dk.gensam.a", Level.DEBUG));
+        MDC.put("gslog.trace", "x");
+        Assert.assertEquals(FilterReply.ACCEPT, decide("dk.gensam.a", Level.DEBUG));
+        Assert.assertEquals(FilterReply.DENY, decide("dk.gensam.a", Level.TRACE));
+        MDC.remove("gslog.trace");
+
+        MDC.put("gslog.user", "brugerB");
+        Assert.assertEquals(FilterReply.DENY, decide("dk.gensam.a", Level.TRACE));
+        MDC.put("gslog.user", "brugerA");
+        Assert.assertEquals(FilterReply.ACCEPT, decide("dk.gensam.a", Level.TRACE));
+    }
+
+    @Test
+    public void testRuleAddedLater() {
+        filter.start();
+        Assert.assertEquals(FilterReply.NEUTRAL, decide("loggerA", Level.INFO));
+
+        filter.addRule(newRule("loggerA", "warn", null, null));
+
+        Assert.assertEquals(FilterReply.DENY, decide("loggerA", Level.INFO));
+    }
+
+    @Test
+    public void testRuleWithoutLevel() {
+        filter.addRule(newRule("loggerA", "ukendt", null, null));
+
+        filter.start();
+
+        Assert.assertFalse(filter.isStarted());
+        Assert.assertEquals(FilterReply.NEUTRAL, decide("loggerA", Level.INFO));
+    }
+
+    @Test
+    public void testDocument() throws Exception {
+        File file = new File(temporaryFolder.getRoot(), "level.log");
+        GSLogbackProperties.GSLOG_PATTERN.setValue("%-5level %logger %msg%n");
+        try {
+            new GSLogbackConfigurator(context).setReportToSystemOut(false).reset(new GSLogbackConfigurationDocument("configuration")
+                    .setFilenameWithExtension(file.getAbsolutePath())
+                    .setRootLevel("DEBUG")
+                    .addLevelRule("loggerA", "warn")
+                    .addLevelRule("loggerA", "debug", "gslog.trace", "ja")
+                    .addRootLogger());
+        } finally {
+            GSLogbackProperties.GSLOG_PATTERN.clearValue();
+        }
+
+        context.getLogger("loggerA").info("her er A");
+        context.getLogger("loggerA.b").warn("her er advarsel A");
+        context.getLogger("loggerB").debug("her er B");
+        MDC.put("gslog.trace", "ja");
+        context.getLogger("loggerA").debug("her er sporet A");
+        context.stop();
+
+        Assert.assertEquals("WARN  loggerA.b her er advarsel A\n" +
+                        "DEBUG loggerB her er B\n" +
+                        "DEBUG loggerA her er sporet A\n",
+                new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    }
+
+    private FilterReply decide(String loggerName, Level level) {
+        Logger logger = context.getLogger(loggerName);
+        return filter.decide(null, logger, level, "her er A", null, null);
+    }
+
+    private GSLevelTurboFilter.Rule newRule(String logger, String level, String mdcKey, String mdcValue) {
+        GSLevelTurboFilter.Rule rule = new GSLevelTurboFilter.Rule();
+        rule.setLogger(logger);
+        rule.setLevel(level);
+        rule.setMdcKey(mdcKey);
+        rule.setMdcValue(mdcValue);
+        return rule;
+    }
+}
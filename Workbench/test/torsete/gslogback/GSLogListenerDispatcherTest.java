@@ -0,0 +1,82 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.status.Status;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+public class GSLogListenerDispatcherTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private LoggerContext context;
+    private GSLogbackConfigurator configurator;
+    private List<String> messages;
+
+    @Before
+    public void before() {
+        context = new LoggerContext();
+        messages = new CopyOnWriteArrayList<>();
+        configurator = new GSLogbackConfigurator(context).setReportToSystemOut(false).addLogListner(messages::add);
+    }
+
+    @After
+    public void after() {
+        context.stop();
+    }
+
+    @Test
+    public void testStatusPrinterLines() {
+        configurator.new StatusPrinterPrintStream().print("linje 1\nlinje 2");
+
+        Assert.assertTrue(configurator.flushLogListeners(5000));
+        Assert.assertEquals(Arrays.asList("StatusPrinter: linje 1", "StatusPrinter: linje 2"), messages);
+    }
+
+    @Test(expected = UncheckedIOException.class)
+    public void testResetMissingFile() {
+        configurator.reset(new File(temporaryFolder.getRoot(), "findes.ikke.xml"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testResetUnparsableFile() throws Exception {
+        File file = temporaryFolder.newFile("ufuldstaendig.xml");
+        Files.write(file.toPath(), "<configuration>".getBytes(StandardCharsets.UTF_8));
+
+        configurator.reset(file);
+    }
+
+    @Test
+    public void testFailuresAreReported() {
+        GSLogListenerDispatcher dispatcher = new GSLogListenerDispatcher(10);
+        Consumer<String> failingListener = s -> {
+            throw new IllegalStateException("lytter");
+        };
+
+        dispatcher.dispatch(Collections.singletonList(failingListener), () -> {
+            throw new IllegalStateException("tekst");
+        }, context);
+
+        Assert.assertTrue(dispatcher.flush(5000));
+        List<Status> warnings = context.getStatusManager().getCopyOfStatusList().stream()
+                .filter(status -> status.getOrigin() == dispatcher && status.getLevel() == Status.WARN)
+                .collect(Collectors.toList());
+        Assert.assertEquals(2, warnings.size());
+        Assert.assertEquals("tekst", warnings.get(0).getThrowable().getMessage());
+        Assert.assertEquals("lytter", warnings.get(1).getThrowable().getMessage());
+    }
+}
@@ -0,0 +1,128 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.Configurator;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.FileAppender;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Properties;
+
+public class GSLogbackCodeGeneratorTest {
+    private final static String DIR_PROPERTY = GSLogbackCodeGeneratorTest.class.getName() + ".dir";
+    private final static String CLASS_NAME = "generated.TestConfigurator";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private LoggerContext generatedContext;
+    private LoggerContext joranContext;
+    private String dir;
+    private Properties systemProperties;
+
+    @Before
+    public void before() {
+        systemProperties = (Properties) System.getProperties().clone(); // A configuration sets properties of scope system
+        generatedContext = new LoggerContext();
+        joranContext = new LoggerContext();
+        dir = temporaryFolder.getRoot().getAbsolutePath().replace('\\', '/');
+        System.setProperty(DIR_PROPERTY, dir);
+    }
+
+    @After
+    public void after() {
+        generatedContext.stop();
+        joranContext.stop();
+        System.setProperties(systemProperties);
+        GSLogbackProperties.refresh();
+    }
+
+    @Test
+    public void testSameAsJoran() throws Exception {
+        write("included.xml", "<included><logger name='loggerB' level='ERROR'/></included>");
+        File file = write("generated.xml", "<configuration>" +
+                "<property name='log.file' value='" + dir + "/generated.log'/>" +
+                "<if condition='isDefined(\"log.level\")'>" +
+                "<then><property name='level' value='${log.level}'/></then>" +
+                "<else><property name='level' value='WARN'/></else>" +
+                "</if>" +
+                "<include file='${" + DIR_PROPERTY + "}/included.xml'/>" +
+                "<appender name='file' class='ch.qos.logback.core.FileAppender'>" +
+                "<file>${log.file}</file><encoder><pattern>%-5level %msg%n</pattern></encoder>" +
+                "</appender>" +
+                "<logger name='loggerA' level='${level}' additivity='false'><appender-ref ref='file'/></logger>" +
+                "<root level='INFO'><appender-ref ref='file'/></root>" +
+                "</configuration>");
+
+        File sourceDirectory = temporaryFolder.newFolder("src");
+        File sourceFile = new GSLogbackCodeGenerator().generate(file, sourceDirectory, CLASS_NAME);
+        new GSLogbackConfigurator(generatedContext).setReportToSystemOut(false).reset(newConfigurator(sourceDirectory, sourceFile));
+        new GSLogbackConfigurator(joranContext).setReportToSystemOut(false).reset(file);
+
+        for (String loggerName : new String[]{Logger.ROOT_LOGGER_NAME, "loggerA", "loggerB"}) {
+            Assert.assertEquals(joranContext.getLogger(loggerName).getLevel(), generatedContext.getLogger(loggerName).getLevel());
+            Assert.assertEquals(joranContext.getLogger(loggerName).isAdditive(), generatedContext.getLogger(loggerName).isAdditive());
+        }
+        Assert.assertEquals(getFile(joranContext), getFile(generatedContext));
+        Assert.assertEquals(dir + "/generated.log", getFile(generatedContext));
+    }
+
+    @Test
+    public void testShippedConfiguration() throws Exception {
+        System.setProperty("gslog.configurationFolder", new File("logbackConfiguration").getAbsolutePath()); // The includes are expanded by the generator
+        GSLogbackProperties.GSLOG_SERVER.setValue(dir);
+        GSLogbackProperties.GSLOG_ASYNC.setValue("true");
+        GSLogbackProperties.GSLOG_RATE_LIMITS.setValue("org.apache=100");
+
+        File sourceDirectory = temporaryFolder.newFolder("src");
+        File sourceFile = new GSLogbackCodeGenerator().generate(new File("logbackConfiguration/gslog-configure-T.xml"), sourceDirectory, CLASS_NAME);
+        new GSLogbackConfigurator(generatedContext).setReportToSystemOut(false).reset(newConfigurator(sourceDirectory, sourceFile));
+
+        Logger root = generatedContext.getLogger(Logger.ROOT_LOGGER_NAME);
+        Assert.assertEquals("DEBUG", root.getLevel().toString());
+        AsyncAppender asyncAppender = (AsyncAppender) root.getAppender("gslog.consoleAppender.async");
+        Assert.assertTrue(asyncAppender.isStarted());
+        Assert.assertEquals("gslog.consoleAppender", asyncAppender.iteratorForAppenders().next().getName());
+        Assert.assertTrue(generatedContext.getTurboFilterList().get(0) instanceof GSRateLimitTurboFilter);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupported() throws Exception {
+        File file = write("unsupported.xml", "<configuration><jmxConfigurator/></configuration>");
+
+        new GSLogbackCodeGenerator().generate(file, CLASS_NAME);
+    }
+
+    private Configurator newConfigurator(File sourceDirectory, File sourceFile) throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        Assert.assertEquals(0, compiler.run(null, null, null,
+                "-cp", System.getProperty("java.class.path"), "-d", sourceDirectory.getPath(), sourceFile.getPath()));
+        ClassLoader classLoader = new URLClassLoader(new URL[]{sourceDirectory.toURI().toURL()}, getClass().getClassLoader());
+        return (Configurator) classLoader.loadClass(CLASS_NAME).newInstance();
+    }
+
+    private String getFile(LoggerContext context) {
+        Appender<ILoggingEvent> appender = context.getLogger(Logger.ROOT_LOGGER_NAME).getAppender("file");
+        return ((FileAppender<ILoggingEvent>) appender).getFile();
+    }
+
+    private File write(String name, String content) throws Exception {
+        File file = new File(temporaryFolder.getRoot(), name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,96 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.joran.event.StartEvent;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class GSLogbackConfigurationCacheTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private LoggerContext context;
+
+    @Before
+    public void before() {
+        context = new LoggerContext();
+    }
+
+    @After
+    public void after() {
+        context.stop();
+    }
+
+    @Test
+    public void testCached() throws Exception {
+        File file = write("cached.xml", "<configuration><logger name='loggerA' level='INFO'/></configuration>");
+        GSLogbackConfigurationCache.Entry entry = GSLogbackConfigurationCache.getInstance().get(file, context);
+
+        Assert.assertSame(entry, GSLogbackConfigurationCache.getInstance().get(file, context));
+        Assert.assertEquals("configuration", entry.getDocument().getDocumentElement().getTagName());
+    }
+
+    @Test
+    public void testChangedFile() throws Exception {
+        File file = write("changed.xml", "<configuration><logger name='loggerA' level='INFO'/></configuration>");
+        GSLogbackConfigurationCache.Entry entry = GSLogbackConfigurationCache.getInstance().get(file, context);
+
+        Assert.assertTrue(file.setLastModified(file.lastModified() - 10_000));
+        GSLogbackConfigurationCache.Entry touchedEntry = GSLogbackConfigurationCache.getInstance().get(file, context);
+        Assert.assertSame(entry.getDocument(), touchedEntry.getDocument()); // Same content is not parsed again
+
+        write("changed.xml", "<configuration><logger name='loggerA' level='WARN'/></configuration>");
+        Assert.assertTrue(file.setLastModified(file.lastModified() - 20_000));
+        GSLogbackConfigurationCache.Entry changedEntry = GSLogbackConfigurationCache.getInstance().get(file, context);
+        Assert.assertNotSame(entry.getDocument(), changedEntry.getDocument());
+        Assert.assertEquals("WARN", ((StartEvent) changedEntry.getSaxEvents().get(1)).getAttributes().getValue("level"));
+    }
+
+    @Test
+    public void testIncludedEvents() throws Exception {
+        File file = write("included.xml", "<included><logger name='loggerA' level='INFO'/></included>");
+        GSLogbackConfigurationCache.Entry entry = GSLogbackConfigurationCache.getInstance().get(file, context);
+
+        Assert.assertEquals(4, entry.getSaxEvents().size());
+        Assert.assertEquals(2, entry.getIncludedEvents().size());
+        Assert.assertEquals("logger", entry.getIncludedEvents().get(0).getQName());
+    }
+
+    @Test
+    public void testInclude() throws Exception {
+        write("include.xml", "<included><logger name='loggerA' level='WARN'/></included>");
+        File file = write("main.xml", "<configuration>" +
+                "<property name='dir' value='" + temporaryFolder.getRoot().getAbsolutePath().replace('\\', '/') + "'/>" +
+                "<include file='${dir}/include.xml'/>" +
+                "<include file='${dir}/optional.xml' optional='true'/>" +
+                "<include file='${dir}/missing.xml'/>" +
+                "<logger name='loggerB' level='ERROR'/>" +
+                "</configuration>");
+
+        List<String> messages = new CopyOnWriteArrayList<>();
+        GSLogbackConfigurator configurator = new GSLogbackConfigurator(context).setReportToSystemOut(false).addLogListner(messages::add);
+        configurator.reset(file);
+        Assert.assertTrue(configurator.flushLogListeners(5000));
+
+        Assert.assertEquals(Level.WARN, context.getLogger("loggerA").getLevel());
+        Assert.assertEquals(Level.ERROR, context.getLogger("loggerB").getLevel());
+        Assert.assertEquals(1, messages.stream().filter(m -> m.contains("WARN") && m.contains("missing.xml")).count()); // As a status
+        Assert.assertEquals(0, messages.stream().filter(m -> m.contains("WARN") && m.contains("optional.xml")).count());
+    }
+
+    private File write(String name, String content) throws Exception {
+        File file = new File(temporaryFolder.getRoot(), name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,111 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.FileAppender;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Element;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class GSLogbackConfigurationDiffTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private LoggerContext context;
+    private GSLogbackConfigurator configurator;
+
+    @Before
+    public void before() {
+        context = new LoggerContext();
+        configurator = new GSLogbackConfigurator(context).setReportToSystemOut(false);
+    }
+
+    @After
+    public void after() {
+        context.stop();
+    }
+
+    @Test
+    public void testUpdateLevels() {
+        configurator.reset(newDocument("WARN", "ERROR"));
+        Assert.assertEquals(Level.WARN, context.getLogger(Logger.ROOT_LOGGER_NAME).getLevel());
+        Assert.assertEquals(Level.ERROR, context.getLogger("loggerA").getLevel());
+
+        configurator.update(newDocument("INFO", null));
+        Assert.assertEquals(Level.INFO, context.getLogger(Logger.ROOT_LOGGER_NAME).getLevel());
+        Assert.assertNull(context.getLogger("loggerA").getLevel());
+    }
+
+    @Test
+    public void testUpdateRootWithoutLevel() {
+        configurator.reset(newDocument("WARN", "ERROR"));
+        configurator.update(newDocument(null, "ERROR"));
+        Level updatedLevel = context.getLogger(Logger.ROOT_LOGGER_NAME).getLevel();
+
+        configurator.reset(newDocument(null, "ERROR"));
+        Assert.assertEquals(Level.DEBUG, updatedLevel);
+        Assert.assertEquals(context.getLogger(Logger.ROOT_LOGGER_NAME).getLevel(), updatedLevel);
+    }
+
+    @Test
+    public void testReferToUnattachedAppender() throws Exception {
+        File file = new File(temporaryFolder.getRoot(), "unattached.log");
+        configurator.reset(newAppenderDocument(file, false));
+        Assert.assertFalse(context.getLogger(Logger.ROOT_LOGGER_NAME).iteratorForAppenders().hasNext());
+
+        configurator.update(newAppenderDocument(file, true));
+        context.getLogger("loggerA").info("her er A");
+
+        Appender<ILoggingEvent> appender = context.getLogger(Logger.ROOT_LOGGER_NAME).getAppender("fileAppender");
+        Assert.assertNotNull(appender);
+        Assert.assertTrue(appender.isStarted());
+        Assert.assertEquals("INFO  her er A\n", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param isAttached True if the root refers to the appender
+     */
+    private GSLogbackConfigurationDocument newAppenderDocument(File file, boolean isAttached) {
+        GSLogbackConfigurationDocument document = new GSLogbackConfigurationDocument("configuration");
+        Element appenderElement = document.appendElement(document.getDocumentElement(), "appender",
+                "name", "fileAppender",
+                "class", FileAppender.class.getName());
+        document.appendTextElement(appenderElement, "file", file.getAbsolutePath());
+        document.appendTextElement(document.appendElement(appenderElement, "encoder"), "pattern", "%-5level %msg%n");
+        if (isAttached) {
+            document.addRootLevel("INFO", "fileAppender");
+        } else {
+            document.addRootLevel("INFO");
+        }
+        return document;
+    }
+
+    /**
+     * @param rootLevel    Null for a root without a level
+     * @param loggerLevel  Null for a logger without a level
+     */
+    private GSLogbackConfigurationDocument newDocument(String rootLevel, String loggerLevel) {
+        GSLogbackConfigurationDocument document = new GSLogbackConfigurationDocument("configuration");
+        document.appendElement(document.getDocumentElement(), "logger", "name", "loggerA");
+        if (loggerLevel != null) {
+            ((org.w3c.dom.Element) document.getDocumentElement().getFirstChild()).setAttribute("level", loggerLevel);
+        }
+        org.w3c.dom.Element rootElement = document.addRootLevel("OFF");
+        if (rootLevel == null) {
+            rootElement.removeAttribute("level");
+        } else {
+            rootElement.setAttribute("level", rootLevel);
+        }
+        return document;
+    }
+}
@@ -0,0 +1,123 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.FileAppender;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Element;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Iterator;
+
+public class GSLogbackConfigurationDocumentAsyncTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private LoggerContext context;
+    private GSLogbackConfigurator configurator;
+
+    @Before
+    public void before() {
+        GSLogbackProperties.GSLOG_PATTERN.setValue("%-5level %logger %msg%n");
+        context = new LoggerContext();
+        configurator = new GSLogbackConfigurator(context).setReportToSystemOut(false);
+    }
+
+    @After
+    public void after() {
+        context.stop();
+        GSLogbackProperties.GSLOG_PATTERN.clearValue();
+        GSLogbackProperties.GSLOG_ASYNC.clearValue();
+        GSLogbackProperties.GSLOG_ASYNC_QUEUE_SIZE.clearValue();
+    }
+
+    @Test
+    public void testAsyncAppender() throws Exception {
+        File file = temporaryFolder.newFile("async.log");
+        configurator.reset(newDocument(file)
+                .setAsync(true)
+                .setAsyncQueueSize(16)
+                .setAsyncDiscardingThreshold(0)
+                .setAsyncNeverBlock(true)
+                .setAsyncMaxFlushTime(500)
+                .addRootLogger());
+
+        AsyncAppender asyncAppender = (AsyncAppender) getRootAppender();
+        Assert.assertTrue(asyncAppender.getName().endsWith(".async"));
+        Assert.assertEquals(16, asyncAppender.getQueueSize());
+        Assert.assertEquals(0, asyncAppender.getDiscardingThreshold());
+        Assert.assertTrue(asyncAppender.isNeverBlock());
+        Assert.assertEquals(500, asyncAppender.getMaxFlushTime());
+        Appender<ILoggingEvent> wrappedAppender = asyncAppender.iteratorForAppenders().next();
+        Assert.assertTrue(wrappedAppender instanceof FileAppender);
+        Assert.assertEquals(asyncAppender.getName(), wrappedAppender.getName() + ".async");
+    }
+
+    @Test
+    public void testEventsAreWrittenWhenStopped() throws Exception {
+        File file = temporaryFolder.newFile("async.log");
+        configurator.reset(newDocument(file).setAsync(true).addRootLogger());
+
+        for (int i = 0; i < 100; i++) {
+            context.getLogger("loggerA").info("her er A " + i);
+        }
+        context.stop();
+
+        String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        Assert.assertTrue(content.contains("her er A 0\n"));
+        Assert.assertTrue(content.contains("her er A 99\n"));
+    }
+
+    @Test
+    public void testSettingsOfProperties() throws Exception {
+        GSLogbackProperties.GSLOG_ASYNC.setValue("true");
+        GSLogbackProperties.GSLOG_ASYNC_QUEUE_SIZE.setValue("32");
+
+        configurator.reset(newDocument(temporaryFolder.newFile("async.log")).addRootLogger());
+
+        Assert.assertEquals(32, ((AsyncAppender) getRootAppender()).getQueueSize());
+    }
+
+    @Test
+    public void testDocumentSettingTakesPrecedence() throws Exception {
+        GSLogbackProperties.GSLOG_ASYNC.setValue("true");
+
+        configurator.reset(newDocument(temporaryFolder.newFile("sync.log")).setAsync(false).addRootLogger());
+
+        Assert.assertTrue(getRootAppender() instanceof FileAppender);
+    }
+
+    @Test
+    public void testAppenderIsWrappedOnce() throws Exception {
+        GSLogbackConfigurationDocument document = newDocument(temporaryFolder.newFile("async.log"));
+        Element appenderElement = document.addFileAppender("appenderA", temporaryFolder.newFile("a.log").getAbsolutePath());
+
+        Element asyncAppenderElement = document.addAsyncAppender(appenderElement);
+
+        Assert.assertSame(asyncAppenderElement, document.addAsyncAppender(appenderElement));
+        Assert.assertEquals("appenderA.async", asyncAppenderElement.getAttribute("name"));
+        Assert.assertEquals(1, document.getDocumentElement().getElementsByTagName("appender-ref").getLength());
+    }
+
+    private Appender<ILoggingEvent> getRootAppender() {
+        Iterator<Appender<ILoggingEvent>> appenders = context.getLogger(Logger.ROOT_LOGGER_NAME).iteratorForAppenders();
+        Appender<ILoggingEvent> appender = appenders.next();
+        Assert.assertFalse(appenders.hasNext());
+        return appender;
+    }
+
+    private GSLogbackConfigurationDocument newDocument(File file) {
+        return new GSLogbackConfigurationDocument("configuration")
+                .setFilenameWithExtension(file.getAbsolutePath())
+                .setRootLevel("INFO");
+    }
+}
@@ -0,0 +1,150 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.rolling.RollingFileAppender;
+import ch.qos.logback.core.rolling.SizeAndTimeBasedRollingPolicy;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+public class GSLogbackConfigurationDocumentRollingTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private LoggerContext context;
+    private GSLogbackConfigurator configurator;
+
+    @Before
+    public void before() {
+        GSLogbackProperties.GSLOG_PATTERN.setValue("%-5level %logger %msg%n");
+        context = new LoggerContext();
+        configurator = new GSLogbackConfigurator(context).setReportToSystemOut(false);
+    }
+
+    @After
+    public void after() {
+        context.stop();
+        GSLogbackProperties.GSLOG_PATTERN.clearValue();
+        GSLogbackProperties.GSLOG_ROLLING.clearValue();
+        GSLogbackProperties.GSLOG_ROLLING_MAX_HISTORY.clearValue();
+    }
+
+    @Test
+    public void testRollingAppender() {
+        File file = new File(temporaryFolder.getRoot(), "rolling.log");
+        configurator.reset(newDocument(file)
+                .setRolling(true)
+                .setRollingDatePattern("yyyy-MM")
+                .setRollingMaxFileSize("10MB")
+                .setRollingMaxHistory(7)
+                .setRollingTotalSizeCap("1GB")
+                .addRootLogger());
+
+        RollingFileAppender<ILoggingEvent> appender = getRootAppender();
+        Assert.assertEquals(file.getAbsolutePath(), appender.getFile());
+        SizeAndTimeBasedRollingPolicy<ILoggingEvent> rollingPolicy = getRollingPolicy();
+        Assert.assertEquals(file.getAbsolutePath() + ".%d{yyyy-MM}.%i.gz", rollingPolicy.getFileNamePattern());
+        Assert.assertEquals(7, rollingPolicy.getMaxHistory());
+        Assert.assertTrue(rollingPolicy.isStarted());
+    }
+
+    @Test
+    public void testSettingsOfProperties() {
+        GSLogbackProperties.GSLOG_ROLLING.setValue("true");
+        GSLogbackProperties.GSLOG_ROLLING_MAX_HISTORY.setValue("3");
+
+        configurator.reset(newDocument(new File(temporaryFolder.getRoot(), "rolling.log")).addRootLogger());
+
+        SizeAndTimeBasedRollingPolicy<ILoggingEvent> rollingPolicy = getRollingPolicy();
+        Assert.assertEquals(3, rollingPolicy.getMaxHistory());
+    }
+
+    @Test
+    public void testRollingTakesPrecedenceOverMapped() {
+        configurator.reset(newDocument(new File(temporaryFolder.getRoot(), "rolling.log"))
+                .setRolling(true)
+                .setMapped(true)
+                .addRootLogger());
+
+        Assert.assertNotNull(getRootAppender().getRollingPolicy());
+    }
+
+    @Test
+    public void testRolledFileIsCompressed() throws Exception {
+        File file = new File(temporaryFolder.getRoot(), "rolling.log");
+        configurator.reset(newDocument(file)
+                .setRolling(true)
+                .setRollingMaxFileSize("1KB")
+                .addRootLogger());
+
+        Logger logger = context.getLogger("loggerA");
+        long end = System.currentTimeMillis() + 5000;
+        while (getRolledFiles(file).length == 0 && System.currentTimeMillis() < end) {
+            for (int i = 0; i < 100; i++) {
+                logger.info("her er A " + i);
+            }
+            Thread.sleep(10);
+        }
+        context.stop(); // Waits for the compression
+
+        File[] rolledFiles = getRolledFiles(file);
+        Assert.assertTrue(rolledFiles.length > 0);
+        try (Reader reader = new InputStreamReader(new GZIPInputStream(new FileInputStream(rolledFiles[0])), StandardCharsets.UTF_8)) {
+            char[] buffer = new char[100];
+            int length = reader.read(buffer);
+            Assert.assertTrue(new String(buffer, 0, length).startsWith("INFO  loggerA her er A "));
+        }
+    }
+
+    @Test
+    public void testValidation() {
+        GSLogbackProperties.GSLOG_ROLLING_MAX_HISTORY.validateValue("30");
+        GSLogbackProperties.GSLOG_ROLLING_MAX_FILE_SIZE.validateValue("100MB");
+        GSLogbackProperties.GSLOG_ROLLING_DATE_PATTERN.validateValue("yyyy-MM-dd_HH");
+        assertInvalid(GSLogbackProperties.GSLOG_ROLLING, "ja");
+        assertInvalid(GSLogbackProperties.GSLOG_ROLLING_MAX_HISTORY, "-1");
+        assertInvalid(GSLogbackProperties.GSLOG_ROLLING_MAX_FILE_SIZE, "100 liter");
+        assertInvalid(GSLogbackProperties.GSLOG_ROLLING_TOTAL_SIZE_CAP, "stor");
+        assertInvalid(GSLogbackProperties.GSLOG_ROLLING_DATE_PATTERN, "yyyy-MM-dd'");
+    }
+
+    private void assertInvalid(GSLogbackProperties property, String value) {
+        try {
+            property.validateValue(value);
+            Assert.fail(property + " " + value);
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private File[] getRolledFiles(File file) {
+        return file.getParentFile().listFiles((dir, name) -> name.startsWith(file.getName() + ".") && name.endsWith(".gz"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private RollingFileAppender<ILoggingEvent> getRootAppender() {
+        return (RollingFileAppender<ILoggingEvent>) context.getLogger(Logger.ROOT_LOGGER_NAME).iteratorForAppenders().next();
+    }
+
+    @SuppressWarnings("unchecked")
+    private SizeAndTimeBasedRollingPolicy<ILoggingEvent> getRollingPolicy() {
+        return (SizeAndTimeBasedRollingPolicy<ILoggingEvent>) getRootAppender().getRollingPolicy();
+    }
+
+    private GSLogbackConfigurationDocument newDocument(File file) {
+        return new GSLogbackConfigurationDocument("configuration")
+                .setFilenameWithExtension(file.getAbsolutePath())
+                .setRootLevel("INFO");
+    }
+}
@@ -0,0 +1,184 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.CoreConstants;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class GSLogbackConfigurationSnapshotTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private LoggerContext context;
+    private File file;
+    private File snapshotFile;
+
+    @Before
+    public void before() throws Exception {
+        context = newContext();
+        file = new File(temporaryFolder.getRoot(), "snapshot.xml");
+        Files.write(file.toPath(), "<configuration><logger name='loggerA' level='WARN'/></configuration>".getBytes(StandardCharsets.UTF_8));
+        snapshotFile = new File(temporaryFolder.getRoot(), "snapshot.bin");
+    }
+
+    @After
+    public void after() {
+        context.stop();
+    }
+
+    @Test
+    public void testReset() {
+        new GSLogbackConfigurator(context).setReportToSystemOut(false).reset(file, snapshotFile);
+        Assert.assertTrue(snapshotFile.isFile());
+
+        LoggerContext snapshotContext = newContext();
+        try {
+            new GSLogbackConfigurator(snapshotContext).setReportToSystemOut(false).reset(file, snapshotFile);
+            Assert.assertEquals(Level.WARN, snapshotContext.getLogger("loggerA").getLevel());
+        } finally {
+            snapshotContext.stop();
+        }
+    }
+
+    @Test
+    public void testTurboFilters() throws Exception {
+        Files.write(file.toPath(), ("<configuration>\n" +
+                "    <turboFilter class='torsete.gslogback.GSFlightRecorderTurboFilter'>\n" +
+                "        <size>16</size><mdcKey>gslog.request</mdcKey><appenderName>listAppender</appenderName>\n" +
+                "    </turboFilter>\n" +
+                "    <turboFilter class='torsete.gslogback.GSLevelTurboFilter'>\n" +
+                "        <rule><logger>loggerA</logger><level>warn</level></rule>\n" +
+                "        <rule><level>debug</level><mdcKey>gslog.trace</mdcKey></rule>\n" +
+                "    </turboFilter>\n" +
+                "    <turboFilter class='torsete.gslogback.GSRateLimitTurboFilter'>\n" +
+                "        <rule><logger>loggerB</logger><maxPerSecond>5</maxPerSecond></rule>\n" +
+                "        <sampling>loggerC=0.5</sampling>\n" +
+                "    </turboFilter>\n" +
+                "</configuration>").getBytes(StandardCharsets.UTF_8));
+        GSLogbackConfigurator configurator = new GSLogbackConfigurator(context).setReportToSystemOut(false).startLiveUpdates();
+        configurator.reset(file, snapshotFile);
+        Assert.assertTrue(snapshotFile.isFile());
+
+        LoggerContext snapshotContext = newContext();
+        try {
+            List<String> messages = new CopyOnWriteArrayList<>();
+            configurator = new GSLogbackConfigurator(snapshotContext).setReportToSystemOut(false).addLogListner(messages::add);
+            configurator.reset(file, snapshotFile);
+            Assert.assertTrue(configurator.flushLogListeners(5000));
+            Assert.assertTrue(messages.stream().anyMatch(message -> message.startsWith("Log configuration is changed by snapshot")));
+            Assert.assertEquals(3, snapshotContext.getTurboFilterList().size());
+
+            GSFlightRecorderTurboFilter flightRecorder = (GSFlightRecorderTurboFilter) snapshotContext.getTurboFilterList().get(0);
+            Assert.assertEquals(16, flightRecorder.getSize());
+            Assert.assertEquals("gslog.request", flightRecorder.getMdcKey());
+            Assert.assertEquals("listAppender", flightRecorder.getAppenderName());
+            Assert.assertEquals("ERROR", flightRecorder.getTriggerLevel());
+
+            List<GSLevelTurboFilter.Rule> levelRules = ((GSLevelTurboFilter) snapshotContext.getTurboFilterList().get(1)).getRules();
+            Assert.assertEquals(2, levelRules.size());
+            Assert.assertEquals("loggerA", levelRules.get(0).getLogger());
+            Assert.assertEquals("WARN", levelRules.get(0).getLevel());
+            Assert.assertNull(levelRules.get(1).getLogger());
+            Assert.assertEquals("gslog.trace", levelRules.get(1).getMdcKey());
+
+            List<GSRateLimitTurboFilter.Rule> rateLimitRules = ((GSRateLimitTurboFilter) snapshotContext.getTurboFilterList().get(2)).getRules();
+            Assert.assertEquals(2, rateLimitRules.size());
+            Assert.assertEquals(5, rateLimitRules.get(0).getMaxPerSecond());
+            Assert.assertEquals("loggerC", rateLimitRules.get(1).getLogger());
+            Assert.assertEquals(0.5, rateLimitRules.get(1).getSampling(), 0);
+            Assert.assertTrue(snapshotContext.getTurboFilterList().stream().allMatch(TurboFilter::isStarted));
+        } finally {
+            snapshotContext.stop();
+        }
+    }
+
+    @Test
+    public void testHostAndContextNameInKey() throws Exception {
+        new GSLogbackConfigurator(context).setReportToSystemOut(false).reset(file, snapshotFile);
+        GSLogbackConfigurationSnapshot snapshot = GSLogbackConfigurationSnapshot.read(snapshotFile);
+        Assert.assertNotNull(snapshot);
+        Assert.assertTrue(snapshot.isValid(file, newContext()));
+
+        LoggerContext namedContext = newContext();
+        namedContext.setName("anden");
+        Assert.assertFalse(snapshot.isValid(file, namedContext));
+
+        LoggerContext otherHostContext = newContext();
+        otherHostContext.putProperty(CoreConstants.HOSTNAME_KEY, "anden-vaert");
+        Assert.assertFalse(snapshot.isValid(file, otherHostContext));
+    }
+
+    @Test
+    public void testResetDefaultConfiguration() throws Exception {
+        File defaultFile = new File(temporaryFolder.getRoot(), "logback.xml");
+        Files.write(defaultFile.toPath(), ("<configuration>\n" +
+                "    <include file='" + new File("../AppConfig/systemtest/config/gslogback/gslog-configuration.xml").getCanonicalPath() + "'/>\n" +
+                "</configuration>").getBytes(StandardCharsets.UTF_8));
+        try {
+            setDefaultProperties();
+            new GSLogbackConfigurator(context).setReportToSystemOut(false).reset(defaultFile, snapshotFile);
+            Assert.assertTrue(snapshotFile.isFile());
+            GSFanOutFileAppender joranAppender = getFileAppender(context);
+            context.stop();
+
+            setDefaultProperties(); // As in a new VM, since the configuration has set them
+            LoggerContext snapshotContext = newContext();
+            List<String> messages = new CopyOnWriteArrayList<>();
+            try {
+                GSLogbackConfigurator configurator = new GSLogbackConfigurator(snapshotContext).setReportToSystemOut(false).addLogListner(messages::add);
+                configurator.reset(defaultFile, snapshotFile);
+                Assert.assertTrue(configurator.flushLogListeners(5000));
+                Assert.assertTrue(messages.stream().anyMatch(message -> message.startsWith("Log configuration is changed by snapshot")));
+                GSFanOutFileAppender snapshotAppender = getFileAppender(snapshotContext);
+                Assert.assertTrue(snapshotAppender.isStarted());
+                Assert.assertEquals(joranAppender.getSinks().size(), snapshotAppender.getSinks().size());
+                for (int i = 0; i < joranAppender.getSinks().size(); i++) {
+                    Assert.assertEquals(joranAppender.getSinks().get(i).toString().replaceAll("[0-9_-]+\\.", ""),
+                            snapshotAppender.getSinks().get(i).toString().replaceAll("[0-9_-]+\\.", "")); // Except the timestamp
+                }
+                Assert.assertEquals(joranAppender.isBuffered(), snapshotAppender.isBuffered());
+                Assert.assertEquals(joranAppender.getFlushLevel(), snapshotAppender.getFlushLevel());
+
+                snapshotContext.getLogger("loggerA").warn("her er A");
+                File errorFile = new File(snapshotAppender.getSinks().get(1).getFile());
+                Assert.assertEquals("WARN  loggerA her er A\n", new String(Files.readAllBytes(errorFile.toPath()), StandardCharsets.UTF_8));
+            } finally {
+                snapshotContext.stop();
+            }
+        } finally {
+            GSLogbackProperties.clear();
+        }
+    }
+
+    private void setDefaultProperties() {
+        GSLogbackProperties.clear();
+        GSLogbackProperties.GSLOG_SERVER.setValue(new File(temporaryFolder.getRoot(), "logs").getAbsolutePath());
+        GSLogbackProperties.GSLOG_PATTERN.setValue("%-5level %logger %msg%n");
+    }
+
+    private GSFanOutFileAppender getFileAppender(LoggerContext context) {
+        Appender<ILoggingEvent> appender = context.getLogger(Logger.ROOT_LOGGER_NAME).getAppender("gslog.fileAppender");
+        Assert.assertNotNull(appender);
+        return (GSFanOutFileAppender) appender;
+    }
+
+    private LoggerContext newContext() {
+        LoggerContext context = new LoggerContext();
+        context.setName(CoreConstants.DEFAULT_CONTEXT_NAME); // As the context of LoggerFactory. A snapshot is only made of that
+        return context;
+    }
+}
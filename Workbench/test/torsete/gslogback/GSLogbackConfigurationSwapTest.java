@@ -0,0 +1,117 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggerContextListener;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class GSLogbackConfigurationSwapTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private LoggerContext context;
+    private GSLogbackConfigurator configurator;
+
+    @Before
+    public void before() {
+        GSLogbackProperties.GSLOG_PATTERN.setValue("%-5level %logger %msg%n");
+        context = new LoggerContext();
+        configurator = new GSLogbackConfigurator(context)
+                .setReportToSystemOut(false)
+                .setSwapOnReset(true)
+                .setSwapDrainMillis(0);
+    }
+
+    @After
+    public void after() {
+        context.stop();
+    }
+
+    @Test
+    public void testSwap() throws Exception {
+        File file = temporaryFolder.newFile("swap.log");
+        configurator.reset(newDocument(file, "INFO"));
+        Logger logger = context.getLogger("loggerA");
+        logger.info("her er A");
+        logger.debug("her er debug A");
+
+        configurator.reset(newDocument(file, "DEBUG"));
+        logger.debug("her er debug A igen");
+
+        Assert.assertEquals(Level.DEBUG, context.getLogger(Logger.ROOT_LOGGER_NAME).getLevel());
+        String content = new String(java.nio.file.Files.readAllBytes(file.toPath()));
+        Assert.assertTrue(content.contains("her er A"));
+        Assert.assertFalse(content.contains("her er debug A\n"));
+        Assert.assertTrue(content.contains("her er debug A igen"));
+    }
+
+    @Test
+    public void testStagingContextIsStoppedBySwap() throws Exception {
+        configurator.reset(newDocument(temporaryFolder.newFile("a.log"), "INFO"));
+        CountDownLatch stopped = stopped(getStagingContext());
+
+        configurator.reset(newDocument(temporaryFolder.newFile("b.log"), "INFO"));
+
+        Assert.assertTrue(stopped.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testStagingContextIsStoppedByReset() throws Exception {
+        configurator.reset(newDocument(temporaryFolder.newFile("a.log"), "INFO"));
+        LoggerContext stagingContext = getStagingContext();
+        CountDownLatch stopped = stopped(stagingContext);
+
+        new GSLogbackConfigurator(context).setReportToSystemOut(false).reset(newDocument(temporaryFolder.newFile("b.log"), "INFO"));
+
+        Assert.assertTrue(stopped.await(5, TimeUnit.SECONDS));
+        Assert.assertNotSame(stagingContext, getStagingContext());
+    }
+
+    private LoggerContext getStagingContext() {
+        return (LoggerContext) context.getLogger(Logger.ROOT_LOGGER_NAME).iteratorForAppenders().next().getContext();
+    }
+
+    private CountDownLatch stopped(LoggerContext stagingContext) {
+        CountDownLatch stopped = new CountDownLatch(1);
+        stagingContext.addListener(new LoggerContextListener() {
+            @Override
+            public boolean isResetResistant() {
+                return true;
+            }
+
+            @Override
+            public void onStart(LoggerContext context) {
+            }
+
+            @Override
+            public void onReset(LoggerContext context) {
+            }
+
+            @Override
+            public void onStop(LoggerContext context) {
+                stopped.countDown();
+            }
+
+            @Override
+            public void onLevelChange(Logger logger, Level level) {
+            }
+        });
+        return stopped;
+    }
+
+    private GSLogbackConfigurationDocument newDocument(File file, String rootLevel) {
+        return new GSLogbackConfigurationDocument("configuration")
+                .setFilenameWithExtension(file.getAbsolutePath())
+                .setRootLevel(rootLevel)
+                .addRootLogger();
+    }
+}
@@ -0,0 +1,91 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class GSLogbackConfigurationWatcherTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private LoggerContext context;
+    private GSLogbackConfigurator configurator;
+
+    @Before
+    public void before() {
+        context = new LoggerContext();
+        configurator = new GSLogbackConfigurator(context).setReportToSystemOut(false).setWatchDebounceMillis(50);
+    }
+
+    @After
+    public void after() {
+        configurator.stopWatching();
+        context.stop();
+    }
+
+    @Test
+    public void testStopWatchingAfterReload() throws Exception {
+        File file = write("INFO");
+        configurator.watch(file);
+        Assert.assertEquals(Level.INFO, context.getLogger("loggerA").getLevel());
+
+        write("WARN");
+        awaitLevel(Level.WARN);
+
+        GSLogbackConfigurationWatcher watcher = configurator.getContextState().getWatcher();
+        Assert.assertNotNull(watcher); // Not lost by the reset of the reload
+        configurator.stopWatching();
+        Assert.assertTrue(watcher.join(5000));
+        Assert.assertNull(configurator.getContextState().getWatcher());
+
+        write("ERROR");
+        Thread.sleep(500);
+        Assert.assertEquals(Level.WARN, context.getLogger("loggerA").getLevel());
+    }
+
+    @Test
+    public void testWatchAgain() throws Exception {
+        configurator.watch(write("INFO"));
+        GSLogbackConfigurationWatcher watcher = configurator.getContextState().getWatcher();
+
+        configurator.watch(write("WARN"));
+
+        Assert.assertTrue(watcher.join(5000));
+        Assert.assertNotSame(watcher, configurator.getContextState().getWatcher());
+        write("ERROR");
+        awaitLevel(Level.ERROR);
+    }
+
+    @Test
+    public void testPollUnwatchedDirectory() throws Exception {
+        File included = new File(temporaryFolder.getRoot(), "mangler/included.xml");
+        File file = new File(temporaryFolder.getRoot(), "including.xml");
+        Files.write(file.toPath(), ("<configuration><include optional='true' file='" + included.getAbsolutePath() + "'/></configuration>").getBytes(StandardCharsets.UTF_8));
+        configurator.setWatchPollMillis(100).watch(file);
+
+        Assert.assertTrue(included.getParentFile().mkdir()); // Not seen by the watching, as the directory was missing
+        Files.write(included.toPath(), "<included><logger name='loggerA' level='WARN'/></included>".getBytes(StandardCharsets.UTF_8));
+        awaitLevel(Level.WARN);
+    }
+
+    private void awaitLevel(Level level) throws InterruptedException {
+        for (int i = 0; i < 100 && context.getLogger("loggerA").getLevel() != level; i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertEquals(level, context.getLogger("loggerA").getLevel());
+    }
+
+    private File write(String level) throws Exception {
+        File file = new File(temporaryFolder.getRoot(), "watched.xml");
+        Files.write(file.toPath(), ("<configuration><logger name='loggerA' level='" + level + "'/></configuration>").getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
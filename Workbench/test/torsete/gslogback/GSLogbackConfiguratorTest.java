@@ -148,6 +148,34 @@ public class GSLogbackConfiguratorTest {
         configurator.printRemainingErrorsOrWarnings();  // Logback har givet en warning fordi der var logingr der (med hensigt) blev ignoreret
     }
 
+    @Test
+    public void testUpdate() {
+        Logger logA = LoggerFactory.getLogger("loggerA-" + testName.getMethodName());
+
+        File file = GSLogbackProperties.getLogFile();
+        String fullOutLogFileName = file.getAbsolutePath();
+
+        configurator.reset(new GSLogbackConfigurationDocument("configuration")
+                .setFilenameWithExtension(fullOutLogFileName)
+                .setRootLevel("INFO")
+                .addRootLogger());
+        ch.qos.logback.classic.Logger rootLogger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+        Object appender = rootLogger.iteratorForAppenders().next();
+
+        logA.info("her er A");
+        configurator.update(new GSLogbackConfigurationDocument("configuration")
+                .setFilenameWithExtension(fullOutLogFileName)
+                .setRootLevel("WARN")
+                .addRootLogger());
+        logA.info("her er A igen");
+        logA.warn("her er warn A");
+
+        Assert.assertSame(appender, rootLogger.iteratorForAppenders().next());
+        Assert.assertEquals(2, countInFile("\n", fullOutLogFileName));
+        Assert.assertEquals(1, countInFile("her er A", fullOutLogFileName));
+        Assert.assertEquals(1, countInFile("her er warn A", fullOutLogFileName));
+    }
+
     @Test
     public void testPlainLogging() {
 
@@ -0,0 +1,102 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+
+public class GSLogbackContextSelectorTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private LoggerContext defaultContext;
+    private GSLogbackContextSelector selector;
+
+    @Before
+    public void before() {
+        GSLogbackProperties.GSLOG_PATTERN.setValue("%-5level %logger %msg%n");
+        GSLogbackContextSelector.setDocumentFactory((database, system) -> new GSLogbackConfigurationDocument("configuration")
+                .setFilenameWithExtension(getFile(database, system).getAbsolutePath())
+                .setRootLevel("info")
+                .addRootLogger());
+        defaultContext = new LoggerContext();
+        defaultContext.setName("default");
+        selector = new GSLogbackContextSelector(defaultContext);
+    }
+
+    @After
+    public void after() {
+        GSLogbackContextSelector.clearTenant();
+        GSLogbackContextSelector.setDocumentFactory(GSLogbackContextSelector::newDocument);
+        GSLogbackContextSelector.setIdleMillis(10 * 60 * 1000);
+        selector.getContextNames().forEach(selector::detachLoggerContext);
+        defaultContext.stop();
+    }
+
+    @Test
+    public void testDefaultContext() {
+        Assert.assertSame(defaultContext, selector.getLoggerContext());
+        Assert.assertSame(defaultContext, selector.getLoggerContext("default"));
+    }
+
+    @Test
+    public void testContextPerTenant() throws Exception {
+        LoggerContext[] contexts = new LoggerContext[2];
+        GSLogbackContextSelector.runAs("db1", "sys1", () -> {
+            contexts[0] = selector.getLoggerContext();
+            contexts[0].getLogger("loggerA").info("her er db1");
+        });
+        GSLogbackContextSelector.runAs("db2", "sys1", () -> {
+            contexts[1] = selector.getLoggerContext();
+            contexts[1].getLogger("loggerA").info("her er db2");
+        });
+
+        Assert.assertNotSame(contexts[0], contexts[1]);
+        Assert.assertEquals("db1/sys1", contexts[0].getName());
+        Assert.assertSame(contexts[0], selector.getLoggerContext("db1/sys1"));
+        Assert.assertTrue(selector.getContextNames().contains("db2/sys1"));
+        Assert.assertSame(defaultContext, selector.getLoggerContext()); // runAs restores the tenant
+        String content = new String(Files.readAllBytes(getFile("db1", "sys1").toPath()));
+        Assert.assertTrue(content.contains("her er db1"));
+        Assert.assertFalse(content.contains("her er db2"));
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        GSLogbackContextSelector.setIdleMillis(50);
+        GSLogbackContextSelector.setTenant("db1", "sys1");
+        LoggerContext context = selector.getLoggerContext();
+        GSLogbackContextSelector.clearTenant();
+        Logger root = context.getLogger(Logger.ROOT_LOGGER_NAME);
+
+        for (int i = 0; i < 100 && root.iteratorForAppenders().hasNext(); i++) {
+            Thread.sleep(50);
+        }
+        Assert.assertFalse(root.iteratorForAppenders().hasNext());
+
+        context.getLogger("loggerA").info("her er A efter eviction"); // Configures it again
+        Assert.assertTrue(root.iteratorForAppenders().hasNext());
+        context.getLogger("loggerA").info("her er A igen");
+        Assert.assertTrue(new String(Files.readAllBytes(getFile("db1", "sys1").toPath())).contains("her er A igen"));
+    }
+
+    @Test
+    public void testDetach() {
+        GSLogbackContextSelector.setTenant("db1", "sys1");
+        LoggerContext context = selector.getLoggerContext();
+
+        Assert.assertSame(context, selector.detachLoggerContext("db1/sys1"));
+        Assert.assertFalse(context.isStarted());
+        Assert.assertNull(selector.getLoggerContext("db1/sys1"));
+    }
+
+    private File getFile(String database, String system) {
+        return new File(temporaryFolder.getRoot(), database + "-" + system + ".log");
+    }
+}
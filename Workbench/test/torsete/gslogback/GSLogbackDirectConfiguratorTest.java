@@ -0,0 +1,84 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.FileAppender;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+public class GSLogbackDirectConfiguratorTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private LoggerContext directContext;
+    private LoggerContext joranContext;
+
+    @Before
+    public void before() {
+        GSLogbackProperties.GSLOG_PATTERN.setValue("%-5level %logger %msg%n");
+        directContext = new LoggerContext();
+        joranContext = new LoggerContext();
+    }
+
+    @After
+    public void after() {
+        directContext.stop();
+        joranContext.stop();
+    }
+
+    @Test
+    public void testApplicable() throws Exception {
+        Assert.assertTrue(GSLogbackDirectConfigurator.isApplicable(newDocument().getDocument()));
+        Assert.assertFalse(GSLogbackDirectConfigurator.isApplicable(new GSLogbackConfigurationDocument("configuration")
+                .setFilenameWithExtension(new File(temporaryFolder.getRoot(), "rolling.log").getAbsolutePath())
+                .setRolling(true)
+                .setRootLevel("info")
+                .addRootLogger()
+                .getDocument()));
+
+        GSLogbackConfigurationDocument document = newDocument();
+        document.getDocumentElement().setAttribute("debug", "true");
+        Assert.assertFalse(GSLogbackDirectConfigurator.isApplicable(document.getDocument()));
+    }
+
+    @Test
+    public void testSameAsJoran() throws Exception {
+        GSLogbackConfigurationDocument document = newDocument();
+
+        new GSLogbackConfigurator(directContext).setReportToSystemOut(false).setDirectConfiguration(true).reset(document);
+        new GSLogbackConfigurator(joranContext).setReportToSystemOut(false).reset(document);
+
+        for (String loggerName : new String[]{Logger.ROOT_LOGGER_NAME, "loggerA"}) {
+            Assert.assertEquals(joranContext.getLogger(loggerName).getLevel(), directContext.getLogger(loggerName).getLevel());
+        }
+        Assert.assertEquals(joranContext.getTurboFilterList().size(), directContext.getTurboFilterList().size());
+        FileAppender<ILoggingEvent> directAppender = getFileAppender(directContext);
+        FileAppender<ILoggingEvent> joranAppender = getFileAppender(joranContext);
+        Assert.assertEquals(joranAppender.getName(), directAppender.getName());
+        Assert.assertEquals(joranAppender.getFile(), directAppender.getFile());
+        Assert.assertTrue(directAppender.isStarted());
+        Assert.assertEquals(((PatternLayoutEncoder) joranAppender.getEncoder()).getPattern(), ((PatternLayoutEncoder) directAppender.getEncoder()).getPattern());
+    }
+
+    private FileAppender<ILoggingEvent> getFileAppender(LoggerContext context) {
+        Appender<ILoggingEvent> appender = context.getLogger(Logger.ROOT_LOGGER_NAME).iteratorForAppenders().next();
+        Assert.assertEquals(FileAppender.class, appender.getClass());
+        return (FileAppender<ILoggingEvent>) appender;
+    }
+
+    private GSLogbackConfigurationDocument newDocument() {
+        return new GSLogbackConfigurationDocument("configuration")
+                .setFilenameWithExtension(new File(temporaryFolder.getRoot(), "direct.log").getAbsolutePath())
+                .setRootLevel("info")
+                .addLevelRule("loggerA", "debug")
+                .addRootLogger();
+    }
+}
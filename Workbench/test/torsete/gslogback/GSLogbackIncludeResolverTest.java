@@ -0,0 +1,111 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class GSLogbackIncludeResolverTest {
+    private final static String DIR_PROPERTY = GSLogbackIncludeResolverTest.class.getName() + ".dir";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private LoggerContext context;
+    private String dir;
+
+    @Before
+    public void before() {
+        context = new LoggerContext();
+        dir = temporaryFolder.getRoot().getAbsolutePath().replace('\\', '/');
+    }
+
+    @After
+    public void after() {
+        System.clearProperty(DIR_PROPERTY);
+        context.stop();
+    }
+
+    @Test
+    public void testDuplicateInclude() throws Exception {
+        write("a.xml", "<included><logger name='loggerA' level='INFO'/></included>");
+        File file = write("main.xml", "<configuration>" +
+                "<include file='" + dir + "/a.xml'/>" +
+                "<include file='" + dir + "/a.xml'/>" +
+                "</configuration>");
+
+        GSLogbackIncludeResolver.Resolution resolution = GSLogbackIncludeResolver.getInstance().resolve(file, context);
+
+        Assert.assertEquals(1, resolution.getDuplicateCount());
+        Assert.assertTrue(resolution.getErrors().isEmpty());
+        Assert.assertEquals(1, resolution.getDocument().getElementsByTagName("logger").getLength());
+        Assert.assertEquals(0, resolution.getDocument().getElementsByTagName("include").getLength());
+    }
+
+    @Test
+    public void testCycle() throws Exception {
+        write("a.xml", "<included><include file='" + dir + "/b.xml'/><logger name='loggerA' level='INFO'/></included>");
+        write("b.xml", "<included><include file='" + dir + "/a.xml'/><logger name='loggerB' level='INFO'/></included>");
+        File file = write("main.xml", "<configuration><include file='" + dir + "/a.xml'/></configuration>");
+
+        GSLogbackIncludeResolver.Resolution resolution = GSLogbackIncludeResolver.getInstance().resolve(file, context);
+
+        Assert.assertEquals(1, resolution.getErrors().size());
+        Assert.assertEquals(2, resolution.getDocument().getElementsByTagName("logger").getLength());
+    }
+
+    @Test
+    public void testCachedWhileUnchanged() throws Exception {
+        new File(temporaryFolder.getRoot(), "x").mkdir();
+        write("a.xml", "<included><logger name='loggerA' level='INFO'/></included>");
+        write("x/a.xml", "<included><logger name='loggerA' level='WARN'/></included>");
+        File file = write("main.xml", "<configuration><include file='${" + DIR_PROPERTY + "}/a.xml'/></configuration>");
+        System.setProperty(DIR_PROPERTY, dir);
+
+        GSLogbackIncludeResolver.Resolution resolution = GSLogbackIncludeResolver.getInstance().resolve(file, context);
+        Assert.assertSame(resolution, GSLogbackIncludeResolver.getInstance().resolve(file, context));
+        Assert.assertEquals("INFO", getLevel(resolution.getDocument()));
+
+        System.setProperty(DIR_PROPERTY, dir + "/x");
+        resolution = GSLogbackIncludeResolver.getInstance().resolve(file, context);
+        Assert.assertEquals("WARN", getLevel(resolution.getDocument()));
+
+        write("x/a.xml", "<included><logger name='loggerA' level='ERROR'/></included>");
+        Assert.assertTrue(new File(temporaryFolder.getRoot(), "x/a.xml").setLastModified(System.currentTimeMillis() - 10_000));
+        resolution = GSLogbackIncludeResolver.getInstance().resolve(file, context);
+        Assert.assertEquals("ERROR", getLevel(resolution.getDocument()));
+    }
+
+    @Test
+    public void testResetResolved() throws Exception {
+        write("a.xml", "<included><logger name='loggerA' level='INFO'/><include file='" + dir + "/b.xml'/></included>");
+        write("b.xml", "<included><logger name='loggerB' level='WARN'/></included>");
+        File file = write("main.xml", "<configuration>" +
+                "<include file='" + dir + "/a.xml'/>" +
+                "<include file='" + dir + "/b.xml'/>" +
+                "</configuration>");
+
+        new GSLogbackConfigurator(context).setReportToSystemOut(false).setResolveIncludes(true).reset(file);
+
+        Assert.assertEquals(Level.INFO, context.getLogger("loggerA").getLevel());
+        Assert.assertEquals(Level.WARN, context.getLogger("loggerB").getLevel());
+    }
+
+    private String getLevel(Document document) {
+        return ((org.w3c.dom.Element) document.getElementsByTagName("logger").item(0)).getAttribute("level");
+    }
+
+    private File write(String name, String content) throws Exception {
+        File file = new File(temporaryFolder.getRoot(), name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,130 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.FileAppender;
+import ch.qos.logback.core.OutputStreamAppender;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class GSLogbackLiveUpdaterTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private LoggerContext context;
+    private GSLogbackConfigurator configurator;
+
+    @Before
+    public void before() {
+        GSLogbackProperties.GSLOG_PATTERN.setValue("%-5level %logger %msg%n");
+        context = new LoggerContext();
+        configurator = new GSLogbackConfigurator(context).setReportToSystemOut(false);
+    }
+
+    @After
+    public void after() {
+        configurator.stopLiveUpdates();
+        context.stop();
+        GSLogbackProperties.GSLOG_PATTERN.clearValue();
+        GSLogbackProperties.GSLOG_ROOT_LEVEL.clearValue();
+        GSLogbackProperties.GSLOG_FILE.clearValue();
+    }
+
+    @Test
+    public void testRootLevel() {
+        configurator.reset(newDocument()).startLiveUpdates();
+
+        GSLogbackProperties.GSLOG_ROOT_LEVEL.setValue("error");
+
+        Assert.assertEquals(Level.ERROR, getRoot().getLevel());
+    }
+
+    @Test
+    public void testPatternOfGslogAppendersOnly() throws Exception {
+        configurator.reset(newDocument()).startLiveUpdates();
+        FileAppender<ILoggingEvent> customAppender = new FileAppender<>();
+        customAppender.setContext(context);
+        customAppender.setName("custom");
+        customAppender.setFile(new File(temporaryFolder.getRoot(), "custom.log").getAbsolutePath());
+        customAppender.setEncoder(newEncoder("CUSTOM %msg%n"));
+        customAppender.start();
+        getRoot().addAppender(customAppender);
+
+        GSLogbackProperties.GSLOG_PATTERN.setValue("NY %msg%n");
+
+        Assert.assertEquals("NY %msg%n", getPattern(getGslogAppender()));
+        Assert.assertEquals("CUSTOM %msg%n", getPattern(customAppender));
+    }
+
+    @Test
+    public void testFileToggle() {
+        configurator.reset(newDocument()).startLiveUpdates();
+        Appender<ILoggingEvent> appender = getGslogAppender();
+
+        GSLogbackProperties.GSLOG_FILE.setValue("false");
+        Assert.assertNull(getRoot().getAppender(appender.getName()));
+        Assert.assertFalse(appender.isStarted());
+
+        GSLogbackProperties.GSLOG_FILE.setValue("true");
+        Assert.assertSame(appender, getRoot().getAppender(appender.getName()));
+        Assert.assertTrue(appender.isStarted());
+    }
+
+    @Test
+    public void testResetOutsideTheSubscriber() throws Exception {
+        File file = new File(temporaryFolder.getRoot(), "live.xml");
+        Files.write(file.toPath(), "<configuration><logger name='loggerA' level='WARN'/></configuration>".getBytes(StandardCharsets.UTF_8));
+        configurator.reset(file).startLiveUpdates();
+        context.getLogger("loggerA").setLevel(Level.INFO);
+
+        synchronized (context.getConfigurationLock()) { // Holds the reset of the executor back until it is checked
+            GSLogbackProperties.GSLOG_FILE.setValue("true"); // There are no file appenders to attach
+            Assert.assertEquals(Level.INFO, context.getLogger("loggerA").getLevel()); // Not reset by the subscriber
+        }
+
+        for (int i = 0; i < 50 && context.getLogger("loggerA").getLevel() != Level.WARN; i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertEquals(Level.WARN, context.getLogger("loggerA").getLevel());
+    }
+
+    private Logger getRoot() {
+        return context.getLogger(Logger.ROOT_LOGGER_NAME);
+    }
+
+    private OutputStreamAppender<ILoggingEvent> getGslogAppender() {
+        Appender<ILoggingEvent> appender = getRoot().iteratorForAppenders().next();
+        Assert.assertTrue(appender.getName().startsWith("gslog.fileAppender"));
+        return (OutputStreamAppender<ILoggingEvent>) appender;
+    }
+
+    private String getPattern(OutputStreamAppender<ILoggingEvent> appender) {
+        return ((PatternLayoutEncoder) appender.getEncoder()).getPattern();
+    }
+
+    private PatternLayoutEncoder newEncoder(String pattern) {
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern(pattern);
+        encoder.start();
+        return encoder;
+    }
+
+    private GSLogbackConfigurationDocument newDocument() {
+        return new GSLogbackConfigurationDocument("configuration")
+                .setFilenameWithExtension(new File(temporaryFolder.getRoot(), "live.log").getAbsolutePath())
+                .setRootLevel("info")
+                .addRootLogger();
+    }
+}
@@ -0,0 +1,44 @@
+package torsete.gslogback;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+public class GSLogbackPropertiesSnapshotTest {
+    private final List<String> values = new CopyOnWriteArrayList<>();
+    private final Consumer<String> subscriber = values::add;
+
+    @After
+    public void after() {
+        GSLogbackProperties.GSLOG_ROOT_LEVEL.unsubscribe(subscriber);
+        GSLogbackProperties.GSLOG_ROOT_LEVEL.clearValue();
+    }
+
+    @Test
+    public void testSetValue() {
+        long version = GSLogbackProperties.snapshot().getVersion();
+
+        GSLogbackProperties.GSLOG_ROOT_LEVEL.setValue("warn");
+
+        Assert.assertEquals("warn", GSLogbackProperties.GSLOG_ROOT_LEVEL.getValue());
+        Assert.assertTrue(GSLogbackProperties.snapshot().getVersion() > version);
+    }
+
+    @Test
+    public void testSystemPropertySetDirectly() throws Exception {
+        GSLogbackProperties.GSLOG_ROOT_LEVEL.setValue("info");
+        GSLogbackProperties.GSLOG_ROOT_LEVEL.subscribe(subscriber);
+
+        System.setProperty(GSLogbackProperties.GSLOG_ROOT_LEVEL.getKey(), "error");
+
+        for (int i = 0; i < 30 && !"error".equals(GSLogbackProperties.GSLOG_ROOT_LEVEL.getValue()); i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertEquals("error", GSLogbackProperties.GSLOG_ROOT_LEVEL.getValue());
+        Assert.assertTrue(values.contains("error"));
+    }
+}
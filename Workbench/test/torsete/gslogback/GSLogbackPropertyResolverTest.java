@@ -0,0 +1,112 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.LoggerContext;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Properties;
+
+public class GSLogbackPropertyResolverTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private LoggerContext context;
+    private GSLogbackConfigurator configurator;
+    private File configurationFile;
+    private Properties systemProperties;
+
+    @Before
+    public void before() throws Exception {
+        systemProperties = (Properties) System.getProperties().clone(); // The resolver also publishes eg. gslog.folder
+        GSLogbackProperties.clear();
+        context = new LoggerContext();
+        configurator = new GSLogbackConfigurator(context).setReportToSystemOut(false);
+        configurationFile = temporaryFolder.newFile("configuration.xml");
+        Files.write(configurationFile.toPath(), ("<configuration>\n" +
+                "    <include file='" + new File("logbackConfiguration/gslog-properties.xml").getAbsolutePath() + "'/>\n" +
+                "    <root level='${gslog.rootLevel}'/>\n" +
+                "</configuration>").getBytes());
+    }
+
+    @After
+    public void after() {
+        context.stop();
+        System.setProperties(systemProperties);
+        GSLogbackProperties.refresh();
+    }
+
+    @Test
+    public void testEveryPropertyHasDefault() {
+        GSLogbackDefaultProperties defaults = new GSLogbackDefaultProperties();
+        for (GSLogbackProperties property : GSLogbackProperties.values()) {
+            String value = defaults.apply(property);
+            if (property == GSLogbackProperties.LOGBACK_CONFIGURATION_FILE) {
+                Assert.assertNull(value);
+            } else {
+                Assert.assertNotNull(property.name(), value);
+            }
+        }
+    }
+
+    @Test
+    public void testDefaultsAreFallbacksOfConfiguration() {
+        Map<String, String> resolvedProperties = new GSLogbackPropertyResolver().resolve();
+
+        configurator.reset(configurationFile);
+
+        for (GSLogbackProperties property : GSLogbackProperties.values()) {
+            if (property.isAssignable() && System.getProperty(property.getKey()) != null
+                    && property != GSLogbackProperties.GSLOG_FILE_NAME_TIMSTAMP) { // One per VM by default, one per configuration by the configuration
+                Assert.assertEquals(property.name(), System.getProperty(property.getKey()), resolvedProperties.get(property.getKey()));
+            }
+        }
+    }
+
+    @Test
+    public void testResolvedProperties() throws Exception {
+        File propertyFile = temporaryFolder.newFile("gslog.properties");
+        Files.write(propertyFile.toPath(), "gslog.server=fraFil\ngslog.rootLevel=warn\n".getBytes());
+
+        configurator.setPropertyResolver(new GSLogbackPropertyResolver().addFile(propertyFile)).reset(configurationFile);
+
+        Assert.assertEquals("true", context.getProperty(GSLogbackPropertyResolver.RESOLVED));
+        Assert.assertEquals("fraFil", GSLogbackProperties.GSLOG_SERVER.getValue());
+        Assert.assertEquals("warn", GSLogbackProperties.GSLOG_ROOT_LEVEL.getValue());
+        Assert.assertEquals("WARN", context.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME).getLevel().toString());
+        Assert.assertTrue(System.getProperty("gslog.folder").startsWith("fraFil/"));
+    }
+
+    @Test
+    public void testResolvedOnceAcrossConfigurations() {
+        GSLogbackPropertyResolver resolver = new GSLogbackPropertyResolver();
+        configurator.setPropertyResolver(resolver).reset(configurationFile);
+        long version = GSLogbackProperties.snapshot().getVersion();
+        Map<String, String> resolvedProperties = resolver.resolve();
+
+        configurator.reset(configurationFile);
+
+        Assert.assertEquals(version, GSLogbackProperties.snapshot().getVersion());
+        Assert.assertSame(resolvedProperties, resolver.resolve());
+
+        GSLogbackProperties.GSLOG_SERVER.setValue("andenServer");
+        Assert.assertNotSame(resolvedProperties, resolver.resolve());
+    }
+
+    @Test
+    public void testFallbacksAreSkipped() {
+        GSLogbackDefaultProperties defaults = new GSLogbackDefaultProperties();
+        GSLogbackPropertyResolver resolver = new GSLogbackPropertyResolver()
+                .setDefaults(p -> p == GSLogbackProperties.GSLOG_DATABASE ? null : defaults.apply(p));
+
+        configurator.setPropertyResolver(resolver).reset(configurationFile);
+
+        Assert.assertNull(GSLogbackProperties.GSLOG_DATABASE.getValue()); // Not the fallback of the configuration
+        Assert.assertEquals("logs", GSLogbackProperties.GSLOG_SERVER.getValue());
+    }
+}
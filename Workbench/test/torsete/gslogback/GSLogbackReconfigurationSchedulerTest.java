@@ -0,0 +1,108 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class GSLogbackReconfigurationSchedulerTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private LoggerContext context;
+    private GSLogbackReconfigurationScheduler scheduler;
+
+    @Before
+    public void before() {
+        context = new LoggerContext();
+        scheduler = new GSLogbackReconfigurationScheduler(new GSLogbackConfigurator(context).setReportToSystemOut(false), 100);
+    }
+
+    @After
+    public void after() {
+        scheduler.close();
+        context.stop();
+    }
+
+    @Test
+    public void testMerged() throws Exception {
+        CompletableFuture<List<String>> resultA = scheduler.add(newDocument("loggerA", "INFO"));
+        CompletableFuture<List<String>> resultB = scheduler.add(newDocument("loggerB", "WARN"));
+
+        Assert.assertEquals(2, resultA.get(5, TimeUnit.SECONDS).size());
+        Assert.assertEquals(resultA.get(), resultB.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Level.INFO, context.getLogger("loggerA").getLevel());
+        Assert.assertEquals(Level.WARN, context.getLogger("loggerB").getLevel());
+    }
+
+    @Test
+    public void testOnlyUnappliedRequestsFail() throws Exception {
+        CompletableFuture<List<String>> resultA = scheduler.add(newDocument("loggerA", "INFO"));
+        CompletableFuture<List<String>> resultFile = scheduler.add(new File(temporaryFolder.getRoot(), "findes.ikke.xml"));
+        CompletableFuture<List<String>> resultB = scheduler.add(newDocument("loggerB", "WARN"));
+
+        Assert.assertEquals(1, resultA.get(5, TimeUnit.SECONDS).size()); // Only its own group
+        assertFailed(resultFile);
+        assertFailed(resultB);
+        Assert.assertEquals(Level.INFO, context.getLogger("loggerA").getLevel());
+        Assert.assertNull(context.getLogger("loggerB").getLevel());
+    }
+
+    @Test
+    public void testDescriptionsOfGroup() throws Exception {
+        CompletableFuture<List<String>> resultA = scheduler.add(newDocument("loggerA", "INFO"));
+        CompletableFuture<List<String>> resultReset = scheduler.reset(newDocument("loggerB", "WARN"));
+        CompletableFuture<List<String>> resultC = scheduler.add(newDocument("loggerC", "ERROR"));
+        CompletableFuture<List<String>> resultFile = scheduler.add(new File(temporaryFolder.getRoot(), "tom.xml"));
+        CompletableFuture<List<String>> resultD = scheduler.add(newDocument("loggerD", "DEBUG"));
+
+        List<String> descriptions = resultReset.get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(3, descriptions.size()); // The superseded request, the reset and the document merged with it
+        Assert.assertTrue(descriptions.get(0), descriptions.get(0).endsWith(" add(document)"));
+        Assert.assertTrue(descriptions.get(1), descriptions.get(1).endsWith(" reset(document)"));
+        Assert.assertEquals(descriptions, resultA.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(descriptions, resultC.get(5, TimeUnit.SECONDS));
+        assertFailed(resultFile);
+        assertFailed(resultD);
+    }
+
+    @Test
+    public void testRequestAfterClose() {
+        scheduler.close();
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                scheduler.add(newDocument("loggerA", "INFO"));
+                Assert.fail();
+            } catch (RejectedExecutionException e) {
+                // Expected each time
+            }
+        }
+    }
+
+    private void assertFailed(CompletableFuture<List<String>> result) throws Exception {
+        try {
+            result.get(5, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            // Expected
+        }
+    }
+
+    private GSLogbackConfigurationDocument newDocument(String loggerName, String level) {
+        GSLogbackConfigurationDocument document = new GSLogbackConfigurationDocument("configuration");
+        document.appendElement(document.getDocumentElement(), "logger", "name", loggerName);
+        ((org.w3c.dom.Element) document.getDocumentElement().getFirstChild()).setAttribute("level", level);
+        return document;
+    }
+}
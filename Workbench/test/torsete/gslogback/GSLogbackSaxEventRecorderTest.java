@@ -0,0 +1,75 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.joran.event.BodyEvent;
+import ch.qos.logback.core.joran.event.SaxEvent;
+import ch.qos.logback.core.joran.event.SaxEventRecorder;
+import ch.qos.logback.core.joran.event.StartEvent;
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class GSLogbackSaxEventRecorderTest {
+    private final static String XML = "<configuration debug='false'>\n" +
+            "    <!-- A comment -->\n" +
+            "    <property name='x.level' value='WARN'/>\n" +
+            "    <logger name='loggerA' level='${x.level}' additivity='false'/>\n" +
+            "    <root>\n" +
+            "        <level value='ERROR'/>\n" +
+            "    </root>\n" +
+            "    <contextName>  tekst &amp; mere tekst </contextName>\n" +
+            "</configuration>";
+
+    @Test
+    public void testSameEventsAsParsing() throws Exception {
+        LoggerContext context = new LoggerContext();
+        SaxEventRecorder saxEventRecorder = new SaxEventRecorder(context);
+        saxEventRecorder.recordEvents(new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_8)));
+        List<SaxEvent> parsedEvents = saxEventRecorder.getSaxEventList();
+        List<SaxEvent> recordedEvents = new GSLogbackSaxEventRecorder(context).recordEvents(parse(XML));
+
+        Assert.assertEquals(parsedEvents.size(), recordedEvents.size());
+        for (int i = 0; i < parsedEvents.size(); i++) {
+            SaxEvent parsedEvent = parsedEvents.get(i);
+            SaxEvent recordedEvent = recordedEvents.get(i);
+            Assert.assertEquals(parsedEvent.getClass(), recordedEvent.getClass());
+            Assert.assertEquals(parsedEvent.getQName(), recordedEvent.getQName());
+            if (parsedEvent instanceof StartEvent) {
+                StartEvent parsedStartEvent = (StartEvent) parsedEvent;
+                StartEvent recordedStartEvent = (StartEvent) recordedEvent;
+                Assert.assertEquals(parsedStartEvent.getAttributes().getLength(), recordedStartEvent.getAttributes().getLength());
+                for (int j = 0; j < parsedStartEvent.getAttributes().getLength(); j++) {
+                    String name = parsedStartEvent.getAttributes().getQName(j);
+                    Assert.assertEquals(parsedStartEvent.getAttributes().getValue(j), recordedStartEvent.getAttributes().getValue(name));
+                }
+            }
+            if (parsedEvent instanceof BodyEvent) {
+                Assert.assertEquals(((BodyEvent) parsedEvent).getText(), ((BodyEvent) recordedEvent).getText());
+            }
+        }
+    }
+
+    @Test
+    public void testConfigureDocument() throws Exception {
+        LoggerContext context = new LoggerContext();
+        GSLogbackJoranConfigurator configurator = new GSLogbackJoranConfigurator();
+        configurator.setContext(context);
+
+        configurator.doConfigure(parse(XML));
+
+        Assert.assertEquals(Level.WARN, context.getLogger("loggerA").getLevel());
+        Assert.assertFalse(context.getLogger("loggerA").isAdditive());
+        Assert.assertEquals(Level.ERROR, context.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME).getLevel());
+        Assert.assertEquals("tekst & mere tekst", context.getName());
+    }
+
+    private Document parse(String xml) throws Exception {
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    }
+}
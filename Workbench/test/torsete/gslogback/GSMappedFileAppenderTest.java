@@ -0,0 +1,148 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.core.status.Status;
+import ch.qos.logback.core.util.FileSize;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class GSMappedFileAppenderTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private LoggerContext context;
+    private Logger logger;
+    private File file;
+
+    @Before
+    public void before() {
+        context = new LoggerContext();
+        logger = context.getLogger("loggerA");
+        logger.setAdditive(false);
+        file = new File(temporaryFolder.getRoot(), "mapped.log");
+    }
+
+    @After
+    public void after() {
+        context.stop();
+    }
+
+    @Test
+    public void testStopTruncates() throws Exception {
+        GSMappedFileAppender appender = newAppender(file, "%msg%n");
+        logger.info("her er A");
+        Assert.assertEquals(1024, file.length());
+
+        appender.stop();
+
+        Assert.assertEquals("her er A\n", read(file));
+        Assert.assertEquals(0, getWarnings());
+    }
+
+    @Test
+    public void testRegions() throws Exception {
+        GSMappedFileAppender appender = newAppender(file, "%msg%n");
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            logger.info("her er A " + i);
+            expected.append("her er A ").append(i).append('\n');
+        }
+
+        appender.stop();
+
+        Assert.assertEquals(expected.toString(), read(file));
+        Assert.assertEquals(0, getWarnings());
+    }
+
+    @Test
+    public void testAppend() throws Exception {
+        newAppender(file, "%msg%n");
+        logger.info("her er A");
+        logger.getAppender("mapped").stop();
+        logger.detachAndStopAllAppenders();
+
+        newAppender(file, "%msg%n");
+        logger.info("her er B");
+        logger.getAppender("mapped").stop();
+
+        Assert.assertEquals("her er A\nher er B\n", read(file));
+    }
+
+    @Test
+    public void testAppendAfterCrash() throws Exception {
+        newAppender(file, "%msg");
+        logger.info("her er A\u0000"); // The events may end with zero bytes
+        File crashedFile = new File(temporaryFolder.getRoot(), "crashed.log");
+        Files.copy(file.toPath(), crashedFile.toPath()); // As the file is when the VM dies
+        logger.detachAndStopAllAppenders();
+        Assert.assertEquals(1024, crashedFile.length());
+
+        GSMappedFileAppender appender = newAppender(crashedFile, "%msg");
+        logger.info("her er B");
+        appender.stop();
+
+        Assert.assertEquals("her er A\u0000her er B", read(crashedFile));
+    }
+
+    @Test
+    public void testAppendToOtherFile() throws Exception {
+        Files.write(file.toPath(), "her er A\u0000\u0000".getBytes(StandardCharsets.UTF_8));
+
+        GSMappedFileAppender appender = newAppender(file, "%msg");
+        logger.info("her er B");
+        appender.stop();
+
+        Assert.assertEquals("her er A\u0000\u0000her er B", read(file));
+    }
+
+    @Test
+    public void testRegionSize() {
+        GSMappedFileAppender appender = new GSMappedFileAppender();
+        appender.setContext(context);
+        appender.setEncoder(newEncoder("%msg"));
+        appender.setFile(file.getAbsolutePath());
+        appender.setRegionSize(FileSize.valueOf("100"));
+
+        appender.start();
+
+        Assert.assertFalse(appender.isStarted());
+    }
+
+    private GSMappedFileAppender newAppender(File file, String pattern) {
+        GSMappedFileAppender appender = new GSMappedFileAppender();
+        appender.setContext(context);
+        appender.setName("mapped");
+        appender.setFile(file.getAbsolutePath());
+        appender.setRegionSize(FileSize.valueOf("1KB"));
+        appender.setEncoder(newEncoder(pattern));
+        appender.start();
+        Assert.assertTrue(appender.isStarted());
+        logger.addAppender(appender);
+        return appender;
+    }
+
+    private PatternLayoutEncoder newEncoder(String pattern) {
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern(pattern);
+        encoder.start();
+        return encoder;
+    }
+
+    private long getWarnings() {
+        return context.getStatusManager().getCopyOfStatusList().stream().filter(status -> status.getLevel() >= Status.WARN).count();
+    }
+
+    private String read(File file) throws Exception {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
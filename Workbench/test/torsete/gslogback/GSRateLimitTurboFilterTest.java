@@ -0,0 +1,339 @@
+package torsete.gslogback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.read.ListAppender;
+import ch.qos.logback.core.status.Status;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class GSRateLimitTurboFilterTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private LoggerContext context;
+    private GSRateLimitTurboFilter filter;
+    private ListAppender<ILoggingEvent> appender;
+
+    @Before
+    public void before() {
+        context = new LoggerContext();
+        Logger root = context.getLogger(Logger.ROOT_LOGGER_NAME);
+        root.setLevel(Level.DEBUG);
+        appender = new ListAppender<>();
+        appender.setContext(context);
+        appender.start();
+        root.addAppender(appender);
+        filter = new GSRateLimitTurboFilter();
+        filter.setContext(context);
+        filter.setName("rateLimit");
+    }
+
+    @After
+    public void after() {
+        context.stop();
+    }
+
+    @Test
+    public void testBurstAndRefill() throws Exception {
+        filter.addRule(newRule("loggerA", 5, 1));
+        start();
+
+        Assert.assertEquals(5, log("loggerA", Level.INFO, 20)); // A burst of the maximum
+        Thread.sleep(450); // Two tokens at 200 ms each
+        int refilled = log("loggerA", Level.INFO, 20);
+
+        Assert.assertTrue(refilled + "", refilled >= 2 && refilled <= 3);
+    }
+
+    @Test
+    public void testConcurrentLoggers() throws Exception {
+        filter.addRule(newRule("loggerA", 100, 1));
+        start();
+        Logger logger = context.getLogger("loggerA");
+        List<Thread> threads = new ArrayList<>();
+        long startTime = System.nanoTime();
+        for (int i = 0; i < 4; i++) {
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < 5000; j++) {
+                    logger.info("her er A {}", j);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsedMillis = (System.nanoTime() - startTime) / 1000000;
+        filter.stop();
+
+        long logged = appender.list.stream().filter(event -> event.getLevel() == Level.INFO).count();
+        long rejected = appender.list.stream().filter(event -> event.getLevel() == Level.WARN).mapToLong(event -> (Long) event.getArgumentArray()[0]).sum();
+        Assert.assertTrue(logged + "", logged >= 100 && logged <= 100 + elapsedMillis / 10 + 1);
+        Assert.assertEquals(20000, logged + rejected); // Each rejected event is counted once
+    }
+
+    @Test
+    public void testLongestLoggerNameDecides() {
+        filter.addRule(newRule(null, 10, 1));
+        filter.addRule(newRule("org.apache", 2, 1));
+        filter.addRule(newRule("org.apache.http", 5, 1));
+        filter.addRule(newRule("org.apache.http.wire", 0, 0)); // Sampling only, so org.apache.http decides the limit
+        start();
+
+        Assert.assertEquals(2, log("org.apache.commons", Level.INFO, 20));
+        Assert.assertEquals(5, log("org.apache.http", Level.INFO, 20));
+        Assert.assertEquals(5, log("org.apache.http.wire", Level.INFO, 20));
+        Assert.assertEquals(0, log("org.apache.http.wire", Level.DEBUG, 20));
+        Assert.assertEquals(10, log("org.apachex", Level.INFO, 20)); // Not a descendant of org.apache
+    }
+
+    @Test
+    public void testEachLoggerHasItsBucket() {
+        filter.addRule(newRule("org.apache", 2, 1));
+        start();
+
+        Assert.assertEquals(2, log("org.apache.a", Level.INFO, 20));
+        Assert.assertEquals(2, log("org.apache.b", Level.INFO, 20));
+        Assert.assertEquals(20, log("dk.gensam", Level.INFO, 20));
+    }
+
+    @Test
+    public void testSampling() {
+        filter.addRule(newRule("loggerA", 0, 0.5));
+        filter.addRule(newRule("loggerB", 0, 0));
+        start();
+
+        int sampled = log("loggerA", Level.DEBUG, 10000);
+        Assert.assertTrue(sampled + "", sampled > 4000 && sampled < 6000);
+        Assert.assertEquals(0, log("loggerB", Level.TRACE, 100));
+        Assert.assertEquals(0, log("loggerB", Level.DEBUG, 100));
+        Assert.assertEquals(100, log("loggerB", Level.INFO, 100));
+        filter.stop();
+        Assert.assertTrue(appender.list.stream().noneMatch(event -> event.getLevel() == Level.WARN)); // Sampling is not reported
+    }
+
+    @Test
+    public void testLevelOfLoggerTakesNoToken() {
+        filter.addRule(newRule("loggerA", 2, 1));
+        start();
+        context.getLogger("loggerA").setLevel(Level.INFO);
+
+        Assert.assertEquals(0, log("loggerA", Level.DEBUG, 20));
+        Assert.assertEquals(2, log("loggerA", Level.INFO, 20));
+    }
+
+    @Test
+    public void testReportWhenStopped() {
+        filter.addRule(newRule("loggerA", 2, 1));
+        start();
+        log("loggerA", Level.INFO, 20);
+        log("loggerB", Level.INFO, 20);
+
+        filter.stop();
+
+        Assert.assertEquals(22 + 1, appender.list.size());
+        ILoggingEvent event = getLastEvent();
+        Assert.assertEquals(Level.WARN, event.getLevel());
+        Assert.assertEquals("loggerA", event.getLoggerName());
+        Assert.assertEquals("18 events were rejected by the limit of 2 events per second", event.getFormattedMessage());
+    }
+
+    @Test
+    public void testReportEverySecond() throws Exception {
+        filter.addRule(newRule("loggerA", 2, 1));
+        start();
+        log("loggerA", Level.INFO, 20);
+
+        long end = System.currentTimeMillis() + 5000;
+        while (appender.list.size() < 3 && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        int size = appender.list.size();
+        Thread.sleep(1500); // Nothing more to report
+
+        Assert.assertEquals(3, size);
+        Assert.assertEquals(3, appender.list.size());
+        Assert.assertEquals("18 events were rejected by the limit of 2 events per second", getLastEvent().getFormattedMessage());
+    }
+
+    @Test
+    public void testGuardIsNotLimited() {
+        filter.addRule(newRule("loggerA", 1, 1));
+        start();
+        Logger logger = context.getLogger("loggerA");
+
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(logger.isInfoEnabled());
+        }
+        Assert.assertEquals(1, log("loggerA", Level.INFO, 10));
+    }
+
+    @Test
+    public void testListRules() {
+        filter.setRateLimits("org.apache=2, dk.gensam = 3");
+        filter.setSampling("ROOT=0");
+        start();
+        filter.stop();
+        start(); // The rules of the lists are not added again
+
+        Assert.assertEquals(3, filter.getRules().size());
+        Assert.assertEquals(2, log("org.apache", Level.INFO, 20));
+        Assert.assertEquals(3, log("dk.gensam.gaia", Level.INFO, 20));
+        Assert.assertEquals(0, log("dk.gensam.gaia", Level.DEBUG, 20));
+    }
+
+    @Test
+    public void testInvalidRules() {
+        filter.setRateLimits("org.apache");
+        filter.setSampling("dk.gensam=mange");
+        filter.addRule(newRule("loggerA", -1, 1));
+        filter.addRule(newRule("loggerB", 0, 1.5));
+
+        filter.start();
+
+        Assert.assertFalse(filter.isStarted());
+        Assert.assertEquals(4, context.getStatusManager().getCount());
+    }
+
+    @Test
+    public void testDocument() throws Exception {
+        File file = new File(temporaryFolder.getRoot(), "rateLimit.log");
+        GSLogbackProperties.GSLOG_PATTERN.setValue("%-5level %logger %msg%n");
+        try {
+            new GSLogbackConfigurator(context).setReportToSystemOut(false).reset(new GSLogbackConfigurationDocument("configuration")
+                    .setFilenameWithExtension(file.getAbsolutePath())
+                    .setRootLevel("DEBUG")
+                    .addRateLimit("loggerA", 1)
+                    .addSampling(null, 0)
+                    .addRootLogger());
+        } finally {
+            GSLogbackProperties.GSLOG_PATTERN.clearValue();
+        }
+
+        context.getLogger("loggerA").info("her er A");
+        context.getLogger("loggerA").info("her er A igen");
+        context.getLogger("loggerB").debug("her er B");
+        context.getTurboFilterList().forEach(TurboFilter::stop); // Reports before the appenders are stopped
+        context.stop();
+
+        Assert.assertEquals("INFO  loggerA her er A\n" +
+                        "WARN  loggerA 1 events were rejected by the limit of 1 events per second\n",
+                new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testReportBeforeReset() throws Exception {
+        File file = new File(temporaryFolder.getRoot(), "rateLimit.log");
+        GSLogbackProperties.GSLOG_PATTERN.setValue("%-5level %logger %msg%n");
+        try {
+            GSLogbackConfigurator configurator = new GSLogbackConfigurator(context).setReportToSystemOut(false);
+            configurator.reset(new GSLogbackConfigurationDocument("configuration")
+                    .setFilenameWithExtension(file.getAbsolutePath())
+                    .setRootLevel("DEBUG")
+                    .addRateLimit("loggerA", 1)
+                    .addRootLogger());
+            context.getLogger("loggerA").info("her er A");
+            context.getLogger("loggerA").info("her er A igen");
+
+            configurator.reset(new GSLogbackConfigurationDocument("configuration")
+                    .setFilenameWithExtension(new File(temporaryFolder.getRoot(), "other.log").getAbsolutePath())
+                    .setRootLevel("DEBUG")
+                    .addRootLogger());
+        } finally {
+            GSLogbackProperties.GSLOG_PATTERN.clearValue();
+        }
+
+        Assert.assertEquals("INFO  loggerA her er A\n" +
+                        "WARN  loggerA 1 events were rejected by the limit of 1 events per second\n",
+                new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testReportAsStatusWhenReset() {
+        filter.addRule(newRule("loggerA", 2, 1));
+        start();
+        log("loggerA", Level.INFO, 20);
+
+        context.reset(); // Detaches the appenders before the turbo filter is stopped
+
+        Assert.assertEquals(2, appender.list.size());
+        Assert.assertTrue(context.getStatusManager().getCopyOfStatusList().stream()
+                .anyMatch(status -> status.getLevel() == Status.WARN
+                        && "loggerA: 18 events were rejected by the limit of 2 events per second".equals(status.getMessage())));
+    }
+
+    @Test
+    public void testValidation() {
+        GSLogbackProperties.GSLOG_RATE_LIMITS.validateValue("org.apache=100, dk.gensam.gaia.db=200");
+        GSLogbackProperties.GSLOG_SAMPLING.validateValue("dk.gensam.gaia=0.1");
+        assertInvalid(GSLogbackProperties.GSLOG_RATE_LIMITS, "org.apache=-1");
+        assertInvalid(GSLogbackProperties.GSLOG_SAMPLING, "dk.gensam.gaia=1.5");
+    }
+
+    private void assertInvalid(GSLogbackProperties property, String value) {
+        try {
+            property.validateValue(value);
+            Assert.fail(property + " " + value);
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private void start() {
+        filter.start();
+        Assert.assertTrue(filter.isStarted());
+        if (!context.getTurboFilterList().contains(filter)) {
+            context.addTurboFilter(filter);
+        }
+    }
+
+    /**
+     * @return The number of events written
+     */
+    private int log(String loggerName, Level level, int count) {
+        Logger logger = context.getLogger(loggerName);
+        int written = 0;
+        for (int i = 0; i < count; i++) {
+            int size = appender.list.size();
+            switch (level.levelInt) {
+                case Level.TRACE_INT:
+                    logger.trace("her er A {}", i);
+                    break;
+                case Level.DEBUG_INT:
+                    logger.debug("her er A {}", i);
+                    break;
+                default:
+                    logger.info("her er A {}", i);
+            }
+            if (appender.list.size() > size) {
+                written++;
+            }
+        }
+        return written;
+    }
+
+    private ILoggingEvent getLastEvent() {
+        return appender.list.get(appender.list.size() - 1);
+    }
+
+    private GSRateLimitTurboFilter.Rule newRule(String logger, int maxPerSecond, double sampling) {
+        GSRateLimitTurboFilter.Rule rule = new GSRateLimitTurboFilter.Rule();
+        rule.setLogger(logger);
+        rule.setMaxPerSecond(maxPerSecond);
+        rule.setSampling(sampling);
+        return rule;
+    }
+}